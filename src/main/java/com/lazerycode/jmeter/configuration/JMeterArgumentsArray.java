@@ -9,7 +9,9 @@ import java.io.File;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 
 import static com.lazerycode.jmeter.configuration.JMeterCommandLineArguments.*;
@@ -35,6 +37,7 @@ public class JMeterArgumentsArray {
     private String resultFileExtension = ".jtl";
     private String remoteStartServerList;
     private List<String> customPropertiesFiles = new ArrayList<>();
+    private Map<String, String> jMeterProperties = new LinkedHashMap<>();
     private String testFile;
     private String resultsLogFileName;
     private String jmeterLogFileName;
@@ -65,6 +68,33 @@ public class JMeterArgumentsArray {
         }
     }
 
+    /**
+     * Create a copy of an existing JMeterArgumentsArray, so that tests run at the same time do not share (and
+     * overwrite) each others test file, results file, log file and report directory.
+     *
+     * @param other The arguments to copy
+     */
+    public JMeterArgumentsArray(JMeterArgumentsArray other) {
+        jMeterHome = other.jMeterHome;
+        disableTests = other.disableTests;
+        argumentList.addAll(other.argumentList);
+        dateFormat = other.dateFormat;
+        proxyConfiguration = other.proxyConfiguration;
+        timestampResults = other.timestampResults;
+        appendTimestamp = other.appendTimestamp;
+        resultFileExtension = other.resultFileExtension;
+        remoteStartServerList = other.remoteStartServerList;
+        customPropertiesFiles.addAll(other.customPropertiesFiles);
+        jMeterProperties.putAll(other.jMeterProperties);
+        testFile = other.testFile;
+        resultsLogFileName = other.resultsLogFileName;
+        jmeterLogFileName = other.jmeterLogFileName;
+        logsDirectory = other.logsDirectory;
+        resultsDirectory = other.resultsDirectory;
+        reportDirectory = other.reportDirectory;
+        overrideRootLogLevel = other.overrideRootLogLevel;
+    }
+
     public JMeterArgumentsArray setRemoteStop() {
         argumentList.add(REMOTE_STOP);
 
@@ -116,6 +146,16 @@ public class JMeterArgumentsArray {
         return this;
     }
 
+    /**
+     * Defines a JMeter property on the command line (-Jname=value), it overrides the value in the properties files.
+     */
+    public JMeterArgumentsArray addJMeterProperty(String name, String value) {
+        jMeterProperties.put(name, value);
+        argumentList.add(JMETER_PROPERTY);
+
+        return this;
+    }
+
     public JMeterArgumentsArray setLogRootOverride(String requestedLogLevel) {
         if (isNotSet(requestedLogLevel)) {
             return this;
@@ -214,6 +254,22 @@ public class JMeterArgumentsArray {
         return this;
     }
 
+    /**
+     * Do not generate a report at the end of the test, e.g. for the shards of a test: each would only report on its
+     * own share of the samples.
+     */
+    public JMeterArgumentsArray clearReportsDirectory() {
+        argumentList.remove(REPORT_AT_END_OPT);
+        argumentList.remove(REPORT_OUTPUT_FOLDER_OPT);
+        this.reportDirectory = null;
+
+        return this;
+    }
+
+    public String getReportsDirectory() {
+        return reportDirectory;
+    }
+
     public JMeterArgumentsArray setServerMode(String exportedHostname, int port) {
         argumentList.add(SERVER_OPT);
         disableTests = true;
@@ -232,6 +288,10 @@ public class JMeterArgumentsArray {
         return resultsLogFileName;
     }
 
+    public String getJMeterLogFileName() {
+        return jmeterLogFileName;
+    }
+
     /**
      * Generate an arguments array representing the command line options you want to send to JMeter.
      * The order of the array is determined by the order the values in JMeterCommandLineArguments are defined.
@@ -316,8 +376,12 @@ public class JMeterArgumentsArray {
                 case SERVER_OPT:
                     argumentsArray.add(SERVER_OPT.getCommandLineArgument());
                     break;
-                case SYSTEM_PROPFILE:
                 case JMETER_PROPERTY:
+                    for (Map.Entry<String, String> property : jMeterProperties.entrySet()) {
+                        argumentsArray.add(JMETER_PROPERTY.getCommandLineArgument() + property.getKey() + "=" + property.getValue());
+                    }
+                    break;
+                case SYSTEM_PROPFILE:
                 case JMETER_GLOBAL_PROP:
                 case SYSTEM_PROPERTY:
                 case VERSION_OPT:
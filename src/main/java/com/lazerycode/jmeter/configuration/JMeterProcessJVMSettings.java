@@ -15,6 +15,7 @@ import java.util.List;
  *          <javaRuntime>${env.JAVA_HOME}/bin/java</javaRuntime>
  *          <xms>512</xms>
  *          <xmx>1024</xmx>
+ *          <autoSizing>false</autoSizing>
  *          <arguments>
  *              <argument>foo</argument>
  *          </arguments>
@@ -22,6 +23,9 @@ import java.util.List;
  *  </configuration>
  * }
  * </pre>
+ * <p/>
+ * With autoSizing set to true xms and xmx are ignored, the heap size and garbage collector are chosen for each test
+ * from the memory and processors available and the number of threads in the test plan.
  *
  * @author Mark Collin
  */
@@ -31,6 +35,7 @@ public class JMeterProcessJVMSettings {
     private int xms = 512;
     private int xmx = 512;
     private String javaRuntime = "java";
+    private boolean autoSizing = false;
     private List<String> arguments = new ArrayList<>();
 
     private static final String RUN_HEADLESS = "-Djava.awt.headless=true";
@@ -40,14 +45,44 @@ public class JMeterProcessJVMSettings {
         super();
     }
 
+    public JMeterProcessJVMSettings(JMeterProcessJVMSettings other) {
+        this.xms = other.xms;
+        this.xmx = other.xmx;
+        this.javaRuntime = other.javaRuntime;
+        this.autoSizing = other.autoSizing;
+        this.arguments = new ArrayList<>(other.arguments);
+    }
+
     public int getXms() {
         return xms;
     }
 
+    public JMeterProcessJVMSettings setXms(int xms) {
+        this.xms = xms;
+
+        return this;
+    }
+
     public int getXmx() {
         return xmx;
     }
 
+    public JMeterProcessJVMSettings setXmx(int xmx) {
+        this.xmx = xmx;
+
+        return this;
+    }
+
+    public boolean isAutoSizing() {
+        return autoSizing;
+    }
+
+    public JMeterProcessJVMSettings setAutoSizing(boolean autoSizing) {
+        this.autoSizing = autoSizing;
+
+        return this;
+    }
+
     public List<String> getArguments() {
         return arguments;
     }
@@ -0,0 +1,76 @@
+package com.lazerycode.jmeter.configuration;
+
+/**
+ * A rule used to group sample labels that only differ by ids, UUIDs, query strings, etc. under a single label when
+ * results are analysed.
+ * <p/>
+ * Configuration in pom.xml:
+ * <p/>
+ * <pre>
+ * {@code
+ * <labelNormalisationRules>
+ *     <labelNormalisationRule>
+ *         <template>/orders/{id}/items/{itemId}</template>
+ *     </labelNormalisationRule>
+ *     <labelNormalisationRule>
+ *         <pattern>[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}</pattern>
+ *         <replacement>{uuid}</replacement>
+ *     </labelNormalisationRule>
+ * </labelNormalisationRules>
+ * }
+ * </pre>
+ * A template matches the path of a label (the scheme, host, query string and fragment are ignored) segment by
+ * segment, {name} matches any single segment.  A pattern is a regular expression, every match in the label is
+ * replaced with the replacement.
+ */
+@SuppressWarnings({"UnusedDeclaration", "FieldCanBeLocal"})
+public class LabelNormalisationRule {
+
+    private String template;
+    private String pattern;
+    private String replacement = "";
+
+    /**
+     * @return Path template, e.g. /orders/{id}
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    public LabelNormalisationRule setTemplate(String template) {
+        this.template = template;
+
+        return this;
+    }
+
+    /**
+     * @return Regular expression matching the part of a label to replace
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    public LabelNormalisationRule setPattern(String pattern) {
+        this.pattern = pattern;
+
+        return this;
+    }
+
+    /**
+     * @return Replacement for every match of the pattern, may refer to groups ($1)
+     */
+    public String getReplacement() {
+        return replacement;
+    }
+
+    public LabelNormalisationRule setReplacement(String replacement) {
+        this.replacement = replacement;
+
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return template != null ? "template " + template : "pattern " + pattern + " -> " + replacement;
+    }
+}
@@ -0,0 +1,88 @@
+package com.lazerycode.jmeter.configuration;
+
+/**
+ * Thresholds that the samples of a label have to meet, each threshold is reported as a test case in the JUnit XML
+ * report written by the results goal.
+ * <p/>
+ * Configuration in pom.xml:
+ * <p/>
+ * <pre>
+ * {@code
+ * <serviceLevelAgreements>
+ *     <serviceLevelAgreement>
+ *         <label>login.*</label>
+ *         <maxErrorRateInPercent>0.5</maxErrorRateInPercent>
+ *         <maxP95ElapsedInMilliseconds>800</maxP95ElapsedInMilliseconds>
+ *         <minThroughputPerSecond>20</minThroughputPerSecond>
+ *     </serviceLevelAgreement>
+ *     <serviceLevelAgreement>
+ *         <maxErrorRateInPercent>1</maxErrorRateInPercent>
+ *         <maxP95ElapsedInMilliseconds>2000</maxP95ElapsedInMilliseconds>
+ *     </serviceLevelAgreement>
+ * </serviceLevelAgreements>
+ * }
+ * </pre>
+ * The label is a regular expression that has to match the whole label, the first agreement that matches a label is
+ * applied to it and an agreement without a label matches every label.  Thresholds that are not set are not checked.
+ */
+@SuppressWarnings({"UnusedDeclaration", "FieldCanBeLocal"})
+public class ServiceLevelAgreement {
+
+    private String label;
+    private Float maxErrorRateInPercent;
+    private Long maxP95ElapsedInMilliseconds;
+    private Float minThroughputPerSecond;
+
+    /**
+     * @return Regular expression matching the labels this agreement applies to, null for every label
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public ServiceLevelAgreement setLabel(String label) {
+        this.label = label;
+
+        return this;
+    }
+
+    public Float getMaxErrorRateInPercent() {
+        return maxErrorRateInPercent;
+    }
+
+    public ServiceLevelAgreement setMaxErrorRateInPercent(Float maxErrorRateInPercent) {
+        this.maxErrorRateInPercent = maxErrorRateInPercent;
+
+        return this;
+    }
+
+    public Long getMaxP95ElapsedInMilliseconds() {
+        return maxP95ElapsedInMilliseconds;
+    }
+
+    public ServiceLevelAgreement setMaxP95ElapsedInMilliseconds(Long maxP95ElapsedInMilliseconds) {
+        this.maxP95ElapsedInMilliseconds = maxP95ElapsedInMilliseconds;
+
+        return this;
+    }
+
+    public Float getMinThroughputPerSecond() {
+        return minThroughputPerSecond;
+    }
+
+    public ServiceLevelAgreement setMinThroughputPerSecond(Float minThroughputPerSecond) {
+        this.minThroughputPerSecond = minThroughputPerSecond;
+
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("label %s: error rate <= %s%%, p95 <= %sms, throughput >= %s/s",
+                label == null ? "(any)" : label,
+                maxErrorRateInPercent == null ? "-" : maxErrorRateInPercent,
+                maxP95ElapsedInMilliseconds == null ? "-" : maxP95ElapsedInMilliseconds,
+                minThroughputPerSecond == null ? "-" : minThroughputPerSecond
+        );
+    }
+}
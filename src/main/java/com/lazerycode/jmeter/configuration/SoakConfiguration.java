@@ -0,0 +1,103 @@
+package com.lazerycode.jmeter.configuration;
+
+/**
+ * Used to run long (soak) tests, where a single results file would only be analysed once the test has finished and
+ * would grow too large.
+ * <p/>
+ * While JMeter runs, the results it writes are moved into time sliced segment files, each segment is analysed in the
+ * background as soon as it is closed and rolling aggregates are kept for the whole test.  Segments that are compressed
+ * or deleted are not analysed by the results goal, their totals are still used for the error rate check.  Results must
+ * be written in CSV format.
+ * <p/>
+ * Configuration in pom.xml:
+ * <p/>
+ * <pre>
+ * {@code
+ * <soakConfig>
+ *     <segmentDurationInMinutes>60</segmentDurationInMinutes>
+ *     <pollIntervalInSeconds>10</pollIntervalInSeconds>
+ *     <afterAnalysis>COMPRESS</afterAnalysis>
+ * </soakConfig>
+ * }
+ * </pre>
+ */
+@SuppressWarnings({"UnusedDeclaration", "FieldCanBeLocal"})
+public class SoakConfiguration {
+
+    private long segmentDurationInMinutes = 60;
+    private long pollIntervalInSeconds = 10;
+    private SegmentRetention afterAnalysis = SegmentRetention.KEEP;
+
+    /**
+     * @return Length of time covered by each segment
+     */
+    public long getSegmentDurationInMinutes() {
+        return segmentDurationInMinutes;
+    }
+
+    public SoakConfiguration setSegmentDurationInMinutes(long segmentDurationInMinutes) {
+        this.segmentDurationInMinutes = segmentDurationInMinutes;
+
+        return this;
+    }
+
+    /**
+     * @return How often results written by JMeter are moved into the current segment
+     */
+    public long getPollIntervalInSeconds() {
+        return pollIntervalInSeconds;
+    }
+
+    public SoakConfiguration setPollIntervalInSeconds(long pollIntervalInSeconds) {
+        this.pollIntervalInSeconds = pollIntervalInSeconds;
+
+        return this;
+    }
+
+    /**
+     * @return What happens to a segment once it has been analysed
+     */
+    public SegmentRetention getAfterAnalysis() {
+        return afterAnalysis;
+    }
+
+    public SoakConfiguration setAfterAnalysis(SegmentRetention afterAnalysis) {
+        this.afterAnalysis = afterAnalysis;
+
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Soak mode: %s minute segments, polled every %ss, segments are %s once analysed",
+                segmentDurationInMinutes,
+                pollIntervalInSeconds,
+                afterAnalysis.getDescription()
+        );
+    }
+
+    public enum SegmentRetention {
+        /**
+         * Keep segments, they are passed on to the results goal
+         */
+        KEEP("kept"),
+        /**
+         * Replace each segment with a gzip compressed copy
+         */
+        COMPRESS("compressed"),
+        /**
+         * Delete each segment, only the rolling aggregates are kept
+         */
+        DELETE("deleted");
+
+        private final String description;
+
+        SegmentRetention(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.lazerycode.jmeter.json;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.lazerycode.jmeter.properties.ConfigurationFiles;
 import com.lazerycode.jmeter.properties.PropertiesMapping;
 
@@ -18,6 +19,10 @@ public class TestConfiguration {
     private Boolean resultsOutputIsCSVFormat;
     private Boolean generateReports;
     private String[] resultFilesLocations = new String[0];
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private long removedSoakSegmentSampleCount;
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private long removedSoakSegmentFailureCount;
     private Map<ConfigurationFiles, PropertiesMapping> propertiesMap;
 
     public String getExecutionID() {
@@ -67,6 +72,22 @@ public class TestConfiguration {
         this.resultFilesLocations = resultFilesLocations.toArray(new String[0]);
     }
 
+    public long getRemovedSoakSegmentSampleCount() {
+        return removedSoakSegmentSampleCount;
+    }
+
+    public void setRemovedSoakSegmentSampleCount(long removedSoakSegmentSampleCount) {
+        this.removedSoakSegmentSampleCount = removedSoakSegmentSampleCount;
+    }
+
+    public long getRemovedSoakSegmentFailureCount() {
+        return removedSoakSegmentFailureCount;
+    }
+
+    public void setRemovedSoakSegmentFailureCount(long removedSoakSegmentFailureCount) {
+        this.removedSoakSegmentFailureCount = removedSoakSegmentFailureCount;
+    }
+
     public Boolean getGenerateReports() {
         return generateReports;
     }
@@ -92,12 +113,15 @@ public class TestConfiguration {
                 Objects.equals(jmeterDirectoryPath, that.jmeterDirectoryPath) &&
                 Objects.equals(resultsOutputIsCSVFormat, that.resultsOutputIsCSVFormat) &&
                 Arrays.equals(resultFilesLocations, that.resultFilesLocations) &&
+                removedSoakSegmentSampleCount == that.removedSoakSegmentSampleCount &&
+                removedSoakSegmentFailureCount == that.removedSoakSegmentFailureCount &&
                 Objects.equals(generateReports, that.generateReports);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(executionID, jmeterDirectoryPath, resultsOutputIsCSVFormat, generateReports);
+        int result = Objects.hash(executionID, jmeterDirectoryPath, resultsOutputIsCSVFormat, generateReports,
+                removedSoakSegmentSampleCount, removedSoakSegmentFailureCount);
         result = 31 * result + Arrays.hashCode(resultFilesLocations);
         return result;
     }
@@ -172,6 +172,13 @@ public abstract class AbstractJMeterMojo extends AbstractMojo {
     @Parameter(defaultValue = "false")
     protected boolean suppressJMeterOutput;
 
+    /**
+     * JMeter output is written in full to a file, at most this many lines per second are also logged so that a
+     * verbose test plan is never slowed down by the Maven log.
+     */
+    @Parameter(defaultValue = "100")
+    protected int jMeterOutputLinesPerSecond;
+
     /**
      * The information extracted from the Mojo being currently executed
      */
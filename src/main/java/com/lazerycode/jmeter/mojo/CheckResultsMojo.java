@@ -1,6 +1,19 @@
 package com.lazerycode.jmeter.mojo;
 
+import com.lazerycode.jmeter.configuration.LabelNormalisationRule;
+import com.lazerycode.jmeter.configuration.ServiceLevelAgreement;
 import com.lazerycode.jmeter.json.TestConfigurationWrapper;
+import com.lazerycode.jmeter.results.AssertionFailureAnalyzer;
+import com.lazerycode.jmeter.results.BandwidthAnalyzer;
+import com.lazerycode.jmeter.results.BaselineComparisonAnalyzer;
+import com.lazerycode.jmeter.results.ChartDataAnalyzer;
+import com.lazerycode.jmeter.results.CoordinatedOmissionAnalyzer;
+import com.lazerycode.jmeter.results.LabelNormaliser;
+import com.lazerycode.jmeter.results.ResultAnalyzer;
+import com.lazerycode.jmeter.results.SampleGapAnalyzer;
+import com.lazerycode.jmeter.results.SlaReportAnalyzer;
+import com.lazerycode.jmeter.results.TimingBreakdownAnalyzer;
+import com.lazerycode.jmeter.results.TransactionHierarchyAnalyzer;
 import com.lazerycode.jmeter.testrunner.ResultScanner;
 import com.lazerycode.jmeter.testrunner.TestFailureDecider;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -10,6 +23,9 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Goal that computes successes/failures from CSV or XML results files.<br/>
@@ -19,6 +35,8 @@ import java.io.File;
 @Mojo(name = "results", defaultPhase = LifecyclePhase.VERIFY)
 public class CheckResultsMojo extends AbstractJMeterMojo {
 
+    private static final int MOST_FREQUENT_ASSERTION_FAILURES_REPORTED = 3;
+
     /**
      * Sets whether build should fail if there are failed requests found in the JMeter result file.
      * Failures are for example failed requests
@@ -41,6 +59,28 @@ public class CheckResultsMojo extends AbstractJMeterMojo {
     @Parameter(defaultValue = "0")
     protected float errorRateThresholdInPercent;
 
+    /**
+     * Estimate the error rate from a random sample of blocks of the (CSV) results files instead of reading every
+     * sample, e.g. for pull request builds.  The build only fails when the error rate is above errorRateThresholdInPercent
+     * with fastCheckConfidenceInPercent confidence, when the estimate is too close to the threshold to decide the
+     * results are scanned in full.  No other analysis is run when the estimate is used, so the results are always scanned
+     * in full when an analysis that can fail the build is enabled (e.g. failBuildOnBaselineRegression).
+     */
+    @Parameter(defaultValue = "false", property = "fastCheck")
+    protected boolean fastCheck;
+
+    /**
+     * Number of blocks (of 256KB) read from the results files when fastCheck is enabled.
+     */
+    @Parameter(defaultValue = "200")
+    protected int fastCheckBlockCount;
+
+    /**
+     * Confidence required for the fastCheck estimate to decide whether the build passes or fails.
+     */
+    @Parameter(defaultValue = "99")
+    protected float fastCheckConfidenceInPercent;
+
     /**
      * Sets whether ResultScanner should search for Successful requests in the JMeter result file.
      * Defaults to false
@@ -48,6 +88,241 @@ public class CheckResultsMojo extends AbstractJMeterMojo {
     @Parameter(defaultValue = "true")
     protected boolean scanResultsForSuccessfulRequests;
 
+    /**
+     * Count failed assertions per assertion and label, and name the most frequent ones when the build fails.
+     * Requires results to be saved in XML format with jmeter.save.saveservice.assertion_results_failure_message enabled.
+     * Defaults to true
+     */
+    @Parameter(defaultValue = "true")
+    protected boolean reportAssertionFailures;
+
+    /**
+     * Split the elapsed time of each sample into connect, server (time to first byte) and download time per label.
+     * Requires the Latency and Connect values to be saved in the results file.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean reportTimingBreakdown;
+
+    /**
+     * When reporting the timing breakdown, warn about labels where at least this percentage of samples opened a new
+     * connection (this normally means that keep-alive has been disabled in the test plan).
+     */
+    @Parameter(defaultValue = "90")
+    protected float newConnectionWarningThresholdInPercent;
+
+    /**
+     * Break the elapsed time of parent samples (transaction controllers, pages with embedded resources) down by child
+     * sample.  XML results nest children in their parent, in CSV results the parent/child tree is rebuilt from the
+     * time range of the samples of each thread (enable jmeter.save.saveservice.subresults to save sub results).
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean reportTransactionHierarchy;
+
+    /**
+     * Work out the received and sent bytes per second, overall and per label.
+     * The per second figures are written to bandwidth.csv in the analysisDirectory.
+     * Requires the bytes and sentBytes values to be saved in the results file.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean reportBandwidth;
+
+    /**
+     * Capacity of the load generator network link in Mbit/s, used to check that the link was not saturated during the test.
+     * Defaults to 0 (unknown)
+     */
+    @Parameter(defaultValue = "0")
+    protected float generatorLinkCapacityInMegabits;
+
+    /**
+     * Fraction of the generatorLinkCapacityInMegabits at which the link is considered to be saturated.
+     */
+    @Parameter(defaultValue = "0.8")
+    protected float generatorLinkSaturationThreshold;
+
+    /**
+     * Number of seconds bandwidth needs to stay above the generatorLinkSaturationThreshold for the link to be considered saturated.
+     */
+    @Parameter(defaultValue = "10")
+    protected int sustainedBandwidthPeriodInSeconds;
+
+    /**
+     * Fail the build if the load generator network link was saturated, the results will not be valid.
+     */
+    @Parameter(defaultValue = "true")
+    protected boolean failBuildIfGeneratorLinkSaturated;
+
+    /**
+     * Estimate the samples that were never sent because the system under test stalled (coordinated omission) and
+     * report corrected latency percentiles next to the raw ones.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean reportCoordinatedOmission;
+
+    /**
+     * When reporting coordinated omission, warn when the estimated number of omitted samples reaches this percentage of the recorded samples.
+     */
+    @Parameter(defaultValue = "1")
+    protected float omittedSamplesWarningThresholdInPercent;
+
+    /**
+     * Detect periods in which the load generator stalled (e.g. a long GC pause of the JMeter JVM): either no sample
+     * started for longer than maxSampleGapInMilliseconds, or the number of samples started per second fell below
+     * sampleRateDropFraction of its running average.  Latencies measured around a stall are not trustworthy.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean detectSampleGaps;
+
+    /**
+     * Longest period in which no sample may start before it is reported as a stall, 0 to only detect rate drops.
+     */
+    @Parameter(defaultValue = "2000")
+    protected long maxSampleGapInMilliseconds;
+
+    /**
+     * Fraction of the running average sample start rate below which a second is reported as a stall, 0 to only
+     * detect gaps.
+     */
+    @Parameter(defaultValue = "0.1")
+    protected float sampleRateDropFraction;
+
+    /**
+     * Fail the build (invalid load generation) if the load generator stalled, otherwise only log a warning.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean failBuildIfLoadGenerationStalled;
+
+    /**
+     * Compare the latency distribution of each label with a baseline saved by an earlier run, a regression is only
+     * reported when it is statistically significant (one sided Mann-Whitney U test) and at least
+     * baselineMinimumEffectSize.
+     * The baseline of the current run is saved to baseline.json in the analysisDirectory, copy it to baselineFile to
+     * use it as the baseline of later runs.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean compareWithBaseline;
+
+    /**
+     * Baseline to compare with, as saved to baseline.json in the analysisDirectory by an earlier run.
+     */
+    @Parameter(defaultValue = "${basedir}/src/test/jmeter/baseline.json")
+    protected File baselineFile;
+
+    /**
+     * Maximum number of latencies kept per label (a uniform random sample of all latencies) to compare with the baseline.
+     */
+    @Parameter(defaultValue = "10000")
+    protected int baselineReservoirSize;
+
+    /**
+     * Confidence required before a difference with the baseline is reported as a regression.
+     */
+    @Parameter(defaultValue = "99")
+    protected float baselineConfidenceInPercent;
+
+    /**
+     * Minimum effect size before a significant difference with the baseline is reported as a regression: the
+     * probability that a request of this run is slower than a request of the baseline (0.5 means no difference).
+     * With the sample sizes of a load test a slowdown far too small to matter is still significant, 0.56 is a small,
+     * 0.64 a medium and 0.71 a large effect.
+     */
+    @Parameter(defaultValue = "0.56")
+    protected float baselineMinimumEffectSize;
+
+    /**
+     * Fail the build if a label is significantly slower than the baseline, otherwise only log a warning.
+     */
+    @Parameter(defaultValue = "true")
+    protected boolean failBuildOnBaselineRegression;
+
+    /**
+     * Write a latency and throughput series per label, downsampled to a fixed number of points, to chart-data.csv in
+     * the analysisDirectory.  This makes it cheap to chart (or store the trend of) runs of any length.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean generateChartData;
+
+    /**
+     * Maximum number of points in each chart data series.
+     */
+    @Parameter(defaultValue = "1000")
+    protected int chartDataPointsPerSeries;
+
+    /**
+     * How chart data is downsampled, valid values are:
+     * <ul>
+     * <li>LTTB: Largest-Triangle-Three-Buckets, keeps the visual shape of the average latency</li>
+     * <li>MIN_MAX: each point covers a whole period, with its minimum and maximum latency</li>
+     * </ul>
+     */
+    @Parameter(defaultValue = "LTTB")
+    protected ChartDataAnalyzer.Downsampling chartDataDownsampling;
+
+    /**
+     * Merge the results files into a single stream ordered by time stamp before scanning them, so that time based
+     * analysis (e.g. bandwidth per second) covers every load generator at once.
+     * The merged samples are written to merged-results.csv in the analysisDirectory, with every column when all the
+     * files are in CSV format with the same columns.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean mergeResultFiles;
+
+    /**
+     * Number of samples read ahead in each results file when merging them, samples that are further out of time order
+     * than this in a single file will be out of order in the merged results.
+     */
+    @Parameter(defaultValue = "1000")
+    protected int mergeReorderBufferSize;
+
+    /**
+     * Index CSV results files while they are scanned, so that the query goal can find samples in a time range without
+     * reading the whole file.  The index is saved next to each results file with an .idx extension.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean indexResultFiles;
+
+    /**
+     * Number of samples in each block of the results file index, smaller blocks make queries read less of the
+     * results file at the cost of a bigger index.
+     */
+    @Parameter(defaultValue = "1000")
+    protected int indexSamplesPerBlock;
+
+    /**
+     * Rules used to group labels that only differ by ids, UUIDs, query strings, etc. before results are analysed,
+     * see {@link LabelNormalisationRule}.  Normalised labels are used by every per label report (assertion failures,
+     * timing breakdown, transaction hierarchy, bandwidth, coordinated omission, chart data, baseline comparison and
+     * the JUnit SLA report), so SLA thresholds and baselines are matched on the normalised labels.  The results files
+     * (and the merged results file) are not changed.
+     */
+    @Parameter
+    protected List<LabelNormalisationRule> labelNormalisationRules = new ArrayList<>();
+
+    /**
+     * Write a JUnit XML report with a test case per label and service level agreement threshold to
+     * TEST-jmeter-sla.xml in the analysisDirectory, so CI servers can show the outcome of the performance test.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean generateJUnitReport;
+
+    /**
+     * Thresholds checked for the JUnit XML report, see {@link ServiceLevelAgreement}.  When none are configured the
+     * error rate of every label is checked against errorRateThresholdInPercent.
+     */
+    @Parameter
+    protected List<ServiceLevelAgreement> serviceLevelAgreements = new ArrayList<>();
+
+    /**
+     * Fail the build if a service level agreement in the JUnit XML report is breached, otherwise only log a warning.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean failBuildOnServiceLevelAgreementBreach;
+
+    /**
+     * Set the directory that the output of result analysis is saved to.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/jmeter/analysis")
+    protected File analysisDirectory;
+
     /**
      * Scan JMeter result files for successful, and failed requests/
      *
@@ -72,14 +347,84 @@ public class CheckResultsMojo extends AbstractJMeterMojo {
             getLog().info(" ");
             TestConfigurationWrapper testConfig = new TestConfigurationWrapper(new File(testConfigFile), selectedConfiguration);
             String resultFormat = testConfig.getCurrentTestConfiguration().getResultsOutputIsCSVFormat() ? "CSV" : "JTL";
-            getLog().info(String.format("Will scan results using format: %s", resultFormat));
+            getLog().info(String.format("Will scan results using format: %s (unless a different format is detected in a results file)", resultFormat));
             ResultScanner resultScanner = new ResultScanner(
                     scanResultsForSuccessfulRequests,
                     scanResultsForFailedRequests,
                     testConfig.getCurrentTestConfiguration().getResultsOutputIsCSVFormat()
             );
+            if (!labelNormalisationRules.isEmpty()) {
+                resultScanner.setLabelNormaliser(createLabelNormaliser());
+            }
+            if (indexResultFiles) {
+                resultScanner.setIndexSamplesPerBlock(indexSamplesPerBlock);
+            }
+            AssertionFailureAnalyzer assertionFailureAnalyzer = null;
+            if (reportAssertionFailures) {
+                assertionFailureAnalyzer = new AssertionFailureAnalyzer();
+                resultScanner.addAnalyzer(assertionFailureAnalyzer);
+            }
+            if (reportTimingBreakdown) {
+                resultScanner.addAnalyzer(new TimingBreakdownAnalyzer(newConnectionWarningThresholdInPercent));
+            }
+            if (reportTransactionHierarchy) {
+                resultScanner.addAnalyzer(new TransactionHierarchyAnalyzer());
+            }
+            if (reportBandwidth) {
+                resultScanner.addAnalyzer(new BandwidthAnalyzer(
+                        generatorLinkCapacityInMegabits,
+                        generatorLinkSaturationThreshold,
+                        sustainedBandwidthPeriodInSeconds,
+                        failBuildIfGeneratorLinkSaturated,
+                        new File(analysisDirectory, "bandwidth.csv")
+                ));
+            }
+            if (reportCoordinatedOmission) {
+                resultScanner.addAnalyzer(new CoordinatedOmissionAnalyzer(omittedSamplesWarningThresholdInPercent));
+            }
+            if (detectSampleGaps) {
+                resultScanner.addAnalyzer(new SampleGapAnalyzer(maxSampleGapInMilliseconds, sampleRateDropFraction, failBuildIfLoadGenerationStalled));
+            }
+            if (generateChartData) {
+                resultScanner.addAnalyzer(new ChartDataAnalyzer(chartDataPointsPerSeries, chartDataDownsampling, new File(analysisDirectory, "chart-data.csv")));
+            }
+            if (compareWithBaseline) {
+                resultScanner.addAnalyzer(new BaselineComparisonAnalyzer(
+                        baselineFile,
+                        new File(analysisDirectory, "baseline.json"),
+                        baselineReservoirSize,
+                        baselineConfidenceInPercent,
+                        baselineMinimumEffectSize,
+                        failBuildOnBaselineRegression
+                ));
+            }
+            if (generateJUnitReport) {
+                resultScanner.addAnalyzer(createSlaReportAnalyzer());
+            }
+            List<File> resultFiles = new ArrayList<>();
             for (String resultFileLocation : testConfig.getCurrentTestConfiguration().getResultFilesLocations()) {
-                resultScanner.parseResultFile(new File(resultFileLocation));
+                resultFiles.add(new File(resultFileLocation));
+            }
+            long removedSoakSegmentSampleCount = testConfig.getCurrentTestConfiguration().getRemovedSoakSegmentSampleCount();
+            if (fastCheck && removedSoakSegmentSampleCount > 0) {
+                getLog().info("Fast check: disabled, the totals of removed soak test segments can only be added to a full scan");
+            }
+            boolean estimated = fastCheck && removedSoakSegmentSampleCount == 0 && resultScanner.parseResultFilesApproximately(resultFiles, fastCheckBlockCount, fastCheckConfidenceInPercent, errorRateThresholdInPercent) != null;
+            if (estimated) {
+                getLog().info("Fast check: the error rate has been estimated from a sample of the results, no other analysis has been run");
+            } else if (mergeResultFiles) {
+                resultScanner.parseMergedResultFiles(resultFiles, mergeReorderBufferSize, new File(analysisDirectory, "merged-results.csv"));
+            } else {
+                for (File resultFile : resultFiles) {
+                    resultScanner.parseResultFile(resultFile);
+                }
+            }
+            if (removedSoakSegmentSampleCount > 0) {
+                getLog().info(String.format("Soak test segments no longer available: %s samples counted while running", removedSoakSegmentSampleCount));
+                resultScanner.addCountedSamples(removedSoakSegmentSampleCount, testConfig.getCurrentTestConfiguration().getRemovedSoakSegmentFailureCount());
+            }
+            if (!estimated) {
+                resultScanner.scanCompleted();
             }
             getLog().info(" ");
             getLog().info(LINE_SEPARATOR);
@@ -93,12 +438,29 @@ public class CheckResultsMojo extends AbstractJMeterMojo {
             decider.runChecks();
             getLog().info(String.format("Failures:                    %s%% (%s%% accepted)", decider.getErrorPercentage(), decider.getErrorPercentageThreshold()));
             getLog().info(" ");
+            if (!estimated) {
+                logAnalysis(resultScanner);
+            }
             if (decider.failBuild()) {
-                throw new MojoFailureException(String.format(
+                String failureMessage = String.format(
                         "Failing build because error percentage %s is above accepted threshold %s. JMeter logs are available at: '%s'",
                         logsDirectory.getAbsolutePath(),
                         decider.getErrorPercentage(),
                         decider.getErrorPercentageThreshold()
+                );
+                if (assertionFailureAnalyzer != null && assertionFailureAnalyzer.getFailureCount() > 0) {
+                    failureMessage += ". " + String.join(", ", assertionFailureAnalyzer.describeMostFrequentFailures(MOST_FREQUENT_ASSERTION_FAILURES_REPORTED));
+                }
+                throw new MojoFailureException(failureMessage);
+            }
+            List<String> analysisFailures = new ArrayList<>();
+            for (ResultAnalyzer analyzer : resultScanner.getAnalyzers()) {
+                analysisFailures.addAll(analyzer.getFailures());
+            }
+            if (!analysisFailures.isEmpty()) {
+                throw new MojoFailureException(String.format(
+                        "Failing build because the results are not valid: %s",
+                        String.join(", ", analysisFailures)
                 ));
             }
         } else {
@@ -107,4 +469,58 @@ public class CheckResultsMojo extends AbstractJMeterMojo {
             getLog().info(" ");
         }
     }
+
+    private LabelNormaliser createLabelNormaliser() throws MojoExecutionException {
+        LabelNormaliser labelNormaliser = new LabelNormaliser();
+        for (LabelNormalisationRule rule : labelNormalisationRules) {
+            if (rule.getTemplate() != null) {
+                labelNormaliser.addPathTemplate(rule.getTemplate());
+            } else if (rule.getPattern() != null) {
+                try {
+                    labelNormaliser.addPattern(rule.getPattern(), rule.getReplacement());
+                } catch (PatternSyntaxException ex) {
+                    throw new MojoExecutionException(String.format("Invalid label normalisation rule (%s): %s", rule, ex.getMessage()), ex);
+                }
+            } else {
+                throw new MojoExecutionException("A label normalisation rule needs either a template or a pattern");
+            }
+            getLog().debug(String.format("Label normalisation rule: %s", rule));
+        }
+
+        return labelNormaliser;
+    }
+
+    private SlaReportAnalyzer createSlaReportAnalyzer() throws MojoExecutionException {
+        List<ServiceLevelAgreement> agreements = serviceLevelAgreements;
+        if (agreements.isEmpty()) {
+            agreements = new ArrayList<>();
+            agreements.add(new ServiceLevelAgreement().setMaxErrorRateInPercent(errorRateThresholdInPercent));
+        }
+        for (ServiceLevelAgreement agreement : agreements) {
+            getLog().debug(String.format("Service level agreement: %s", agreement));
+        }
+        try {
+            return new SlaReportAnalyzer(agreements, new File(analysisDirectory, "TEST-jmeter-sla.xml"), failBuildOnServiceLevelAgreementBreach);
+        } catch (PatternSyntaxException ex) {
+            throw new MojoExecutionException("Invalid service level agreement label: " + ex.getMessage(), ex);
+        }
+    }
+
+    private void logAnalysis(ResultScanner resultScanner) {
+        for (ResultAnalyzer analyzer : resultScanner.getAnalyzers()) {
+            if (analyzer.getSummary().isEmpty() && analyzer.getWarnings().isEmpty() && analyzer.getFailures().isEmpty()) {
+                continue;
+            }
+            for (String line : analyzer.getSummary()) {
+                getLog().info(line);
+            }
+            for (String warning : analyzer.getWarnings()) {
+                getLog().warn(warning);
+            }
+            for (String failure : analyzer.getFailures()) {
+                getLog().error(failure);
+            }
+            getLog().info(" ");
+        }
+    }
 }
@@ -0,0 +1,188 @@
+package com.lazerycode.jmeter.mojo;
+
+import com.lazerycode.jmeter.json.TestConfigurationWrapper;
+import com.lazerycode.jmeter.results.CsvSampleReader;
+import com.lazerycode.jmeter.results.CsvSampleWriter;
+import com.lazerycode.jmeter.results.ResultFileFormat;
+import com.lazerycode.jmeter.results.ResultFileQuery;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Goal that extracts the samples that match a time range, label and outcome from CSV results files.<br/>
+ * Each results file is indexed (see the indexResultFiles option of the results goal) so that only the parts of the
+ * file that may contain matching samples are read, e.g:
+ * <pre>
+ * mvn jmeter:query -Dfrom=2020-06-01T14:02:00 -Dto=2020-06-01T14:05:00 -Dlabel=login -Dsuccess=false
+ * </pre>
+ */
+@Mojo(name = "query")
+public class QueryResultsMojo extends AbstractJMeterMojo {
+
+    /**
+     * Results files to query, defaults to the results files of the last test run.
+     */
+    @Parameter(property = "resultFiles")
+    protected List<File> queryResultFiles = new ArrayList<>();
+
+    /**
+     * Earliest sample start time to match (inclusive), as milliseconds since the epoch, an ISO-8601 instant
+     * (2020-06-01T14:02:00Z) or an ISO-8601 local date time (2020-06-01T14:02:00) in the local time zone.
+     */
+    @Parameter(property = "from")
+    protected String queryFrom;
+
+    /**
+     * Latest sample start time to match (inclusive), in the same formats as queryFrom.
+     */
+    @Parameter(property = "to")
+    protected String queryTo;
+
+    /**
+     * Regular expression that has to match the whole label of a sample.
+     */
+    @Parameter(property = "label")
+    protected String queryLabel;
+
+    /**
+     * Set to true to only match successful samples, or false to only match failed samples.
+     */
+    @Parameter(property = "success")
+    protected Boolean querySuccess;
+
+    /**
+     * Number of samples in each block of the index, when a results file has to be indexed.
+     */
+    @Parameter(defaultValue = "1000")
+    protected int indexSamplesPerBlock;
+
+    /**
+     * CSV file the matching samples are written to.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/jmeter/analysis/query-results.csv", property = "queryOutputFile")
+    protected File queryOutputFile;
+
+    @Override
+    public void doExecute() throws MojoExecutionException {
+        getLog().info(" ");
+        getLog().info(LINE_SEPARATOR);
+        getLog().info("Q U E R Y I N G    R E S U L T S");
+        getLog().info(LINE_SEPARATOR);
+        getLog().info(" ");
+        ResultFileQuery query = new ResultFileQuery()
+                .setSuccess(querySuccess)
+                .setSamplesPerBlock(indexSamplesPerBlock);
+        if (queryFrom != null) {
+            query.setFrom(parseTime(queryFrom));
+        }
+        if (queryTo != null) {
+            query.setTo(parseTime(queryTo));
+        }
+        if (queryLabel != null) {
+            try {
+                query.setLabelPattern(Pattern.compile(queryLabel));
+            } catch (PatternSyntaxException ex) {
+                throw new MojoExecutionException("Invalid label pattern: " + ex.getMessage(), ex);
+            }
+        }
+        long startTime = System.currentTimeMillis();
+        long matchCount = 0;
+        CsvSampleWriter writer = null;
+        try {
+            File firstResultFile = null;
+            String header = null;
+            for (File resultFile : resultFilesToQuery()) {
+                if (!resultFile.exists()) {
+                    throw new MojoExecutionException("Unable to find " + resultFile.getAbsolutePath());
+                }
+                if (ResultFileFormat.detect(resultFile, ResultFileFormat.XML) != ResultFileFormat.CSV) {
+                    getLog().warn(String.format("Skipping '%s', only results files in CSV format can be queried", resultFile));
+                    continue;
+                }
+                String fileHeader = CsvSampleReader.readHeader(resultFile);
+                if (writer == null) {
+                    firstResultFile = resultFile;
+                    header = fileHeader;
+                    writer = new CsvSampleWriter(queryOutputFile, header);
+                } else if (!header.equals(fileHeader)) {
+                    throw new MojoExecutionException(String.format(
+                            "'%s' does not have the columns of '%s', results files with different columns have to be queried separately",
+                            resultFile, firstResultFile));
+                }
+                long fileMatchCount = query.run(resultFile, writer);
+                getLog().info(String.format("Matching samples in '%s': %s", resultFile.getName(), fileMatchCount));
+                matchCount += fileMatchCount;
+            }
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Unable to query results: " + ex.getMessage(), ex);
+        } finally {
+            closeQuietly(writer);
+        }
+        getLog().info(" ");
+        getLog().info(String.format("Matching samples:            %s", matchCount));
+        getLog().info(String.format("Index blocks read:           %s", query.getBlocksRead()));
+        getLog().info(String.format("Query time:                  %sms", System.currentTimeMillis() - startTime));
+        getLog().info(String.format("Matching samples written to: %s", queryOutputFile.getAbsolutePath()));
+        getLog().info(" ");
+    }
+
+    private void closeQuietly(CsvSampleWriter writer) throws MojoExecutionException {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                throw new MojoExecutionException("Unable to write " + queryOutputFile.getAbsolutePath() + ": " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private List<File> resultFilesToQuery() throws MojoExecutionException {
+        if (!queryResultFiles.isEmpty()) {
+            return queryResultFiles;
+        }
+        TestConfigurationWrapper testConfig = new TestConfigurationWrapper(new File(testConfigFile), selectedConfiguration);
+        List<File> resultFiles = new ArrayList<>();
+        for (String resultFileLocation : testConfig.getCurrentTestConfiguration().getResultFilesLocations()) {
+            resultFiles.add(new File(resultFileLocation));
+        }
+
+        return resultFiles;
+    }
+
+    /**
+     * @param time Milliseconds since the epoch, an ISO-8601 instant or offset date time, or an ISO-8601 local date time in the local time zone
+     * @return Milliseconds since the epoch
+     * @throws MojoExecutionException If the time cannot be parsed
+     */
+    static long parseTime(String time) throws MojoExecutionException {
+        String value = time.trim();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ignored) {
+            // Not milliseconds since the epoch
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeException ignored) {
+            // No offset
+        }
+        try {
+            return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeException ex) {
+            throw new MojoExecutionException(String.format("Unable to parse '%s', use milliseconds since the epoch or an ISO-8601 date time such as %s", time, Instant.ofEpochMilli(0)), ex);
+        }
+    }
+}
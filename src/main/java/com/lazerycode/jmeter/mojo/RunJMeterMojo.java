@@ -1,10 +1,12 @@
 package com.lazerycode.jmeter.mojo;
 
+import com.lazerycode.jmeter.configuration.SoakConfiguration;
 import com.lazerycode.jmeter.json.TestConfigurationWrapper;
 import com.lazerycode.jmeter.testrunner.TestManager;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 
 import java.io.File;
 
@@ -15,6 +17,91 @@ import java.io.File;
 @Mojo(name = "jmeter", defaultPhase = LifecyclePhase.INTEGRATION_TEST)
 public class RunJMeterMojo extends AbstractJMeterMojo {
 
+    /**
+     * Run tests in soak mode, results are moved into time sliced segments that are analysed while the test runs.
+     * Soak mode requires results to be written in CSV format.
+     */
+    @Parameter
+    protected SoakConfiguration soakConfig;
+
+    /**
+     * Run up to this many tests at the same time, each in its own JMeter process with its own results file, log file
+     * and report directory.  Tests that use remote servers are always run one at a time.
+     */
+    @Parameter(defaultValue = "1")
+    protected int parallelTestCount;
+
+    /**
+     * Stop a test that is still running after this many minutes and fail the build, a thread dump and a class
+     * histogram of the JMeter JVM are written next to the results file first.  0 for no limit.
+     */
+    @Parameter(defaultValue = "0")
+    protected long testTimeoutInMinutes;
+
+    /**
+     * Stop the running test(s) once all tests together have run for this many minutes and fail the build, see
+     * testTimeoutInMinutes.  0 for no limit.
+     */
+    @Parameter(defaultValue = "0")
+    protected long suiteTimeoutInMinutes;
+
+    /**
+     * Time a timed out test is given to stop before the JMeter JVM is killed.
+     */
+    @Parameter(defaultValue = "30")
+    protected long timeoutGracePeriodInSeconds;
+
+    /**
+     * Run the tests one after another in a long lived JMeter JVM, rather than starting a JVM for every test.  Each test
+     * is loaded by its own class loader, so tests do not share any JMeter state.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean useWorkerJVM;
+
+    /**
+     * Number of tests run by a worker JVM before it is replaced by a new one.
+     */
+    @Parameter(defaultValue = "50")
+    protected int testsPerWorkerJVM;
+
+    /**
+     * Record each forked JMeter JVM with Java Flight Recorder (Java 11 or later) to logsDirectory/&lt;test&gt;.jfr, and log
+     * a summary of the recording after the test: GC pauses, CPU usage, hot and allocating methods and monitor contention.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean flightRecording;
+
+    /**
+     * Java Flight Recorder settings used with flightRecording: default, profile or the path of a .jfc file.
+     */
+    @Parameter(defaultValue = "profile")
+    protected String flightRecordingSettings;
+
+    /**
+     * Interval at which the CPU, memory, threads, open files and context switches of the JMeter JVM are sampled from
+     * /proc while a test runs (Linux only).  The samples are written to &lt;results file&gt;-resources.csv and tests in
+     * which JMeter used all processors or nearly all of its heap are flagged.  0 to not sample.
+     */
+    @Parameter(defaultValue = "1")
+    protected long resourceSamplingIntervalInSeconds;
+
+    /**
+     * Run each test as this many JMeter processes started at the same time, to generate more load than one JMeter JVM
+     * can.  Literal thread counts are divided between the shards and CSV data files are split into a block of rows
+     * per shard, plans can also use the shard.index and shard.count properties.  Each shard writes its own results
+     * file, the results of all shards are checked together (set mergeResultFiles to analyse them as one timeline).
+     */
+    @Parameter(defaultValue = "1")
+    protected int shardsPerTest;
+
+    /**
+     * File in which the duration and resource use of each test are kept from one run to the next.  Tests run in
+     * parallel are started longest first, so that the tests take little longer than the longest one.  Set it to a
+     * file outside the build directory to keep the history across clean builds.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/jmeter/test-run-history.json")
+    protected File testRunHistoryFile;
+
     /**
      * Run all the JMeter tests.
      *
@@ -36,6 +123,9 @@ public class RunJMeterMojo extends AbstractJMeterMojo {
         }
 
         testConfig = new TestConfigurationWrapper(new File(testConfigFile), selectedConfiguration);
+        if (soakConfig != null && !testConfig.getCurrentTestConfiguration().getResultsOutputIsCSVFormat()) {
+            throw new MojoExecutionException("Soak mode requires results to be written in CSV format, set <resultsFileFormat>csv</resultsFileFormat>");
+        }
         remoteConfig.setPropertiesMap(testConfig.getCurrentTestConfiguration().getPropertiesMap());
         jMeterProcessJVMSettings.setHeadlessDefaultIfRequired();
         copyFilesInTestDirectory(testFilesDirectory, testFilesBuildDirectory);
@@ -52,12 +142,25 @@ public class RunJMeterMojo extends AbstractJMeterMojo {
                 .setReportDirectory(reportDirectory)
                 .setGenerateReports(generateReports)
                 .setPostTestPauseInSeconds(postTestPauseInSeconds)
-                .setIgnoreJVMKilled(doNotFailBuildIfJVMIsKilled);
+                .setIgnoreJVMKilled(doNotFailBuildIfJVMIsKilled)
+                .setSoakConfiguration(soakConfig)
+                .setParallelTestCount(parallelTestCount)
+                .setTestTimeoutInMinutes(testTimeoutInMinutes)
+                .setSuiteTimeoutInMinutes(suiteTimeoutInMinutes)
+                .setTimeoutGracePeriodInSeconds(timeoutGracePeriodInSeconds)
+                .setJMeterOutputLinesPerSecond(jMeterOutputLinesPerSecond)
+                .setUseWorkerJVM(useWorkerJVM, testsPerWorkerJVM)
+                .setFlightRecording(flightRecording, flightRecordingSettings)
+                .setResourceSamplingIntervalInSeconds(resourceSamplingIntervalInSeconds)
+                .setShardsPerTest(shardsPerTest)
+                .setTestRunHistoryFile(testRunHistoryFile);
         if (proxyConfig != null) {
             getLog().info(this.proxyConfig.toString());
         }
 
         testConfig.getCurrentTestConfiguration().setResultFilesLocations(jMeterTestManager.executeTests());
+        testConfig.getCurrentTestConfiguration().setRemovedSoakSegmentSampleCount(jMeterTestManager.getRemovedSoakSegmentSampleCount());
+        testConfig.getCurrentTestConfiguration().setRemovedSoakSegmentFailureCount(jMeterTestManager.getRemovedSoakSegmentFailureCount());
         testConfig.writeResultFilesConfigTo(testConfigFile);
     }
 }
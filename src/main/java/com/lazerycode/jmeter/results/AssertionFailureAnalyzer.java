@@ -0,0 +1,178 @@
+package com.lazerycode.jmeter.results;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Counts the failed assertions of each label, so that a failing build says which assertion failed where rather than
+ * only how many samples failed.
+ * <p/>
+ * Assertion results are only saved in XML results.  At most {@link #MAX_TRACKED_FAILURES} assertion and label pairs
+ * are tracked, with the first failure message seen for each, failures of any other pair are only counted.
+ */
+public class AssertionFailureAnalyzer implements ResultAnalyzer {
+
+    static final int MAX_TRACKED_FAILURES = 1000;
+    static final int REPORTED_FAILURES = 10;
+    private static final int MAX_MESSAGE_LENGTH = 200;
+    private final Map<FailureKey, AssertionFailure> failures = new HashMap<>();
+    private long assertionCount;
+    private long failureCount;
+    private long untrackedFailureCount;
+
+    @Override
+    public void sampleOccurred(Sample sample) {
+        for (AssertionResult assertionResult : sample.getAssertionResults()) {
+            assertionCount++;
+            if (assertionResult.isFailure() || assertionResult.isError()) {
+                failureCount++;
+                failureOccurred(sample.getLabel(), assertionResult);
+            }
+        }
+        for (Sample subResult : sample.getSubResults()) {
+            sampleOccurred(subResult);
+        }
+    }
+
+    private void failureOccurred(String label, AssertionResult assertionResult) {
+        FailureKey key = new FailureKey(assertionResult.getName(), label);
+        AssertionFailure failure = failures.get(key);
+        if (failure == null) {
+            if (failures.size() >= MAX_TRACKED_FAILURES) {
+                untrackedFailureCount++;
+                return;
+            }
+            failure = new AssertionFailure(key.assertionName, key.label, truncate(assertionResult.getFailureMessage()));
+            failures.put(key, failure);
+        }
+        failure.count++;
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return "";
+        }
+        String singleLine = message.replaceAll("\\s+", " ").trim();
+
+        return singleLine.length() > MAX_MESSAGE_LENGTH ? singleLine.substring(0, MAX_MESSAGE_LENGTH) + "..." : singleLine;
+    }
+
+    /**
+     * @param limit Maximum number of assertion failures returned
+     * @return Failed assertions, most frequent first
+     */
+    public List<AssertionFailure> getMostFrequentFailures(int limit) {
+        List<AssertionFailure> sorted = new ArrayList<>(failures.values());
+        sorted.sort(Comparator.comparingLong(AssertionFailure::getCount).reversed()
+                .thenComparing(AssertionFailure::getLabel)
+                .thenComparing(AssertionFailure::getAssertionName));
+
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    @Override
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        if (assertionCount == 0) {
+            // Nothing to report, e.g. results saved in CSV format
+            return summary;
+        }
+        summary.add(String.format("Assertions checked: %s, failed: %s", assertionCount, failureCount));
+        if (failureCount == 0) {
+            return summary;
+        }
+        summary.add(String.format("%-30s %-40s %10s %s", "Assertion", "Label", "Failures", "First failure message"));
+        for (AssertionFailure failure : getMostFrequentFailures(REPORTED_FAILURES)) {
+            summary.add(String.format("%-30s %-40s %10d %s", failure.getAssertionName(), failure.getLabel(), failure.getCount(), failure.getFirstMessage()));
+        }
+        if (failures.size() > REPORTED_FAILURES) {
+            summary.add(String.format("... and %s other assertion/label pairs", failures.size() - REPORTED_FAILURES));
+        }
+        if (untrackedFailureCount > 0) {
+            summary.add(String.format("%s failures of more than %s assertion/label pairs were counted but not tracked", untrackedFailureCount, MAX_TRACKED_FAILURES));
+        }
+
+        return summary;
+    }
+
+    /**
+     * @param limit Maximum number of assertion failures described
+     * @return The most frequent assertion failures, e.g. "Assertion 'order id present' failed 41,203 times on /checkout"
+     */
+    public List<String> describeMostFrequentFailures(int limit) {
+        List<String> descriptions = new ArrayList<>();
+        for (AssertionFailure failure : getMostFrequentFailures(limit)) {
+            descriptions.add(String.format(Locale.ROOT, "Assertion '%s' failed %,d times on %s", failure.getAssertionName(), failure.getCount(), failure.getLabel()));
+        }
+
+        return descriptions;
+    }
+
+    private static class FailureKey {
+        private final String assertionName;
+        private final String label;
+
+        FailureKey(String assertionName, String label) {
+            this.assertionName = assertionName == null ? "" : assertionName;
+            this.label = label == null ? "" : label;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof FailureKey)) {
+                return false;
+            }
+            FailureKey that = (FailureKey) other;
+
+            return assertionName.equals(that.assertionName) && label.equals(that.label);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * assertionName.hashCode() + label.hashCode();
+        }
+    }
+
+    /**
+     * The failures of a single assertion on a single label.
+     */
+    public static class AssertionFailure {
+        private final String assertionName;
+        private final String label;
+        private final String firstMessage;
+        private long count;
+
+        AssertionFailure(String assertionName, String label, String firstMessage) {
+            this.assertionName = assertionName;
+            this.label = label;
+            this.firstMessage = firstMessage;
+        }
+
+        public String getAssertionName() {
+            return assertionName;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getFirstMessage() {
+            return firstMessage;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
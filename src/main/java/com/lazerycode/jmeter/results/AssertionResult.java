@@ -0,0 +1,59 @@
+package com.lazerycode.jmeter.results;
+
+/**
+ * The outcome of a single assertion applied to a sample, only available when reading XML results with
+ * jmeter.save.saveservice.assertion_results_failure_message enabled.
+ */
+public class AssertionResult {
+
+    private String name;
+    private boolean failure;
+    private boolean error;
+    private String failureMessage;
+
+    /**
+     * @return The name of the assertion in the test plan
+     */
+    public String getName() {
+        return name;
+    }
+
+    public AssertionResult setName(String name) {
+        this.name = name;
+
+        return this;
+    }
+
+    public boolean isFailure() {
+        return failure;
+    }
+
+    public AssertionResult setFailure(boolean failure) {
+        this.failure = failure;
+
+        return this;
+    }
+
+    /**
+     * @return true if the assertion could not be evaluated
+     */
+    public boolean isError() {
+        return error;
+    }
+
+    public AssertionResult setError(boolean error) {
+        this.error = error;
+
+        return this;
+    }
+
+    public String getFailureMessage() {
+        return failureMessage;
+    }
+
+    public AssertionResult setFailureMessage(String failureMessage) {
+        this.failureMessage = failureMessage;
+
+        return this;
+    }
+}
@@ -0,0 +1,335 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Works out the received (bytes) and sent (sentBytes) bandwidth per second, both overall and per label.
+ * <p/>
+ * When the capacity of the load generator network link is known, the overall bandwidth is averaged over a sustained
+ * period and compared against it.  If the link was saturated the results measure the load generator network, not the
+ * system under test, so they are reported as invalid.
+ * <p/>
+ * Tests that run at the same time share the link, so results files that overlap in time have to be merged (see
+ * mergeResultFiles) for the per second figures to add up: scanned one after the other, the samples of a file that
+ * starts before the end of the previous one arrive too late for their second and are only counted in the totals.
+ */
+public class BandwidthAnalyzer implements ResultAnalyzer {
+
+    static final String TOTAL_LABEL = "TOTAL";
+    private static final long ONE_SECOND = 1000;
+    private static final long REORDER_WINDOW_IN_MILLISECONDS = 60 * ONE_SECOND;
+    private static final double BYTES_PER_MEGABIT = 1000 * 1000 / 8d;
+    private static final int RECEIVED = 0;
+    private static final int SENT = 1;
+    private final BandwidthSeries total;
+    private final Map<String, BandwidthSeries> seriesByLabel = new TreeMap<>();
+    private final double linkCapacityInBytesPerSecond;
+    private final double saturationThreshold;
+    private final int sustainedPeriodInSeconds;
+    private final boolean failWhenSaturated;
+    private final Deque<long[]> sustainedPeriod = new ArrayDeque<>();
+    private final long[] sustainedPeriodTotals = new long[2];
+    private final double[] peakSustainedBytesPerSecond = new double[2];
+    private final File seriesFile;
+    private Writer seriesWriter;
+    private long saturatedSeconds;
+    private long firstSaturatedSecond = Sample.NOT_RECORDED;
+
+    /**
+     * @param linkCapacityInMegabits   Capacity of the load generator network link in Mbit/s, 0 if unknown
+     * @param saturationThreshold      Fraction of the link capacity at which the link is considered to be saturated
+     * @param sustainedPeriodInSeconds Period over which the bandwidth has to stay above the saturation threshold
+     * @param failWhenSaturated        Report the results as invalid if the link was saturated
+     * @param seriesFile               CSV file the per second bandwidth is written to, null to disable
+     */
+    public BandwidthAnalyzer(float linkCapacityInMegabits, float saturationThreshold, int sustainedPeriodInSeconds, boolean failWhenSaturated, File seriesFile) {
+        this.linkCapacityInBytesPerSecond = linkCapacityInMegabits * BYTES_PER_MEGABIT;
+        this.saturationThreshold = saturationThreshold;
+        this.sustainedPeriodInSeconds = Math.max(1, sustainedPeriodInSeconds);
+        this.failWhenSaturated = failWhenSaturated;
+        this.seriesFile = seriesFile;
+        this.total = new BandwidthSeries(TOTAL_LABEL, true);
+    }
+
+    @Override
+    public void sampleOccurred(Sample sample) {
+        if (sample.getTimeStamp() == Sample.NOT_RECORDED || (sample.getBytes() == Sample.NOT_RECORDED && sample.getSentBytes() == Sample.NOT_RECORDED)) {
+            return;
+        }
+        long endTime = sample.getTimeStamp() + Math.max(0, sample.getElapsed());
+        long received = Math.max(0, sample.getBytes());
+        long sent = Math.max(0, sample.getSentBytes());
+        total.add(endTime, received, sent);
+        seriesByLabel.computeIfAbsent(sample.getLabel(), label -> new BandwidthSeries(label, false)).add(endTime, received, sent);
+    }
+
+    @Override
+    public void scanCompleted() throws IOException {
+        try {
+            total.flush();
+            for (BandwidthSeries series : seriesByLabel.values()) {
+                series.flush();
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            if (seriesWriter != null) {
+                seriesWriter.close();
+            }
+        }
+    }
+
+    public BandwidthSeries getTotal() {
+        return total;
+    }
+
+    public BandwidthSeries getSeries(String label) {
+        return seriesByLabel.get(label);
+    }
+
+    public double getPeakSustainedReceivedBytesPerSecond() {
+        return peakSustainedBytesPerSecond[RECEIVED];
+    }
+
+    public double getPeakSustainedSentBytesPerSecond() {
+        return peakSustainedBytesPerSecond[SENT];
+    }
+
+    public long getSaturatedSeconds() {
+        return saturatedSeconds;
+    }
+
+    @Override
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        if (total.getSampleCount() == 0) {
+            summary.add("No bytes/sentBytes found, make sure jmeter.save.saveservice.bytes and jmeter.save.saveservice.sent_bytes are enabled");
+            return summary;
+        }
+        summary.add(String.format("%-40s %14s %14s %14s %14s %14s %14s", "Label", "Received", "Sent", "Avg recv/s", "Avg sent/s", "Peak recv/s", "Peak sent/s"));
+        for (BandwidthSeries series : seriesByLabel.values()) {
+            summary.add(formatRow(series));
+        }
+        summary.add(formatRow(total));
+        summary.add(String.format("Peak bandwidth sustained over %ss: received %s/s, sent %s/s",
+                sustainedPeriodInSeconds,
+                humanReadableBytes(peakSustainedBytesPerSecond[RECEIVED]),
+                humanReadableBytes(peakSustainedBytesPerSecond[SENT])
+        ));
+        if (total.getLateSampleCount() > 0) {
+            summary.add(String.format("%s samples arrived too far out of time order to be included in the per second figures", total.getLateSampleCount()));
+        }
+
+        return summary;
+    }
+
+    @Override
+    public List<String> getWarnings() {
+        List<String> warnings = new ArrayList<>();
+        if (total.getLateSampleCount() > 0) {
+            warnings.add(String.format("%s samples arrived more than %ss out of time order and are missing from the per second bandwidth, set mergeResultFiles to true if the results files overlap in time",
+                    total.getLateSampleCount(),
+                    REORDER_WINDOW_IN_MILLISECONDS / ONE_SECOND
+            ));
+        }
+        if (linkCapacityInBytesPerSecond <= 0) {
+            return warnings;
+        }
+        for (int direction : new int[]{RECEIVED, SENT}) {
+            double utilisation = peakSustainedBytesPerSecond[direction] / linkCapacityInBytesPerSecond;
+            if (utilisation >= saturationThreshold) {
+                warnings.add(String.format("Load generator %s bandwidth reached %.1f%% of the declared link capacity (%s/s)",
+                        direction == RECEIVED ? "received" : "sent",
+                        utilisation * 100,
+                        humanReadableBytes(linkCapacityInBytesPerSecond)
+                ));
+            }
+        }
+
+        return warnings;
+    }
+
+    @Override
+    public boolean canFailBuild() {
+        return failWhenSaturated;
+    }
+
+    @Override
+    public List<String> getFailures() {
+        List<String> failures = new ArrayList<>();
+        if (failWhenSaturated && saturatedSeconds > 0) {
+            failures.add(String.format(
+                    "The load generator network link was saturated (>= %.0f%% of capacity for %ss or more) for %s seconds, starting at %s. Results were collected at a saturated NIC and are not valid",
+                    saturationThreshold * 100,
+                    sustainedPeriodInSeconds,
+                    saturatedSeconds,
+                    Instant.ofEpochMilli(firstSaturatedSecond)
+            ));
+        }
+
+        return failures;
+    }
+
+    private void overallSecondCompleted(long second, long[] values) {
+        sustainedPeriod.addLast(values);
+        sustainedPeriodTotals[RECEIVED] += values[RECEIVED];
+        sustainedPeriodTotals[SENT] += values[SENT];
+        if (sustainedPeriod.size() > sustainedPeriodInSeconds) {
+            long[] expired = sustainedPeriod.removeFirst();
+            sustainedPeriodTotals[RECEIVED] -= expired[RECEIVED];
+            sustainedPeriodTotals[SENT] -= expired[SENT];
+        }
+        if (sustainedPeriod.size() < sustainedPeriodInSeconds) {
+            return;
+        }
+        boolean saturated = false;
+        for (int direction : new int[]{RECEIVED, SENT}) {
+            double bytesPerSecond = (double) sustainedPeriodTotals[direction] / sustainedPeriodInSeconds;
+            peakSustainedBytesPerSecond[direction] = Math.max(peakSustainedBytesPerSecond[direction], bytesPerSecond);
+            if (linkCapacityInBytesPerSecond > 0 && bytesPerSecond >= linkCapacityInBytesPerSecond * saturationThreshold) {
+                saturated = true;
+            }
+        }
+        if (saturated) {
+            saturatedSeconds++;
+            if (firstSaturatedSecond == Sample.NOT_RECORDED) {
+                firstSaturatedSecond = second;
+            }
+        }
+    }
+
+    private void writeSeries(long second, String label, long[] values) {
+        if (seriesFile == null) {
+            return;
+        }
+        try {
+            if (seriesWriter == null) {
+                File parent = seriesFile.getAbsoluteFile().getParentFile();
+                if (!parent.exists() && !parent.mkdirs()) {
+                    throw new IOException("Unable to create " + parent.getAbsolutePath());
+                }
+                seriesWriter = new BufferedWriter(new FileWriter(seriesFile));
+                seriesWriter.write("timeStamp,label,receivedBytes,sentBytes\n");
+            }
+            seriesWriter.write(String.format("%s,\"%s\",%s,%s%n", second, label.replace("\"", "\"\""), values[RECEIVED], values[SENT]));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static String formatRow(BandwidthSeries series) {
+        return String.format("%-40s %14s %14s %12s/s %12s/s %12s/s %12s/s",
+                series.getLabel(),
+                humanReadableBytes(series.getTotalReceivedBytes()),
+                humanReadableBytes(series.getTotalSentBytes()),
+                humanReadableBytes(series.getAverageReceivedBytesPerSecond()),
+                humanReadableBytes(series.getAverageSentBytesPerSecond()),
+                humanReadableBytes(series.getPeakReceivedBytesPerSecond()),
+                humanReadableBytes(series.getPeakSentBytesPerSecond())
+        );
+    }
+
+    static String humanReadableBytes(double bytes) {
+        String[] units = {"B", "KB", "MB", "GB", "TB"};
+        int unit = 0;
+        while (bytes >= 1024 && unit < units.length - 1) {
+            bytes = bytes / 1024;
+            unit++;
+        }
+
+        return String.format("%.1f%s", bytes, units[unit]);
+    }
+
+    /**
+     * Received and sent bytes per second for a single label (or all labels).
+     */
+    public class BandwidthSeries {
+        private final String label;
+        private final TimeSeriesBuckets seconds;
+        private long sampleCount;
+        private long totalReceivedBytes;
+        private long totalSentBytes;
+        private long peakReceivedBytesPerSecond;
+        private long peakSentBytesPerSecond;
+        private long firstSecond = Sample.NOT_RECORDED;
+        private long lastSecond = Sample.NOT_RECORDED;
+
+        BandwidthSeries(String label, boolean overall) {
+            this.label = label;
+            this.seconds = new TimeSeriesBuckets(ONE_SECOND, REORDER_WINDOW_IN_MILLISECONDS, 2, overall, (second, values) -> {
+                peakReceivedBytesPerSecond = Math.max(peakReceivedBytesPerSecond, values[RECEIVED]);
+                peakSentBytesPerSecond = Math.max(peakSentBytesPerSecond, values[SENT]);
+                writeSeries(second, label, values);
+                if (overall) {
+                    overallSecondCompleted(second, values);
+                }
+            });
+        }
+
+        void add(long timeStamp, long received, long sent) {
+            sampleCount++;
+            totalReceivedBytes += received;
+            totalSentBytes += sent;
+            long second = Math.floorDiv(timeStamp, ONE_SECOND);
+            firstSecond = firstSecond == Sample.NOT_RECORDED ? second : Math.min(firstSecond, second);
+            lastSecond = Math.max(lastSecond, second);
+            seconds.add(timeStamp, received, sent);
+        }
+
+        void flush() {
+            seconds.flush();
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getSampleCount() {
+            return sampleCount;
+        }
+
+        public long getLateSampleCount() {
+            return seconds.getLateValueCount();
+        }
+
+        public long getTotalReceivedBytes() {
+            return totalReceivedBytes;
+        }
+
+        public long getTotalSentBytes() {
+            return totalSentBytes;
+        }
+
+        public long getPeakReceivedBytesPerSecond() {
+            return peakReceivedBytesPerSecond;
+        }
+
+        public long getPeakSentBytesPerSecond() {
+            return peakSentBytesPerSecond;
+        }
+
+        public double getAverageReceivedBytesPerSecond() {
+            return perSecond(totalReceivedBytes);
+        }
+
+        public double getAverageSentBytesPerSecond() {
+            return perSecond(totalSentBytes);
+        }
+
+        private double perSecond(long value) {
+            return sampleCount == 0 ? 0 : (double) value / (lastSecond - firstSecond + 1);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.lazerycode.jmeter.results;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the latency distribution of each label with a baseline stored by an earlier run, and only reports a
+ * regression when the difference is statistically significant and large enough to matter.
+ * <p/>
+ * Run to run noise makes a fixed tolerance on a percentile either too loose or flaky.  Instead a reservoir sample of
+ * the latencies of each label is kept (so memory is bounded whatever the length of the test), and compared with the
+ * baseline reservoir using a one sided Mann-Whitney U test.  The reservoirs of the current run are saved so that they
+ * can be used as the baseline of a later run.
+ * <p/>
+ * With the large samples of a load test even a slowdown of a millisecond is significant, so a regression also needs a
+ * minimum effect size: the probability that a request of the current run is slower than a request of the baseline
+ * (0.5 when there is no difference).  Vargha and Delaney class 0.56 as a small, 0.64 as a medium and 0.71 as a large
+ * effect.
+ */
+public class BaselineComparisonAnalyzer implements ResultAnalyzer {
+
+    static final String TOTAL_LABEL = "TOTAL";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<TreeMap<String, long[]>> BASELINE_TYPE = new TypeReference<TreeMap<String, long[]>>() {
+    };
+    private static final double REPORTED_PERCENTILE = 95;
+    private final File baselineFile;
+    private final File savedBaselineFile;
+    private final int reservoirSize;
+    private final double significanceLevel;
+    private final double minimumEffectSize;
+    private final boolean failOnRegression;
+    private final Map<String, LatencyReservoir> reservoirsByLabel = new TreeMap<>();
+    private final LatencyReservoir total;
+    private final Map<String, Comparison> comparisons = new TreeMap<>();
+    private final List<String> warnings = new ArrayList<>();
+    private boolean baselineLoaded;
+
+    /**
+     * @param baselineFile        Baseline to compare with, null or a file that does not exist to skip the comparison
+     * @param savedBaselineFile   File the reservoirs of this run are saved to, null to disable
+     * @param reservoirSize       Maximum number of latencies kept per label
+     * @param confidenceInPercent Confidence required before a difference is reported as a regression
+     * @param minimumEffectSize   Probability of a request being slower than in the baseline required before a difference is reported as a regression
+     * @param failOnRegression    Report significant regressions as failures rather than warnings
+     */
+    public BaselineComparisonAnalyzer(File baselineFile, File savedBaselineFile, int reservoirSize, float confidenceInPercent, float minimumEffectSize, boolean failOnRegression) {
+        this.baselineFile = baselineFile;
+        this.savedBaselineFile = savedBaselineFile;
+        this.reservoirSize = reservoirSize;
+        this.significanceLevel = 1 - confidenceInPercent / 100d;
+        this.minimumEffectSize = minimumEffectSize;
+        this.failOnRegression = failOnRegression;
+        this.total = new LatencyReservoir(reservoirSize, TOTAL_LABEL.hashCode());
+    }
+
+    @Override
+    public void sampleOccurred(Sample sample) {
+        if (sample.getElapsed() == Sample.NOT_RECORDED) {
+            return;
+        }
+        reservoirsByLabel.computeIfAbsent(sample.getLabel(), label -> new LatencyReservoir(reservoirSize, String.valueOf(label).hashCode()))
+                .recordValue(sample.getElapsed());
+        total.recordValue(sample.getElapsed());
+    }
+
+    @Override
+    public void scanCompleted() throws IOException {
+        Map<String, long[]> current = new TreeMap<>();
+        for (Map.Entry<String, LatencyReservoir> entry : reservoirsByLabel.entrySet()) {
+            current.put(entry.getKey(), entry.getValue().getValues());
+        }
+        current.put(TOTAL_LABEL, total.getValues());
+        if (baselineFile != null && baselineFile.exists()) {
+            Map<String, long[]> baseline = MAPPER.readValue(baselineFile, BASELINE_TYPE);
+            baselineLoaded = true;
+            for (Map.Entry<String, long[]> entry : current.entrySet()) {
+                long[] baselineValues = baseline.get(entry.getKey());
+                if (baselineValues == null) {
+                    warnings.add(String.format("'%s' is not in the baseline, it has not been compared", entry.getKey()));
+                    continue;
+                }
+                comparisons.put(entry.getKey(), new Comparison(baselineValues, entry.getValue(), significanceLevel, minimumEffectSize));
+            }
+        }
+        if (savedBaselineFile != null) {
+            File parent = savedBaselineFile.getAbsoluteFile().getParentFile();
+            if (!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Unable to create " + parent.getAbsolutePath());
+            }
+            MAPPER.writeValue(savedBaselineFile, current);
+        }
+    }
+
+    public Comparison getComparison(String label) {
+        return comparisons.get(label);
+    }
+
+    @Override
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        if (!baselineLoaded) {
+            summary.add(String.format("No baseline found at %s, nothing to compare with", baselineFile));
+            addSavedBaseline(summary);
+            return summary;
+        }
+        summary.add(String.format("Comparison with baseline %s (regression reported at %.1f%% confidence when P(slower) is at least %.2f)", baselineFile, (1 - significanceLevel) * 100, minimumEffectSize));
+        summary.add(String.format("%-40s %10s %10s %12s %12s %10s %10s %s", "Label", "Baseline", "Current", "p95 baseline", "p95 current", "P(slower)", "p-value", "Result"));
+        for (Map.Entry<String, Comparison> entry : comparisons.entrySet()) {
+            Comparison comparison = entry.getValue();
+            summary.add(String.format("%-40s %10d %10d %10dms %10dms %10.3f %10.4f %s",
+                    entry.getKey(),
+                    comparison.getBaselineCount(),
+                    comparison.getCurrentCount(),
+                    comparison.getBaselinePercentile(),
+                    comparison.getCurrentPercentile(),
+                    comparison.getTest().getProbabilityOfSuperiority(),
+                    comparison.getTest().getPValue(),
+                    comparison.isRegression() ? "REGRESSION" : comparison.isSignificant() ? "slower, below the minimum effect size" : "no significant regression"
+            ));
+        }
+        addSavedBaseline(summary);
+
+        return summary;
+    }
+
+    private void addSavedBaseline(List<String> summary) {
+        if (savedBaselineFile != null) {
+            summary.add(String.format("Baseline for this run saved to %s", savedBaselineFile));
+        }
+    }
+
+    @Override
+    public List<String> getWarnings() {
+        List<String> allWarnings = new ArrayList<>(warnings);
+        if (!failOnRegression) {
+            allWarnings.addAll(regressions());
+        }
+
+        return allWarnings;
+    }
+
+    @Override
+    public boolean canFailBuild() {
+        return failOnRegression;
+    }
+
+    @Override
+    public List<String> getFailures() {
+        return failOnRegression ? regressions() : new ArrayList<>();
+    }
+
+    private List<String> regressions() {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Comparison> entry : comparisons.entrySet()) {
+            Comparison comparison = entry.getValue();
+            if (comparison.isRegression()) {
+                regressions.add(String.format("'%s' is significantly slower than the baseline (p95 %sms -> %sms, P(slower) %.3f, p-value %.4f)",
+                        entry.getKey(),
+                        comparison.getBaselinePercentile(),
+                        comparison.getCurrentPercentile(),
+                        comparison.getTest().getProbabilityOfSuperiority(),
+                        comparison.getTest().getPValue()
+                ));
+            }
+        }
+
+        return regressions;
+    }
+
+    static long percentile(long[] sortedValues, double percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedValues.length);
+
+        return sortedValues[Math.max(0, Math.min(sortedValues.length, rank) - 1)];
+    }
+
+    /**
+     * The comparison of a single label (or all labels) with the baseline.
+     */
+    public static class Comparison {
+        private final int baselineCount;
+        private final int currentCount;
+        private final long baselinePercentile;
+        private final long currentPercentile;
+        private final MannWhitneyU test;
+        private final boolean significant;
+        private final boolean regression;
+
+        Comparison(long[] baseline, long[] current, double significanceLevel, double minimumEffectSize) {
+            long[] sortedBaseline = baseline.clone();
+            long[] sortedCurrent = current.clone();
+            Arrays.sort(sortedBaseline);
+            Arrays.sort(sortedCurrent);
+            this.baselineCount = baseline.length;
+            this.currentCount = current.length;
+            this.baselinePercentile = percentile(sortedBaseline, REPORTED_PERCENTILE);
+            this.currentPercentile = percentile(sortedCurrent, REPORTED_PERCENTILE);
+            this.test = MannWhitneyU.compare(sortedBaseline, sortedCurrent);
+            this.significant = test.getPValue() < significanceLevel;
+            this.regression = significant && test.getProbabilityOfSuperiority() >= minimumEffectSize;
+        }
+
+        public int getBaselineCount() {
+            return baselineCount;
+        }
+
+        public int getCurrentCount() {
+            return currentCount;
+        }
+
+        public long getBaselinePercentile() {
+            return baselinePercentile;
+        }
+
+        public long getCurrentPercentile() {
+            return currentPercentile;
+        }
+
+        public double getPValue() {
+            return test.getPValue();
+        }
+
+        /**
+         * @return The current run is significantly slower, whatever the size of the difference
+         */
+        public boolean isSignificant() {
+            return significant;
+        }
+
+        public boolean isRegression() {
+            return regression;
+        }
+
+        MannWhitneyU getTest() {
+            return test;
+        }
+    }
+}
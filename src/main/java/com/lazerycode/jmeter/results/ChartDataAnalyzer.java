@@ -0,0 +1,252 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Produces a latency and throughput series per label (and overall) that has a fixed number of points whatever the
+ * length of the run, so that a chart or trend store can show a whole soak test cheaply.
+ * <p/>
+ * Samples are added to time buckets as they are read.  Whenever a series has more buckets than it is allowed to
+ * keep, the bucket width is doubled and neighbouring buckets are merged, so memory is bounded by the number of points
+ * rather than the length of the run.  Each bucket keeps the minimum and maximum latency as well as the average, so
+ * spikes are not hidden.  Once the scan has completed each series is downsampled to the requested number of points:
+ * <ul>
+ * <li>LTTB: Largest-Triangle-Three-Buckets is applied to the average latency, which keeps the visual shape</li>
+ * <li>MIN_MAX: buckets keep being merged, each point covers a whole period with its minimum and maximum latency</li>
+ * </ul>
+ */
+public class ChartDataAnalyzer implements ResultAnalyzer {
+
+    static final String TOTAL_LABEL = "TOTAL";
+    private static final long INITIAL_BUCKET_SIZE_IN_MILLISECONDS = 1000;
+    private static final int LTTB_RESOLUTION_FACTOR = 8;
+    private static final int MIN_MAX_RESOLUTION_FACTOR = 2;
+    private final int pointsPerSeries;
+    private final Downsampling downsampling;
+    private final File outputFile;
+    private final Map<String, Series> seriesByLabel = new TreeMap<>();
+    private final Series total;
+    private long origin = Sample.NOT_RECORDED;
+
+    /**
+     * @param pointsPerSeries Maximum number of points in each series
+     * @param downsampling    How the series are downsampled
+     * @param outputFile      CSV file the series are written to
+     */
+    public ChartDataAnalyzer(int pointsPerSeries, Downsampling downsampling, File outputFile) {
+        this.pointsPerSeries = Math.max(3, pointsPerSeries);
+        this.downsampling = downsampling;
+        this.outputFile = outputFile;
+        this.total = new Series(TOTAL_LABEL);
+    }
+
+    @Override
+    public void sampleOccurred(Sample sample) {
+        if (sample.getTimeStamp() == Sample.NOT_RECORDED || sample.getElapsed() == Sample.NOT_RECORDED) {
+            return;
+        }
+        if (origin == Sample.NOT_RECORDED) {
+            origin = sample.getTimeStamp();
+        }
+        total.add(sample.getTimeStamp(), sample.getElapsed());
+        seriesByLabel.computeIfAbsent(sample.getLabel(), Series::new).add(sample.getTimeStamp(), sample.getElapsed());
+    }
+
+    @Override
+    public void scanCompleted() throws IOException {
+        File parent = outputFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent.getAbsolutePath());
+        }
+        try (Writer writer = new BufferedWriter(new FileWriter(outputFile))) {
+            writer.write("timeStamp,label,samples,throughputPerSecond,averageElapsed,minElapsed,maxElapsed\n");
+            for (Series series : seriesByLabel.values()) {
+                writeSeries(writer, series);
+            }
+            writeSeries(writer, total);
+        }
+    }
+
+    public List<Point> getPoints(String label) {
+        Series series = TOTAL_LABEL.equals(label) ? total : seriesByLabel.get(label);
+
+        return series == null ? null : series.downsample();
+    }
+
+    @Override
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        summary.add(String.format("Chart data (%s, at most %s points per label) for %s labels written to %s",
+                downsampling,
+                pointsPerSeries,
+                seriesByLabel.size(),
+                outputFile
+        ));
+        if (total.sampleCount > 0) {
+            summary.add(String.format("Each point covers at least %ss of the run", total.bucketSizeInMilliseconds / 1000d));
+        }
+
+        return summary;
+    }
+
+    private void writeSeries(Writer writer, Series series) throws IOException {
+        String label = '"' + series.label.replace("\"", "\"\"") + '"';
+        for (Point point : series.downsample()) {
+            writer.write(String.format(Locale.ROOT, "%s,%s,%s,%.3f,%.1f,%s,%s%n",
+                    point.getTimeStamp(),
+                    label,
+                    point.getSampleCount(),
+                    point.getThroughputPerSecond(),
+                    point.getAverageElapsed(),
+                    point.getMinimumElapsed(),
+                    point.getMaximumElapsed()
+            ));
+        }
+    }
+
+    public enum Downsampling {
+        LTTB,
+        MIN_MAX
+    }
+
+    /**
+     * The buckets of a single label (or all labels).
+     */
+    private class Series {
+        private final String label;
+        private TreeMap<Long, Point> buckets = new TreeMap<>();
+        private long bucketSizeInMilliseconds = INITIAL_BUCKET_SIZE_IN_MILLISECONDS;
+        private long sampleCount;
+
+        Series(String label) {
+            this.label = label;
+        }
+
+        void add(long timeStamp, long elapsed) {
+            sampleCount++;
+            long bucket = Math.floorDiv(timeStamp - origin, bucketSizeInMilliseconds);
+            buckets.computeIfAbsent(bucket, key -> new Point()).add(elapsed);
+            int resolutionFactor = downsampling == Downsampling.LTTB ? LTTB_RESOLUTION_FACTOR : MIN_MAX_RESOLUTION_FACTOR;
+            while (buckets.size() > pointsPerSeries * resolutionFactor) {
+                mergeBuckets();
+            }
+        }
+
+        /**
+         * Double the bucket width, merging each pair of neighbouring buckets.
+         */
+        private void mergeBuckets() {
+            TreeMap<Long, Point> merged = new TreeMap<>();
+            for (Map.Entry<Long, Point> entry : buckets.entrySet()) {
+                merged.merge(Math.floorDiv(entry.getKey(), 2), entry.getValue(), Point::merge);
+            }
+            buckets = merged;
+            bucketSizeInMilliseconds = bucketSizeInMilliseconds * 2;
+        }
+
+        List<Point> downsample() {
+            if (downsampling == Downsampling.MIN_MAX) {
+                while (buckets.size() > pointsPerSeries) {
+                    mergeBuckets();
+                }
+            }
+            List<Point> points = new ArrayList<>();
+            for (Map.Entry<Long, Point> entry : buckets.entrySet()) {
+                points.add(entry.getValue().complete(origin + entry.getKey() * bucketSizeInMilliseconds, bucketSizeInMilliseconds));
+            }
+            if (points.size() <= pointsPerSeries) {
+                return points;
+            }
+
+            return selectWithLttb(points);
+        }
+
+        private List<Point> selectWithLttb(Collection<Point> points) {
+            List<Point> all = new ArrayList<>(points);
+            double[] x = new double[all.size()];
+            double[] y = new double[all.size()];
+            for (int i = 0; i < all.size(); i++) {
+                x[i] = all.get(i).getTimeStamp();
+                y[i] = all.get(i).getAverageElapsed();
+            }
+            List<Point> selected = new ArrayList<>();
+            for (int index : Lttb.select(x, y, pointsPerSeries)) {
+                selected.add(all.get(index));
+            }
+
+            return selected;
+        }
+    }
+
+    /**
+     * Latency and throughput over one period of the run.
+     */
+    public static class Point {
+        private long timeStamp;
+        private long durationInMilliseconds;
+        private long sampleCount;
+        private long totalElapsed;
+        private long minimumElapsed = Long.MAX_VALUE;
+        private long maximumElapsed = Long.MIN_VALUE;
+
+        void add(long elapsed) {
+            sampleCount++;
+            totalElapsed += elapsed;
+            minimumElapsed = Math.min(minimumElapsed, elapsed);
+            maximumElapsed = Math.max(maximumElapsed, elapsed);
+        }
+
+        Point merge(Point other) {
+            sampleCount += other.sampleCount;
+            totalElapsed += other.totalElapsed;
+            minimumElapsed = Math.min(minimumElapsed, other.minimumElapsed);
+            maximumElapsed = Math.max(maximumElapsed, other.maximumElapsed);
+
+            return this;
+        }
+
+        Point complete(long timeStamp, long durationInMilliseconds) {
+            this.timeStamp = timeStamp;
+            this.durationInMilliseconds = durationInMilliseconds;
+
+            return this;
+        }
+
+        /**
+         * @return Time stamp at the start of the period
+         */
+        public long getTimeStamp() {
+            return timeStamp;
+        }
+
+        public long getSampleCount() {
+            return sampleCount;
+        }
+
+        public double getThroughputPerSecond() {
+            return sampleCount * 1000d / durationInMilliseconds;
+        }
+
+        public double getAverageElapsed() {
+            return (double) totalElapsed / sampleCount;
+        }
+
+        public long getMinimumElapsed() {
+            return minimumElapsed;
+        }
+
+        public long getMaximumElapsed() {
+            return maximumElapsed;
+        }
+    }
+}
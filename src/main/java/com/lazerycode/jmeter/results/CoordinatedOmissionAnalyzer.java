@@ -0,0 +1,172 @@
+package com.lazerycode.jmeter.results;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Estimates the samples that were never sent because the system under test stalled (coordinated omission).
+ * <p/>
+ * A JMeter thread waits for each response before sending the next request, so while the system under test is stalled
+ * it stops sending requests and the percentiles only contain one slow sample where real users would have seen many.
+ * This reconstructs the schedule each thread normally keeps (the usual gap between the start of two consecutive
+ * samples) from the threadName and timeStamp values.  When a sample takes longer than that expected interval, the
+ * samples the thread should have sent in the meantime are back filled with the latency they would have seen (in the
+ * same way as HdrHistogram's recordValueWithExpectedInterval).
+ * <p/>
+ * Raw and corrected percentiles are reported side by side.
+ */
+public class CoordinatedOmissionAnalyzer implements ResultAnalyzer {
+
+    static final String TOTAL_LABEL = "TOTAL";
+    private static final int WARM_UP_GAPS = 5;
+    private static final double OUTLIER_GAP_FACTOR = 3;
+    private static final double SMOOTHING_FACTOR = 0.1;
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 95, 99};
+    private final Map<String, ThreadSchedule> schedulesByThread = new HashMap<>();
+    private final Map<String, LabelLatencies> latenciesByLabel = new TreeMap<>();
+    private final LabelLatencies total = new LabelLatencies();
+    private final float omittedSamplesWarningThresholdInPercent;
+
+    /**
+     * @param omittedSamplesWarningThresholdInPercent Warn when the estimated omitted samples reach this percentage of the recorded samples
+     */
+    public CoordinatedOmissionAnalyzer(float omittedSamplesWarningThresholdInPercent) {
+        this.omittedSamplesWarningThresholdInPercent = omittedSamplesWarningThresholdInPercent;
+    }
+
+    @Override
+    public void sampleOccurred(Sample sample) {
+        if (sample.getTimeStamp() == Sample.NOT_RECORDED || sample.getElapsed() == Sample.NOT_RECORDED || sample.getThreadName() == null) {
+            return;
+        }
+        ThreadSchedule schedule = schedulesByThread.computeIfAbsent(sample.getThreadName(), threadName -> new ThreadSchedule());
+        long expectedInterval = schedule.expectedInterval();
+        schedule.sampleStarted(sample.getTimeStamp());
+        LabelLatencies labelLatencies = latenciesByLabel.computeIfAbsent(sample.getLabel(), label -> new LabelLatencies());
+        labelLatencies.record(sample.getElapsed(), expectedInterval);
+        total.record(sample.getElapsed(), expectedInterval);
+    }
+
+    public LabelLatencies getLatencies(String label) {
+        return latenciesByLabel.get(label);
+    }
+
+    public LabelLatencies getTotal() {
+        return total;
+    }
+
+    @Override
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        StringBuilder header = new StringBuilder(String.format("%-40s %10s %10s", "Label", "Samples", "Omitted"));
+        for (double percentile : REPORTED_PERCENTILES) {
+            header.append(String.format(" %18s", String.format("p%.0f raw/corrected", percentile)));
+        }
+        summary.add(header.toString());
+        for (Map.Entry<String, LabelLatencies> entry : latenciesByLabel.entrySet()) {
+            summary.add(formatRow(entry.getKey(), entry.getValue()));
+        }
+        summary.add(formatRow(TOTAL_LABEL, total));
+
+        return summary;
+    }
+
+    @Override
+    public List<String> getWarnings() {
+        List<String> warnings = new ArrayList<>();
+        double omittedPercentage = total.getOmittedPercentage();
+        if (total.getRaw().getTotalCount() > 0 && omittedPercentage >= omittedSamplesWarningThresholdInPercent) {
+            warnings.add(String.format(
+                    "An estimated %s samples (%.1f%%) were never sent because the system under test stalled, p99 is %sms once they are accounted for rather than %sms",
+                    total.getOmittedSampleCount(),
+                    omittedPercentage,
+                    total.getCorrected().getValueAtPercentile(99),
+                    total.getRaw().getValueAtPercentile(99)
+            ));
+        }
+
+        return warnings;
+    }
+
+    private static String formatRow(String label, LabelLatencies latencies) {
+        StringBuilder row = new StringBuilder(String.format("%-40s %10d %10d", label, latencies.getRaw().getTotalCount(), latencies.getOmittedSampleCount()));
+        for (double percentile : REPORTED_PERCENTILES) {
+            row.append(String.format(" %18s", String.format("%sms/%sms",
+                    latencies.getRaw().getValueAtPercentile(percentile),
+                    latencies.getCorrected().getValueAtPercentile(percentile)
+            )));
+        }
+
+        return row.toString();
+    }
+
+    /**
+     * Learns the usual gap between the start of two consecutive samples of a thread.
+     * Only a couple of values are kept per thread, so memory is bounded by the number of threads, not samples.
+     */
+    static class ThreadSchedule {
+        private long lastStart = Sample.NOT_RECORDED;
+        private int gapCount;
+        private double interval;
+
+        void sampleStarted(long timeStamp) {
+            if (lastStart != Sample.NOT_RECORDED && timeStamp >= lastStart) {
+                long gap = timeStamp - lastStart;
+                if (gapCount < WARM_UP_GAPS) {
+                    interval = (interval * gapCount + gap) / (gapCount + 1);
+                    gapCount++;
+                } else if (gap <= interval * OUTLIER_GAP_FACTOR) {
+                    interval = interval + SMOOTHING_FACTOR * (gap - interval);
+                }
+            }
+            lastStart = Math.max(lastStart, timeStamp);
+        }
+
+        /**
+         * @return The expected interval between two samples, or 0 if it is not known yet
+         */
+        long expectedInterval() {
+            return gapCount < WARM_UP_GAPS ? 0 : Math.round(interval);
+        }
+    }
+
+    /**
+     * Raw and corrected latency histograms for a single label (or all labels).
+     */
+    public static class LabelLatencies {
+        private final LatencyHistogram raw = new LatencyHistogram();
+        private final LatencyHistogram corrected = new LatencyHistogram();
+        private long omittedSampleCount;
+
+        void record(long elapsed, long expectedInterval) {
+            raw.recordValue(elapsed);
+            corrected.recordValue(elapsed);
+            if (expectedInterval <= 0) {
+                return;
+            }
+            for (long missingValue = elapsed - expectedInterval; missingValue >= expectedInterval; missingValue -= expectedInterval) {
+                corrected.recordValue(missingValue);
+                omittedSampleCount++;
+            }
+        }
+
+        public LatencyHistogram getRaw() {
+            return raw;
+        }
+
+        public LatencyHistogram getCorrected() {
+            return corrected;
+        }
+
+        public long getOmittedSampleCount() {
+            return omittedSampleCount;
+        }
+
+        public double getOmittedPercentage() {
+            return raw.getTotalCount() == 0 ? 0 : omittedSampleCount * 100d / raw.getTotalCount();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads samples from a JMeter results file in CSV format.
+ * <p/>
+ * This assumes that the file always includes a header row, columns are looked up by name so any subset of the
+ * jmeter.save.saveservice.* columns can be read.
+ * <p/>
+ * The byte offset of each record is tracked, so that a reader can be started part way through a file (see
+ * {@link ResultFileIndex}).
+ */
+public class CsvSampleReader implements SampleReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private static final char QUOTE = '"';
+    private static final int NEW_LINE = '\n';
+    private static final int CARRIAGE_RETURN = '\r';
+    private final FileInputStream fileInputStream;
+    private final Charset charset = Charset.defaultCharset();
+    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(256);
+    private final byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLimit;
+    private long position;
+    private long recordOffset = Sample.NOT_RECORDED;
+    private final String header;
+    private final char separator;
+    private final int timeStampColumn;
+    private final int elapsedColumn;
+    private final int labelColumn;
+    private final int responseCodeColumn;
+    private final int threadNameColumn;
+    private final int successColumn;
+    private final int bytesColumn;
+    private final int sentBytesColumn;
+    private final int latencyColumn;
+    private final int connectColumn;
+
+    public CsvSampleReader(File file) throws IOException {
+        this(file, 0);
+    }
+
+    /**
+     * @param file        The results file
+     * @param startOffset Byte offset of the first record to read, as returned by {@link #getRecordOffset()}.  The header is always read first.
+     * @throws IOException When the file cannot be read
+     */
+    public CsvSampleReader(File file, long startOffset) throws IOException {
+        this.fileInputStream = new FileInputStream(file);
+        this.header = readLine();
+        if (header == null) {
+            close();
+            throw new IllegalArgumentException("No line read from file " + file.getAbsolutePath());
+        }
+        if (startOffset > position) {
+            fileInputStream.getChannel().position(startOffset);
+            bufferPosition = 0;
+            bufferLimit = 0;
+            position = startOffset;
+        }
+        this.separator = lookForDelimiter(header);
+        List<String> columns = splitLine(header, separator);
+        this.timeStampColumn = columns.indexOf("timeStamp");
+        this.elapsedColumn = columns.indexOf("elapsed");
+        this.labelColumn = columns.indexOf("label");
+        this.responseCodeColumn = columns.indexOf("responseCode");
+        this.threadNameColumn = columns.indexOf("threadName");
+        this.successColumn = columns.indexOf("success");
+        this.bytesColumn = columns.indexOf("bytes");
+        this.sentBytesColumn = columns.indexOf("sentBytes");
+        this.latencyColumn = columns.indexOf("Latency");
+        this.connectColumn = columns.indexOf("Connect");
+    }
+
+    /**
+     * The header row only contains letters and the separator, so the first non letter character is the separator.
+     *
+     * @param line The header row
+     * @return The separator used in the CSV file
+     */
+    public static char lookForDelimiter(String line) {
+        for (char ch : line.toCharArray()) {
+            if (!Character.isLetter(ch)) {
+                return ch;
+            }
+        }
+        throw new IllegalStateException("Cannot find delimiter in header " + line);
+    }
+
+    /**
+     * @param file A results file in CSV format
+     * @return The header row of the file
+     * @throws IOException When the file cannot be read
+     */
+    public static String readHeader(File file) throws IOException {
+        try (CsvSampleReader reader = new CsvSampleReader(file)) {
+            return reader.getHeader();
+        }
+    }
+
+    /**
+     * @return The header row of the file
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * @return Byte offset in the file of the record returned by the last call to {@link #next()}
+     */
+    public long getRecordOffset() {
+        return recordOffset;
+    }
+
+    @Override
+    public Sample next() throws IOException {
+        recordOffset = position;
+        String record = readRecord();
+        while (record != null && record.isEmpty()) {
+            recordOffset = position;
+            record = readRecord();
+        }
+        if (record == null) {
+            return null;
+        }
+        List<String> values = splitLine(record, separator);
+        Sample sample = new Sample()
+                .setTimeStamp(longValue(values, timeStampColumn))
+                .setElapsed(longValue(values, elapsedColumn))
+                .setLabel(stringValue(values, labelColumn))
+                .setResponseCode(stringValue(values, responseCodeColumn))
+                .setThreadName(stringValue(values, threadNameColumn))
+                .setBytes(longValue(values, bytesColumn))
+                .setSentBytes(longValue(values, sentBytesColumn))
+                .setLatency(longValue(values, latencyColumn))
+                .setConnect(longValue(values, connectColumn))
+                .setCsvRecord(record);
+        String success = stringValue(values, successColumn);
+        if (success != null && !success.isEmpty()) {
+            sample.setSuccess("true".equals(success));
+        }
+
+        return sample;
+    }
+
+    /**
+     * Read a complete CSV record, quoted values may contain line breaks so a record can span several lines.
+     */
+    private String readRecord() throws IOException {
+        String line = readLine();
+        if (line == null || isBalanced(line)) {
+            return line;
+        }
+        StringBuilder record = new StringBuilder(line);
+        while (!isBalanced(record) && (line = readLine()) != null) {
+            record.append('\n').append(line);
+        }
+
+        return record.toString();
+    }
+
+    /**
+     * Lines are split on the raw bytes so that the byte offset of each line is known, this works for any charset that
+     * encodes a line feed as a single byte (which covers the charsets JMeter writes results in).
+     */
+    private String readLine() throws IOException {
+        lineBuffer.reset();
+        while (bufferPosition < bufferLimit || fillBuffer()) {
+            int start = bufferPosition;
+            while (bufferPosition < bufferLimit && buffer[bufferPosition] != NEW_LINE) {
+                bufferPosition++;
+            }
+            lineBuffer.write(buffer, start, bufferPosition - start);
+            position += bufferPosition - start;
+            if (bufferPosition < bufferLimit) {
+                bufferPosition++;
+                position++;
+                return decodeLine();
+            }
+        }
+
+        return lineBuffer.size() == 0 ? null : decodeLine();
+    }
+
+    private boolean fillBuffer() throws IOException {
+        bufferPosition = 0;
+        bufferLimit = Math.max(0, fileInputStream.read(buffer));
+
+        return bufferLimit > 0;
+    }
+
+    private String decodeLine() {
+        byte[] bytes = lineBuffer.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == CARRIAGE_RETURN) {
+            length--;
+        }
+
+        return new String(bytes, 0, length, charset);
+    }
+
+    private static boolean isBalanced(CharSequence value) {
+        int quotes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == QUOTE) {
+                quotes++;
+            }
+        }
+
+        return quotes % 2 == 0;
+    }
+
+    static List<String> splitLine(String line, char separator) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == QUOTE) {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+                        value.append(QUOTE);
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    value.append(ch);
+                }
+            } else if (ch == QUOTE) {
+                quoted = true;
+            } else if (ch == separator) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(ch);
+            }
+        }
+        values.add(value.toString());
+
+        return values;
+    }
+
+    private static String stringValue(List<String> values, int column) {
+        if (column < 0 || column >= values.size()) {
+            return null;
+        }
+
+        return values.get(column);
+    }
+
+    private static long longValue(List<String> values, int column) {
+        String value = stringValue(values, column);
+        if (value == null || value.isEmpty()) {
+            return Sample.NOT_RECORDED;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            return Sample.NOT_RECORDED;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileInputStream.close();
+    }
+}
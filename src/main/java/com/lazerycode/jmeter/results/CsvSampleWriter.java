@@ -0,0 +1,95 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes samples to a results file in the JMeter CSV format, so that it can be read back by JMeter (e.g. to generate
+ * the HTML report) or by this plugin.
+ * <p/>
+ * Samples are written with only the columns this plugin reads, and sub results are dropped, the CSV format cannot
+ * hold them.  Records read from CSV results files can instead be copied as they are, under the header of the file
+ * they were read from, which keeps every column JMeter saved.
+ */
+public class CsvSampleWriter implements Closeable {
+
+    public static final String HEADER = "timeStamp,elapsed,label,responseCode,threadName,success,bytes,sentBytes,Latency,Connect";
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private final Writer writer;
+
+    public CsvSampleWriter(File file) throws IOException {
+        this(file, HEADER);
+    }
+
+    /**
+     * @param file   The file to write
+     * @param header The header row, records written with {@link #writeRecord(String)} have to have its columns
+     * @throws IOException When the file cannot be created
+     */
+    public CsvSampleWriter(File file, String header) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent.getAbsolutePath());
+        }
+        this.writer = new BufferedWriter(new FileWriter(file), DEFAULT_BUFFER_SIZE);
+        writer.write(header);
+        writer.write('\n');
+    }
+
+    /**
+     * Writes the columns of {@link #HEADER}, this should only be used when the writer was created with that header.
+     */
+    public void write(Sample sample) throws IOException {
+        writer.write(String.valueOf(sample.getTimeStamp()));
+        writer.write(',');
+        writer.write(String.valueOf(sample.getElapsed()));
+        writer.write(',');
+        writer.write(quote(sample.getLabel()));
+        writer.write(',');
+        writer.write(quote(sample.getResponseCode()));
+        writer.write(',');
+        writer.write(quote(sample.getThreadName()));
+        writer.write(',');
+        writer.write(String.valueOf(sample.isSuccess()));
+        writer.write(',');
+        writer.write(String.valueOf(sample.getBytes()));
+        writer.write(',');
+        writer.write(String.valueOf(sample.getSentBytes()));
+        writer.write(',');
+        writer.write(String.valueOf(sample.getLatency()));
+        writer.write(',');
+        writer.write(String.valueOf(sample.getConnect()));
+        writer.write('\n');
+    }
+
+    /**
+     * @param record A record read from a CSV results file with the header of this writer
+     */
+    public void writeRecord(String record) throws IOException {
+        writer.write(record);
+        writer.write('\n');
+    }
+
+    /**
+     * Values are only quoted when they need to be, in the same way as JMeter.
+     */
+    static String quote(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,153 @@
+package com.lazerycode.jmeter.results;
+
+/**
+ * An error rate estimated from a random sample of blocks of the results files, see {@link ErrorRateEstimator}.
+ */
+public class ErrorRateEstimate {
+
+    private final long sampleCount;
+    private final long failureCount;
+    private final int blocksRead;
+    private final long totalBlocks;
+    private final double errorRate;
+    private final double standardError;
+
+    /**
+     * @param samplesPerBlock  Number of samples in each block read
+     * @param failuresPerBlock Number of failed samples in each block read
+     * @param totalBlocks      Number of blocks in the results files
+     */
+    ErrorRateEstimate(long[] samplesPerBlock, long[] failuresPerBlock, long totalBlocks) {
+        long samples = 0;
+        long failures = 0;
+        for (int i = 0; i < samplesPerBlock.length; i++) {
+            samples += samplesPerBlock[i];
+            failures += failuresPerBlock[i];
+        }
+        this.sampleCount = samples;
+        this.failureCount = failures;
+        this.blocksRead = samplesPerBlock.length;
+        this.totalBlocks = totalBlocks;
+        this.errorRate = samples == 0 ? 0 : (double) failures / samples;
+        this.standardError = samples == 0 ? Double.NaN : ratioStandardError(samplesPerBlock, failuresPerBlock);
+    }
+
+    /**
+     * Standard error of a ratio estimator with blocks as clusters: the residual of each block is the difference
+     * between its failures and the failures it would have at the estimated error rate.
+     */
+    private double ratioStandardError(long[] samplesPerBlock, long[] failuresPerBlock) {
+        int blocks = samplesPerBlock.length;
+        if (blocks < 2) {
+            return Double.NaN;
+        }
+        double meanSamplesPerBlock = (double) sampleCount / blocks;
+        double sumOfSquaredResiduals = 0;
+        for (int i = 0; i < blocks; i++) {
+            double residual = failuresPerBlock[i] - errorRate * samplesPerBlock[i];
+            sumOfSquaredResiduals += residual * residual;
+        }
+        double finitePopulationCorrection = 1 - (double) blocks / totalBlocks;
+        double variance = finitePopulationCorrection * sumOfSquaredResiduals / (blocks - 1) / (blocks * meanSamplesPerBlock * meanSamplesPerBlock);
+
+        return Math.sqrt(variance);
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public int getBlocksRead() {
+        return blocksRead;
+    }
+
+    public long getTotalBlocks() {
+        return totalBlocks;
+    }
+
+    /**
+     * @return Estimated error rate in percent
+     */
+    public double getErrorRateInPercent() {
+        return errorRate * 100;
+    }
+
+    /**
+     * @param confidenceInPercent Confidence of the (two sided) interval
+     * @return Lower bound of the error rate in percent
+     */
+    public double getLowerBoundInPercent(float confidenceInPercent) {
+        // Every failure that has been read is certainly in the results, whatever the variance between blocks
+        double estimatedTotalSamples = (double) sampleCount * totalBlocks / blocksRead;
+        double failuresSeen = sampleCount == 0 ? 0 : failureCount / estimatedTotalSamples;
+
+        return Math.max(failuresSeen, errorRate - marginOfError(confidenceInPercent)) * 100;
+    }
+
+    /**
+     * @param confidenceInPercent Confidence of the (two sided) interval
+     * @return Upper bound of the error rate in percent
+     */
+    public double getUpperBoundInPercent(float confidenceInPercent) {
+        double upperBound = errorRate + marginOfError(confidenceInPercent);
+        if (failureCount == 0 && sampleCount > 0) {
+            // No failures read gives no variance between blocks, use the rule of three instead
+            upperBound = -Math.log(1 - confidenceInPercent / 100d) / sampleCount;
+        }
+
+        return Math.min(1, upperBound) * 100;
+    }
+
+    private double marginOfError(float confidenceInPercent) {
+        if (Double.isNaN(standardError)) {
+            return 1;
+        }
+
+        return zScore(1 - (1 - confidenceInPercent / 100d) / 2) * standardError;
+    }
+
+    /**
+     * @param thresholdInPercent  Highest acceptable error rate
+     * @param confidenceInPercent Confidence required
+     * @return The error rate is above the threshold with the required confidence
+     */
+    public boolean isAbove(float thresholdInPercent, float confidenceInPercent) {
+        return sampleCount > 0 && getLowerBoundInPercent(confidenceInPercent) > thresholdInPercent;
+    }
+
+    /**
+     * @param thresholdInPercent  Highest acceptable error rate
+     * @param confidenceInPercent Confidence required
+     * @return The error rate is at or below the threshold with the required confidence
+     */
+    public boolean isAtOrBelow(float thresholdInPercent, float confidenceInPercent) {
+        return sampleCount > 0 && getUpperBoundInPercent(confidenceInPercent) <= thresholdInPercent;
+    }
+
+    /**
+     * The inverse of the standard normal cumulative distribution, found by bisection.
+     */
+    static double zScore(double probability) {
+        double low = -10;
+        double high = 10;
+        for (int i = 0; i < 100; i++) {
+            double middle = (low + high) / 2;
+            if (MannWhitneyU.normalCumulativeProbability(middle) < probability) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+
+        return (low + high) / 2;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.3f%% (%s failures in %s samples from %s of %s blocks)", getErrorRateInPercent(), failureCount, sampleCount, blocksRead, totalBlocks);
+    }
+}
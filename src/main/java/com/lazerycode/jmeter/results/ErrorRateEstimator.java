@@ -0,0 +1,201 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Estimates the error rate of CSV results files by reading a random set of aligned blocks rather than every sample.
+ * <p/>
+ * The files are split into blocks of a fixed size and a simple random sample of the blocks is read with positional
+ * reads.  Each block is read from the first complete record that starts in it to the last one that starts in it, so
+ * every record belongs to exactly one block.  Failures tend to come in bursts, so the blocks (not the samples) are
+ * treated as the sampling unit: the error rate is estimated with a ratio estimator and its confidence interval is
+ * worked out from the variance between blocks, with a finite population correction.
+ */
+public class ErrorRateEstimator {
+
+    static final int DEFAULT_BLOCK_SIZE_IN_BYTES = 256 * 1024;
+    private static final int RECORD_START_SEARCH_WINDOW = 64 * 1024;
+    private static final byte NEW_LINE = '\n';
+    private final int blockSizeInBytes;
+    private final int blockCount;
+    private final Random random;
+
+    /**
+     * @param blockSizeInBytes Size of each block
+     * @param blockCount       Number of blocks read
+     * @param seed             Seed used to pick the blocks, so that an estimate can be reproduced
+     */
+    public ErrorRateEstimator(int blockSizeInBytes, int blockCount, long seed) {
+        this.blockSizeInBytes = blockSizeInBytes;
+        this.blockCount = blockCount;
+        this.random = new Random(seed);
+    }
+
+    public ErrorRateEstimator(int blockCount, long seed) {
+        this(DEFAULT_BLOCK_SIZE_IN_BYTES, blockCount, seed);
+    }
+
+    /**
+     * @param files Results files in CSV format
+     * @return The estimated error rate, or null if there are no more blocks than would be read (a full scan is as cheap)
+     * @throws IOException When a file cannot be read
+     */
+    public ErrorRateEstimate estimate(List<File> files) throws IOException {
+        long[] firstBlockOfFile = new long[files.size() + 1];
+        for (int i = 0; i < files.size(); i++) {
+            firstBlockOfFile[i + 1] = firstBlockOfFile[i] + (files.get(i).length() + blockSizeInBytes - 1) / blockSizeInBytes;
+        }
+        long totalBlocks = firstBlockOfFile[files.size()];
+        if (totalBlocks <= blockCount) {
+            return null;
+        }
+        long[] blocks = pickBlocks(totalBlocks);
+        long[] samplesPerBlock = new long[blockCount];
+        long[] failuresPerBlock = new long[blockCount];
+        int blockNumber = 0;
+        for (int fileNumber = 0; fileNumber < files.size() && blockNumber < blocks.length; fileNumber++) {
+            if (blocks[blockNumber] >= firstBlockOfFile[fileNumber + 1]) {
+                continue;
+            }
+            File file = files.get(fileNumber);
+            RecordShape shape = RecordShape.of(file);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                while (blockNumber < blocks.length && blocks[blockNumber] < firstBlockOfFile[fileNumber + 1]) {
+                    long blockStart = (blocks[blockNumber] - firstBlockOfFile[fileNumber]) * blockSizeInBytes;
+                    readBlock(file, channel, shape, blockStart, blockStart + blockSizeInBytes, samplesPerBlock, failuresPerBlock, blockNumber);
+                    blockNumber++;
+                }
+            }
+        }
+
+        return new ErrorRateEstimate(samplesPerBlock, failuresPerBlock, totalBlocks);
+    }
+
+    /**
+     * Floyd's algorithm, picks blockCount distinct blocks without a list of every block.
+     *
+     * @return The picked blocks in file order
+     */
+    private long[] pickBlocks(long totalBlocks) {
+        Set<Long> picked = new HashSet<>();
+        for (long candidate = totalBlocks - blockCount; candidate < totalBlocks; candidate++) {
+            long block = (long) (random.nextDouble() * (candidate + 1));
+            picked.add(picked.contains(block) ? candidate : block);
+        }
+        long[] blocks = new long[picked.size()];
+        int i = 0;
+        for (long block : picked) {
+            blocks[i++] = block;
+        }
+        Arrays.sort(blocks);
+
+        return blocks;
+    }
+
+    private static void readBlock(File file, FileChannel channel, RecordShape shape, long blockStart, long blockEnd, long[] samplesPerBlock, long[] failuresPerBlock, int blockNumber) throws IOException {
+        long recordStart = blockStart == 0 ? 0 : findRecordStart(channel, shape, blockStart, blockEnd);
+        if (recordStart == Sample.NOT_RECORDED) {
+            return;
+        }
+        try (CsvSampleReader reader = new CsvSampleReader(file, recordStart)) {
+            Sample sample;
+            while ((sample = reader.next()) != null && reader.getRecordOffset() < blockEnd) {
+                samplesPerBlock[blockNumber]++;
+                if (!sample.isSuccess()) {
+                    failuresPerBlock[blockNumber]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * A block starts part way through a record, which may contain quoted line breaks.  The first line in the block
+     * that looks like a whole record (balanced quotes, the same number of columns as the header and a success value)
+     * is taken to be the start of a record.
+     *
+     * @return Offset of the first record that starts in the block, or {@link Sample#NOT_RECORDED} if none was found
+     */
+    private static long findRecordStart(FileChannel channel, RecordShape shape, long blockStart, long blockEnd) throws IOException {
+        // Read from the byte before the block, so that a record starting on the first byte of the block is found
+        ByteBuffer window = ByteBuffer.allocate(RECORD_START_SEARCH_WINDOW);
+        channel.read(window, blockStart - 1);
+        byte[] bytes = window.array();
+        int limit = window.position();
+        for (int i = 0; i < limit && blockStart + i < blockEnd; i++) {
+            if (bytes[i] != NEW_LINE) {
+                continue;
+            }
+            int lineEnd = i + 1;
+            while (lineEnd < limit && bytes[lineEnd] != NEW_LINE) {
+                lineEnd++;
+            }
+            if (lineEnd == limit) {
+                break;
+            }
+            if (shape.matches(new String(bytes, i + 1, lineEnd - i - 1, shape.charset))) {
+                return blockStart + i;
+            }
+        }
+
+        return Sample.NOT_RECORDED;
+    }
+
+    /**
+     * What a single line record of a results file looks like, worked out from its header.
+     */
+    private static class RecordShape {
+        private final Charset charset = Charset.defaultCharset();
+        private final char separator;
+        private final int columnCount;
+        private final int successColumn;
+
+        private RecordShape(String header) {
+            this.separator = CsvSampleReader.lookForDelimiter(header);
+            List<String> columns = CsvSampleReader.splitLine(header, separator);
+            this.columnCount = columns.size();
+            this.successColumn = columns.indexOf("success");
+        }
+
+        static RecordShape of(File file) throws IOException {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charset.defaultCharset()))) {
+                String header = reader.readLine();
+                if (header == null) {
+                    throw new IOException("No line read from file " + file.getAbsolutePath());
+                }
+                return new RecordShape(header);
+            }
+        }
+
+        boolean matches(String line) {
+            String record = line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+            int quotes = 0;
+            for (int i = 0; i < record.length(); i++) {
+                if (record.charAt(i) == '"') {
+                    quotes++;
+                }
+            }
+            if (quotes % 2 != 0) {
+                return false;
+            }
+            List<String> values = CsvSampleReader.splitLine(record, separator);
+            if (values.size() != columnCount) {
+                return false;
+            }
+
+            return successColumn < 0 || "true".equals(values.get(successColumn)) || "false".equals(values.get(successColumn));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.lazerycode.jmeter.results;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Maps sample labels that only differ by ids, UUIDs, query strings, etc. to a single label, so that per label
+ * analysis is done on a handful of meaningful labels rather than one label per URL.
+ * <p/>
+ * Path templates (/orders/{id}) are compiled into a trie over path segments, so a label is matched against every
+ * template in a single walk down its path, literal segments are preferred over {name} wildcards.  Labels that do not
+ * match a template have each regular expression rule applied to them in turn.
+ */
+public class LabelNormaliser {
+
+    private static final Pattern SCHEME_AND_HOST = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*://[^/?#]*");
+    private static final int MAX_CACHED_LABELS = 10000;
+    private final PathSegmentNode templates = new PathSegmentNode();
+    private final List<PatternRule> patterns = new ArrayList<>();
+    private final Map<String, String> cache = new HashMap<>();
+    private boolean hasTemplates;
+
+    /**
+     * @param template Path template, segments in braces ({id}) match any single segment
+     * @return this
+     */
+    public LabelNormaliser addPathTemplate(String template) {
+        PathSegmentNode node = templates;
+        for (String segment : segmentsOf(template)) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                if (node.wildcard == null) {
+                    node.wildcard = new PathSegmentNode();
+                }
+                node = node.wildcard;
+            } else {
+                node = node.literals.computeIfAbsent(segment, key -> new PathSegmentNode());
+            }
+        }
+        if (node.template == null) {
+            node.template = template;
+        }
+        hasTemplates = true;
+        cache.clear();
+
+        return this;
+    }
+
+    /**
+     * @param regex       Regular expression
+     * @param replacement Replacement for every match, may refer to groups ($1)
+     * @return this
+     * @throws java.util.regex.PatternSyntaxException If the regular expression is not valid
+     */
+    public LabelNormaliser addPattern(String regex, String replacement) {
+        patterns.add(new PatternRule(Pattern.compile(regex), replacement == null ? "" : replacement));
+        cache.clear();
+
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return !hasTemplates && patterns.isEmpty();
+    }
+
+    /**
+     * @param label A sample label
+     * @return The normalised label
+     */
+    public String normalise(String label) {
+        if (label == null || isEmpty()) {
+            return label;
+        }
+        String normalised = cache.get(label);
+        if (normalised == null) {
+            normalised = applyRules(label);
+            if (cache.size() >= MAX_CACHED_LABELS) {
+                cache.clear();
+            }
+            cache.put(label, normalised);
+        }
+
+        return normalised;
+    }
+
+    /**
+     * Normalise the label of a sample and all of its sub results.
+     *
+     * @param sample Sample
+     */
+    public void normalise(Sample sample) {
+        sample.setLabel(normalise(sample.getLabel()));
+        for (Sample subResult : sample.getSubResults()) {
+            normalise(subResult);
+        }
+    }
+
+    private String applyRules(String label) {
+        if (hasTemplates) {
+            String template = matchTemplate(templates, segmentsOf(pathOf(label)), 0);
+            if (template != null) {
+                return template;
+            }
+        }
+        String normalised = label;
+        for (PatternRule rule : patterns) {
+            normalised = rule.pattern.matcher(normalised).replaceAll(rule.replacement);
+        }
+
+        return normalised;
+    }
+
+    private static String matchTemplate(PathSegmentNode node, List<String> segments, int position) {
+        if (position == segments.size()) {
+            return node.template;
+        }
+        PathSegmentNode literal = node.literals.get(segments.get(position));
+        if (literal != null) {
+            String template = matchTemplate(literal, segments, position + 1);
+            if (template != null) {
+                return template;
+            }
+        }
+
+        return node.wildcard == null ? null : matchTemplate(node.wildcard, segments, position + 1);
+    }
+
+    static String pathOf(String label) {
+        String path = SCHEME_AND_HOST.matcher(label).replaceFirst("");
+        int end = path.length();
+        for (char terminator : new char[]{'?', '#'}) {
+            int index = path.indexOf(terminator);
+            if (index >= 0) {
+                end = Math.min(end, index);
+            }
+        }
+
+        return path.substring(0, end);
+    }
+
+    private static List<String> segmentsOf(String path) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+
+        return segments;
+    }
+
+    private static class PathSegmentNode {
+        private final Map<String, PathSegmentNode> literals = new HashMap<>();
+        private PathSegmentNode wildcard;
+        private String template;
+    }
+
+    private static class PatternRule {
+        private final Pattern pattern;
+        private final String replacement;
+
+        PatternRule(Pattern pattern, String replacement) {
+            this.pattern = pattern;
+            this.replacement = replacement;
+        }
+    }
+}
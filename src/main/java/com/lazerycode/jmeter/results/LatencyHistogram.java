@@ -0,0 +1,125 @@
+package com.lazerycode.jmeter.results;
+
+import java.util.Arrays;
+
+/**
+ * A log-linear histogram of latencies in milliseconds, with a fixed memory footprint whatever the number of values
+ * recorded.
+ * <p/>
+ * Values below 128 are recorded exactly, larger values are recorded in buckets that are never more than 1/64th
+ * (~1.6%) of the value wide.  Buckets are allocated up to the largest value seen, so a histogram of latencies up to a
+ * minute only uses a few KB.
+ */
+public class LatencyHistogram {
+
+    private static final int EXACT_VALUES = 128;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FIRST_EXPONENT = 7;
+    private long[] counts = new long[EXACT_VALUES];
+    private long totalCount;
+    private long minimum = Long.MAX_VALUE;
+    private long maximum;
+    private double sum;
+
+    static int indexFor(long value) {
+        if (value < EXACT_VALUES) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+
+        return EXACT_VALUES + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + (mantissa - SUB_BUCKETS);
+    }
+
+    static long highestValueFor(int index) {
+        if (index < EXACT_VALUES) {
+            return index;
+        }
+        int exponent = (index - EXACT_VALUES) / SUB_BUCKETS + FIRST_EXPONENT;
+        long mantissa = (index - EXACT_VALUES) % SUB_BUCKETS + SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * @param value Latency in milliseconds, negative values are ignored
+     */
+    public void recordValue(long value) {
+        recordValues(value, 1);
+    }
+
+    /**
+     * @param value Latency in milliseconds, negative values are ignored
+     * @param count Number of times the value occurred
+     */
+    public void recordValues(long value, long count) {
+        if (value < 0 || count <= 0) {
+            return;
+        }
+        int index = indexFor(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, index + SUB_BUCKETS);
+        }
+        counts[index] += count;
+        totalCount += count;
+        sum += (double) value * count;
+        minimum = Math.min(minimum, value);
+        maximum = Math.max(maximum, value);
+    }
+
+    /**
+     * Add every value recorded in another histogram to this one.
+     *
+     * @param other LatencyHistogram
+     */
+    public void add(LatencyHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        minimum = Math.min(minimum, other.minimum);
+        maximum = Math.max(maximum, other.maximum);
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return The highest value that is equivalent to the value at the percentile (so never under reports latency)
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * totalCount));
+        long runningCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+            runningCount += counts[i];
+            if (runningCount >= countAtPercentile) {
+                return Math.min(highestValueFor(i), maximum);
+            }
+        }
+
+        return maximum;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMinimum() {
+        return totalCount == 0 ? 0 : minimum;
+    }
+
+    public long getMaximum() {
+        return maximum;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+}
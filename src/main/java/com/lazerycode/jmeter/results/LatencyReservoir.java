@@ -0,0 +1,53 @@
+package com.lazerycode.jmeter.results;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A uniform random sample of a fixed maximum size (reservoir sampling, Algorithm R) of the latencies of a label.
+ * <p/>
+ * Every value recorded has the same chance of being in the reservoir, whatever the number of values recorded, so
+ * distributions from runs of any length can be compared in bounded memory.
+ */
+public class LatencyReservoir {
+
+    private final long[] values;
+    private final Random random;
+    private int size;
+    private long recordedCount;
+
+    /**
+     * @param capacity Maximum number of values kept
+     * @param seed     Seed of the random number generator, so that a reservoir is reproducible for the same results
+     */
+    public LatencyReservoir(int capacity, long seed) {
+        this.values = new long[Math.max(1, capacity)];
+        this.random = new Random(seed);
+    }
+
+    public void recordValue(long value) {
+        recordedCount++;
+        if (size < values.length) {
+            values[size++] = value;
+            return;
+        }
+        long index = (long) (random.nextDouble() * recordedCount);
+        if (index < values.length) {
+            values[(int) index] = value;
+        }
+    }
+
+    /**
+     * @return A copy of the values in the reservoir
+     */
+    public long[] getValues() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @return Number of values recorded, including the ones that are no longer in the reservoir
+     */
+    public long getRecordedCount() {
+        return recordedCount;
+    }
+}
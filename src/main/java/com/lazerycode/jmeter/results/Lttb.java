@@ -0,0 +1,83 @@
+package com.lazerycode.jmeter.results;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling (Sveinn Steinarsson, 2013).
+ * <p/>
+ * The first and last points are always kept, the points in between are split into equal buckets and the point that
+ * forms the largest triangle with the point kept in the previous bucket and the average of the next bucket is kept
+ * from each bucket.  This keeps the visual shape of a series (including its spikes) far better than averaging.
+ */
+final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * @param x         X values, in ascending order
+     * @param y         Y values
+     * @param threshold Number of points to keep
+     * @return The indexes of the points to keep, in ascending order
+     */
+    static int[] select(double[] x, double[] y, int threshold) {
+        int length = x.length;
+        if (threshold >= length) {
+            int[] all = new int[length];
+            for (int i = 0; i < length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        if (threshold < 3) {
+            return firstAndLast(length, threshold);
+        }
+        int[] selected = new int[threshold];
+        double bucketSize = (double) (length - 2) / (threshold - 2);
+        int previous = 0;
+        selected[0] = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, length);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            int nextLength = nextEnd - nextStart;
+            if (nextLength > 0) {
+                averageX /= nextLength;
+                averageY /= nextLength;
+            } else {
+                averageX = x[length - 1];
+                averageY = y[length - 1];
+            }
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double largestArea = -1;
+            int largest = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((x[previous] - averageX) * (y[i] - y[previous]) - (x[previous] - x[i]) * (averageY - y[previous]));
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = i;
+                }
+            }
+            selected[bucket + 1] = largest;
+            previous = largest;
+        }
+        selected[threshold - 1] = length - 1;
+
+        return selected;
+    }
+
+    private static int[] firstAndLast(int length, int threshold) {
+        if (threshold <= 0 || length == 0) {
+            return new int[0];
+        }
+        if (threshold == 1) {
+            return new int[]{0};
+        }
+
+        return new int[]{0, length - 1};
+    }
+}
@@ -0,0 +1,109 @@
+package com.lazerycode.jmeter.results;
+
+import java.util.Arrays;
+
+/**
+ * One sided Mann-Whitney U test of whether the values of a current sample tend to be larger than the values of a
+ * baseline sample.
+ * <p/>
+ * The test only uses the ranks of the values, so it makes no assumption about the shape of latency distributions
+ * (which are skewed and often multi modal).  The normal approximation (with a correction for ties) is used, which is
+ * accurate for the sample sizes that come out of a load test.
+ */
+class MannWhitneyU {
+
+    private final double u;
+    private final double z;
+    private final double pValue;
+    private final double probabilityOfSuperiority;
+
+    private MannWhitneyU(double u, double z, double pValue, double probabilityOfSuperiority) {
+        this.u = u;
+        this.z = z;
+        this.pValue = pValue;
+        this.probabilityOfSuperiority = probabilityOfSuperiority;
+    }
+
+    /**
+     * @param baseline Baseline values
+     * @param current  Current values
+     * @return The result of the test, the p value is 1 if either sample is empty
+     */
+    static MannWhitneyU compare(long[] baseline, long[] current) {
+        int n1 = current.length;
+        int n2 = baseline.length;
+        if (n1 == 0 || n2 == 0) {
+            return new MannWhitneyU(0, 0, 1, 0.5);
+        }
+        int n = n1 + n2;
+        // Sort the combined values, the lowest bit records which sample a value came from
+        long[] combined = new long[n];
+        for (int i = 0; i < n1; i++) {
+            combined[i] = current[i] << 1 | 1;
+        }
+        for (int i = 0; i < n2; i++) {
+            combined[n1 + i] = baseline[i] << 1;
+        }
+        Arrays.sort(combined);
+        double currentRankSum = 0;
+        double tieCorrection = 0;
+        int start = 0;
+        while (start < n) {
+            int end = start;
+            while (end + 1 < n && combined[end + 1] >> 1 == combined[start] >> 1) {
+                end++;
+            }
+            double averageRank = (start + end) / 2d + 1;
+            for (int i = start; i <= end; i++) {
+                if ((combined[i] & 1) == 1) {
+                    currentRankSum += averageRank;
+                }
+            }
+            double ties = end - start + 1;
+            tieCorrection += ties * ties * ties - ties;
+            start = end + 1;
+        }
+        double u = currentRankSum - n1 * (n1 + 1) / 2d;
+        double mean = (double) n1 * n2 / 2;
+        double variance = (double) n1 * n2 / 12 * ((n + 1) - tieCorrection / ((double) n * (n - 1)));
+        if (variance <= 0) {
+            return new MannWhitneyU(u, 0, 1, u / ((double) n1 * n2));
+        }
+        double z = (u - mean - 0.5) / Math.sqrt(variance);
+
+        return new MannWhitneyU(u, z, 1 - normalCumulativeProbability(z), u / ((double) n1 * n2));
+    }
+
+    /**
+     * Abramowitz and Stegun 26.2.17, accurate to 7.5e-8.
+     */
+    static double normalCumulativeProbability(double z) {
+        double t = 1 / (1 + 0.2316419 * Math.abs(z));
+        double density = Math.exp(-z * z / 2) / Math.sqrt(2 * Math.PI);
+        double tail = density * t * (0.319381530 + t * (-0.356563782 + t * (1.781477937 + t * (-1.821255978 + t * 1.330274429))));
+
+        return z >= 0 ? 1 - tail : tail;
+    }
+
+    double getU() {
+        return u;
+    }
+
+    double getZ() {
+        return z;
+    }
+
+    /**
+     * @return Probability of seeing values at least this much larger than the baseline if nothing had changed
+     */
+    double getPValue() {
+        return pValue;
+    }
+
+    /**
+     * @return Probability that a random current value is larger than a random baseline value (0.5 means no difference)
+     */
+    double getProbabilityOfSuperiority() {
+        return probabilityOfSuperiority;
+    }
+}
@@ -0,0 +1,130 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges several results files that cover the same period (e.g. one per load generator) into a single stream of
+ * samples ordered by time stamp.
+ * <p/>
+ * This is a k-way merge: a heap holds one cursor per file, ordered by the time stamp of the next sample in that file,
+ * so only a handful of samples per file are held in memory whatever the size of the files.
+ * <p/>
+ * JMeter writes a sample when it ends, but records the time it started, so each file is only roughly ordered.  Each
+ * cursor reads ahead into a small reorder buffer and hands out the earliest sample in it, which puts samples back in
+ * order as long as they are less than reorderBufferSize samples out of place.
+ */
+public class MergingSampleReader implements SampleReader {
+
+    private static final Comparator<Sample> BY_TIME_STAMP = Comparator.comparingLong(Sample::getTimeStamp);
+    private final List<SampleReader> readers;
+    private final PriorityQueue<Cursor> cursors;
+    private final int reorderBufferSize;
+    private boolean initialised;
+    private long lastTimeStamp = Long.MIN_VALUE;
+    private long outOfOrderSampleCount;
+
+    /**
+     * @param readers           The readers to merge, they are closed when this reader is closed
+     * @param reorderBufferSize Number of samples read ahead in each file to correct samples that are slightly out of order
+     */
+    public MergingSampleReader(List<SampleReader> readers, int reorderBufferSize) {
+        this.readers = new ArrayList<>(readers);
+        this.reorderBufferSize = Math.max(1, reorderBufferSize);
+        this.cursors = new PriorityQueue<>(Math.max(1, readers.size()), Comparator.comparing(Cursor::peek, BY_TIME_STAMP));
+    }
+
+    @Override
+    public Sample next() throws IOException {
+        if (!initialised) {
+            for (SampleReader reader : readers) {
+                Cursor cursor = new Cursor(reader);
+                if (cursor.fill()) {
+                    cursors.add(cursor);
+                }
+            }
+            initialised = true;
+        }
+        Cursor cursor = cursors.poll();
+        if (cursor == null) {
+            return null;
+        }
+        Sample sample = cursor.take();
+        if (cursor.fill()) {
+            cursors.add(cursor);
+        }
+        if (sample.getTimeStamp() < lastTimeStamp) {
+            outOfOrderSampleCount++;
+        } else {
+            lastTimeStamp = sample.getTimeStamp();
+        }
+
+        return sample;
+    }
+
+    /**
+     * @return Number of samples that were too far out of order to be corrected by the reorder buffer
+     */
+    public long getOutOfOrderSampleCount() {
+        return outOfOrderSampleCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (SampleReader reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * The position in a single file, along with the samples that have been read ahead.
+     */
+    private class Cursor {
+        private final SampleReader reader;
+        private final PriorityQueue<Sample> buffer = new PriorityQueue<>(reorderBufferSize, BY_TIME_STAMP);
+        private boolean exhausted;
+
+        Cursor(SampleReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return false once every sample in the file has been taken
+         */
+        boolean fill() throws IOException {
+            while (!exhausted && buffer.size() < reorderBufferSize) {
+                Sample sample = reader.next();
+                if (sample == null) {
+                    exhausted = true;
+                } else {
+                    buffer.add(sample);
+                }
+            }
+
+            return !buffer.isEmpty();
+        }
+
+        Sample peek() {
+            return buffer.peek();
+        }
+
+        Sample take() {
+            return buffer.poll();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An analysis that is fed every sample while the results files are scanned.
+ * <p/>
+ * All analyzers registered with the ResultScanner share a single pass over each results file, so an analyzer must
+ * not hold on to samples it does not need.
+ */
+public interface ResultAnalyzer {
+
+    /**
+     * @param sample A top level sample read from a results file
+     */
+    void sampleOccurred(Sample sample);
+
+    /**
+     * Called after each results file that is scanned on its own, i.e. when the files are not merged.
+     * The next file may well start before the samples of this file (or long after them), so an analysis that follows
+     * the samples over time should complete what it has seen of this file and start again.
+     */
+    default void fileCompleted() {
+    }
+
+    /**
+     * Called once every results file has been scanned, before the summary is requested.
+     *
+     * @throws IOException When any output generated by the analysis cannot be written
+     */
+    default void scanCompleted() throws IOException {
+    }
+
+    /**
+     * @return Lines of text summarising the analysis
+     */
+    List<String> getSummary();
+
+    /**
+     * @return Lines of text highlighting potential problems found during the analysis
+     */
+    default List<String> getWarnings() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return Reasons why the results should not be accepted as valid, any failure will fail the build
+     */
+    default List<String> getFailures() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return Whether {@link #getFailures()} can return any failure, the analysis then needs every sample
+     */
+    default boolean canFailBuild() {
+        return false;
+    }
+}
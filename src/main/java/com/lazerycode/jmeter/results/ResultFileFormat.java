@@ -0,0 +1,80 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The formats JMeter can write results files in.
+ * <p/>
+ * The format is sniffed from the first bytes of each file rather than trusted from configuration, a custom properties
+ * file can override jmeter.save.saveservice.output_format without the plugin knowing about it.
+ */
+public enum ResultFileFormat {
+
+    CSV,
+    XML;
+
+    private static final int SNIFF_LENGTH = 512;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * Work out the format of a results file by looking at its first bytes:
+     * <ul>
+     * <li>An XML prolog or a &lt;testResults&gt; element means XML</li>
+     * <li>Anything else that looks like the start of a CSV record (header or data) means CSV</li>
+     * </ul>
+     *
+     * @param file          The results file
+     * @param defaultFormat The format to use if the file is empty or cannot be read
+     * @return ResultFileFormat
+     */
+    public static ResultFileFormat detect(File file, ResultFileFormat defaultFormat) {
+        byte[] buffer = new byte[SNIFF_LENGTH];
+        int length = 0;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int read;
+            while (length < buffer.length && (read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+        } catch (IOException ex) {
+            return defaultFormat;
+        }
+
+        return detect(new String(buffer, 0, length, StandardCharsets.UTF_8), defaultFormat);
+    }
+
+    static ResultFileFormat detect(String start, ResultFileFormat defaultFormat) {
+        for (int i = 0; i < start.length(); i++) {
+            char ch = start.charAt(i);
+            if (ch == BYTE_ORDER_MARK || Character.isWhitespace(ch)) {
+                continue;
+            }
+            if (ch == '<') {
+                return XML;
+            }
+            if (Character.isLetterOrDigit(ch) || ch == '"') {
+                return CSV;
+            }
+
+            return defaultFormat;
+        }
+
+        return defaultFormat;
+    }
+
+    /**
+     * @param file A results file in this format
+     * @return A SampleReader that streams the samples in the file
+     * @throws IOException When the file cannot be opened
+     */
+    public SampleReader openReader(File file) throws IOException {
+        return this == CSV ? new CsvSampleReader(file) : new XmlSampleReader(file);
+    }
+
+    public static ResultFileFormat fromIsCsv(boolean isCsv) {
+        return isCsv ? CSV : XML;
+    }
+}
@@ -0,0 +1,299 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A sparse index over a results file in CSV format, saved next to the results file with an .idx extension.
+ * <p/>
+ * The file is split into blocks of a fixed number of samples.  For each block the byte offset of its first record is
+ * kept, along with the range of time stamps in the block, a bitmap of the labels it contains and whether it contains
+ * successful and/or failed samples.  A query only has to read the blocks that can contain matching samples, seeking
+ * straight to them, rather than the whole file.
+ * <p/>
+ * Results files are only roughly ordered by time stamp, so the time stamp range of each block is tracked rather than
+ * assuming that blocks do not overlap.
+ */
+public class ResultFileIndex {
+
+    public static final String INDEX_FILE_EXTENSION = ".idx";
+    public static final int DEFAULT_SAMPLES_PER_BLOCK = 1000;
+    private static final int INDEX_FORMAT_VERSION = 1;
+    private final long resultFileLength;
+    private final long resultFileLastModified;
+    private final List<String> labels;
+    private final List<Block> blocks;
+
+    private ResultFileIndex(long resultFileLength, long resultFileLastModified, List<String> labels, List<Block> blocks) {
+        this.resultFileLength = resultFileLength;
+        this.resultFileLastModified = resultFileLastModified;
+        this.labels = labels;
+        this.blocks = blocks;
+    }
+
+    public static File indexFileFor(File resultFile) {
+        return new File(resultFile.getAbsolutePath() + INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * Index a results file by reading it from start to end.
+     *
+     * @param resultFile      A results file in CSV format
+     * @param samplesPerBlock Number of samples in each block of the index
+     * @return ResultFileIndex
+     * @throws IOException When the results file cannot be read
+     */
+    public static ResultFileIndex build(File resultFile, int samplesPerBlock) throws IOException {
+        Builder builder = new Builder(samplesPerBlock);
+        try (CsvSampleReader reader = new CsvSampleReader(resultFile)) {
+            Sample sample;
+            while ((sample = reader.next()) != null) {
+                builder.sampleRead(sample, reader.getRecordOffset());
+            }
+        }
+
+        return builder.build(resultFile);
+    }
+
+    /**
+     * @param resultFile A results file in CSV format
+     * @return The saved index for the results file, or null if there is no index or the results file has changed since it was indexed
+     */
+    public static ResultFileIndex load(File resultFile) {
+        File indexFile = indexFileFor(resultFile);
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (input.readInt() != INDEX_FORMAT_VERSION) {
+                return null;
+            }
+            long length = input.readLong();
+            long lastModified = input.readLong();
+            if (length != resultFile.length() || lastModified != resultFile.lastModified()) {
+                return null;
+            }
+            int labelCount = input.readInt();
+            List<String> labels = new ArrayList<>(labelCount);
+            for (int i = 0; i < labelCount; i++) {
+                labels.add(input.readUTF());
+            }
+            int blockCount = input.readInt();
+            List<Block> blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                long offset = input.readLong();
+                int sampleCount = input.readInt();
+                long minimumTimeStamp = input.readLong();
+                long maximumTimeStamp = input.readLong();
+                boolean containsSuccesses = input.readBoolean();
+                boolean containsFailures = input.readBoolean();
+                long[] words = new long[input.readInt()];
+                for (int word = 0; word < words.length; word++) {
+                    words[word] = input.readLong();
+                }
+                blocks.add(new Block(offset, sampleCount, minimumTimeStamp, maximumTimeStamp, containsSuccesses, containsFailures, BitSet.valueOf(words)));
+            }
+
+            return new ResultFileIndex(length, lastModified, labels, blocks);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Save the index next to the results file it was built from.
+     *
+     * @param resultFile The results file that was indexed
+     * @throws IOException When the index cannot be written
+     */
+    public void save(File resultFile) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFileFor(resultFile))))) {
+            output.writeInt(INDEX_FORMAT_VERSION);
+            output.writeLong(resultFileLength);
+            output.writeLong(resultFileLastModified);
+            output.writeInt(labels.size());
+            for (String label : labels) {
+                output.writeUTF(label);
+            }
+            output.writeInt(blocks.size());
+            for (Block block : blocks) {
+                output.writeLong(block.offset);
+                output.writeInt(block.sampleCount);
+                output.writeLong(block.minimumTimeStamp);
+                output.writeLong(block.maximumTimeStamp);
+                output.writeBoolean(block.containsSuccesses);
+                output.writeBoolean(block.containsFailures);
+                long[] words = block.labels.toLongArray();
+                output.writeInt(words.length);
+                for (long word : words) {
+                    output.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param from         Earliest time stamp to match (inclusive)
+     * @param to           Latest time stamp to match (inclusive)
+     * @param labelPattern Labels to match, null to match every label
+     * @param success      Match successful (true) or failed (false) samples, null to match both
+     * @return The blocks that may contain matching samples, in file order
+     */
+    public List<Block> findBlocks(long from, long to, Pattern labelPattern, Boolean success) {
+        BitSet matchingLabels = new BitSet(labels.size());
+        for (int i = 0; i < labels.size(); i++) {
+            if (labelPattern == null || labelPattern.matcher(labels.get(i)).matches()) {
+                matchingLabels.set(i);
+            }
+        }
+        List<Block> matchingBlocks = new ArrayList<>();
+        if (matchingLabels.isEmpty()) {
+            return matchingBlocks;
+        }
+        for (Block block : blocks) {
+            if (block.maximumTimeStamp < from || block.minimumTimeStamp > to || !block.labels.intersects(matchingLabels)) {
+                continue;
+            }
+            if (success != null && !(success ? block.containsSuccesses : block.containsFailures)) {
+                continue;
+            }
+            matchingBlocks.add(block);
+        }
+
+        return matchingBlocks;
+    }
+
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    public List<String> getLabels() {
+        return Collections.unmodifiableList(labels);
+    }
+
+    /**
+     * A run of consecutive samples in the results file.
+     */
+    public static class Block {
+        private final long offset;
+        private final int sampleCount;
+        private final long minimumTimeStamp;
+        private final long maximumTimeStamp;
+        private final boolean containsSuccesses;
+        private final boolean containsFailures;
+        private final BitSet labels;
+
+        Block(long offset, int sampleCount, long minimumTimeStamp, long maximumTimeStamp, boolean containsSuccesses, boolean containsFailures, BitSet labels) {
+            this.offset = offset;
+            this.sampleCount = sampleCount;
+            this.minimumTimeStamp = minimumTimeStamp;
+            this.maximumTimeStamp = maximumTimeStamp;
+            this.containsSuccesses = containsSuccesses;
+            this.containsFailures = containsFailures;
+            this.labels = labels;
+        }
+
+        /**
+         * @return Byte offset of the first record in the block, see {@link CsvSampleReader#CsvSampleReader(File, long)}
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+
+        public long getMinimumTimeStamp() {
+            return minimumTimeStamp;
+        }
+
+        public long getMaximumTimeStamp() {
+            return maximumTimeStamp;
+        }
+    }
+
+    /**
+     * Builds an index from samples as they are read, so that the index can be built during a scan that is happening anyway.
+     */
+    public static class Builder {
+        private final int samplesPerBlock;
+        private final Map<String, Integer> labelIds = new HashMap<>();
+        private final List<String> labels = new ArrayList<>();
+        private final List<Block> blocks = new ArrayList<>();
+        private long blockOffset;
+        private int blockSampleCount;
+        private long blockMinimumTimeStamp;
+        private long blockMaximumTimeStamp;
+        private boolean blockContainsSuccesses;
+        private boolean blockContainsFailures;
+        private BitSet blockLabels = new BitSet();
+
+        public Builder(int samplesPerBlock) {
+            this.samplesPerBlock = Math.max(1, samplesPerBlock);
+        }
+
+        /**
+         * @param sample Sample that has been read
+         * @param offset Byte offset of the record the sample was read from
+         */
+        public void sampleRead(Sample sample, long offset) {
+            if (blockSampleCount == 0) {
+                blockOffset = offset;
+                blockMinimumTimeStamp = Long.MAX_VALUE;
+                blockMaximumTimeStamp = Long.MIN_VALUE;
+            }
+            blockSampleCount++;
+            if (sample.getTimeStamp() != Sample.NOT_RECORDED) {
+                blockMinimumTimeStamp = Math.min(blockMinimumTimeStamp, sample.getTimeStamp());
+                blockMaximumTimeStamp = Math.max(blockMaximumTimeStamp, sample.getTimeStamp());
+            }
+            if (sample.isSuccess()) {
+                blockContainsSuccesses = true;
+            } else {
+                blockContainsFailures = true;
+            }
+            String label = sample.getLabel() == null ? "" : sample.getLabel();
+            blockLabels.set(labelIds.computeIfAbsent(label, key -> {
+                labels.add(key);
+                return labels.size() - 1;
+            }));
+            if (blockSampleCount == samplesPerBlock) {
+                completeBlock();
+            }
+        }
+
+        /**
+         * @param resultFile The results file that was indexed
+         * @return ResultFileIndex
+         */
+        public ResultFileIndex build(File resultFile) {
+            if (blockSampleCount > 0) {
+                completeBlock();
+            }
+
+            return new ResultFileIndex(resultFile.length(), resultFile.lastModified(), new ArrayList<>(labels), new ArrayList<>(blocks));
+        }
+
+        private void completeBlock() {
+            blocks.add(new Block(blockOffset, blockSampleCount, blockMinimumTimeStamp, blockMaximumTimeStamp, blockContainsSuccesses, blockContainsFailures, blockLabels));
+            blockSampleCount = 0;
+            blockContainsSuccesses = false;
+            blockContainsFailures = false;
+            blockLabels = new BitSet();
+        }
+    }
+}
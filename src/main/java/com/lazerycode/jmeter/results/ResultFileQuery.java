@@ -0,0 +1,130 @@
+package com.lazerycode.jmeter.results;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the samples in a results file in CSV format that match a time range, label and outcome.
+ * <p/>
+ * The {@link ResultFileIndex} of the results file is used to seek straight to the blocks that may contain matching
+ * samples, if there is no up to date index one is built (and saved) first.  Matching records are copied as they were
+ * written by JMeter, so every column of the results file is kept.
+ */
+public class ResultFileQuery {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultFileQuery.class);
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private Pattern labelPattern;
+    private Boolean success;
+    private int samplesPerBlock = ResultFileIndex.DEFAULT_SAMPLES_PER_BLOCK;
+    private long blocksRead;
+
+    /**
+     * @param from Earliest time stamp (start of the sample, in milliseconds) to match, inclusive
+     * @return this
+     */
+    public ResultFileQuery setFrom(long from) {
+        this.from = from;
+
+        return this;
+    }
+
+    /**
+     * @param to Latest time stamp (start of the sample, in milliseconds) to match, inclusive
+     * @return this
+     */
+    public ResultFileQuery setTo(long to) {
+        this.to = to;
+
+        return this;
+    }
+
+    /**
+     * @param labelPattern Regular expression that has to match the whole label, null to match every label
+     * @return this
+     */
+    public ResultFileQuery setLabelPattern(Pattern labelPattern) {
+        this.labelPattern = labelPattern;
+
+        return this;
+    }
+
+    /**
+     * @param success Match only successful (true) or failed (false) samples, null to match both
+     * @return this
+     */
+    public ResultFileQuery setSuccess(Boolean success) {
+        this.success = success;
+
+        return this;
+    }
+
+    /**
+     * @param samplesPerBlock Number of samples in each block when an index has to be built
+     * @return this
+     */
+    public ResultFileQuery setSamplesPerBlock(int samplesPerBlock) {
+        this.samplesPerBlock = samplesPerBlock;
+
+        return this;
+    }
+
+    /**
+     * @param resultFile A results file in CSV format
+     * @param writer     Matching records are copied here, it has to have been created with the header of the results file
+     * @return Number of matching samples
+     * @throws IOException When the results file cannot be read or the output cannot be written
+     */
+    public long run(File resultFile, CsvSampleWriter writer) throws IOException {
+        ResultFileIndex index = ResultFileIndex.load(resultFile);
+        if (index == null) {
+            LOGGER.info("Indexing '{}'", resultFile);
+            index = ResultFileIndex.build(resultFile, samplesPerBlock);
+            index.save(resultFile);
+        }
+        List<ResultFileIndex.Block> blocks = index.findBlocks(from, to, labelPattern, success);
+        LOGGER.debug("{} of {} blocks in '{}' may contain matching samples", blocks.size(), index.getBlocks().size(), resultFile);
+        long matchCount = 0;
+        for (ResultFileIndex.Block block : blocks) {
+            try (CsvSampleReader reader = new CsvSampleReader(resultFile, block.getOffset())) {
+                for (int i = 0; i < block.getSampleCount(); i++) {
+                    Sample sample = reader.next();
+                    if (sample == null) {
+                        break;
+                    }
+                    if (matches(sample)) {
+                        writer.writeRecord(sample.getCsvRecord());
+                        matchCount++;
+                    }
+                }
+            }
+            blocksRead++;
+        }
+
+        return matchCount;
+    }
+
+    /**
+     * @return Number of blocks read by all the queries that have been run
+     */
+    public long getBlocksRead() {
+        return blocksRead;
+    }
+
+    boolean matches(Sample sample) {
+        if (sample.getTimeStamp() < from || sample.getTimeStamp() > to) {
+            return false;
+        }
+        if (success != null && (!sample.isSuccessRecorded() || sample.isSuccess() != success)) {
+            return false;
+        }
+
+        return labelPattern == null || (sample.getLabel() != null && labelPattern.matcher(sample.getLabel()).matches());
+    }
+}
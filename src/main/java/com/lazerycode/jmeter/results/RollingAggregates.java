@@ -0,0 +1,157 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates results one segment (a slice of the run) at a time, keeping totals for the whole run.
+ * <p/>
+ * Each segment is summarised per label (samples, failures, mean and percentiles) as soon as it has been read, and
+ * the summary is appended to a CSV file.  Only a latency histogram per label is kept for the whole run, so memory
+ * does not grow with the length of the run and a segment can be deleted once it has been aggregated.
+ */
+public class RollingAggregates {
+
+    static final String TOTAL_LABEL = "TOTAL";
+    private static final String HEADER = "segment,label,samples,failures,meanElapsed,p50Elapsed,p90Elapsed,p99Elapsed,maxElapsed";
+    private final File summaryFile;
+    private final Map<String, LabelAggregate> runAggregates = new TreeMap<>();
+    private final LabelAggregate runTotal = new LabelAggregate();
+    private int segmentCount;
+
+    /**
+     * @param summaryFile CSV file the summary of each segment is appended to
+     */
+    public RollingAggregates(File summaryFile) {
+        this.summaryFile = summaryFile;
+    }
+
+    /**
+     * Read and aggregate a segment, segments should be added in order.
+     *
+     * @param segment A results file in CSV format
+     * @return The summary of the segment
+     * @throws IOException When the segment cannot be read or the summary cannot be written
+     */
+    public synchronized List<String> addSegment(File segment) throws IOException {
+        segmentCount++;
+        Map<String, LabelAggregate> segmentAggregates = new TreeMap<>();
+        LabelAggregate segmentTotal = new LabelAggregate();
+        try (CsvSampleReader reader = new CsvSampleReader(segment)) {
+            Sample sample;
+            while ((sample = reader.next()) != null) {
+                segmentAggregates.computeIfAbsent(sample.getLabel() == null ? "" : sample.getLabel(), label -> new LabelAggregate()).add(sample);
+                segmentTotal.add(sample);
+            }
+        }
+        for (Map.Entry<String, LabelAggregate> entry : segmentAggregates.entrySet()) {
+            runAggregates.computeIfAbsent(entry.getKey(), label -> new LabelAggregate()).add(entry.getValue());
+        }
+        runTotal.add(segmentTotal);
+        writeSummary(segmentAggregates, segmentTotal);
+
+        List<String> summary = new ArrayList<>();
+        summary.add(String.format("Segment %s (%s): %s", segmentCount, segment.getName(), segmentTotal.describe()));
+        summary.add(String.format("Whole run so far: %s", runTotal.describe()));
+
+        return summary;
+    }
+
+    /**
+     * @return The per label summary of every segment aggregated so far
+     */
+    public synchronized List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        summary.add(String.format("%s segments aggregated, segment summaries written to %s", segmentCount, summaryFile));
+        for (Map.Entry<String, LabelAggregate> entry : runAggregates.entrySet()) {
+            summary.add(String.format("%-40s %s", entry.getKey(), entry.getValue().describe()));
+        }
+        summary.add(String.format("%-40s %s", TOTAL_LABEL, runTotal.describe()));
+
+        return summary;
+    }
+
+    public synchronized long getSampleCount() {
+        return runTotal.sampleCount;
+    }
+
+    public synchronized long getFailureCount() {
+        return runTotal.failureCount;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segmentCount;
+    }
+
+    private void writeSummary(Map<String, LabelAggregate> segmentAggregates, LabelAggregate segmentTotal) throws IOException {
+        File parent = summaryFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent.getAbsolutePath());
+        }
+        boolean writeHeader = !summaryFile.exists() || summaryFile.length() == 0;
+        try (Writer writer = new BufferedWriter(new FileWriter(summaryFile, true))) {
+            if (writeHeader) {
+                writer.write(HEADER);
+                writer.write('\n');
+            }
+            for (Map.Entry<String, LabelAggregate> entry : segmentAggregates.entrySet()) {
+                writer.write(entry.getValue().toCsv(segmentCount, entry.getKey()));
+            }
+            writer.write(segmentTotal.toCsv(segmentCount, TOTAL_LABEL));
+        }
+    }
+
+    private static class LabelAggregate {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private long sampleCount;
+        private long failureCount;
+
+        void add(Sample sample) {
+            sampleCount++;
+            if (!sample.isSuccess()) {
+                failureCount++;
+            }
+            latencies.recordValue(sample.getElapsed());
+        }
+
+        void add(LabelAggregate other) {
+            sampleCount += other.sampleCount;
+            failureCount += other.failureCount;
+            latencies.add(other.latencies);
+        }
+
+        String describe() {
+            return String.format("%s samples, %s failures (%.2f%%), mean %.1fms, p90 %sms, p99 %sms, max %sms",
+                    sampleCount,
+                    failureCount,
+                    sampleCount == 0 ? 0 : failureCount * 100d / sampleCount,
+                    latencies.getMean(),
+                    latencies.getValueAtPercentile(90),
+                    latencies.getValueAtPercentile(99),
+                    latencies.getMaximum()
+            );
+        }
+
+        String toCsv(int segment, String label) {
+            return String.format(Locale.ROOT, "%s,\"%s\",%s,%s,%.1f,%s,%s,%s,%s%n",
+                    segment,
+                    label.replace("\"", "\"\""),
+                    sampleCount,
+                    failureCount,
+                    latencies.getMean(),
+                    latencies.getValueAtPercentile(50),
+                    latencies.getValueAtPercentile(90),
+                    latencies.getValueAtPercentile(99),
+                    latencies.getMaximum()
+            );
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.lazerycode.jmeter.results;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single sample read from a JMeter results file (either CSV or XML format).
+ * <p/>
+ * Numeric values that were not saved by JMeter (see the jmeter.save.saveservice.* properties) are set to {@link #NOT_RECORDED}.
+ * A sample whose outcome was not saved is neither a success nor a failure, see {@link #isSuccessRecorded()}.
+ */
+public class Sample {
+
+    public static final long NOT_RECORDED = -1L;
+
+    private long timeStamp = NOT_RECORDED;
+    private long elapsed = NOT_RECORDED;
+    private long latency = NOT_RECORDED;
+    private long connect = NOT_RECORDED;
+    private long bytes = NOT_RECORDED;
+    private long sentBytes = NOT_RECORDED;
+    private String label;
+    private String threadName;
+    private String responseCode;
+    private boolean success;
+    private boolean successRecorded;
+    private String csvRecord;
+    private List<Sample> subResults = new ArrayList<>();
+    private List<AssertionResult> assertionResults = new ArrayList<>();
+
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    public Sample setTimeStamp(long timeStamp) {
+        this.timeStamp = timeStamp;
+
+        return this;
+    }
+
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    public Sample setElapsed(long elapsed) {
+        this.elapsed = elapsed;
+
+        return this;
+    }
+
+    /**
+     * @return Time to first byte (this includes the connect time)
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    public Sample setLatency(long latency) {
+        this.latency = latency;
+
+        return this;
+    }
+
+    public long getConnect() {
+        return connect;
+    }
+
+    public Sample setConnect(long connect) {
+        this.connect = connect;
+
+        return this;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public Sample setBytes(long bytes) {
+        this.bytes = bytes;
+
+        return this;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    public Sample setSentBytes(long sentBytes) {
+        this.sentBytes = sentBytes;
+
+        return this;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public Sample setLabel(String label) {
+        this.label = label;
+
+        return this;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public Sample setThreadName(String threadName) {
+        this.threadName = threadName;
+
+        return this;
+    }
+
+    public String getResponseCode() {
+        return responseCode;
+    }
+
+    public Sample setResponseCode(String responseCode) {
+        this.responseCode = responseCode;
+
+        return this;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public Sample setSuccess(boolean success) {
+        this.success = success;
+        this.successRecorded = true;
+
+        return this;
+    }
+
+    /**
+     * @return Whether the outcome of the sample was saved, {@link #isSuccess()} is false when it was not
+     */
+    public boolean isSuccessRecorded() {
+        return successRecorded;
+    }
+
+    /**
+     * @return The record the sample was read from, as written by JMeter, only populated when reading CSV results
+     */
+    public String getCsvRecord() {
+        return csvRecord;
+    }
+
+    public Sample setCsvRecord(String csvRecord) {
+        this.csvRecord = csvRecord;
+
+        return this;
+    }
+
+    /**
+     * @return Child samples (e.g. embedded resources), only populated when reading XML results
+     */
+    public List<Sample> getSubResults() {
+        return subResults;
+    }
+
+    public Sample addSubResult(Sample subResult) {
+        subResults.add(subResult);
+
+        return this;
+    }
+
+    /**
+     * @return The assertions applied to this sample, only populated when reading XML results
+     */
+    public List<AssertionResult> getAssertionResults() {
+        return assertionResults;
+    }
+
+    public Sample addAssertionResult(AssertionResult assertionResult) {
+        assertionResults.add(assertionResult);
+
+        return this;
+    }
+}
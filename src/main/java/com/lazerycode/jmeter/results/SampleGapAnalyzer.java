@@ -0,0 +1,240 @@
+package com.lazerycode.jmeter.results;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detects periods in which the load generator stopped (or nearly stopped) starting samples, e.g. because the JMeter
+ * JVM was paused for garbage collection, swapped out or starved of CPU.  Latencies measured around such a stall are
+ * not trustworthy, so the stalls are reported and can optionally invalidate the run.
+ * <p/>
+ * Two conditions are detected from the sample start times:
+ * <ul>
+ * <li>a gap: no sample started for longer than the maximum gap (measured to {@link #GAP_RESOLUTION_IN_MILLISECONDS})</li>
+ * <li>a rate drop: the number of samples started in a second falls below a fraction of the running average</li>
+ * </ul>
+ * A rate drop that lasts until the end of the test is not reported, this is the test ramping down.
+ * <p/>
+ * Results files that are scanned one after the other are analysed separately: the time between two tests is not a
+ * stall, and a file that overlaps the previous one is not dropped as out of order.
+ */
+public class SampleGapAnalyzer implements ResultAnalyzer {
+
+    static final long GAP_RESOLUTION_IN_MILLISECONDS = 100;
+    static final int MAX_REPORTED_STALLS = 20;
+    private static final long ONE_SECOND = 1000;
+    private static final long REORDER_WINDOW_IN_MILLISECONDS = 60 * ONE_SECOND;
+    private static final int WARM_UP_SECONDS = 10;
+    private static final int RUNNING_AVERAGE_SECONDS = 60;
+    private static final long NONE = Long.MIN_VALUE;
+    private final long maxGapInMilliseconds;
+    private final double rateDropFraction;
+    private final boolean failOnStall;
+    private final TimeSeriesBuckets gapBuckets;
+    private final TimeSeriesBuckets rateBuckets;
+    private final List<Stall> stalls = new ArrayList<>();
+    private long gapStart = NONE;
+    private long rateDropStart = NONE;
+    private long rateDropLowest;
+    private double averageRate;
+    private long averagedSeconds;
+    private long stallCount;
+
+    /**
+     * @param maxGapInMilliseconds Longest period in which no sample may start, 0 to disable gap detection
+     * @param rateDropFraction     Fraction of the running average start rate below which a second counts as a rate drop, 0 to disable
+     * @param failOnStall          Report stalls as failures (invalid load generation) rather than warnings
+     */
+    public SampleGapAnalyzer(long maxGapInMilliseconds, float rateDropFraction, boolean failOnStall) {
+        this.maxGapInMilliseconds = maxGapInMilliseconds;
+        this.rateDropFraction = rateDropFraction;
+        this.failOnStall = failOnStall;
+        this.gapBuckets = new TimeSeriesBuckets(GAP_RESOLUTION_IN_MILLISECONDS, REORDER_WINDOW_IN_MILLISECONDS, 1, true, this::gapBucketCompleted);
+        this.rateBuckets = new TimeSeriesBuckets(ONE_SECOND, REORDER_WINDOW_IN_MILLISECONDS, 1, true, this::rateBucketCompleted);
+    }
+
+    @Override
+    public void sampleOccurred(Sample sample) {
+        if (sample.getTimeStamp() == Sample.NOT_RECORDED) {
+            return;
+        }
+        gapBuckets.add(sample.getTimeStamp(), 1);
+        rateBuckets.add(sample.getTimeStamp(), 1);
+    }
+
+    @Override
+    public void fileCompleted() {
+        gapBuckets.flush();
+        rateBuckets.flush();
+        gapBuckets.reset();
+        rateBuckets.reset();
+        gapStart = NONE;
+        rateDropStart = NONE;
+        averageRate = 0;
+        averagedSeconds = 0;
+    }
+
+    @Override
+    public void scanCompleted() {
+        gapBuckets.flush();
+        rateBuckets.flush();
+    }
+
+    private void gapBucketCompleted(long bucketStart, long[] values) {
+        if (values[0] == 0) {
+            if (gapStart == NONE) {
+                gapStart = bucketStart;
+            }
+            return;
+        }
+        if (gapStart != NONE && maxGapInMilliseconds > 0 && bucketStart - gapStart > maxGapInMilliseconds) {
+            addStall(new Stall(gapStart, bucketStart, "no samples started"));
+        }
+        gapStart = NONE;
+    }
+
+    private void rateBucketCompleted(long secondStart, long[] values) {
+        long rate = values[0];
+        boolean dropped = rateDropFraction > 0 && averagedSeconds >= WARM_UP_SECONDS && rate < averageRate * rateDropFraction;
+        if (dropped) {
+            if (rateDropStart == NONE) {
+                rateDropStart = secondStart;
+                rateDropLowest = rate;
+            }
+            rateDropLowest = Math.min(rateDropLowest, rate);
+            return;
+        }
+        if (rateDropStart != NONE) {
+            addStall(new Stall(rateDropStart, secondStart, String.format("start rate fell to %s/s from an average of %.1f/s", rateDropLowest, averageRate)));
+            rateDropStart = NONE;
+        }
+        // Seconds in a rate drop are left out of the average, so a long stall does not become the new normal
+        averagedSeconds++;
+        averageRate += (rate - averageRate) / Math.min(averagedSeconds, RUNNING_AVERAGE_SECONDS);
+    }
+
+    private void addStall(Stall stall) {
+        stallCount++;
+        if (!stalls.isEmpty() && stall.getStart() <= stalls.get(stalls.size() - 1).getEnd()) {
+            stalls.set(stalls.size() - 1, stalls.get(stalls.size() - 1).merge(stall));
+            stallCount--;
+        } else if (stalls.size() < MAX_REPORTED_STALLS) {
+            stalls.add(stall);
+        }
+    }
+
+    /**
+     * @return Detected stalls in time order, overlapping stalls are merged (at most {@link #MAX_REPORTED_STALLS})
+     */
+    public List<Stall> getStalls() {
+        return stalls;
+    }
+
+    /**
+     * @return Number of stalls detected, including those that are not reported
+     */
+    public long getStallCount() {
+        return stallCount;
+    }
+
+    @Override
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        summary.add(String.format("Load generation stalls: %s (gaps over %sms, or start rate below %.0f%% of its running average)",
+                stallCount,
+                maxGapInMilliseconds,
+                rateDropFraction * 100
+        ));
+        for (Stall stall : stalls) {
+            summary.add(String.format("  %s for %sms: %s", Instant.ofEpochMilli(stall.getStart()), stall.getDurationInMilliseconds(), stall.getReason()));
+        }
+        if (stallCount > stalls.size()) {
+            summary.add(String.format("  ... and %s more", stallCount - stalls.size()));
+        }
+
+        return summary;
+    }
+
+    /**
+     * @return Number of samples that started too far out of time order to be analysed
+     */
+    public long getLateSampleCount() {
+        return rateBuckets.getLateValueCount();
+    }
+
+    @Override
+    public List<String> getWarnings() {
+        List<String> warnings = failOnStall ? new ArrayList<>() : stallMessages();
+        if (getLateSampleCount() > 0) {
+            warnings.add(String.format("%s samples started more than %ss before the latest sample and were left out of the stall detection",
+                    getLateSampleCount(),
+                    REORDER_WINDOW_IN_MILLISECONDS / ONE_SECOND
+            ));
+        }
+
+        return warnings;
+    }
+
+    @Override
+    public boolean canFailBuild() {
+        return failOnStall;
+    }
+
+    @Override
+    public List<String> getFailures() {
+        return failOnStall ? stallMessages() : new ArrayList<>();
+    }
+
+    private List<String> stallMessages() {
+        List<String> messages = new ArrayList<>();
+        if (stallCount > 0) {
+            long stalledMilliseconds = 0;
+            for (Stall stall : stalls) {
+                stalledMilliseconds += stall.getDurationInMilliseconds();
+            }
+            messages.add(String.format("Invalid load generation: the load generator stalled %s times (%sms in the reported stalls), results around %s are not trustworthy",
+                    stallCount,
+                    stalledMilliseconds,
+                    Instant.ofEpochMilli(stalls.get(0).getStart())
+            ));
+        }
+
+        return messages;
+    }
+
+    /**
+     * A period in which the load generator stopped, or nearly stopped, starting samples.
+     */
+    public static class Stall {
+        private final long start;
+        private final long end;
+        private final String reason;
+
+        Stall(long start, long end, String reason) {
+            this.start = start;
+            this.end = end;
+            this.reason = reason;
+        }
+
+        Stall merge(Stall other) {
+            return new Stall(Math.min(start, other.start), Math.max(end, other.end), reason + ", " + other.reason);
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getDurationInMilliseconds() {
+            return end - start;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+}
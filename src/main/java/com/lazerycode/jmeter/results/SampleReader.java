@@ -0,0 +1,16 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Streams samples out of a JMeter results file one at a time, so that the file never has to be held in memory.
+ */
+public interface SampleReader extends Closeable {
+
+    /**
+     * @return The next sample in the file, or null once the end of the file has been reached
+     * @throws IOException When the file cannot be read
+     */
+    Sample next() throws IOException;
+}
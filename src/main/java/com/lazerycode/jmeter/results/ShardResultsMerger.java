@@ -0,0 +1,174 @@
+package com.lazerycode.jmeter.results;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Merges the CSV results files written by the shards of a test into one results file, in time order, so that JMeter
+ * can generate a single HTML report for the whole test.
+ * <p/>
+ * The records are copied as JMeter wrote them, under the header of the shard files, so every column the report
+ * generator reads is kept.  Only the active thread counts are changed: the grpThreads and allThreads of each record
+ * are added to the latest counts of the other shards, so that the active threads graph shows the whole test rather
+ * than a single shard.
+ */
+public class ShardResultsMerger {
+
+    private static final char QUOTE = '"';
+    private static final Pattern THREAD_NUMBER = Pattern.compile(" \\d+-\\d+$");
+    private final int reorderBufferSize;
+
+    /**
+     * @param reorderBufferSize Number of samples read ahead in each file to put samples that are slightly out of order back in order
+     */
+    public ShardResultsMerger(int reorderBufferSize) {
+        this.reorderBufferSize = reorderBufferSize;
+    }
+
+    /**
+     * @param shardResultFiles  The results files of the shards, in CSV format with the same header
+     * @param mergedResultsFile The merged results file
+     * @return Number of records written
+     * @throws IOException When a file cannot be read, is not in CSV format or does not have the header of the others
+     */
+    public long merge(List<File> shardResultFiles, File mergedResultsFile) throws IOException {
+        List<CsvSampleReader> readers = openReaders(shardResultFiles);
+        String header = readers.get(0).getHeader();
+        char separator = CsvSampleReader.lookForDelimiter(header);
+        List<String> columns = CsvSampleReader.splitLine(header, separator);
+        int groupThreadsColumn = columns.indexOf("grpThreads");
+        int allThreadsColumn = columns.indexOf("allThreads");
+        Map<Sample, Integer> shardOfSample = new IdentityHashMap<>();
+        List<SampleReader> shardReaders = new ArrayList<>();
+        for (int shardIndex = 0; shardIndex < readers.size(); shardIndex++) {
+            shardReaders.add(new ShardReader(readers.get(shardIndex), shardIndex, shardOfSample));
+        }
+        long[] allThreadsByShard = new long[readers.size()];
+        Map<String, long[]> groupThreadsByShard = new HashMap<>();
+        long recordCount = 0;
+        try (MergingSampleReader reader = new MergingSampleReader(shardReaders, reorderBufferSize);
+             CsvSampleWriter writer = new CsvSampleWriter(mergedResultsFile, header)) {
+            Sample sample;
+            while ((sample = reader.next()) != null) {
+                int shardIndex = shardOfSample.remove(sample);
+                String record = sample.getCsvRecord();
+                List<String> values = CsvSampleReader.splitLine(record, separator);
+                if (groupThreadsColumn >= 0 && sample.getThreadName() != null) {
+                    long[] groupThreads = groupThreadsByShard.computeIfAbsent(threadGroupOf(sample.getThreadName()), group -> new long[readers.size()]);
+                    record = sumThreadCount(record, separator, values, groupThreadsColumn, groupThreads, shardIndex);
+                }
+                if (allThreadsColumn >= 0) {
+                    record = sumThreadCount(record, separator, values, allThreadsColumn, allThreadsByShard, shardIndex);
+                }
+                writer.writeRecord(record);
+                recordCount++;
+            }
+        }
+
+        return recordCount;
+    }
+
+    private static List<CsvSampleReader> openReaders(List<File> shardResultFiles) throws IOException {
+        List<CsvSampleReader> readers = new ArrayList<>();
+        try {
+            for (File file : shardResultFiles) {
+                if (ResultFileFormat.detect(file, ResultFileFormat.CSV) != ResultFileFormat.CSV) {
+                    throw new IOException(file.getAbsolutePath() + " is not in CSV format, only CSV results can be merged");
+                }
+                CsvSampleReader reader = new CsvSampleReader(file);
+                readers.add(reader);
+                if (!reader.getHeader().equals(readers.get(0).getHeader())) {
+                    throw new IOException(file.getAbsolutePath() + " does not have the columns of " + shardResultFiles.get(0).getAbsolutePath());
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            for (CsvSampleReader reader : readers) {
+                reader.close();
+            }
+            throw ex;
+        }
+        if (readers.isEmpty()) {
+            throw new IOException("There are no results files to merge");
+        }
+
+        return readers;
+    }
+
+    /**
+     * Records the thread count of a shard, and replaces it in the record by the total over all shards.
+     */
+    private static String sumThreadCount(String record, char separator, List<String> values, int column, long[] countByShard, int shardIndex) {
+        if (column >= values.size() || !values.get(column).matches("\\d+")) {
+            return record;
+        }
+        countByShard[shardIndex] = Long.parseLong(values.get(column));
+        long total = 0;
+        for (long count : countByShard) {
+            total += count;
+        }
+
+        return replaceValue(record, separator, column, String.valueOf(total));
+    }
+
+    /**
+     * JMeter names threads after their thread group, followed by the group number and the thread number.
+     */
+    static String threadGroupOf(String threadName) {
+        return THREAD_NUMBER.matcher(threadName).replaceFirst("");
+    }
+
+    static String replaceValue(String record, char separator, int column, String value) {
+        int valueStart = 0;
+        int currentColumn = 0;
+        boolean quoted = false;
+        for (int i = 0; i <= record.length(); i++) {
+            if (i == record.length() || (!quoted && record.charAt(i) == separator)) {
+                if (currentColumn == column) {
+                    return record.substring(0, valueStart) + value + record.substring(i);
+                }
+                currentColumn++;
+                valueStart = i + 1;
+            } else if (record.charAt(i) == QUOTE) {
+                quoted = !quoted;
+            }
+        }
+
+        return record;
+    }
+
+    /**
+     * Remembers which shard each sample was read from.
+     */
+    private static class ShardReader implements SampleReader {
+        private final SampleReader reader;
+        private final int shardIndex;
+        private final Map<Sample, Integer> shardOfSample;
+
+        ShardReader(SampleReader reader, int shardIndex, Map<Sample, Integer> shardOfSample) {
+            this.reader = reader;
+            this.shardIndex = shardIndex;
+            this.shardOfSample = shardOfSample;
+        }
+
+        @Override
+        public Sample next() throws IOException {
+            Sample sample = reader.next();
+            if (sample != null) {
+                shardOfSample.put(sample, shardIndex);
+            }
+
+            return sample;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.lazerycode.jmeter.results;
+
+import com.lazerycode.jmeter.configuration.ServiceLevelAgreement;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the error rate, 95th percentile elapsed time and throughput of each label against service level agreements
+ * and writes the outcome as a JUnit XML report, so that CI servers show one test case per label and threshold.
+ * <p/>
+ * Only a histogram and a few counters are kept per label, the report is built from the same single pass over the
+ * results files as every other analysis.
+ */
+public class SlaReportAnalyzer implements ResultAnalyzer {
+
+    static final String ERROR_RATE = "error rate";
+    static final String P95_ELAPSED = "p95 elapsed";
+    static final String THROUGHPUT = "throughput";
+    private static final String TEST_SUITE_NAME = "JMeter service level agreements";
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private final List<ServiceLevelAgreement> agreements;
+    private final List<Pattern> labelPatterns = new ArrayList<>();
+    private final File reportFile;
+    private final boolean failOnBreach;
+    private final Map<String, LabelAggregate> aggregatesByLabel = new TreeMap<>();
+    private final List<TestCase> testCases = new ArrayList<>();
+    private long firstStart = Long.MAX_VALUE;
+    private long lastEnd = Long.MIN_VALUE;
+
+    /**
+     * @param agreements   Service level agreements, the first agreement that matches a label is applied to it
+     * @param reportFile   JUnit XML file the report is written to
+     * @param failOnBreach Report breached agreements as failures rather than warnings
+     */
+    public SlaReportAnalyzer(List<ServiceLevelAgreement> agreements, File reportFile, boolean failOnBreach) {
+        this.agreements = agreements;
+        this.reportFile = reportFile;
+        this.failOnBreach = failOnBreach;
+        for (ServiceLevelAgreement agreement : agreements) {
+            labelPatterns.add(agreement.getLabel() == null ? null : Pattern.compile(agreement.getLabel()));
+        }
+    }
+
+    @Override
+    public void sampleOccurred(Sample sample) {
+        String label = sample.getLabel() == null ? "" : sample.getLabel();
+        aggregatesByLabel.computeIfAbsent(label, key -> new LabelAggregate()).add(sample);
+        if (sample.getTimeStamp() != Sample.NOT_RECORDED) {
+            firstStart = Math.min(firstStart, sample.getTimeStamp());
+            lastEnd = Math.max(lastEnd, sample.getTimeStamp() + Math.max(0, sample.getElapsed()));
+        }
+    }
+
+    @Override
+    public void scanCompleted() throws IOException {
+        testCases.clear();
+        for (Map.Entry<String, LabelAggregate> entry : aggregatesByLabel.entrySet()) {
+            ServiceLevelAgreement agreement = agreementFor(entry.getKey());
+            if (agreement != null) {
+                addTestCases(entry.getKey(), entry.getValue(), agreement);
+            }
+        }
+        File parent = reportFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent.getAbsolutePath());
+        }
+        try (OutputStream output = new FileOutputStream(reportFile)) {
+            writeReport(output);
+        } catch (XMLStreamException ex) {
+            throw new IOException("Unable to write " + reportFile.getAbsolutePath(), ex);
+        }
+    }
+
+    private ServiceLevelAgreement agreementFor(String label) {
+        for (int i = 0; i < agreements.size(); i++) {
+            Pattern labelPattern = labelPatterns.get(i);
+            if (labelPattern == null || labelPattern.matcher(label).matches()) {
+                return agreements.get(i);
+            }
+        }
+
+        return null;
+    }
+
+    private void addTestCases(String label, LabelAggregate aggregate, ServiceLevelAgreement agreement) {
+        if (agreement.getMaxErrorRateInPercent() != null) {
+            double errorRate = aggregate.failureCount * 100d / aggregate.sampleCount;
+            testCases.add(new TestCase(label, ERROR_RATE, errorRate > agreement.getMaxErrorRateInPercent(),
+                    String.format(Locale.ROOT, "measured %.2f%%, allowed at most %.2f%%", errorRate, agreement.getMaxErrorRateInPercent())));
+        }
+        if (agreement.getMaxP95ElapsedInMilliseconds() != null) {
+            long p95 = aggregate.latencies.getValueAtPercentile(95);
+            testCases.add(new TestCase(label, P95_ELAPSED, p95 > agreement.getMaxP95ElapsedInMilliseconds(),
+                    String.format(Locale.ROOT, "measured %sms, allowed at most %sms", p95, agreement.getMaxP95ElapsedInMilliseconds())));
+        }
+        if (agreement.getMinThroughputPerSecond() != null) {
+            double throughput = aggregate.getThroughputPerSecond();
+            testCases.add(new TestCase(label, THROUGHPUT, throughput < agreement.getMinThroughputPerSecond(),
+                    String.format(Locale.ROOT, "measured %.2f/s, required at least %.2f/s", throughput, agreement.getMinThroughputPerSecond())));
+        }
+    }
+
+    private void writeReport(OutputStream output) throws XMLStreamException {
+        XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(output, StandardCharsets.UTF_8.name());
+        writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+        writer.writeCharacters("\n");
+        writer.writeStartElement("testsuite");
+        writer.writeAttribute("name", TEST_SUITE_NAME);
+        writer.writeAttribute("tests", String.valueOf(testCases.size()));
+        writer.writeAttribute("failures", String.valueOf(getBreachedTestCases().size()));
+        writer.writeAttribute("errors", "0");
+        writer.writeAttribute("skipped", "0");
+        writer.writeAttribute("time", String.format(Locale.ROOT, "%.3f", getRunDurationInMilliseconds() / 1000d));
+        writer.writeCharacters("\n");
+        for (TestCase testCase : testCases) {
+            writer.writeCharacters("  ");
+            writer.writeStartElement("testcase");
+            writer.writeAttribute("classname", testCase.getLabel());
+            writer.writeAttribute("name", testCase.getThreshold());
+            writer.writeAttribute("time", "0");
+            if (testCase.isBreached()) {
+                writer.writeCharacters("\n    ");
+                writer.writeEmptyElement("failure");
+                writer.writeAttribute("type", "ServiceLevelAgreementBreach");
+                writer.writeAttribute("message", testCase.getMessage());
+                writer.writeCharacters("\n  ");
+            } else {
+                writer.writeStartElement("system-out");
+                writer.writeCharacters(testCase.getMessage());
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+        }
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+        writer.writeEndDocument();
+        writer.close();
+    }
+
+    private long getRunDurationInMilliseconds() {
+        return lastEnd < firstStart ? 0 : lastEnd - firstStart;
+    }
+
+    public List<TestCase> getTestCases() {
+        return testCases;
+    }
+
+    private List<TestCase> getBreachedTestCases() {
+        List<TestCase> breached = new ArrayList<>();
+        for (TestCase testCase : testCases) {
+            if (testCase.isBreached()) {
+                breached.add(testCase);
+            }
+        }
+
+        return breached;
+    }
+
+    @Override
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        summary.add(String.format("Service level agreements: %s checks on %s labels, %s breached, JUnit report written to %s",
+                testCases.size(),
+                aggregatesByLabel.size(),
+                getBreachedTestCases().size(),
+                reportFile
+        ));
+
+        return summary;
+    }
+
+    @Override
+    public List<String> getWarnings() {
+        return failOnBreach ? new ArrayList<>() : breaches();
+    }
+
+    @Override
+    public boolean canFailBuild() {
+        return failOnBreach;
+    }
+
+    @Override
+    public List<String> getFailures() {
+        return failOnBreach ? breaches() : new ArrayList<>();
+    }
+
+    private List<String> breaches() {
+        List<String> breaches = new ArrayList<>();
+        for (TestCase testCase : getBreachedTestCases()) {
+            breaches.add(String.format("'%s' breached its %s agreement: %s", testCase.getLabel(), testCase.getThreshold(), testCase.getMessage()));
+        }
+
+        return breaches;
+    }
+
+    private static class LabelAggregate {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private long sampleCount;
+        private long failureCount;
+        private long firstStart = Long.MAX_VALUE;
+        private long lastEnd = Long.MIN_VALUE;
+
+        void add(Sample sample) {
+            sampleCount++;
+            if (!sample.isSuccess()) {
+                failureCount++;
+            }
+            if (sample.getElapsed() != Sample.NOT_RECORDED) {
+                latencies.recordValue(sample.getElapsed());
+            }
+            if (sample.getTimeStamp() != Sample.NOT_RECORDED) {
+                firstStart = Math.min(firstStart, sample.getTimeStamp());
+                lastEnd = Math.max(lastEnd, sample.getTimeStamp() + Math.max(0, sample.getElapsed()));
+            }
+        }
+
+        /**
+         * @return Samples per second between the start of the first sample and the end of the last one, as JMeter works it out
+         */
+        double getThroughputPerSecond() {
+            long durationInMilliseconds = lastEnd < firstStart ? 0 : lastEnd - firstStart;
+
+            return sampleCount * 1000d / Math.max(1, durationInMilliseconds);
+        }
+    }
+
+    /**
+     * The outcome of checking a single threshold of a single label.
+     */
+    public static class TestCase {
+        private final String label;
+        private final String threshold;
+        private final boolean breached;
+        private final String message;
+
+        TestCase(String label, String threshold, boolean breached, String message) {
+            this.label = label;
+            this.threshold = threshold;
+            this.breached = breached;
+            this.message = message;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getThreshold() {
+            return threshold;
+        }
+
+        public boolean isBreached() {
+            return breached;
+        }
+
+        /**
+         * @return The measured and the allowed value
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+}
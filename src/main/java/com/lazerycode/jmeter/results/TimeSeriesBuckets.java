@@ -0,0 +1,145 @@
+package com.lazerycode.jmeter.results;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates values into fixed size time buckets and hands each bucket to a listener, in time order, once it can no
+ * longer change.
+ * <p/>
+ * JMeter writes a sample when it ends, but records the time it started, so results files are only roughly ordered by
+ * time stamp.  Buckets are held back for a reorder window before they are completed, which keeps memory bounded by
+ * the size of the window rather than the length of the test.  For the same reason at most a reorder window of empty
+ * buckets is filled in for a gap, the series then carries on from the next bucket with values, so results files that
+ * are hours apart do not produce millions of empty buckets.
+ */
+class TimeSeriesBuckets {
+
+    private static final long NONE = Long.MIN_VALUE;
+    private final long bucketSizeInMilliseconds;
+    private final long reorderWindowInBuckets;
+    private final int valuesPerBucket;
+    private final boolean fillGaps;
+    private final BucketListener listener;
+    private final TreeMap<Long, long[]> pendingBuckets = new TreeMap<>();
+    private long latestBucket = NONE;
+    private long lastCompletedBucket = NONE;
+    private long lastNonEmptyBucket = NONE;
+    private long lateValueCount;
+
+    /**
+     * @param bucketSizeInMilliseconds    Width of each bucket
+     * @param reorderWindowInMilliseconds How far behind the latest time stamp a value may arrive and still be counted in its bucket
+     * @param valuesPerBucket             Number of values summed in each bucket
+     * @param fillGaps                    Complete empty buckets (with all values set to zero) for periods without any values,
+     *                                    up to the length of the reorder window
+     * @param listener                    Notified for each completed bucket
+     */
+    TimeSeriesBuckets(long bucketSizeInMilliseconds, long reorderWindowInMilliseconds, int valuesPerBucket, boolean fillGaps, BucketListener listener) {
+        this.bucketSizeInMilliseconds = bucketSizeInMilliseconds;
+        this.reorderWindowInBuckets = Math.max(1, reorderWindowInMilliseconds / bucketSizeInMilliseconds);
+        this.valuesPerBucket = valuesPerBucket;
+        this.fillGaps = fillGaps;
+        this.listener = listener;
+    }
+
+    /**
+     * @param timeStamp Time stamp in milliseconds
+     * @param values    Values to add to the bucket the time stamp falls into
+     * @return false if the bucket had already been completed, in which case the values are ignored
+     */
+    boolean add(long timeStamp, long... values) {
+        long bucket = Math.floorDiv(timeStamp, bucketSizeInMilliseconds);
+        if (lastCompletedBucket != NONE && bucket <= lastCompletedBucket) {
+            lateValueCount++;
+            return false;
+        }
+        long[] totals = pendingBuckets.computeIfAbsent(bucket, key -> new long[valuesPerBucket]);
+        for (int i = 0; i < values.length; i++) {
+            totals[i] += values[i];
+        }
+        if (latestBucket == NONE || bucket > latestBucket) {
+            latestBucket = bucket;
+            completeBucketsBefore(latestBucket - reorderWindowInBuckets);
+        }
+
+        return true;
+    }
+
+    /**
+     * Complete every remaining bucket, this should be called once all values have been added.
+     */
+    void flush() {
+        if (latestBucket != NONE) {
+            completeBucketsBefore(latestBucket + 1);
+        }
+    }
+
+    /**
+     * Forget every bucket so that the next value starts a new series, whatever its time stamp.
+     * Buckets that have not been completed are dropped, call {@link #flush()} first to complete them.
+     */
+    void reset() {
+        pendingBuckets.clear();
+        latestBucket = NONE;
+        lastCompletedBucket = NONE;
+        lastNonEmptyBucket = NONE;
+    }
+
+    /**
+     * @return Number of values that arrived after their bucket had been completed
+     */
+    long getLateValueCount() {
+        return lateValueCount;
+    }
+
+    long getBucketSizeInMilliseconds() {
+        return bucketSizeInMilliseconds;
+    }
+
+    private void completeBucketsBefore(long limit) {
+        if (fillGaps) {
+            long next = lastCompletedBucket == NONE ? firstPendingBucket() : lastCompletedBucket + 1;
+            for (long bucket = next; bucket < limit && bucket != NONE; bucket++) {
+                long[] totals = pendingBuckets.remove(bucket);
+                if (totals == null && bucket - lastNonEmptyBucket > reorderWindowInBuckets) {
+                    Long nextNonEmptyBucket = pendingBuckets.ceilingKey(bucket);
+                    if (nextNonEmptyBucket == null || nextNonEmptyBucket >= limit) {
+                        lastCompletedBucket = limit - 1;
+                        break;
+                    }
+                    bucket = nextNonEmptyBucket;
+                    totals = pendingBuckets.remove(bucket);
+                }
+                if (totals != null) {
+                    lastNonEmptyBucket = bucket;
+                }
+                listener.bucketCompleted(bucket * bucketSizeInMilliseconds, totals == null ? new long[valuesPerBucket] : totals);
+                lastCompletedBucket = bucket;
+            }
+        } else {
+            Map<Long, long[]> completed = pendingBuckets.headMap(limit);
+            for (Map.Entry<Long, long[]> entry : completed.entrySet()) {
+                listener.bucketCompleted(entry.getKey() * bucketSizeInMilliseconds, entry.getValue());
+                lastCompletedBucket = entry.getKey();
+            }
+            completed.clear();
+        }
+    }
+
+    private long firstPendingBucket() {
+        return pendingBuckets.isEmpty() ? NONE : pendingBuckets.firstKey();
+    }
+
+    /**
+     * Receives completed buckets in time order.
+     */
+    interface BucketListener {
+
+        /**
+         * @param bucketStart Time stamp (in milliseconds) at the start of the bucket
+         * @param values      Summed values for the bucket
+         */
+        void bucketCompleted(long bucketStart, long[] values);
+    }
+}
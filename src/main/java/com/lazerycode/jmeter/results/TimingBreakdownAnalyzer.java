@@ -0,0 +1,158 @@
+package com.lazerycode.jmeter.results;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Splits the elapsed time of each sample into:
+ * <ul>
+ * <li>connect time (Connect)</li>
+ * <li>server time, the time to first byte after the connection was established (Latency - Connect)</li>
+ * <li>download time (elapsed - Latency)</li>
+ * </ul>
+ * and aggregates them per label.
+ * <p/>
+ * It also keeps track of the share of samples that had to open a new connection, if nearly every sample opens a new
+ * connection it is very likely that keep-alive has been disabled in the test plan.
+ */
+public class TimingBreakdownAnalyzer implements ResultAnalyzer {
+
+    static final String TOTAL_LABEL = "TOTAL";
+    private static final int MINIMUM_SAMPLES_FOR_CONNECTION_WARNING = 10;
+    private final Map<String, TimingBreakdown> breakdownsByLabel = new TreeMap<>();
+    private final TimingBreakdown total = new TimingBreakdown();
+    private final float newConnectionWarningThresholdInPercent;
+
+    /**
+     * @param newConnectionWarningThresholdInPercent Warn when the share of samples opening a new connection reaches this percentage
+     */
+    public TimingBreakdownAnalyzer(float newConnectionWarningThresholdInPercent) {
+        this.newConnectionWarningThresholdInPercent = newConnectionWarningThresholdInPercent;
+    }
+
+    @Override
+    public void sampleOccurred(Sample sample) {
+        if (sample.getElapsed() == Sample.NOT_RECORDED || sample.getLatency() == Sample.NOT_RECORDED || sample.getConnect() == Sample.NOT_RECORDED) {
+            return;
+        }
+        breakdownsByLabel.computeIfAbsent(sample.getLabel(), label -> new TimingBreakdown()).add(sample);
+        total.add(sample);
+    }
+
+    /**
+     * @param label The sample label
+     * @return The timing breakdown for the label, or null if no samples with timing information were found for it
+     */
+    public TimingBreakdown getBreakdown(String label) {
+        return breakdownsByLabel.get(label);
+    }
+
+    public TimingBreakdown getTotal() {
+        return total;
+    }
+
+    @Override
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        if (total.getSampleCount() == 0) {
+            summary.add("No Latency/Connect timings found, make sure jmeter.save.saveservice.latency and jmeter.save.saveservice.connect_time are enabled");
+            return summary;
+        }
+        summary.add(String.format("%-40s %10s %12s %12s %12s %12s %16s", "Label", "Samples", "Avg elapsed", "Avg connect", "Avg server", "Avg download", "New connections"));
+        for (Map.Entry<String, TimingBreakdown> entry : breakdownsByLabel.entrySet()) {
+            summary.add(formatRow(entry.getKey(), entry.getValue()));
+        }
+        summary.add(formatRow(TOTAL_LABEL, total));
+
+        return summary;
+    }
+
+    @Override
+    public List<String> getWarnings() {
+        List<String> warnings = new ArrayList<>();
+        for (Map.Entry<String, TimingBreakdown> entry : breakdownsByLabel.entrySet()) {
+            TimingBreakdown breakdown = entry.getValue();
+            if (breakdown.getSampleCount() >= MINIMUM_SAMPLES_FOR_CONNECTION_WARNING && breakdown.getNewConnectionPercentage() >= newConnectionWarningThresholdInPercent) {
+                warnings.add(String.format(
+                        "'%s' opened a new connection for %.1f%% of samples, check that keep-alive has not been disabled in your test plan",
+                        entry.getKey(),
+                        breakdown.getNewConnectionPercentage()
+                ));
+            }
+        }
+
+        return warnings;
+    }
+
+    private static String formatRow(String label, TimingBreakdown breakdown) {
+        return String.format("%-40s %10d %10.1fms %10.1fms %10.1fms %10.1fms %15.1f%%",
+                label,
+                breakdown.getSampleCount(),
+                breakdown.getAverageElapsed(),
+                breakdown.getAverageConnect(),
+                breakdown.getAverageServer(),
+                breakdown.getAverageDownload(),
+                breakdown.getNewConnectionPercentage()
+        );
+    }
+
+    /**
+     * Running totals of the timing breakdown for a single label.
+     */
+    public static class TimingBreakdown {
+        private long sampleCount;
+        private long newConnectionCount;
+        private long totalElapsed;
+        private long totalConnect;
+        private long totalServer;
+        private long totalDownload;
+
+        void add(Sample sample) {
+            long connect = Math.max(0, sample.getConnect());
+            long latency = Math.max(connect, sample.getLatency());
+            long elapsed = Math.max(latency, sample.getElapsed());
+            sampleCount++;
+            if (connect > 0) {
+                newConnectionCount++;
+            }
+            totalElapsed += elapsed;
+            totalConnect += connect;
+            totalServer += latency - connect;
+            totalDownload += elapsed - latency;
+        }
+
+        public long getSampleCount() {
+            return sampleCount;
+        }
+
+        public long getNewConnectionCount() {
+            return newConnectionCount;
+        }
+
+        public double getAverageElapsed() {
+            return average(totalElapsed);
+        }
+
+        public double getAverageConnect() {
+            return average(totalConnect);
+        }
+
+        public double getAverageServer() {
+            return average(totalServer);
+        }
+
+        public double getAverageDownload() {
+            return average(totalDownload);
+        }
+
+        public double getNewConnectionPercentage() {
+            return average(newConnectionCount * 100);
+        }
+
+        private double average(long value) {
+            return sampleCount == 0 ? 0 : (double) value / sampleCount;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.lazerycode.jmeter.results;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates how much of the elapsed time of each parent sample (transaction controllers, pages with embedded
+ * resources) is spent in each of its children, so that a slow transaction can be traced to the child that made it
+ * slow rather than adding the same time up in several flat per label rows.
+ * <p/>
+ * XML results nest child samples in their parent.  CSV results (with jmeter.save.saveservice.subresults enabled, or
+ * transaction controllers that do not generate a parent sample) write every sample as a separate row, so the tree is
+ * rebuilt per thread while streaming: a sample whose time range encloses another sample of the same thread is its
+ * parent.  Children may be written before their parent (transaction controllers) or after it (sub results), both are
+ * handled.  Only a bounded number of recent samples per thread are kept as candidates, and only totals are kept per
+ * parent and child label.
+ */
+public class TransactionHierarchyAnalyzer implements ResultAnalyzer {
+
+    static final int MAX_CANDIDATES_PER_THREAD = 100;
+    private final Map<String, ParentAggregate> parents = new TreeMap<>();
+    private final Map<String, LinkedList<Candidate>> candidatesByThread = new HashMap<>();
+
+    @Override
+    public void sampleOccurred(Sample sample) {
+        if (sample.getSubResults().isEmpty()) {
+            rowOccurred(sample);
+        } else {
+            addTree(sample);
+        }
+    }
+
+    /**
+     * A sample read with its children already attached (XML results).
+     */
+    private void addTree(Sample parent) {
+        if (parent.getSubResults().isEmpty()) {
+            return;
+        }
+        ParentAggregate aggregate = parentAggregate(parent.getLabel());
+        aggregate.add(parent.getElapsed());
+        for (Sample child : parent.getSubResults()) {
+            aggregate.childOccurred(child.getLabel(), child.getElapsed());
+            addTree(child);
+        }
+    }
+
+    /**
+     * A sample that may be the parent, or a child, of other samples of the same thread (CSV results).
+     */
+    private void rowOccurred(Sample sample) {
+        if (sample.getTimeStamp() == Sample.NOT_RECORDED || sample.getElapsed() == Sample.NOT_RECORDED) {
+            return;
+        }
+        Candidate row = new Candidate(sample);
+        LinkedList<Candidate> candidates = candidatesByThread.computeIfAbsent(sample.getThreadName() == null ? "" : sample.getThreadName(), thread -> new LinkedList<>());
+        Candidate parent = null;
+        for (ListIterator<Candidate> iterator = candidates.listIterator(candidates.size()); iterator.hasPrevious(); ) {
+            Candidate candidate = iterator.previous();
+            if (candidate.encloses(row)) {
+                parent = candidate;
+                break;
+            }
+        }
+        if (parent != null) {
+            attribute(parent, row);
+            row.hasParent = true;
+        } else {
+            for (ListIterator<Candidate> iterator = candidates.listIterator(); iterator.hasNext(); ) {
+                Candidate candidate = iterator.next();
+                if (row.encloses(candidate)) {
+                    // A candidate that already has a parent is a grandchild of this row, it is only counted in its parent
+                    if (!candidate.hasParent) {
+                        attribute(row, candidate);
+                    }
+                    iterator.remove();
+                }
+            }
+        }
+        candidates.add(row);
+        if (candidates.size() > MAX_CANDIDATES_PER_THREAD) {
+            candidates.removeFirst();
+        }
+    }
+
+    private void attribute(Candidate parent, Candidate child) {
+        ParentAggregate aggregate = parentAggregate(parent.label);
+        if (!parent.isParent) {
+            parent.isParent = true;
+            aggregate.add(parent.elapsed);
+        }
+        aggregate.childOccurred(child.label, child.elapsed);
+    }
+
+    private ParentAggregate parentAggregate(String label) {
+        return parents.computeIfAbsent(label == null ? "" : label, key -> new ParentAggregate());
+    }
+
+    /**
+     * @param parentLabel Label of a parent sample
+     * @return The aggregated children of the parent, or null if no sample with this label had children
+     */
+    public ParentAggregate getParent(String parentLabel) {
+        return parents.get(parentLabel);
+    }
+
+    @Override
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        if (parents.isEmpty()) {
+            summary.add("No samples with child samples found, nothing to break down");
+            return summary;
+        }
+        summary.add(String.format("%-40s %10s %12s %12s %14s", "Transaction / child", "Samples", "Per parent", "Avg elapsed", "Parent time"));
+        for (Map.Entry<String, ParentAggregate> entry : parents.entrySet()) {
+            ParentAggregate parent = entry.getValue();
+            summary.add(String.format("%-40s %10d %12s %10.1fms", entry.getKey(), parent.getSampleCount(), "", parent.getAverageElapsed()));
+            List<Map.Entry<String, ChildAggregate>> children = new ArrayList<>(parent.children.entrySet());
+            children.sort((first, second) -> Long.compare(second.getValue().totalElapsed, first.getValue().totalElapsed));
+            for (Map.Entry<String, ChildAggregate> child : children) {
+                summary.add(String.format("  %-38s %10d %12.2f %10.1fms %13.1f%%",
+                        child.getKey(),
+                        child.getValue().getSampleCount(),
+                        (double) child.getValue().getSampleCount() / parent.getSampleCount(),
+                        child.getValue().getAverageElapsed(),
+                        parent.getShareInPercent(child.getKey())
+                ));
+            }
+        }
+
+        return summary;
+    }
+
+    /**
+     * A sample of a thread that may still turn out to be the parent of a later sample.
+     */
+    private static class Candidate {
+        private final String label;
+        private final long start;
+        private final long end;
+        private final long elapsed;
+        private boolean isParent;
+        private boolean hasParent;
+
+        Candidate(Sample sample) {
+            this.label = sample.getLabel();
+            this.start = sample.getTimeStamp();
+            this.elapsed = sample.getElapsed();
+            this.end = start + elapsed;
+        }
+
+        boolean encloses(Candidate other) {
+            return elapsed > 0 && start <= other.start && other.end <= end && !(start == other.start && end == other.end);
+        }
+    }
+
+    /**
+     * The children of every sample with the same label.
+     */
+    public static class ParentAggregate {
+        private final Map<String, ChildAggregate> children = new TreeMap<>();
+        private long sampleCount;
+        private long totalElapsed;
+
+        void add(long elapsed) {
+            sampleCount++;
+            totalElapsed += Math.max(0, elapsed);
+        }
+
+        void childOccurred(String label, long elapsed) {
+            children.computeIfAbsent(label == null ? "" : label, key -> new ChildAggregate()).add(elapsed);
+        }
+
+        public long getSampleCount() {
+            return sampleCount;
+        }
+
+        public double getAverageElapsed() {
+            return sampleCount == 0 ? 0 : (double) totalElapsed / sampleCount;
+        }
+
+        public ChildAggregate getChild(String label) {
+            return children.get(label);
+        }
+
+        /**
+         * @param childLabel Label of a child sample
+         * @return Share of the elapsed time of the parent spent in the child, children that run in parallel (e.g.
+         * embedded resources) can add up to more than 100%
+         */
+        public double getShareInPercent(String childLabel) {
+            ChildAggregate child = children.get(childLabel);
+
+            return child == null || totalElapsed == 0 ? 0 : child.totalElapsed * 100d / totalElapsed;
+        }
+    }
+
+    /**
+     * A child label within a parent.
+     */
+    public static class ChildAggregate {
+        private long sampleCount;
+        private long totalElapsed;
+
+        void add(long elapsed) {
+            sampleCount++;
+            totalElapsed += Math.max(0, elapsed);
+        }
+
+        public long getSampleCount() {
+            return sampleCount;
+        }
+
+        public double getAverageElapsed() {
+            return sampleCount == 0 ? 0 : (double) totalElapsed / sampleCount;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.lazerycode.jmeter.results;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads samples from a JMeter results file in XML format using a streaming (StAX) parser.
+ * <p/>
+ * Only top level samples are returned, nested samples (e.g. embedded resources or transaction children) are attached
+ * to their parent as sub results.  Assertion results are attached to the sample they were applied to.
+ * <p/>
+ * A JMeter that was killed (e.g. by a test timeout) leaves a results file that ends part way through a sample.  The
+ * samples before the point where the file can no longer be parsed are returned, a warning is logged for the rest.  A
+ * file that cannot be parsed before its last line is malformed rather than truncated, and cannot be read.
+ */
+public class XmlSampleReader implements SampleReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XmlSampleReader.class);
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final InputStream inputStream;
+    private final XMLStreamReader xmlReader;
+    private final File file;
+    private boolean endOfReadableSamples;
+
+    public XmlSampleReader(File file) throws IOException {
+        this.file = file;
+        this.inputStream = new BufferedInputStream(new FileInputStream(file), DEFAULT_BUFFER_SIZE);
+        try {
+            this.xmlReader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+        } catch (XMLStreamException ex) {
+            inputStream.close();
+            throw new IOException("Unable to parse " + file.getAbsolutePath(), ex);
+        }
+    }
+
+    static boolean isSampleElement(String elementName) {
+        return "httpSample".equals(elementName) || "sample".equals(elementName);
+    }
+
+    @Override
+    public Sample next() throws IOException {
+        if (endOfReadableSamples) {
+            return null;
+        }
+        Deque<Sample> openSamples = new ArrayDeque<>();
+        try {
+            while (xmlReader.hasNext()) {
+                int event = xmlReader.next();
+                if (event == XMLStreamConstants.START_ELEMENT && isSampleElement(xmlReader.getLocalName())) {
+                    Sample sample = readAttributes(xmlReader);
+                    if (!openSamples.isEmpty()) {
+                        openSamples.peek().addSubResult(sample);
+                    }
+                    openSamples.push(sample);
+                } else if (event == XMLStreamConstants.START_ELEMENT && "assertionResult".equals(xmlReader.getLocalName()) && !openSamples.isEmpty()) {
+                    openSamples.peek().addAssertionResult(readAssertionResult(xmlReader));
+                } else if (event == XMLStreamConstants.END_ELEMENT && isSampleElement(xmlReader.getLocalName())) {
+                    Sample sample = openSamples.pop();
+                    if (openSamples.isEmpty()) {
+                        return sample;
+                    }
+                }
+            }
+        } catch (XMLStreamException ex) {
+            endOfReadableSamples = true;
+            int lineNumber = ex.getLocation() == null ? -1 : ex.getLocation().getLineNumber();
+            if (lineNumber < 0 || hasContentAfterLine(lineNumber)) {
+                throw new IOException("Unable to parse " + file.getAbsolutePath() + " at line " + lineNumber + ": " + ex.getMessage(), ex);
+            }
+            LOGGER.warn("{} cannot be read past line {} (it was truncated when JMeter was stopped), the samples after it are ignored: {}",
+                    file.getAbsolutePath(), lineNumber, ex.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * A parse error on the last line of the file is where a truncated file ends, anything after it is a malformed file.
+     */
+    private boolean hasContentAfterLine(int lineNumber) throws IOException {
+        try (BufferedReader lines = Files.newBufferedReader(file.toPath(), StandardCharsets.ISO_8859_1)) {
+            int currentLineNumber = 0;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                currentLineNumber++;
+                if (currentLineNumber > lineNumber && !line.trim().isEmpty()) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static Sample readAttributes(XMLStreamReader xmlReader) {
+        Sample sample = new Sample();
+        for (int i = 0; i < xmlReader.getAttributeCount(); i++) {
+            String value = xmlReader.getAttributeValue(i);
+            switch (xmlReader.getAttributeLocalName(i)) {
+                case "ts":
+                    sample.setTimeStamp(longValue(value));
+                    break;
+                case "t":
+                    sample.setElapsed(longValue(value));
+                    break;
+                case "lt":
+                    sample.setLatency(longValue(value));
+                    break;
+                case "ct":
+                    sample.setConnect(longValue(value));
+                    break;
+                case "by":
+                    sample.setBytes(longValue(value));
+                    break;
+                case "sby":
+                    sample.setSentBytes(longValue(value));
+                    break;
+                case "lb":
+                    sample.setLabel(value);
+                    break;
+                case "tn":
+                    sample.setThreadName(value);
+                    break;
+                case "rc":
+                    sample.setResponseCode(value);
+                    break;
+                case "s":
+                    if (!value.isEmpty()) {
+                        sample.setSuccess("true".equals(value));
+                    }
+                    break;
+                default:
+                    //Attributes that are not used in result analysis
+                    break;
+            }
+        }
+
+        return sample;
+    }
+
+    /**
+     * Read an assertionResult element, leaving the reader on its end element.
+     */
+    private static AssertionResult readAssertionResult(XMLStreamReader xmlReader) throws XMLStreamException {
+        AssertionResult assertionResult = new AssertionResult();
+        while (xmlReader.hasNext()) {
+            int event = xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String elementName = xmlReader.getLocalName();
+                String value = xmlReader.getElementText();
+                switch (elementName) {
+                    case "name":
+                        assertionResult.setName(value);
+                        break;
+                    case "failure":
+                        assertionResult.setFailure("true".equals(value));
+                        break;
+                    case "error":
+                        assertionResult.setError("true".equals(value));
+                        break;
+                    case "failureMessage":
+                        assertionResult.setFailureMessage(value);
+                        break;
+                    default:
+                        break;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "assertionResult".equals(xmlReader.getLocalName())) {
+                break;
+            }
+        }
+
+        return assertionResult;
+    }
+
+    private static long longValue(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            return Sample.NOT_RECORDED;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xmlReader.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        } finally {
+            inputStream.close();
+        }
+    }
+}
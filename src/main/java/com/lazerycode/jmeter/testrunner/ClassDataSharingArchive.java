@@ -0,0 +1,169 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dynamic class data sharing (AppCDS) archive of the classes JMeter loads when it starts, so that forked JMeter
+ * JVMs map them from the archive rather than loading and verifying them from the jars again.
+ * <p/>
+ * The archive is created by a short training launch of JMeter with -XX:ArchiveClassesAtExit (Java 13 or later) and
+ * is stored in the JMeter bin directory with a description of what it was created from: the java runtime, the JMeter
+ * jar and a fingerprint of every jar in the bin and lib directories.  It is only used by a JVM started from the same
+ * runtime with the same JMeter jar, and only while the jars are unchanged, otherwise the JVM would ignore it (with a
+ * warning) or use classes that no longer match.
+ */
+public class ClassDataSharingArchive {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassDataSharingArchive.class);
+    static final String ARCHIVE_FILE_NAME = "jmeter-cds.jsa";
+    static final String DESCRIPTION_FILE_NAME = "jmeter-cds.properties";
+    static final String TRAINING_OUTPUT_FILE_NAME = "jmeter-cds-training.log";
+    private static final String JAVA_RUNTIME = "javaRuntime";
+    private static final String RUNTIME_JAR_NAME = "runtimeJarName";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final long TRAINING_TIMEOUT_IN_MINUTES = 5;
+    private final File binDirectory;
+
+    /**
+     * @param binDirectory The JMeter bin directory
+     */
+    public ClassDataSharingArchive(File binDirectory) {
+        this.binDirectory = binDirectory;
+    }
+
+    public File getArchiveFile() {
+        return new File(binDirectory, ARCHIVE_FILE_NAME);
+    }
+
+    /**
+     * Creates the archive, unless an archive of the same jars already exists.
+     *
+     * @param javaRuntime    The java executable used to run JMeter
+     * @param runtimeJarName The JMeter jar, relative to the bin directory
+     * @return The archive has been created, false if the java runtime cannot create one
+     * @throws IOException When the training launch cannot be started or the archive cannot be described
+     */
+    public boolean create(String javaRuntime, String runtimeJarName) throws IOException {
+        if (isUsableBy(javaRuntime, runtimeJarName)) {
+            LOGGER.info("Class data sharing archive {} is up to date", getArchiveFile().getAbsolutePath());
+            return true;
+        }
+        File archiveFile = getArchiveFile();
+        File descriptionFile = new File(binDirectory, DESCRIPTION_FILE_NAME);
+        if ((archiveFile.exists() && !archiveFile.delete()) || (descriptionFile.exists() && !descriptionFile.delete())) {
+            throw new IOException("Unable to delete existing class data sharing archive " + archiveFile.getAbsolutePath());
+        }
+        File trainingOutput = new File(binDirectory, TRAINING_OUTPUT_FILE_NAME);
+        LOGGER.info("Creating class data sharing archive {}...", archiveFile.getAbsolutePath());
+        Process training = new ProcessBuilder(javaRuntime, "-XX:ArchiveClassesAtExit=" + archiveFile.getAbsolutePath(), "-Djava.awt.headless=true", "-jar", runtimeJarName, "--version")
+                .directory(binDirectory)
+                .redirectErrorStream(true)
+                .redirectOutput(trainingOutput)
+                .start();
+        try {
+            if (!training.waitFor(TRAINING_TIMEOUT_IN_MINUTES, TimeUnit.MINUTES)) {
+                training.destroyForcibly();
+                LOGGER.warn("Class data sharing training launch did not finish, see {}", trainingOutput.getAbsolutePath());
+                return false;
+            }
+        } catch (InterruptedException ex) {
+            training.destroyForcibly();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (training.exitValue() != 0 || !archiveFile.isFile()) {
+            LOGGER.warn("Unable to create a class data sharing archive (Java 13 or later is required), see {}", trainingOutput.getAbsolutePath());
+            return false;
+        }
+        describe(javaRuntime, runtimeJarName);
+
+        return true;
+    }
+
+    /**
+     * Records what the archive was created from.
+     */
+    void describe(String javaRuntime, String runtimeJarName) throws IOException {
+        Properties description = new Properties();
+        description.setProperty(JAVA_RUNTIME, javaRuntime);
+        description.setProperty(RUNTIME_JAR_NAME, runtimeJarName);
+        description.setProperty(FINGERPRINT, fingerprint(runtimeJarName));
+        try (OutputStream output = new FileOutputStream(new File(binDirectory, DESCRIPTION_FILE_NAME))) {
+            description.store(output, "Class data sharing archive created by the jmeter-maven-plugin");
+        }
+    }
+
+    /**
+     * @param javaRuntime    The java executable a JVM is started with
+     * @param runtimeJarName The jar a JVM is started with
+     * @return The archive exists and was created by the same runtime from the same jars
+     */
+    public boolean isUsableBy(String javaRuntime, String runtimeJarName) {
+        File descriptionFile = new File(binDirectory, DESCRIPTION_FILE_NAME);
+        if (!getArchiveFile().isFile() || !descriptionFile.isFile()) {
+            return false;
+        }
+        Properties description = new Properties();
+        try (InputStream input = new FileInputStream(descriptionFile)) {
+            description.load(input);
+            if (!javaRuntime.equals(description.getProperty(JAVA_RUNTIME)) || !runtimeJarName.equals(description.getProperty(RUNTIME_JAR_NAME))) {
+                return false;
+            }
+            if (!fingerprint(runtimeJarName).equals(description.getProperty(FINGERPRINT))) {
+                LOGGER.warn("The JMeter jars have changed since class data sharing archive {} was created, it will not be used", getArchiveFile().getAbsolutePath());
+                return false;
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to read {}: {}", descriptionFile.getAbsolutePath(), ex.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return A digest of the name, size and modification time of the JMeter jar and every jar JMeter loads from lib
+     */
+    String fingerprint(String runtimeJarName) throws IOException {
+        List<File> jars = new ArrayList<>();
+        jars.add(new File(binDirectory, runtimeJarName));
+        File libDirectory = new File(binDirectory.getParentFile(), "lib");
+        for (File directory : Arrays.asList(libDirectory, new File(libDirectory, "ext"), new File(libDirectory, "junit"))) {
+            File[] directoryJars = directory.listFiles((dir, name) -> name.endsWith(".jar"));
+            if (directoryJars != null) {
+                Arrays.sort(directoryJars);
+                jars.addAll(Arrays.asList(directoryJars));
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (File jar : jars) {
+                digest.update(String.format("%s|%s|%s%n", jar.getAbsolutePath(), jar.length(), jar.lastModified()).getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder fingerprint = new StringBuilder();
+            for (byte b : digest.digest()) {
+                fingerprint.append(String.format("%02x", b));
+            }
+
+            return fingerprint.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("Unable to fingerprint JMeter jars", ex);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.lazerycode.jmeter.testrunner;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summary of a Java Flight Recorder recording of a JMeter JVM, to tell whether JMeter itself limited a test: time
+ * spent in GC pauses, CPU usage, the methods that were running and allocating most, and the monitors threads were
+ * blocked on.
+ * <p/>
+ * The recording is read with the jfr tool of the JDK JMeter ran on (Java 11 or later), which prints the events as
+ * JSON.  Only the top frame of each stack trace is printed and the events are read one at a time, so recordings of
+ * long tests can be summarised without reading them into memory.
+ */
+public class FlightRecordingSummary {
+
+    static final String EVENTS = "jdk.GarbageCollection,jdk.CPULoad,jdk.ExecutionSample,jdk.ObjectAllocationSample,"
+            + "jdk.ObjectAllocationInNewTLAB,jdk.ObjectAllocationOutsideTLAB,jdk.JavaMonitorEnter";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final long JFR_TIMEOUT_IN_MINUTES = 10;
+    private static final int TOP_METHODS = 5;
+    private static final double ONE_MEGABYTE = 1024 * 1024;
+    private int gcCount;
+    private long totalGcPauseInNanoseconds;
+    private long longestGcPauseInNanoseconds;
+    private int cpuLoadCount;
+    private double totalJvmCpuLoad;
+    private double peakJvmCpuLoad;
+    private double totalMachineCpuLoad;
+    private long executionSampleCount;
+    private final Map<String, Long> executionSamplesByMethod = new HashMap<>();
+    private final Map<String, Long> allocatedBytesByMethod = new HashMap<>();
+    private long contendedMonitorEnterCount;
+    private long totalContentionInNanoseconds;
+    private final Map<String, Long> contentionInNanosecondsByMonitorClass = new HashMap<>();
+
+    /**
+     * @param recording   A flight recording
+     * @param javaRuntime The java executable of the JDK whose jfr tool reads the recording
+     * @return The summary of the recording
+     * @throws IOException When the jfr tool cannot be run or its output cannot be read
+     */
+    public static FlightRecordingSummary read(File recording, String javaRuntime) throws IOException {
+        String jfr = TestTimeoutWatchdog.jdkTool(new File(javaRuntime).getAbsoluteFile().getParentFile(), "jfr");
+        File events = File.createTempFile("jfr-events", ".json");
+        File errors = File.createTempFile("jfr-errors", ".log");
+        try {
+            Process process = new ProcessBuilder(jfr, "print", "--json", "--stack-depth", "1", "--events", EVENTS, recording.getAbsolutePath())
+                    .redirectOutput(events)
+                    .redirectError(errors)
+                    .start();
+            if (!process.waitFor(JFR_TIMEOUT_IN_MINUTES, TimeUnit.MINUTES)) {
+                process.destroyForcibly();
+                throw new IOException(jfr + " did not finish reading " + recording.getName());
+            }
+            if (process.exitValue() != 0) {
+                throw new IOException(jfr + " failed: " + new String(Files.readAllBytes(errors.toPath()), StandardCharsets.UTF_8).trim());
+            }
+            try (InputStream json = new FileInputStream(events)) {
+                return parse(json);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + recording.getName(), ex);
+        } finally {
+            Files.deleteIfExists(events.toPath());
+            Files.deleteIfExists(errors.toPath());
+        }
+    }
+
+    /**
+     * @param json Events printed by jfr print --json
+     * @return The summary of the events
+     * @throws IOException When the events cannot be read
+     */
+    static FlightRecordingSummary parse(InputStream json) throws IOException {
+        FlightRecordingSummary summary = new FlightRecordingSummary();
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(json)) {
+            while (parser.nextToken() != null) {
+                if (parser.getCurrentToken() == JsonToken.FIELD_NAME && "events".equals(parser.getCurrentName())) {
+                    if (parser.nextToken() != JsonToken.START_ARRAY) {
+                        continue;
+                    }
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        JsonNode event = parser.readValueAsTree();
+                        summary.eventRead(event.path("type").asText(), event.path("values"));
+                    }
+                }
+            }
+        }
+
+        return summary;
+    }
+
+    private void eventRead(String type, JsonNode values) {
+        switch (type) {
+            case "jdk.GarbageCollection":
+                gcCount++;
+                totalGcPauseInNanoseconds += nanoseconds(values.path("sumOfPauses"));
+                longestGcPauseInNanoseconds = Math.max(longestGcPauseInNanoseconds, nanoseconds(values.path("longestPause")));
+                break;
+            case "jdk.CPULoad":
+                double jvmCpuLoad = values.path("jvmUser").asDouble() + values.path("jvmSystem").asDouble();
+                cpuLoadCount++;
+                totalJvmCpuLoad += jvmCpuLoad;
+                peakJvmCpuLoad = Math.max(peakJvmCpuLoad, jvmCpuLoad);
+                totalMachineCpuLoad += values.path("machineTotal").asDouble();
+                break;
+            case "jdk.ExecutionSample":
+                executionSampleCount++;
+                executionSamplesByMethod.merge(topFrameMethod(values), 1L, Long::sum);
+                break;
+            case "jdk.ObjectAllocationSample":
+                allocatedBytesByMethod.merge(topFrameMethod(values), values.path("weight").asLong(), Long::sum);
+                break;
+            case "jdk.ObjectAllocationInNewTLAB":
+                allocatedBytesByMethod.merge(topFrameMethod(values), values.path("tlabSize").asLong(), Long::sum);
+                break;
+            case "jdk.ObjectAllocationOutsideTLAB":
+                allocatedBytesByMethod.merge(topFrameMethod(values), values.path("allocationSize").asLong(), Long::sum);
+                break;
+            case "jdk.JavaMonitorEnter":
+                long duration = nanoseconds(values.path("duration"));
+                contendedMonitorEnterCount++;
+                totalContentionInNanoseconds += duration;
+                contentionInNanosecondsByMonitorClass.merge(className(values.path("monitorClass")), duration, Long::sum);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static long nanoseconds(JsonNode duration) {
+        try {
+            return duration.isTextual() ? Duration.parse(duration.asText()).toNanos() : 0;
+        } catch (DateTimeParseException ex) {
+            return 0;
+        }
+    }
+
+    private static String topFrameMethod(JsonNode values) {
+        JsonNode method = values.path("stackTrace").path("frames").path(0).path("method");
+        if (method.isMissingNode()) {
+            return "<unknown>";
+        }
+
+        return className(method.path("type")) + "." + method.path("name").asText();
+    }
+
+    private static String className(JsonNode type) {
+        return type.path("name").asText("<unknown>").replace('/', '.');
+    }
+
+    public int getGcCount() {
+        return gcCount;
+    }
+
+    public double getTotalGcPauseInMilliseconds() {
+        return totalGcPauseInNanoseconds / 1_000_000d;
+    }
+
+    public double getLongestGcPauseInMilliseconds() {
+        return longestGcPauseInNanoseconds / 1_000_000d;
+    }
+
+    /**
+     * @return Average CPU used by the JVM, in percent of all processors of the machine
+     */
+    public double getAverageJvmCpuInPercent() {
+        return cpuLoadCount == 0 ? 0 : totalJvmCpuLoad * 100 / cpuLoadCount;
+    }
+
+    public double getPeakJvmCpuInPercent() {
+        return peakJvmCpuLoad * 100;
+    }
+
+    public double getAverageMachineCpuInPercent() {
+        return cpuLoadCount == 0 ? 0 : totalMachineCpuLoad * 100 / cpuLoadCount;
+    }
+
+    public long getExecutionSampleCount() {
+        return executionSampleCount;
+    }
+
+    /**
+     * @return The methods most often on top of the stack when execution was sampled, with their number of samples
+     */
+    public Map<String, Long> getHotMethods() {
+        return top(executionSamplesByMethod);
+    }
+
+    /**
+     * @return The methods that allocated most (estimated from the allocation events), with the bytes they allocated
+     */
+    public Map<String, Long> getTopAllocatingMethods() {
+        return top(allocatedBytesByMethod);
+    }
+
+    public long getContendedMonitorEnterCount() {
+        return contendedMonitorEnterCount;
+    }
+
+    public double getTotalContentionInMilliseconds() {
+        return totalContentionInNanoseconds / 1_000_000d;
+    }
+
+    /**
+     * @return The classes of the monitors threads were blocked on longest, with the time blocked in nanoseconds
+     */
+    public Map<String, Long> getMostContendedMonitorClasses() {
+        return top(contentionInNanosecondsByMonitorClass);
+    }
+
+    private static Map<String, Long> top(Map<String, Long> values) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        values.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(TOP_METHODS)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+
+        return top;
+    }
+
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        summary.add(String.format("GC: %,d collections, %,.1fms paused in total, longest pause %,.1fms", gcCount, getTotalGcPauseInMilliseconds(), getLongestGcPauseInMilliseconds()));
+        summary.add(String.format("CPU: JVM average %.1f%%, JVM peak %.1f%%, machine average %.1f%%", getAverageJvmCpuInPercent(), getPeakJvmCpuInPercent(), getAverageMachineCpuInPercent()));
+        summary.add(String.format("Hot methods (%,d execution samples):", executionSampleCount));
+        for (Map.Entry<String, Long> method : getHotMethods().entrySet()) {
+            summary.add(String.format("  %6.1f%%  %s", method.getValue() * 100d / executionSampleCount, method.getKey()));
+        }
+        summary.add("Top allocating methods:");
+        for (Map.Entry<String, Long> method : getTopAllocatingMethods().entrySet()) {
+            summary.add(String.format("  %,10.1fMB  %s", method.getValue() / ONE_MEGABYTE, method.getKey()));
+        }
+        summary.add(String.format("Monitor contention: %,d blocked monitor entries, %,.1fms blocked in total", contendedMonitorEnterCount, getTotalContentionInMilliseconds()));
+        for (Map.Entry<String, Long> monitorClass : getMostContendedMonitorClasses().entrySet()) {
+            summary.add(String.format("  %,10.1fms  %s", monitorClass.getValue() / 1_000_000d, monitorClass.getKey()));
+        }
+
+        return summary;
+    }
+}
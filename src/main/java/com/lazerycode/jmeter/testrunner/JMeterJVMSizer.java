@@ -0,0 +1,261 @@
+package com.lazerycode.jmeter.testrunner;
+
+import com.lazerycode.jmeter.configuration.JMeterProcessJVMSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Chooses the heap size and garbage collector of forked JMeter JVMs when
+ * {@link JMeterProcessJVMSettings#isAutoSizing()} is set.
+ * <p/>
+ * The heap is sized for the number of threads the test plans start (the sum of the enabled thread groups), within a
+ * share of the memory available to the build: the physical memory or the cgroup memory limit of the container the
+ * build runs in, whichever is lower, split between the JMeter JVMs that run at the same time.  The initial heap is the
+ * same as the maximum heap and is touched on start up, so a test does not pay for the heap growing while it runs.
+ * <p/>
+ * The garbage collector depends on the Java version of the JMeter JVM and on the host: ZGC for large heaps (Java 15 or
+ * later), the parallel collector on hosts with 2 processors or fewer (where concurrent GC threads would take
+ * processor time from the samplers) and G1 otherwise.  A garbage collector chosen in the JVM arguments is kept.
+ */
+public class JMeterJVMSizer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JMeterJVMSizer.class);
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    static final int BASE_HEAP_IN_MEGABYTES = 256;
+    static final int HEAP_PER_THREAD_IN_MEGABYTES = 2;
+    static final int THREADS_WHEN_UNKNOWN = 100;
+    static final int ZGC_HEAP_IN_MEGABYTES = 8 * 1024;
+    private static final int HEAP_GRANULE_IN_MEGABYTES = 64;
+    private static final int PERCENTAGE_OF_MEMORY_FOR_HEAPS = 50;
+    private static final long ONE_MEGABYTE = 1024 * 1024;
+    private static final long JAVA_VERSION_TIMEOUT_IN_SECONDS = 30;
+    private static final Pattern JAVA_VERSION = Pattern.compile("version \"(\\d+)(?:\\.(\\d+))?");
+    private static final Pattern NUMBER_OR_PROPERTY_DEFAULT = Pattern.compile("^\\s*(\\d+)\\s*$|^\\$\\{__(?:P|property)\\(.*,\\s*(\\d+)\\s*\\)}$");
+    private static final List<String> THREAD_COUNT_PROPERTIES = Arrays.asList("ThreadGroup.num_threads", "TargetLevel");
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final JMeterProcessJVMSettings settings;
+    private final long memoryInMegaBytes;
+    private final int availableProcessors;
+    private final int javaVersion;
+    private final int concurrentJVMs;
+
+    /**
+     * Looks up the memory and processors of the host and the Java version of the configured java runtime.
+     *
+     * @param settings       The configured JVM settings
+     * @param concurrentJVMs Number of JMeter JVMs that run at the same time
+     */
+    public JMeterJVMSizer(JMeterProcessJVMSettings settings, int concurrentJVMs) {
+        this(settings, concurrentJVMs, availableMemoryInMegaBytes(new File("/sys/fs/cgroup")), Runtime.getRuntime().availableProcessors(), javaVersionOf(settings.getJavaRuntime()));
+    }
+
+    JMeterJVMSizer(JMeterProcessJVMSettings settings, int concurrentJVMs, long memoryInMegaBytes, int availableProcessors, int javaVersion) {
+        this.settings = settings;
+        this.concurrentJVMs = Math.max(1, concurrentJVMs);
+        this.memoryInMegaBytes = memoryInMegaBytes;
+        this.availableProcessors = availableProcessors;
+        this.javaVersion = javaVersion;
+    }
+
+    /**
+     * @param testFiles The tests the JVM will run
+     * @return A copy of the configured settings, sized for the test with the most threads
+     */
+    public JMeterProcessJVMSettings settingsFor(List<File> testFiles) {
+        int threads = 0;
+        for (File testFile : testFiles) {
+            threads = Math.max(threads, threadCountOf(testFile));
+        }
+        long heapBudget = memoryInMegaBytes * PERCENTAGE_OF_MEMORY_FOR_HEAPS / 100 / concurrentJVMs;
+        int heapNeeded = roundUpToGranule(BASE_HEAP_IN_MEGABYTES + threads * HEAP_PER_THREAD_IN_MEGABYTES);
+        int heap = heapNeeded;
+        if (heapNeeded > heapBudget) {
+            heap = (int) Math.max(BASE_HEAP_IN_MEGABYTES, heapBudget / HEAP_GRANULE_IN_MEGABYTES * HEAP_GRANULE_IN_MEGABYTES);
+            LOGGER.warn("{} threads need a heap of about {}MB, only {}MB is available to each JMeter JVM", threads, heapNeeded, heap);
+        }
+        JMeterProcessJVMSettings sizedSettings = new JMeterProcessJVMSettings(settings).setXms(heap).setXmx(heap);
+        if (settings.getArguments().stream().anyMatch(argument -> argument.startsWith("-XX:+Use") && argument.endsWith("GC"))) {
+            LOGGER.info("Using the garbage collector set in the JVM arguments");
+        } else if (javaVersion >= 15 && heap >= ZGC_HEAP_IN_MEGABYTES) {
+            sizedSettings.addArgument("-XX:+UseZGC");
+            if (javaVersion == 21 || javaVersion == 22) {
+                sizedSettings.addArgument("-XX:+ZGenerational");
+            }
+        } else if (availableProcessors <= 2) {
+            sizedSettings.addArgument("-XX:+UseParallelGC");
+        } else {
+            sizedSettings.addArgument("-XX:+UseG1GC");
+            sizedSettings.addArgument("-XX:MaxGCPauseMillis=100");
+            sizedSettings.addArgument("-XX:+ParallelRefProcEnabled");
+        }
+        sizedSettings.addArgument("-XX:+AlwaysPreTouch");
+        LOGGER.info("JMeter JVM sized for {} threads ({}MB memory, {} processors, Java {}, {} JVMs at a time): -Xms{}M -Xmx{}M {}",
+                threads, memoryInMegaBytes, availableProcessors, javaVersion, concurrentJVMs, heap, heap, sizedSettings.getArguments());
+
+        return sizedSettings;
+    }
+
+    private static int roundUpToGranule(int megaBytes) {
+        return (megaBytes + HEAP_GRANULE_IN_MEGABYTES - 1) / HEAP_GRANULE_IN_MEGABYTES * HEAP_GRANULE_IN_MEGABYTES;
+    }
+
+    /**
+     * Adds up the threads of the enabled thread groups of a test plan.  A thread count that is a property with a
+     * default value (e.g. ${__P(threads,50)}) counts as the default, other thread counts that cannot be worked out
+     * count as {@link #THREADS_WHEN_UNKNOWN}.
+     *
+     * @param testFile A JMeter test plan
+     * @return The number of threads the test plan starts
+     */
+    static int threadCountOf(File testFile) {
+        int threads = 0;
+        try (InputStream input = new FileInputStream(testFile)) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(input);
+            try {
+                int threadGroupDepth = -1;
+                int depth = 0;
+                Integer threadGroupThreads = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        String testClass = reader.getAttributeValue(null, "testclass");
+                        if (threadGroupDepth < 0 && testClass != null && testClass.endsWith("ThreadGroup") && !"false".equals(reader.getAttributeValue(null, "enabled"))) {
+                            threadGroupDepth = depth;
+                            threadGroupThreads = null;
+                        } else if (threadGroupDepth > 0 && depth == threadGroupDepth + 1 && THREAD_COUNT_PROPERTIES.contains(reader.getAttributeValue(null, "name"))) {
+                            threadGroupThreads = parseThreadCount(reader.getElementText());
+                            depth--;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (depth == threadGroupDepth) {
+                            threads += threadGroupThreads == null ? THREADS_WHEN_UNKNOWN : threadGroupThreads;
+                            threadGroupDepth = -1;
+                        }
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException ex) {
+            LOGGER.warn("Unable to count the threads of {}: {}", testFile.getName(), ex.getMessage());
+            return THREADS_WHEN_UNKNOWN;
+        }
+
+        return threads;
+    }
+
+    private static Integer parseThreadCount(String value) {
+        Matcher matcher = NUMBER_OR_PROPERTY_DEFAULT.matcher(value.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        return Integer.parseInt(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+    }
+
+    /**
+     * @param cgroupRoot Where the cgroup file system is mounted
+     * @return The physical memory, or the cgroup memory limit if it is lower
+     */
+    static long availableMemoryInMegaBytes(File cgroupRoot) {
+        long memory = Long.MAX_VALUE;
+        OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        try {
+            // com.sun.management.OperatingSystemMXBean is not available on every JVM
+            Method totalPhysicalMemorySize = Class.forName("com.sun.management.OperatingSystemMXBean").getMethod("getTotalPhysicalMemorySize");
+            memory = (Long) totalPhysicalMemorySize.invoke(operatingSystem);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            LOGGER.debug("Unable to read the physical memory size: {}", ex.getMessage());
+        }
+        // cgroup v2, then cgroup v1
+        for (File limitFile : Arrays.asList(new File(cgroupRoot, "memory.max"), new File(cgroupRoot, "memory/memory.limit_in_bytes"))) {
+            if (limitFile.isFile()) {
+                try {
+                    String limit = new String(Files.readAllBytes(limitFile.toPath()), StandardCharsets.UTF_8).trim();
+                    if (limit.matches("\\d+")) {
+                        memory = Math.min(memory, Long.parseLong(limit));
+                    }
+                } catch (IOException | NumberFormatException ex) {
+                    LOGGER.debug("Unable to read {}: {}", limitFile, ex.getMessage());
+                }
+                break;
+            }
+        }
+        if (memory == Long.MAX_VALUE) {
+            LOGGER.warn("Unable to find out how much memory is available, assuming 2GB");
+            return 2048;
+        }
+
+        return memory / ONE_MEGABYTE;
+    }
+
+    /**
+     * @param javaRuntime A java executable
+     * @return The feature version of the runtime (8 for 1.8.0), 8 if it cannot be found
+     */
+    static int javaVersionOf(String javaRuntime) {
+        try {
+            Process process = new ProcessBuilder(javaRuntime, "-version").redirectErrorStream(true).start();
+            StringBuilder output = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line).append('\n');
+                }
+            }
+            if (!process.waitFor(JAVA_VERSION_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+            int version = parseJavaVersion(output.toString());
+            if (version > 0) {
+                return version;
+            }
+        } catch (IOException ex) {
+            LOGGER.debug("Unable to run {} -version: {}", javaRuntime, ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.warn("Unable to find out the Java version of {}, assuming Java 8", javaRuntime);
+
+        return 8;
+    }
+
+    static int parseJavaVersion(String versionOutput) {
+        Matcher matcher = JAVA_VERSION.matcher(versionOutput);
+        if (!matcher.find()) {
+            return -1;
+        }
+        int major = Integer.parseInt(matcher.group(1));
+
+        return major == 1 && matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : major;
+    }
+}
@@ -21,6 +21,8 @@ public class JMeterProcessBuilder {
     private String javaRuntime;
     private List<String> userSuppliedArguments;
     private List<String> mainClassArguments = new ArrayList<>();
+    private File flightRecordingFile;
+    private String flightRecordingSettings;
 
     public JMeterProcessBuilder(JMeterProcessJVMSettings settings, String runtimeJarName) {
         this.runtimeJarName = runtimeJarName;
@@ -43,6 +45,20 @@ public class JMeterProcessBuilder {
         return this;
     }
 
+    /**
+     * Records the JVM with Java Flight Recorder, the recording is written when the JVM exits.
+     *
+     * @param recordingFile File the recording is written to
+     * @param settings      Recording settings, e.g. "default" or "profile", or the path of a .jfc file
+     * @return this
+     */
+    public JMeterProcessBuilder setFlightRecording(File recordingFile, String settings) {
+        this.flightRecordingFile = recordingFile;
+        this.flightRecordingSettings = settings;
+
+        return this;
+    }
+
     public JMeterProcessBuilder addArguments(List<String> arguments) {
         mainClassArguments.addAll(arguments);
 
@@ -66,6 +82,10 @@ public class JMeterProcessBuilder {
         argumentsList.add(MessageFormat.format("-Xms{0}M", String.valueOf(initialHeapSizeInMegaBytes)));
         argumentsList.add(MessageFormat.format("-Xmx{0}M", String.valueOf(maximumHeapSizeInMegaBytes)));
         argumentsList.addAll(userSuppliedArguments);
+        addClassDataSharingArchive(argumentsList);
+        if (null != flightRecordingFile) {
+            argumentsList.add(String.format("-XX:StartFlightRecording=dumponexit=true,filename=%s,settings=%s", flightRecordingFile.getAbsolutePath(), flightRecordingSettings));
+        }
         argumentsList.add("-jar");
         argumentsList.add(runtimeJarName);
         argumentsList.addAll(mainClassArguments);
@@ -75,4 +95,23 @@ public class JMeterProcessBuilder {
 
         return argumentsList.toArray(new String[0]);
     }
+
+    /**
+     * Uses the class data sharing archive created by the configure goal, if it was created for this runtime and
+     * JMeter jar and the jars have not changed since.  Arguments supplied by the user that configure sharing win.
+     */
+    private void addClassDataSharingArchive(List<String> argumentsList) {
+        if (null == workingDirectory) {
+            return;
+        }
+        for (String argument : userSuppliedArguments) {
+            if (argument.startsWith("-XX:SharedArchiveFile") || argument.startsWith("-Xshare")) {
+                return;
+            }
+        }
+        ClassDataSharingArchive archive = new ClassDataSharingArchive(new File(workingDirectory));
+        if (archive.isUsableBy(javaRuntime, runtimeJarName)) {
+            argumentsList.add("-XX:SharedArchiveFile=" + archive.getArchiveFile().getAbsolutePath());
+        }
+    }
 }
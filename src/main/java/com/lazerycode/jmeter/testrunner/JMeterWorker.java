@@ -0,0 +1,335 @@
+package com.lazerycode.jmeter.testrunner;
+
+import com.lazerycode.jmeter.configuration.JMeterProcessJVMSettings;
+import com.lazerycode.jmeter.worker.JMeterWorkerLauncher;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * A JMeter JVM that is started once and then runs one test after another, see {@link JMeterWorkerLauncher}.
+ * <p/>
+ * The launcher jar is written to the JMeter bin directory and started with the same JVM settings and working
+ * directory as a forked JMeter JVM.  Each test is sent the same arguments it would get on the command line.  The
+ * worker is replaced after a number of tests (so that anything a test leaks cannot build up), and when it has exited
+ * because a test called System.exit or was stopped.
+ */
+public class JMeterWorker implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JMeterWorker.class);
+    static final String LAUNCHER_JAR_NAME = "jmeter-maven-plugin-worker.jar";
+    static final String WORKER_OUTPUT_FILE_NAME = "jmeter-maven-plugin-worker.log";
+    private static final String PORT_FILE_PREFIX = "jmeter-maven-plugin-worker-";
+    private static final AtomicInteger WORKER_COUNT = new AtomicInteger();
+    private static final long START_TIMEOUT_IN_MILLISECONDS = TimeUnit.SECONDS.toMillis(60);
+    private static final long START_POLL_INTERVAL_IN_MILLISECONDS = 50;
+    private static final long WORKER_EXIT_TIMEOUT_IN_SECONDS = 10;
+    private final JMeterProcessJVMSettings jvmSettings;
+    private final File binDir;
+    private final String runtimeJarName;
+    private final int testsPerWorker;
+    private final String driverClassName;
+    private final File portFile;
+    private Process process;
+    private int port;
+    private String token;
+    private int testsRun;
+
+    /**
+     * @param jvmSettings    Settings of the worker JVM
+     * @param binDir         The JMeter bin directory, the working directory of the worker
+     * @param runtimeJarName The JMeter jar, relative to the bin directory
+     * @param testsPerWorker Number of tests run by a worker before it is replaced
+     */
+    public JMeterWorker(JMeterProcessJVMSettings jvmSettings, File binDir, String runtimeJarName, int testsPerWorker) {
+        this(jvmSettings, binDir, runtimeJarName, testsPerWorker, JMeterWorkerLauncher.DEFAULT_DRIVER_CLASS);
+    }
+
+    JMeterWorker(JMeterProcessJVMSettings jvmSettings, File binDir, String runtimeJarName, int testsPerWorker, String driverClassName) {
+        this.jvmSettings = jvmSettings;
+        this.binDir = binDir;
+        this.runtimeJarName = runtimeJarName;
+        this.testsPerWorker = Math.max(1, testsPerWorker);
+        this.driverClassName = driverClassName;
+        // Workers may be started at the same time (one per shard of a test), each needs its own port file
+        this.portFile = new File(binDir, PORT_FILE_PREFIX + WORKER_COUNT.incrementAndGet() + ".port");
+    }
+
+    /**
+     * Starts a test, starting (or replacing) the worker JVM first if required.
+     *
+     * @param arguments JMeter command line arguments
+     * @return The running test
+     * @throws MojoExecutionException When the worker cannot be started or the test cannot be sent to it
+     */
+    public synchronized Run run(List<String> arguments) throws MojoExecutionException {
+        if (process != null && (!process.isAlive() || testsRun >= testsPerWorker)) {
+            stop();
+        }
+        start();
+        testsRun++;
+        try {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request.writeUTF(token);
+            request.writeByte(JMeterWorkerLauncher.RUN);
+            request.writeInt(arguments.size());
+            for (String argument : arguments) {
+                request.writeUTF(argument);
+            }
+            request.flush();
+
+            return new Run(socket, process);
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Unable to send test to JMeter worker: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @return The worker JVM, null if it has not been started
+     */
+    public synchronized Process getProcess() {
+        return process;
+    }
+
+    /**
+     * Starts the worker JVM, unless it is already running, so that a test sent to it later starts without waiting
+     * for the JVM.
+     *
+     * @return This worker
+     * @throws MojoExecutionException When the worker cannot be started
+     */
+    public synchronized JMeterWorker start() throws MojoExecutionException {
+        if (process != null) {
+            return this;
+        }
+        List<String> launcherArguments = new ArrayList<>(Arrays.asList(portFile.getAbsolutePath(), runtimeJarName));
+        if (!JMeterWorkerLauncher.DEFAULT_DRIVER_CLASS.equals(driverClassName)) {
+            launcherArguments.add(driverClassName);
+        }
+        try {
+            installLauncher(new File(binDir, LAUNCHER_JAR_NAME));
+            Files.deleteIfExists(portFile.toPath());
+            ProcessBuilder processBuilder = new JMeterProcessBuilder(jvmSettings, LAUNCHER_JAR_NAME)
+                    .setWorkingDirectory(binDir)
+                    .addArguments(launcherArguments)
+                    .build();
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(binDir, WORKER_OUTPUT_FILE_NAME)));
+            LOGGER.info("Starting JMeter worker JVM...");
+            process = processBuilder.start();
+            final Process workerProcess = process;
+            Runtime.getRuntime().addShutdownHook(new Thread(workerProcess::destroy));
+            long deadline = System.currentTimeMillis() + START_TIMEOUT_IN_MILLISECONDS;
+            while (!portFile.exists()) {
+                if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+                    process.destroyForcibly();
+                    process = null;
+                    throw new MojoExecutionException("JMeter worker did not start, see " + new File(binDir, WORKER_OUTPUT_FILE_NAME).getAbsolutePath());
+                }
+                TimeUnit.MILLISECONDS.sleep(START_POLL_INTERVAL_IN_MILLISECONDS);
+            }
+            List<String> portAndToken = Files.readAllLines(portFile.toPath(), StandardCharsets.UTF_8);
+            Files.delete(portFile.toPath());
+            port = Integer.parseInt(portAndToken.get(0));
+            token = portAndToken.get(1);
+            testsRun = 0;
+
+            return this;
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Unable to start JMeter worker: " + ex.getMessage(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while starting JMeter worker", ex);
+        }
+    }
+
+    /**
+     * Writes the launcher class (and nothing else, it only depends on the JDK) into an executable jar.  The jar is
+     * written next to the launcher jar and then moved over it, so that a worker that is starting never reads a jar
+     * that is being written.
+     */
+    static void installLauncher(File launcherJar) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, JMeterWorkerLauncher.class.getName());
+        String classPath = JMeterWorkerLauncher.class.getName().replace('.', '/');
+        File newLauncherJar = File.createTempFile(launcherJar.getName(), ".tmp", launcherJar.getAbsoluteFile().getParentFile());
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(newLauncherJar), manifest)) {
+            for (String classFile : Arrays.asList(classPath + ".class", classPath + "$FrameOutputStream.class")) {
+                try (InputStream classBytes = JMeterWorker.class.getClassLoader().getResourceAsStream(classFile)) {
+                    if (classBytes == null) {
+                        throw new IOException("Unable to find " + classFile);
+                    }
+                    jar.putNextEntry(new JarEntry(classFile));
+                    byte[] buffer = new byte[8 * 1024];
+                    int read;
+                    while ((read = classBytes.read(buffer)) != -1) {
+                        jar.write(buffer, 0, read);
+                    }
+                    jar.closeEntry();
+                }
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(newLauncherJar.toPath());
+            throw ex;
+        }
+        Files.move(newLauncherJar.toPath(), launcherJar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void stop() {
+        if (process.isAlive()) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                DataOutputStream request = new DataOutputStream(socket.getOutputStream());
+                request.writeUTF(token);
+                request.writeByte(JMeterWorkerLauncher.SHUTDOWN);
+                request.flush();
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (IOException ex) {
+                process.destroyForcibly();
+            } catch (InterruptedException ex) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        process = null;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (process != null) {
+            stop();
+        }
+    }
+
+    /**
+     * A test running in the worker.
+     */
+    public static class Run {
+        private final Socket socket;
+        private final Process process;
+        private final DataInputStream response;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final InputStream output = new InputStream() {
+            private int remaining;
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                try {
+                    while (remaining == 0) {
+                        if (!readFrameHeader()) {
+                            return -1;
+                        }
+                    }
+                    int read = response.read(buffer, offset, Math.min(length, remaining));
+                    if (read == -1) {
+                        workerExited();
+                        return -1;
+                    }
+                    remaining -= read;
+
+                    return read;
+                } catch (IOException ex) {
+                    // The connection is reset when the worker is killed
+                    workerExited();
+                    return -1;
+                }
+            }
+
+            private boolean readFrameHeader() throws IOException {
+                if (finished.getCount() == 0) {
+                    return false;
+                }
+                if (response.readByte() == JMeterWorkerLauncher.EXIT) {
+                    exitCode = response.readInt();
+                    finishRun();
+                    return false;
+                }
+                remaining = response.readInt();
+
+                return true;
+            }
+        };
+        private volatile int exitCode;
+
+        Run(Socket socket, Process process) throws IOException {
+            this.socket = socket;
+            this.process = process;
+            this.response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        /**
+         * The worker closed the connection without an exit code: JMeter called System.exit, or the worker was stopped.
+         */
+        private void workerExited() throws IOException {
+            if (finished.getCount() == 0) {
+                return;
+            }
+            exitCode = 1;
+            try {
+                if (process.waitFor(WORKER_EXIT_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+                    exitCode = process.exitValue();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            finishRun();
+        }
+
+        private void finishRun() throws IOException {
+            finished.countDown();
+            socket.close();
+        }
+
+        /**
+         * @return Output of the test, ends when the test has finished
+         */
+        public InputStream getOutput() {
+            return output;
+        }
+
+        /**
+         * Waits until the output has been read to the end.
+         *
+         * @return Exit code of the test, the exit code of the worker if it exited
+         * @throws InterruptedException When interrupted while waiting
+         */
+        public int waitFor() throws InterruptedException {
+            finished.await();
+
+            return exitCode;
+        }
+    }
+}
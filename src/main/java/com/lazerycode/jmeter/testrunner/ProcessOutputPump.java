@@ -0,0 +1,244 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Reads the output of a forked JMeter process on its own thread, so that the process never waits for the Maven log.
+ * <p/>
+ * Every byte is written to an output file.  Lines are forwarded to the log by a second thread through a bounded
+ * queue: at most a configured number of lines per second are forwarded, and lines that are over the rate or that do
+ * not fit in the queue (because the log cannot keep up) are dropped and counted.  The number of dropped lines is
+ * logged once per second in which lines were dropped, with the location of the output file.
+ * <p/>
+ * If the output file cannot be written the output is still read until the process closes it, and logged, so that
+ * the process does not block on a full pipe.
+ */
+public class ProcessOutputPump implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessOutputPump.class);
+    static final int QUEUE_CAPACITY_IN_LINES = 10000;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final long ONE_SECOND_IN_NANOSECONDS = TimeUnit.SECONDS.toNanos(1);
+    private static final long CLOSE_TIMEOUT_IN_MILLISECONDS = TimeUnit.SECONDS.toMillis(10);
+    private static final String END_OF_OUTPUT = new String("end of output");
+    private final InputStream source;
+    private final File outputFile;
+    private final Consumer<String> lineLogger;
+    private final int maxLinesPerSecond;
+    private final LongSupplier nanoClock;
+    private final BlockingQueue<String> lines = new ArrayBlockingQueue<>(QUEUE_CAPACITY_IN_LINES);
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private final Thread pumpThread;
+    private final Thread logThread;
+    private long windowStart;
+    private int linesInWindow;
+    private long suppressedLines;
+    private IOException pumpFailure;
+
+    /**
+     * @param source            Output of the process
+     * @param outputFile        File all output is written to
+     * @param lineLogger        Where forwarded lines are logged
+     * @param maxLinesPerSecond Most lines forwarded to the log per second, 0 to forward none
+     * @param threadName        Name of the pump thread, the log thread name ends in "-log"
+     */
+    public ProcessOutputPump(InputStream source, File outputFile, Consumer<String> lineLogger, int maxLinesPerSecond, String threadName) {
+        this(source, outputFile, lineLogger, maxLinesPerSecond, threadName, System::nanoTime);
+    }
+
+    ProcessOutputPump(InputStream source, File outputFile, Consumer<String> lineLogger, int maxLinesPerSecond, String threadName, LongSupplier nanoClock) {
+        this.source = source;
+        this.outputFile = outputFile;
+        this.lineLogger = lineLogger;
+        this.maxLinesPerSecond = maxLinesPerSecond;
+        this.nanoClock = nanoClock;
+        this.pumpThread = daemon(this::pump, threadName);
+        this.logThread = daemon(this::forward, threadName + "-log");
+    }
+
+    public ProcessOutputPump start() {
+        windowStart = nanoClock.getAsLong();
+        logThread.start();
+        pumpThread.start();
+
+        return this;
+    }
+
+    private void pump() {
+        OutputStream output = openOutputFile();
+        try {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                output = write(output, buffer, read);
+                splitLines(buffer, read);
+            }
+            if (partialLine.size() > 0) {
+                lineRead(partialLine.toString(Charset.defaultCharset().name()));
+            }
+        } catch (IOException ex) {
+            pumpFailure = ex;
+        } finally {
+            closeOutputFile(output);
+            reportSuppressedLines();
+            putUninterruptibly(END_OF_OUTPUT);
+        }
+    }
+
+    private OutputStream openOutputFile() {
+        try {
+            return new BufferedOutputStream(new FileOutputStream(outputFile));
+        } catch (IOException ex) {
+            outputFileFailed(ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return The output file, null once it has failed
+     */
+    private OutputStream write(OutputStream output, byte[] buffer, int length) {
+        if (output == null) {
+            return null;
+        }
+        try {
+            output.write(buffer, 0, length);
+            return output;
+        } catch (IOException ex) {
+            outputFileFailed(ex);
+            closeOutputFile(output);
+            return null;
+        }
+    }
+
+    private void closeOutputFile(OutputStream output) {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException ex) {
+            outputFileFailed(ex);
+        }
+    }
+
+    private void outputFileFailed(IOException ex) {
+        if (pumpFailure == null) {
+            LOGGER.warn("Unable to write JMeter output to {}, the rest of the output is only logged: {}", outputFile.getAbsolutePath(), ex.getMessage());
+            pumpFailure = ex;
+        }
+    }
+
+    private void splitLines(byte[] buffer, int length) throws IOException {
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == '\n') {
+                int lineEnd = i > lineStart && buffer[i - 1] == '\r' ? i - 1 : i;
+                partialLine.write(buffer, lineStart, lineEnd - lineStart);
+                lineRead(partialLine.toString(Charset.defaultCharset().name()));
+                partialLine.reset();
+                lineStart = i + 1;
+            }
+        }
+        partialLine.write(buffer, lineStart, length - lineStart);
+    }
+
+    private void lineRead(String line) {
+        long now = nanoClock.getAsLong();
+        if (now - windowStart >= ONE_SECOND_IN_NANOSECONDS) {
+            reportSuppressedLines();
+            windowStart = now;
+            linesInWindow = 0;
+        }
+        if (linesInWindow >= maxLinesPerSecond || !lines.offer(line)) {
+            suppressedLines++;
+            return;
+        }
+        linesInWindow++;
+    }
+
+    private void reportSuppressedLines() {
+        if (suppressedLines > 0 && lines.offer(String.format("... %,d lines of JMeter output suppressed, see %s", suppressedLines, outputFile.getAbsolutePath()))) {
+            suppressedLines = 0;
+        }
+    }
+
+    private void putUninterruptibly(String line) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                lines.put(line);
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void forward() {
+        try {
+            String line;
+            //noinspection StringEquality
+            while ((line = lines.take()) != END_OF_OUTPUT) {
+                lineLogger.accept(line);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the remaining output of the process to be written and logged.  The process should have exited, if
+     * the output is still open after a timeout (e.g. a child process of the process still holds it) it is closed.
+     *
+     * @throws IOException When the output could not be read or written to the output file
+     */
+    @Override
+    public void close() throws IOException {
+        boolean sourceClosed = false;
+        try {
+            pumpThread.join(CLOSE_TIMEOUT_IN_MILLISECONDS);
+            if (pumpThread.isAlive()) {
+                source.close();
+                sourceClosed = true;
+                pumpThread.join(CLOSE_TIMEOUT_IN_MILLISECONDS);
+            }
+            logThread.join(CLOSE_TIMEOUT_IN_MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (pumpFailure != null && !sourceClosed) {
+            throw pumpFailure;
+        }
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+
+        return thread;
+    }
+}
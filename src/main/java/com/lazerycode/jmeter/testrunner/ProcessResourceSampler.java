@@ -0,0 +1,347 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the resources used by a JMeter JVM while a test runs, to tell whether the load generator rather than the
+ * system under test limited the results.
+ * <p/>
+ * CPU time, resident memory, threads, context switches and open files are read from /proc/&lt;pid&gt; (so sampling
+ * only works on Linux) and the heap used from the HotSpot performance counters the JVM publishes in
+ * /tmp/hsperfdata_&lt;user&gt;/&lt;pid&gt; (the counters jstat reads).  Each sample is written to a CSV file.  A test
+ * is flagged when the JVM used all processors, or its heap stayed nearly full, for several samples in a row.
+ */
+public class ProcessResourceSampler implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessResourceSampler.class);
+    static final String HEADER = "elapsedSeconds,cpuPercent,rssMB,threads,openFiles,voluntaryContextSwitches,involuntaryContextSwitches,heapUsedMB,heapMaxMB";
+    // USER_HZ, the unit of the CPU times in /proc/<pid>/stat, is 100 on every Linux architecture Java runs on
+    private static final int CLOCK_TICKS_PER_SECOND = 100;
+    static final double SATURATED_CPU_SHARE = 0.95;
+    static final double SATURATED_HEAP_SHARE = 0.9;
+    static final int SATURATED_SAMPLES_IN_A_ROW = 3;
+    private static final long ONE_MEGABYTE = 1024 * 1024;
+    private static final int PERF_DATA_MAGIC = 0xcafec0c0;
+    private final File processDirectory;
+    private final File perfDataFile;
+    private final File outputFile;
+    private final long intervalInMilliseconds;
+    private final int availableProcessors;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jmeter-resource-sampler");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+    private PrintWriter output;
+    private long startNanoTime;
+    private long lastNanoTime;
+    private long lastCpuTicks = -1;
+    private long lastVoluntaryContextSwitches;
+    private long lastInvoluntaryContextSwitches;
+    private int sampleCount;
+    private double totalCpuPercent;
+    private double maxCpuPercent;
+    private long totalRssInMegaBytes;
+    private long maxRssInMegaBytes;
+    private long maxThreads;
+    private long maxOpenFiles;
+    private long totalContextSwitches;
+    private long maxHeapUsedInMegaBytes;
+    private long heapMaxInMegaBytes;
+    private int cpuSaturatedInARow;
+    private int heapSaturatedInARow;
+    private boolean cpuSaturated;
+    private boolean heapSaturated;
+
+    /**
+     * @param pid                    Process id of the JMeter JVM
+     * @param outputFile             CSV file the samples are written to
+     * @param intervalInMilliseconds Time between samples
+     * @param availableProcessors    Processors the JVM can use, the CPU is saturated when it uses all of them
+     */
+    public ProcessResourceSampler(long pid, File outputFile, long intervalInMilliseconds, int availableProcessors) {
+        this(new File("/proc", String.valueOf(pid)), new File("/tmp/hsperfdata_" + System.getProperty("user.name"), String.valueOf(pid)), outputFile, intervalInMilliseconds, availableProcessors);
+    }
+
+    ProcessResourceSampler(File processDirectory, File perfDataFile, File outputFile, long intervalInMilliseconds, int availableProcessors) {
+        this.processDirectory = processDirectory;
+        this.perfDataFile = perfDataFile;
+        this.outputFile = outputFile;
+        this.intervalInMilliseconds = intervalInMilliseconds;
+        this.availableProcessors = Math.max(1, availableProcessors);
+    }
+
+    /**
+     * @return Resources of the process can be sampled, i.e. this is Linux and the process is running
+     */
+    public boolean isSupported() {
+        return new File(processDirectory, "stat").isFile();
+    }
+
+    /**
+     * Starts sampling, the first sample is taken straight away.
+     *
+     * @return this
+     * @throws IOException When the output file cannot be created
+     */
+    public ProcessResourceSampler start() throws IOException {
+        openOutput(System.nanoTime());
+        timer.scheduleAtFixedRate(() -> sample(System.nanoTime()), 0, intervalInMilliseconds, TimeUnit.MILLISECONDS);
+
+        return this;
+    }
+
+    synchronized void openOutput(long nanoTime) throws IOException {
+        output = new PrintWriter(new FileWriter(outputFile));
+        output.println(HEADER);
+        startNanoTime = nanoTime;
+    }
+
+    /**
+     * Takes a sample, the first sample only records the CPU time and context switches the next sample is compared with.
+     */
+    synchronized void sample(long now) {
+        try {
+            String stat = new String(Files.readAllBytes(new File(processDirectory, "stat").toPath()), StandardCharsets.UTF_8);
+            // The command name is in brackets and may contain spaces, the fields are counted from after it
+            String[] statFields = stat.substring(stat.lastIndexOf(')') + 2).trim().split("\\s+");
+            long cpuTicks = Long.parseLong(statFields[11]) + Long.parseLong(statFields[12]);
+            Map<String, Long> status = readStatus();
+            long voluntaryContextSwitches = status.getOrDefault("voluntary_ctxt_switches", 0L);
+            long involuntaryContextSwitches = status.getOrDefault("nonvoluntary_ctxt_switches", 0L);
+            if (lastCpuTicks < 0) {
+                lastCpuTicks = cpuTicks;
+                lastNanoTime = now;
+                lastVoluntaryContextSwitches = voluntaryContextSwitches;
+                lastInvoluntaryContextSwitches = involuntaryContextSwitches;
+                return;
+            }
+            double elapsedSeconds = (now - lastNanoTime) / 1_000_000_000d;
+            double cpuPercent = elapsedSeconds <= 0 ? 0 : (cpuTicks - lastCpuTicks) * 100d / CLOCK_TICKS_PER_SECOND / elapsedSeconds;
+            long rssInMegaBytes = status.getOrDefault("VmRSS", 0L) / 1024;
+            long threads = status.getOrDefault("Threads", 0L);
+            String[] openFiles = new File(processDirectory, "fd").list();
+            long openFileCount = openFiles == null ? 0 : openFiles.length;
+            long voluntary = voluntaryContextSwitches - lastVoluntaryContextSwitches;
+            long involuntary = involuntaryContextSwitches - lastInvoluntaryContextSwitches;
+            long[] heap = readHeap();
+            sampleTaken(cpuPercent, rssInMegaBytes, threads, openFileCount, voluntary + involuntary, heap);
+            output.println(String.format(Locale.ROOT, "%.1f,%.1f,%d,%d,%d,%d,%d,%s,%s", (now - startNanoTime) / 1_000_000_000d, cpuPercent, rssInMegaBytes,
+                    threads, openFileCount, voluntary, involuntary, heap == null ? "" : heap[0], heap == null ? "" : heap[1]));
+            output.flush();
+            lastCpuTicks = cpuTicks;
+            lastNanoTime = now;
+            lastVoluntaryContextSwitches = voluntaryContextSwitches;
+            lastInvoluntaryContextSwitches = involuntaryContextSwitches;
+        } catch (IOException | RuntimeException ex) {
+            // The process has exited
+            LOGGER.debug("Unable to sample {}: {}", processDirectory, ex.getMessage());
+        }
+    }
+
+    private void sampleTaken(double cpuPercent, long rssInMegaBytes, long threads, long openFiles, long contextSwitches, long[] heap) {
+        sampleCount++;
+        totalCpuPercent += cpuPercent;
+        maxCpuPercent = Math.max(maxCpuPercent, cpuPercent);
+        totalRssInMegaBytes += rssInMegaBytes;
+        maxRssInMegaBytes = Math.max(maxRssInMegaBytes, rssInMegaBytes);
+        maxThreads = Math.max(maxThreads, threads);
+        maxOpenFiles = Math.max(maxOpenFiles, openFiles);
+        totalContextSwitches += contextSwitches;
+        cpuSaturatedInARow = cpuPercent >= availableProcessors * 100 * SATURATED_CPU_SHARE ? cpuSaturatedInARow + 1 : 0;
+        cpuSaturated |= cpuSaturatedInARow >= SATURATED_SAMPLES_IN_A_ROW;
+        if (heap != null) {
+            maxHeapUsedInMegaBytes = Math.max(maxHeapUsedInMegaBytes, heap[0]);
+            heapMaxInMegaBytes = heap[1];
+            heapSaturatedInARow = heap[0] >= heap[1] * SATURATED_HEAP_SHARE ? heapSaturatedInARow + 1 : 0;
+            heapSaturated |= heapSaturatedInARow >= SATURATED_SAMPLES_IN_A_ROW;
+        }
+    }
+
+    private Map<String, Long> readStatus() throws IOException {
+        Map<String, Long> status = new HashMap<>();
+        for (String line : Files.readAllLines(new File(processDirectory, "status").toPath(), StandardCharsets.UTF_8)) {
+            int separator = line.indexOf(':');
+            if (separator > 0) {
+                String[] value = line.substring(separator + 1).trim().split("\\s+");
+                if (value.length > 0 && value[0].matches("\\d+")) {
+                    status.put(line.substring(0, separator), Long.parseLong(value[0]));
+                }
+            }
+        }
+
+        return status;
+    }
+
+    /**
+     * @return Heap used and maximum heap in MB, null if the performance counters of the JVM cannot be read
+     */
+    private long[] readHeap() {
+        if (!perfDataFile.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(perfDataFile, "r")) {
+            byte[] bytes = new byte[(int) file.length()];
+            file.readFully(bytes);
+            Map<String, Object> counters = readPerfDataCounters(ByteBuffer.wrap(bytes));
+            // G1 reports the whole heap as the maximum of each generation, other collectors split it between them
+            boolean generationsShareHeap = "GarbageFirst".equals(counters.get("sun.gc.policy.name"));
+            long used = 0;
+            long max = 0;
+            for (Map.Entry<String, Object> counter : counters.entrySet()) {
+                String name = counter.getKey();
+                if (!(counter.getValue() instanceof Long)) {
+                    continue;
+                }
+                long value = (Long) counter.getValue();
+                if (name.matches("sun\\.gc\\.generation\\.\\d+\\.space\\.\\d+\\.used")) {
+                    used += value;
+                } else if (name.matches("sun\\.gc\\.generation\\.\\d+\\.maxCapacity")) {
+                    max = generationsShareHeap ? Math.max(max, value) : max + value;
+                }
+            }
+
+            return max == 0 ? null : new long[]{used / ONE_MEGABYTE, max / ONE_MEGABYTE};
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.debug("Unable to read {}: {}", perfDataFile, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the long and string counters of a HotSpot performance data file (version 2 of the format, used since
+     * Java 6).
+     *
+     * @return The counter values by name, a Long or a String
+     */
+    static Map<String, Object> readPerfDataCounters(ByteBuffer perfData) {
+        Map<String, Object> counters = new HashMap<>();
+        perfData.order(ByteOrder.BIG_ENDIAN);
+        if (perfData.getInt(0) != PERF_DATA_MAGIC || perfData.get(5) != 2) {
+            return counters;
+        }
+        perfData.order(perfData.get(4) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        int entryOffset = perfData.getInt(24);
+        int entryCount = perfData.getInt(28);
+        for (int i = 0; i < entryCount; i++) {
+            int entryLength = perfData.getInt(entryOffset);
+            int nameOffset = perfData.getInt(entryOffset + 4);
+            int vectorLength = perfData.getInt(entryOffset + 8);
+            byte dataType = perfData.get(entryOffset + 12);
+            int dataOffset = perfData.getInt(entryOffset + 16);
+            if (dataType == 'J' && vectorLength == 0) {
+                counters.put(readString(perfData, entryOffset + nameOffset, entryLength - nameOffset), perfData.getLong(entryOffset + dataOffset));
+            } else if (dataType == 'B' && vectorLength > 0) {
+                counters.put(readString(perfData, entryOffset + nameOffset, entryLength - nameOffset), readString(perfData, entryOffset + dataOffset, vectorLength));
+            }
+            entryOffset += entryLength;
+        }
+
+        return counters;
+    }
+
+    private static String readString(ByteBuffer perfData, int offset, int maxLength) {
+        byte[] bytes = new byte[maxLength];
+        int length = 0;
+        while (length < maxLength && perfData.get(offset + length) != 0) {
+            bytes[length] = perfData.get(offset + length);
+            length++;
+        }
+
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized boolean isCpuSaturated() {
+        return cpuSaturated;
+    }
+
+    public synchronized boolean isHeapSaturated() {
+        return heapSaturated;
+    }
+
+    /**
+     * @return Average CPU used by the JMeter JVM, in percent of one processor
+     */
+    public synchronized double getAverageCpuInPercent() {
+        return sampleCount == 0 ? 0 : totalCpuPercent / sampleCount;
+    }
+
+    public synchronized double getMaxCpuInPercent() {
+        return maxCpuPercent;
+    }
+
+    public synchronized long getMaxHeapUsedInMegaBytes() {
+        return maxHeapUsedInMegaBytes;
+    }
+
+    public synchronized long getHeapMaxInMegaBytes() {
+        return heapMaxInMegaBytes;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * @return Averages and maxima of the samples, and whether JMeter itself may have limited the test
+     */
+    public synchronized List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        if (sampleCount == 0) {
+            summary.add("Load generator resources: no samples taken");
+            return summary;
+        }
+        summary.add(String.format("Load generator resources (%d samples, %s):", sampleCount, outputFile.getAbsolutePath()));
+        summary.add(String.format("  CPU: average %.1f%%, max %.1f%% (%d processors = %d%%)", totalCpuPercent / sampleCount, maxCpuPercent, availableProcessors, availableProcessors * 100));
+        summary.add(String.format("  RSS: average %,dMB, max %,dMB", totalRssInMegaBytes / sampleCount, maxRssInMegaBytes));
+        summary.add(String.format("  Threads: max %,d, open files: max %,d, context switches: %,.0f/s", maxThreads, maxOpenFiles, totalContextSwitches / (sampleCount * intervalInMilliseconds / 1000d)));
+        if (heapMaxInMegaBytes > 0) {
+            summary.add(String.format("  Heap: max used %,dMB of %,dMB", maxHeapUsedInMegaBytes, heapMaxInMegaBytes));
+        }
+
+        return summary;
+    }
+
+    /**
+     * Stops sampling.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(intervalInMilliseconds + TimeUnit.SECONDS.toMillis(1), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (output != null) {
+                output.close();
+            }
+        }
+    }
+}
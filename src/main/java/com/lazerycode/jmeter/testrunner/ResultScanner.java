@@ -3,6 +3,17 @@ package com.lazerycode.jmeter.testrunner;
 import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.lazerycode.jmeter.results.CsvSampleReader;
+import com.lazerycode.jmeter.results.CsvSampleWriter;
+import com.lazerycode.jmeter.results.ErrorRateEstimate;
+import com.lazerycode.jmeter.results.ErrorRateEstimator;
+import com.lazerycode.jmeter.results.LabelNormaliser;
+import com.lazerycode.jmeter.results.MergingSampleReader;
+import com.lazerycode.jmeter.results.ResultAnalyzer;
+import com.lazerycode.jmeter.results.ResultFileFormat;
+import com.lazerycode.jmeter.results.ResultFileIndex;
+import com.lazerycode.jmeter.results.Sample;
+import com.lazerycode.jmeter.results.SampleReader;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,12 +22,14 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 
 /**
- * Handles checking a JMeter results file in XML format for errors and failures.
+ * Handles checking JMeter results files in CSV or XML format for errors and failures.
  *
  * @author Jon Roberts
  */
@@ -30,33 +43,89 @@ public class ResultScanner implements IResultScanner {
     private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
     private final boolean countFailures;
     private final boolean countSuccesses;
+    private final List<ResultAnalyzer> analyzers = new ArrayList<>();
     private int failureCount = 0;
     private int successCount = 0;
-    private boolean csv;
-    private String format;
+    private final ResultFileFormat configuredFormat;
+    private int indexSamplesPerBlock;
+    private LabelNormaliser labelNormaliser;
 
+    /**
+     * @param countSuccesses Count successful samples
+     * @param countFailures  Count failed samples
+     * @param isCsv          The format results are expected to be in, this is only used when the format of a file cannot be detected
+     */
     public ResultScanner(boolean countSuccesses, boolean countFailures, boolean isCsv) {
         this.countFailures = countFailures;
         this.countSuccesses = countSuccesses;
-        this.csv = isCsv;
-        this.format = this.csv ? "CSV" : "XML";
+        this.configuredFormat = ResultFileFormat.fromIsCsv(isCsv);
     }
 
     public ResultScanner(boolean countSuccesses, boolean countFailures) {
         this(countSuccesses, countFailures, false);
     }
 
-    private static char lookForDelimiter(String line) {
-        for (char ch : line.toCharArray()) {
-            if (!Character.isLetter(ch)) {
-                return ch;
+    /**
+     * Register an analysis that will be fed every sample found in the results files.
+     * When at least one analyzer is registered each file is parsed sample by sample in a single pass.
+     *
+     * @param analyzer ResultAnalyzer
+     * @return this
+     */
+    public ResultScanner addAnalyzer(ResultAnalyzer analyzer) {
+        analyzers.add(analyzer);
+
+        return this;
+    }
+
+    /**
+     * Build a {@link ResultFileIndex} for each CSV results file while it is scanned, so that it can be queried later
+     * without reading the whole file.
+     *
+     * @param indexSamplesPerBlock Number of samples in each block of the index, 0 to disable indexing
+     * @return this
+     */
+    public ResultScanner setIndexSamplesPerBlock(int indexSamplesPerBlock) {
+        this.indexSamplesPerBlock = indexSamplesPerBlock;
+
+        return this;
+    }
+
+    /**
+     * Normalise sample labels before they are passed to the registered analyzers, so that they aggregate on the
+     * normalised labels.  Results files, their indexes and merged results keep the original labels.
+     *
+     * @param labelNormaliser LabelNormaliser, null to keep labels as they are
+     * @return this
+     */
+    public ResultScanner setLabelNormaliser(LabelNormaliser labelNormaliser) {
+        this.labelNormaliser = labelNormaliser;
+
+        return this;
+    }
+
+    public List<ResultAnalyzer> getAnalyzers() {
+        return analyzers;
+    }
+
+    /**
+     * Let the registered analyzers know that every results file has been parsed.
+     *
+     * @throws MojoExecutionException When an analyzer is unable to write its output
+     */
+    public void scanCompleted() throws MojoExecutionException {
+        for (ResultAnalyzer analyzer : analyzers) {
+            try {
+                analyzer.scanCompleted();
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to complete result analysis: " + e.getMessage(), e);
             }
         }
-        throw new IllegalStateException("Cannot find delimiter in header " + line);
     }
 
     /**
-     * Work out how to parse the file (if at all)
+     * Work out how to parse the file (if at all).
+     * The format of each file is detected from its content, so files in different formats can be scanned in one run.
      *
      * @param file File to parse
      * @throws MojoExecutionException MojoExecutionException
@@ -65,8 +134,17 @@ public class ResultScanner implements IResultScanner {
         if (!file.exists()) {
             throw new MojoExecutionException("Unable to find " + file.getAbsolutePath());
         }
+        ResultFileFormat format = ResultFileFormat.detect(file, configuredFormat);
+        boolean csv = format == ResultFileFormat.CSV;
         LOGGER.info(" ");
         LOGGER.info("Parsing results file '{}' as type: {}", file, format);
+        if (format != configuredFormat) {
+            LOGGER.warn("Results were expected in {} format, but '{}' contains {} (has jmeter.save.saveservice.output_format been overridden?)", configuredFormat, file.getName(), format);
+        }
+        if (!analyzers.isEmpty() || (csv && indexSamplesPerBlock > 0)) {
+            scanSamples(file, csv);
+            return;
+        }
         if (countFailures) {
             if (csv) {
                 failureCount = failureCount + scanCsvForValue(file, CSV_REQUEST_FAILURE);
@@ -85,6 +163,251 @@ public class ResultScanner implements IResultScanner {
         }
     }
 
+    /**
+     * Merge several results files that cover the same period into a single stream ordered by time stamp and scan it
+     * in one pass, so that time based analysis sees the samples from every file in the order they happened.
+     * The files are streamed, they are never loaded into memory.  When every file is in CSV format with the same
+     * columns the merged file is a copy of their records, otherwise it only holds the columns this plugin reads.
+     *
+     * @param files             Files to merge, the format of each file is detected from its content
+     * @param reorderBufferSize Number of samples read ahead in each file to put samples that are slightly out of order back in order
+     * @param mergedResultsFile CSV file the merged samples are written to, null to disable
+     * @throws MojoExecutionException When an error occurs while reading the files or writing the merged file
+     */
+    public void parseMergedResultFiles(List<File> files, int reorderBufferSize, File mergedResultsFile) throws MojoExecutionException {
+        List<SampleReader> readers = new ArrayList<>();
+        try {
+            for (File file : files) {
+                if (!file.exists()) {
+                    throw new MojoExecutionException("Unable to find " + file.getAbsolutePath());
+                }
+                ResultFileFormat format = ResultFileFormat.detect(file, configuredFormat);
+                LOGGER.info("Merging results file '{}' as type: {}", file, format);
+                readers.add(format.openReader(file));
+            }
+        } catch (IOException e) {
+            closeQuietly(readers);
+            throw new MojoExecutionException("An unexpected error occurred while opening results files for merging: " + e.getMessage(), e);
+        } catch (MojoExecutionException | RuntimeException e) {
+            closeQuietly(readers);
+            throw e;
+        }
+        String commonHeader = commonCsvHeader(readers);
+        if (mergedResultsFile != null && commonHeader == null) {
+            LOGGER.warn("The results files are not all in CSV format with the same columns, '{}' will only hold the columns: {}", mergedResultsFile, CsvSampleWriter.HEADER);
+        }
+        int mergedFailureCount = 0;
+        int mergedSuccessCount = 0;
+        try (MergingSampleReader reader = new MergingSampleReader(readers, reorderBufferSize);
+             CsvSampleWriter writer = mergedResultsFile == null ? null : new CsvSampleWriter(mergedResultsFile, commonHeader == null ? CsvSampleWriter.HEADER : commonHeader)) {
+            Sample sample;
+            while ((sample = reader.next()) != null) {
+                mergedSuccessCount += countSamples(sample, true);
+                mergedFailureCount += countSamples(sample, false);
+                if (writer != null && commonHeader != null) {
+                    writer.writeRecord(sample.getCsvRecord());
+                } else if (writer != null) {
+                    writer.write(sample);
+                }
+                analyse(sample);
+            }
+            if (reader.getOutOfOrderSampleCount() > 0) {
+                LOGGER.warn("{} samples were too far out of time order to be merged in order, increase the reorder buffer size ({})", reader.getOutOfOrderSampleCount(), reorderBufferSize);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("An unexpected error occurred while merging results files: " + e.getMessage(), e);
+        }
+        if (mergedResultsFile != null) {
+            LOGGER.info("Merged results written to '{}'", mergedResultsFile);
+        }
+        if (countFailures) {
+            failureCount = failureCount + mergedFailureCount;
+            LOGGER.info("Number of failures in merged results: {}", failureCount);
+        }
+        if (countSuccesses) {
+            successCount = successCount + mergedSuccessCount;
+            LOGGER.info("Number of successes in merged results: {}", successCount);
+        }
+    }
+
+    /**
+     * Add samples that were counted elsewhere, e.g. while a soak test was running, and whose results files are no
+     * longer available.  Analyzers are not fed these samples.
+     *
+     * @param sampleCount  Number of samples
+     * @param failureCount Number of failed samples among them
+     */
+    public void addCountedSamples(long sampleCount, long failureCount) {
+        if (countFailures) {
+            this.failureCount = this.failureCount + (int) failureCount;
+            LOGGER.info("Number of failures counted while running: {}", failureCount);
+        }
+        if (countSuccesses) {
+            this.successCount = this.successCount + (int) (sampleCount - failureCount);
+            LOGGER.info("Number of successes counted while running: {}", sampleCount - failureCount);
+        }
+    }
+
+    /**
+     * Estimate the error rate of the results files from a random sample of blocks, rather than reading every sample.
+     * The estimate is only used when it is decisive: the error rate is either above the threshold, or at or below it,
+     * with the required confidence.  The counts are then set to the samples that were read, so that their error rate
+     * is the estimate.  Registered analyzers are not fed any samples, so no estimate is made when one of them can fail
+     * the build.
+     *
+     * @param files                      Results files, only CSV files can be sampled
+     * @param blockCount                 Number of blocks read
+     * @param confidenceInPercent        Confidence required for the estimate to be decisive
+     * @param errorRateThresholdInPercent Highest acceptable error rate
+     * @return The decisive estimate, or null if the files have to be scanned in full
+     * @throws MojoExecutionException When an error occurs while reading the files
+     */
+    public ErrorRateEstimate parseResultFilesApproximately(List<File> files, int blockCount, float confidenceInPercent, float errorRateThresholdInPercent) throws MojoExecutionException {
+        for (ResultAnalyzer analyzer : analyzers) {
+            if (analyzer.canFailBuild()) {
+                LOGGER.info("{} can fail the build and needs every sample, results will be scanned in full", analyzer.getClass().getSimpleName());
+                return null;
+            }
+        }
+        long totalSize = 0;
+        for (File file : files) {
+            if (!file.exists()) {
+                throw new MojoExecutionException("Unable to find " + file.getAbsolutePath());
+            }
+            if (ResultFileFormat.detect(file, configuredFormat) != ResultFileFormat.CSV) {
+                LOGGER.info("'{}' is not in CSV format, it cannot be sampled so results will be scanned in full", file.getName());
+                return null;
+            }
+            totalSize += file.length();
+        }
+        ErrorRateEstimate estimate;
+        try {
+            // Seeded from the size of the results, so that checking the same results gives the same estimate
+            estimate = new ErrorRateEstimator(blockCount, totalSize).estimate(files);
+        } catch (IOException e) {
+            throw new MojoExecutionException("An unexpected error occurred while sampling results files: " + e.getMessage(), e);
+        }
+        if (estimate == null) {
+            LOGGER.info("Results are too small to be worth sampling, they will be scanned in full");
+            return null;
+        }
+        LOGGER.info("Estimated error rate: {}, {}% confidence interval {}% to {}%",
+                estimate,
+                confidenceInPercent,
+                String.format("%.3f", estimate.getLowerBoundInPercent(confidenceInPercent)),
+                String.format("%.3f", estimate.getUpperBoundInPercent(confidenceInPercent))
+        );
+        if (!estimate.isAbove(errorRateThresholdInPercent, confidenceInPercent) && !estimate.isAtOrBelow(errorRateThresholdInPercent, confidenceInPercent)) {
+            LOGGER.info("The estimate is too close to the error rate threshold ({}%), results will be scanned in full", errorRateThresholdInPercent);
+            return null;
+        }
+        if (countFailures) {
+            failureCount = failureCount + (int) estimate.getFailureCount();
+        }
+        if (countSuccesses) {
+            successCount = successCount + (int) (estimate.getSampleCount() - estimate.getFailureCount());
+        }
+
+        return estimate;
+    }
+
+    /**
+     * @return The header shared by every reader, or null when they are not all reading CSV files with the same columns
+     */
+    private static String commonCsvHeader(List<SampleReader> readers) {
+        String commonHeader = null;
+        for (SampleReader reader : readers) {
+            if (!(reader instanceof CsvSampleReader)) {
+                return null;
+            }
+            String header = ((CsvSampleReader) reader).getHeader();
+            if (commonHeader != null && !commonHeader.equals(header)) {
+                return null;
+            }
+            commonHeader = header;
+        }
+
+        return commonHeader;
+    }
+
+    private static void closeQuietly(List<SampleReader> readers) {
+        for (SampleReader reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close results file", e);
+            }
+        }
+    }
+
+    /**
+     * Reads every sample in the file once, counting successes/failures and passing each sample to the registered analyzers.
+     *
+     * @param file The file to parse
+     * @param csv  The file is in CSV format
+     * @throws MojoExecutionException When an error occurs while reading the file
+     */
+    private void scanSamples(File file, boolean csv) throws MojoExecutionException {
+        int fileFailureCount = 0;
+        int fileSuccessCount = 0;
+        ResultFileIndex.Builder indexBuilder = csv && indexSamplesPerBlock > 0 ? new ResultFileIndex.Builder(indexSamplesPerBlock) : null;
+        try (SampleReader reader = ResultFileFormat.fromIsCsv(csv).openReader(file)) {
+            Sample sample;
+            while ((sample = reader.next()) != null) {
+                fileSuccessCount += countSamples(sample, true);
+                fileFailureCount += countSamples(sample, false);
+                if (indexBuilder != null) {
+                    indexBuilder.sampleRead(sample, ((CsvSampleReader) reader).getRecordOffset());
+                }
+                analyse(sample);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("An unexpected error occurred while reading file " + file.getAbsolutePath(), e);
+        }
+        for (ResultAnalyzer analyzer : analyzers) {
+            analyzer.fileCompleted();
+        }
+        if (indexBuilder != null) {
+            try {
+                indexBuilder.build(file).save(file);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to save index for '{}': {}", file.getName(), e.getMessage());
+            }
+        }
+        if (countFailures) {
+            failureCount = failureCount + fileFailureCount;
+            LOGGER.info("Number of failures in '{}': {}", file.getName(), failureCount);
+        }
+        if (countSuccesses) {
+            successCount = successCount + fileSuccessCount;
+            LOGGER.info("Number of successes in '{}': {}", file.getName(), successCount);
+        }
+    }
+
+    private void analyse(Sample sample) {
+        if (analyzers.isEmpty()) {
+            return;
+        }
+        if (labelNormaliser != null) {
+            labelNormaliser.normalise(sample);
+        }
+        for (ResultAnalyzer analyzer : analyzers) {
+            analyzer.sampleOccurred(sample);
+        }
+    }
+
+    /**
+     * Sub results are included in the count to match the XML pattern scan, which counts every sample element.
+     */
+    private static int countSamples(Sample sample, boolean success) {
+        int count = sample.isSuccessRecorded() && sample.isSuccess() == success ? 1 : 0;
+        for (Sample subResult : sample.getSubResults()) {
+            count += countSamples(subResult, success);
+        }
+
+        return count;
+    }
+
     /**
      * Scans a csv file for the given pattern and returns the number of times
      * the pattern appears in the success column. This function assumes that the
@@ -125,7 +448,7 @@ public class ResultScanner implements IResultScanner {
              BufferedReader reader = new BufferedReader(fr, DEFAULT_BUFFER_SIZE)) {
             String line = reader.readLine();
             if (line != null) {
-                return lookForDelimiter(line);
+                return CsvSampleReader.lookForDelimiter(line);
             }
             throw new IllegalArgumentException("No line read from file " + file.getAbsolutePath());
         }
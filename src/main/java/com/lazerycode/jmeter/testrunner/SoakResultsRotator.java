@@ -0,0 +1,392 @@
+package com.lazerycode.jmeter.testrunner;
+
+import com.lazerycode.jmeter.configuration.SoakConfiguration;
+import com.lazerycode.jmeter.results.CsvSampleReader;
+import com.lazerycode.jmeter.results.RollingAggregates;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves the results JMeter writes into time sliced segment files while a soak test runs, so that the results file
+ * never grows large and each segment can be analysed (and then compressed or deleted) before the test has finished.
+ * <p/>
+ * JMeter cannot be told to start a new results file, so the results file is rotated in the same way as logrotate's
+ * copytruncate: complete CSV records are copied into the current segment and the results file is truncated.  JMeter
+ * opens its results file in append mode, so it carries on writing at the start of the truncated file.  The file is
+ * only truncated once it has stopped growing while it is copied; a record written in the moment between the last
+ * check and the truncate is lost, so soak mode trades exact sample counts for bounded disk usage.
+ * <p/>
+ * JMeter is told to flush every sample ({@link #AUTOFLUSH_PROPERTY}) so that a write is a whole record.  A record
+ * that has still been cut by a truncate is discarded rather than joined to the next one: records that do not have
+ * the fields of the header, and records that grow past {@link #MAX_RECORD_SIZE_IN_BYTES} (e.g. because a lost quote
+ * has left the rest of the file looking quoted), are dropped up to the next new line.  Whole records lost in the
+ * moment before a truncate cannot be seen in the file, they are counted by comparing the records moved into segments
+ * with the number of samples the JMeter summariser reported ({@link #countLostRecords(File)}).
+ */
+public class SoakResultsRotator implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SoakResultsRotator.class);
+    public static final String AUTOFLUSH_PROPERTY = "jmeter.save.saveservice.autoflush";
+    static final int MAX_RECORD_SIZE_IN_BYTES = 1024 * 1024;
+    private static final Pattern SUMMARISER_TOTAL = Pattern.compile("summary =\\s+(\\d+) in ");
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final byte NEW_LINE = '\n';
+    private static final byte QUOTE = '"';
+    private final File resultsFile;
+    private final long segmentDurationInMilliseconds;
+    private final long pollIntervalInMilliseconds;
+    private final SoakConfiguration.SegmentRetention retention;
+    private final RollingAggregates aggregates;
+    private final LongSupplier clock;
+    private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "soak-segment-analysis"));
+    private final List<File> segments = new ArrayList<>();
+    private final ByteArrayOutputStream partialRecord = new ByteArrayOutputStream();
+    private ScheduledExecutorService pollExecutor;
+    private byte[] header;
+    private boolean inQuotes;
+    private boolean skippingToNextLine;
+    private byte separator;
+    private int headerSeparatorCount;
+    private int recordSeparatorCount;
+    private long discardedRecordCount;
+    private long movedRecordCount;
+    private OutputStream segmentOutput;
+    private File segmentFile;
+    private long segmentStart;
+    private IOException pollFailure;
+
+    /**
+     * @param resultsFile   The results file JMeter writes to, in CSV format
+     * @param configuration SoakConfiguration
+     * @param aggregates    Rolling aggregates each closed segment is added to
+     */
+    public SoakResultsRotator(File resultsFile, SoakConfiguration configuration, RollingAggregates aggregates) {
+        this(resultsFile,
+                TimeUnit.MINUTES.toMillis(configuration.getSegmentDurationInMinutes()),
+                TimeUnit.SECONDS.toMillis(configuration.getPollIntervalInSeconds()),
+                configuration.getAfterAnalysis(),
+                aggregates,
+                System::currentTimeMillis
+        );
+    }
+
+    SoakResultsRotator(File resultsFile, long segmentDurationInMilliseconds, long pollIntervalInMilliseconds, SoakConfiguration.SegmentRetention retention, RollingAggregates aggregates, LongSupplier clock) {
+        this.resultsFile = resultsFile;
+        this.segmentDurationInMilliseconds = Math.max(1, segmentDurationInMilliseconds);
+        this.pollIntervalInMilliseconds = Math.max(1, pollIntervalInMilliseconds);
+        this.retention = retention;
+        this.aggregates = aggregates;
+        this.clock = clock;
+    }
+
+    /**
+     * Start moving results into segments in the background.
+     */
+    public void start() {
+        pollExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "soak-results-rotation"));
+        pollExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (IOException ex) {
+                LOGGER.error("Unable to rotate results file {}: {}", resultsFile, ex.getMessage());
+                pollFailure = ex;
+            }
+        }, pollIntervalInMilliseconds, pollIntervalInMilliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Move any complete records JMeter has written into the current segment, closing the segment if it has covered
+     * its whole duration.
+     *
+     * @throws IOException When the results file cannot be read or a segment cannot be written
+     */
+    synchronized void poll() throws IOException {
+        if (resultsFile.exists()) {
+            try (FileChannel channel = FileChannel.open(resultsFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long copied = 0;
+                long length;
+                // Keep copying until JMeter has not written anything while the file was being copied, a write that
+                // lands between the last size check and the truncate is lost
+                while ((length = channel.size()) > copied) {
+                    copyRecords(channel, copied, length);
+                    copied = length;
+                }
+                if (copied > 0) {
+                    channel.truncate(0);
+                }
+            }
+        }
+        if (segmentOutput != null && clock.getAsLong() - segmentStart >= segmentDurationInMilliseconds) {
+            closeSegment();
+        }
+    }
+
+    private void copyRecords(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        channel.position(from);
+        long remaining = to - from;
+        while (remaining > 0) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), remaining));
+            int read = channel.read(buffer);
+            if (read <= 0) {
+                break;
+            }
+            remaining -= read;
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                byte value = bytes[i];
+                if (skippingToNextLine) {
+                    skippingToNextLine = value != NEW_LINE;
+                    continue;
+                }
+                partialRecord.write(value);
+                if (value == QUOTE) {
+                    inQuotes = !inQuotes;
+                } else if (value == separator && !inQuotes) {
+                    recordSeparatorCount++;
+                } else if (value == NEW_LINE && !inQuotes) {
+                    recordCompleted();
+                } else if (partialRecord.size() > MAX_RECORD_SIZE_IN_BYTES) {
+                    discardRecord("is longer than " + MAX_RECORD_SIZE_IN_BYTES + " bytes");
+                    skippingToNextLine = true;
+                }
+            }
+        }
+    }
+
+    private void recordCompleted() throws IOException {
+        byte[] record = partialRecord.toByteArray();
+        partialRecord.reset();
+        if (header == null) {
+            header = record;
+            separator = headerSeparator(header);
+            for (byte value : header) {
+                headerSeparatorCount += value == separator ? 1 : 0;
+            }
+            recordSeparatorCount = 0;
+            return;
+        }
+        if (separator != 0 && recordSeparatorCount != headerSeparatorCount) {
+            discardRecord("does not have the " + (headerSeparatorCount + 1) + " fields of the header");
+            return;
+        }
+        recordSeparatorCount = 0;
+        if (segmentOutput == null) {
+            openSegment();
+        }
+        segmentOutput.write(record);
+        movedRecordCount++;
+    }
+
+    /**
+     * @return The separator in a header of field names, 0 (records are not checked) if the file has no header
+     */
+    private static byte headerSeparator(byte[] header) {
+        String headerLine = new String(header, StandardCharsets.ISO_8859_1).trim();
+        if (headerLine.isEmpty() || !Character.isLetter(headerLine.charAt(0))) {
+            return 0;
+        }
+        try {
+            return (byte) CsvSampleReader.lookForDelimiter(headerLine);
+        } catch (IllegalStateException ex) {
+            return 0;
+        }
+    }
+
+    private void discardRecord(String reason) {
+        if (discardedRecordCount == 0) {
+            LOGGER.warn("Discarding a record of {} that {}, it has been cut when the file was truncated", resultsFile, reason);
+        }
+        discardedRecordCount++;
+        partialRecord.reset();
+        inQuotes = false;
+        recordSeparatorCount = 0;
+    }
+
+    /**
+     * @return Number of records discarded because they had been cut when the results file was truncated
+     */
+    public synchronized long getDiscardedRecordCount() {
+        return discardedRecordCount;
+    }
+
+    /**
+     * @return Number of records moved into segments
+     */
+    public synchronized long getMovedRecordCount() {
+        return movedRecordCount;
+    }
+
+    /**
+     * Counts the records lost when the results file was truncated, this should be called once the rotator is closed.
+     * The count is a lower bound: sub results are written as records of their own but not counted by the summariser.
+     *
+     * @param jmeterOutputFile The output of JMeter, which holds the running totals of the summariser
+     * @return Number of samples JMeter reported that have not been moved into a segment, -1 if the output does not
+     * include a summariser total
+     * @throws IOException When the output file cannot be read
+     */
+    public long countLostRecords(File jmeterOutputFile) throws IOException {
+        long summariserTotal = -1;
+        if (jmeterOutputFile.isFile()) {
+            try (BufferedReader output = Files.newBufferedReader(jmeterOutputFile.toPath(), StandardCharsets.ISO_8859_1)) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    Matcher total = SUMMARISER_TOTAL.matcher(line);
+                    if (total.find()) {
+                        summariserTotal = Long.parseLong(total.group(1));
+                    }
+                }
+            }
+        }
+        if (summariserTotal < 0) {
+            return -1;
+        }
+
+        return Math.max(0, summariserTotal - getMovedRecordCount());
+    }
+
+    private void openSegment() throws IOException {
+        segmentFile = new File(resultsFile.getParentFile(), String.format("%s-segment-%04d.%s",
+                FilenameUtils.getBaseName(resultsFile.getName()),
+                segments.size() + 1,
+                FilenameUtils.getExtension(resultsFile.getName())
+        ));
+        segments.add(segmentFile);
+        segmentOutput = new BufferedOutputStream(new FileOutputStream(segmentFile), COPY_BUFFER_SIZE);
+        segmentOutput.write(header);
+        segmentStart = clock.getAsLong();
+        LOGGER.info("Writing soak test results to {}", segmentFile.getName());
+    }
+
+    private void closeSegment() throws IOException {
+        segmentOutput.close();
+        segmentOutput = null;
+        File closedSegment = segmentFile;
+        analysisExecutor.submit(() -> analyse(closedSegment));
+    }
+
+    private void analyse(File segment) {
+        try {
+            for (String line : aggregates.addSegment(segment)) {
+                LOGGER.info(line);
+            }
+            switch (retention) {
+                case COMPRESS:
+                    compress(segment);
+                    break;
+                case DELETE:
+                    if (!segment.delete()) {
+                        LOGGER.warn("Unable to delete {}", segment);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException ex) {
+            LOGGER.error("Unable to analyse soak test segment {}: {}", segment, ex.getMessage());
+        }
+    }
+
+    private static void compress(File segment) throws IOException {
+        File compressed = new File(segment.getAbsolutePath() + ".gz");
+        try (InputStream input = new FileInputStream(segment);
+             OutputStream output = new GZIPOutputStream(new FileOutputStream(compressed), COPY_BUFFER_SIZE)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+        if (!segment.delete()) {
+            LOGGER.warn("Unable to delete {} after compressing it", segment);
+        }
+    }
+
+    /**
+     * @return Every segment written so far
+     */
+    public synchronized List<File> getSegments() {
+        return new ArrayList<>(segments);
+    }
+
+    /**
+     * Move the last results into a final segment and wait until every segment has been analysed.
+     * This should be called once JMeter has stopped.
+     *
+     * @throws IOException When the last results cannot be moved, or moving results failed while the test was running
+     */
+    @Override
+    public void close() throws IOException {
+        if (pollExecutor != null) {
+            pollExecutor.shutdownNow();
+            awaitTermination(pollExecutor);
+        }
+        try {
+            synchronized (this) {
+                poll();
+                if (partialRecord.size() > 0) {
+                    LOGGER.warn("Discarding an incomplete record at the end of {}", resultsFile);
+                    partialRecord.reset();
+                }
+                if (discardedRecordCount > 0) {
+                    LOGGER.warn("{} records of {} were discarded because they had been cut when the file was truncated", discardedRecordCount, resultsFile);
+                }
+                if (segmentOutput != null) {
+                    closeSegment();
+                }
+            }
+        } finally {
+            analysisExecutor.shutdown();
+            awaitTermination(analysisExecutor);
+        }
+        if (pollFailure != null) {
+            throw pollFailure;
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.info("Waiting for soak test segments to be analysed...");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+
+        return thread;
+    }
+}
@@ -3,21 +3,35 @@ package com.lazerycode.jmeter.testrunner;
 import com.lazerycode.jmeter.configuration.JMeterArgumentsArray;
 import com.lazerycode.jmeter.configuration.JMeterProcessJVMSettings;
 import com.lazerycode.jmeter.configuration.RemoteConfiguration;
+import com.lazerycode.jmeter.configuration.SoakConfiguration;
+import com.lazerycode.jmeter.results.RollingAggregates;
+import com.lazerycode.jmeter.results.ShardResultsMerger;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.tools.ant.DirectoryScanner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import static com.lazerycode.jmeter.configuration.RemoteArgumentsArrayBuilder.buildRemoteArgumentsArray;
 import static com.lazerycode.jmeter.utility.UtilityFunctions.isNotSet;
@@ -41,8 +55,29 @@ public class TestManager {
     private String runtimeJarName;
     private File reportDirectory;
     private boolean generateReports = false;
+    private SoakConfiguration soakConfiguration;
+    private int parallelTestCount = 1;
+    private long testTimeoutInMinutes = 0L;
+    private long suiteTimeoutInMinutes = 0L;
+    private long timeoutGracePeriodInSeconds = 30L;
+    private long suiteDeadline;
+    private int jMeterOutputLinesPerSecond = 100;
+    private boolean useWorkerJVM = false;
+    private int testsPerWorkerJVM = 50;
+    private JMeterWorker worker;
+    private JMeterJVMSizer jvmSizer;
+    private boolean flightRecording = false;
+    private String flightRecordingSettings = "profile";
+    private long resourceSamplingIntervalInSeconds = 1L;
+    private int shardsPerTest = 1;
+    private final Set<File> shardPlanFiles = ConcurrentHashMap.newKeySet();
+    private final AtomicLong removedSoakSegmentSampleCount = new AtomicLong();
+    private final AtomicLong removedSoakSegmentFailureCount = new AtomicLong();
+    private File testRunHistoryFile;
+    private TestRunHistory testRunHistory;
 
     private static final int EXIT_CODE_FOR_JVM_KILLED = 143;
+    private static final int SHARD_MERGE_REORDER_BUFFER_SIZE = 1000;
 
     public TestManager setBinDir(File file) {
         this.binDir = file;
@@ -98,6 +133,131 @@ public class TestManager {
         return this;
     }
 
+    /**
+     * Run tests in soak mode, moving results into segments that are analysed while the test runs.
+     *
+     * @param configuration Soak mode configuration, null to disable soak mode
+     */
+    public TestManager setSoakConfiguration(SoakConfiguration configuration) {
+        this.soakConfiguration = configuration;
+
+        return this;
+    }
+
+    /**
+     * Run up to this many tests at the same time, each in its own JMeter process with its own results file, log file
+     * and report directory.  Tests that use remote servers are always run one at a time.
+     *
+     * @param parallelTestCount Number of tests run at the same time, 1 to run tests one after another
+     */
+    public TestManager setParallelTestCount(int parallelTestCount) {
+        this.parallelTestCount = Math.max(1, parallelTestCount);
+
+        return this;
+    }
+
+    /**
+     * Stop a test that is still running after this many minutes, capturing a thread dump and a class histogram of the
+     * JMeter JVM first.  The build fails with the location of the diagnostics.
+     *
+     * @param testTimeoutInMinutes Longest time a single test may run for, 0 for no limit
+     */
+    public TestManager setTestTimeoutInMinutes(long testTimeoutInMinutes) {
+        this.testTimeoutInMinutes = testTimeoutInMinutes;
+
+        return this;
+    }
+
+    /**
+     * Stop the running test(s) when all tests together have run for this many minutes, see {@link #setTestTimeoutInMinutes(long)}.
+     *
+     * @param suiteTimeoutInMinutes Longest time all tests together may run for, 0 for no limit
+     */
+    public TestManager setSuiteTimeoutInMinutes(long suiteTimeoutInMinutes) {
+        this.suiteTimeoutInMinutes = suiteTimeoutInMinutes;
+
+        return this;
+    }
+
+    /**
+     * @param timeoutGracePeriodInSeconds Time a timed out test is given to stop before the JMeter JVM is killed
+     */
+    public TestManager setTimeoutGracePeriodInSeconds(long timeoutGracePeriodInSeconds) {
+        this.timeoutGracePeriodInSeconds = timeoutGracePeriodInSeconds;
+
+        return this;
+    }
+
+    /**
+     * JMeter output is always written in full to a file next to the results file, at most this many lines per second
+     * are also logged.
+     *
+     * @param jMeterOutputLinesPerSecond Most lines of JMeter output logged per second
+     */
+    public TestManager setJMeterOutputLinesPerSecond(int jMeterOutputLinesPerSecond) {
+        this.jMeterOutputLinesPerSecond = jMeterOutputLinesPerSecond;
+
+        return this;
+    }
+
+    /**
+     * Run the tests one after another in a long lived JMeter JVM rather than forking a JVM for every test, see
+     * {@link JMeterWorker}.  Tests run in parallel are always run in forked JVMs.
+     *
+     * @param useWorkerJVM      Run tests in a worker JVM
+     * @param testsPerWorkerJVM Number of tests run by a worker JVM before it is replaced
+     */
+    public TestManager setUseWorkerJVM(boolean useWorkerJVM, int testsPerWorkerJVM) {
+        this.useWorkerJVM = useWorkerJVM;
+        this.testsPerWorkerJVM = testsPerWorkerJVM;
+
+        return this;
+    }
+
+    /**
+     * Records each forked JMeter JVM with Java Flight Recorder and logs a summary of the recording after the test.
+     */
+    public TestManager setFlightRecording(boolean flightRecording, String flightRecordingSettings) {
+        this.flightRecording = flightRecording;
+        this.flightRecordingSettings = flightRecordingSettings;
+
+        return this;
+    }
+
+    /**
+     * Samples the resources used by the JMeter JVM while each test runs, 0 to not sample them.
+     */
+    public TestManager setResourceSamplingIntervalInSeconds(long resourceSamplingIntervalInSeconds) {
+        this.resourceSamplingIntervalInSeconds = Math.max(0, resourceSamplingIntervalInSeconds);
+
+        return this;
+    }
+
+    /**
+     * Run each test as this many JMeter processes started at the same time, each running a share of the threads of the
+     * plan, see {@link TestPlanSharder}.  Each shard writes its own results file, together they are the results of the
+     * test.
+     *
+     * @param shardsPerTest Number of JMeter processes that run each test, 1 to run each test in a single process
+     */
+    public TestManager setShardsPerTest(int shardsPerTest) {
+        this.shardsPerTest = Math.max(1, shardsPerTest);
+
+        return this;
+    }
+
+    /**
+     * Keep the duration and resource use of each test in this file, tests run in parallel are then started longest
+     * first, see {@link TestRunHistory}.
+     *
+     * @param testRunHistoryFile The history file, null to not keep a history
+     */
+    public TestManager setTestRunHistoryFile(File testRunHistoryFile) {
+        this.testRunHistoryFile = testRunHistoryFile;
+
+        return this;
+    }
+
     public TestManager setTestFilesExcluded(List<String> values) {
         this.testFilesExcluded = values.toArray(new String[0]);
 
@@ -181,6 +341,73 @@ public class TestManager {
         return generateReports;
     }
 
+    SoakConfiguration getSoakConfiguration() {
+        return soakConfiguration;
+    }
+
+    int getParallelTestCount() {
+        return parallelTestCount;
+    }
+
+    long getTestTimeoutInMinutes() {
+        return testTimeoutInMinutes;
+    }
+
+    long getSuiteTimeoutInMinutes() {
+        return suiteTimeoutInMinutes;
+    }
+
+    long getTimeoutGracePeriodInSeconds() {
+        return timeoutGracePeriodInSeconds;
+    }
+
+    int getJMeterOutputLinesPerSecond() {
+        return jMeterOutputLinesPerSecond;
+    }
+
+    boolean isUseWorkerJVM() {
+        return useWorkerJVM;
+    }
+
+    int getTestsPerWorkerJVM() {
+        return testsPerWorkerJVM;
+    }
+
+    boolean isFlightRecording() {
+        return flightRecording;
+    }
+
+    String getFlightRecordingSettings() {
+        return flightRecordingSettings;
+    }
+
+    long getResourceSamplingIntervalInSeconds() {
+        return resourceSamplingIntervalInSeconds;
+    }
+
+    int getShardsPerTest() {
+        return shardsPerTest;
+    }
+
+    File getTestRunHistoryFile() {
+        return testRunHistoryFile;
+    }
+
+    /**
+     * @return the number of samples in soak test segments that were compressed or deleted after analysis, and so are
+     * not among the result files returned by {@link #executeTests()}
+     */
+    public long getRemovedSoakSegmentSampleCount() {
+        return removedSoakSegmentSampleCount.get();
+    }
+
+    /**
+     * @return the number of failed samples in soak test segments that were compressed or deleted after analysis
+     */
+    public long getRemovedSoakSegmentFailureCount() {
+        return removedSoakSegmentFailureCount.get();
+    }
+
     /**
      * Executes all tests and returns the resultFile names
      *
@@ -188,48 +415,362 @@ public class TestManager {
      * @throws MojoExecutionException MojoExecutionException
      */
     public List<String> executeTests() throws MojoExecutionException {
+        testRunHistory = testRunHistoryFile == null ? null : TestRunHistory.load(testRunHistoryFile);
+        try {
+            return executeTests(generateTestList());
+        } finally {
+            if (testRunHistory != null) {
+                try {
+                    testRunHistory.save();
+                } catch (IOException ex) {
+                    LOGGER.warn("Unable to save test run history {}: {}", testRunHistoryFile.getAbsolutePath(), ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private List<String> executeTests(List<String> tests) throws MojoExecutionException {
         JMeterArgumentsArray thisTestArgs = baseTestArgs;
-        List<String> tests = generateTestList();
+        suiteDeadline = suiteTimeoutInMinutes > 0 ? System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(suiteTimeoutInMinutes) : 0;
+        if (shardsPerTest > 1) {
+            if (!usesRemoteServers()) {
+                return executeShardedTests(tests);
+            }
+            LOGGER.warn("Tests that use remote servers are not sharded, <shardsPerTest>{}</shardsPerTest> ignored", shardsPerTest);
+        }
+        if (parallelTestCount > 1 && tests.size() > 1) {
+            if (!usesRemoteServers()) {
+                if (useWorkerJVM) {
+                    LOGGER.warn("A worker JVM runs one test at a time, tests run in parallel are run in forked JVMs");
+                }
+                return executeTestsInParallel(tests);
+            }
+            LOGGER.warn("Tests that use remote servers are run one at a time, <parallelTestCount>{}</parallelTestCount> ignored", parallelTestCount);
+        }
+        if (jMeterProcessJVMSettings.isAutoSizing()) {
+            jvmSizer = new JMeterJVMSizer(jMeterProcessJVMSettings, 1);
+        }
         List<String> results = new ArrayList<>();
+        if (useWorkerJVM && !tests.isEmpty()) {
+            // The worker runs every test, so it is sized for the largest
+            JMeterProcessJVMSettings workerSettings = jvmSizer == null ? jMeterProcessJVMSettings : jvmSizer.settingsFor(tests.stream().map(test -> new File(testFilesDirectory, test)).collect(Collectors.toList()));
+            worker = new JMeterWorker(workerSettings, binDir, runtimeJarName, testsPerWorkerJVM);
+        }
+        try {
+            for (String file : tests) {
+                if (generateReports) {
+                    setReportsDirectory(file, thisTestArgs);
+                }
+                if ((remoteServerConfiguration.isStartServersBeforeTests() && tests.get(0).equals(file)) || remoteServerConfiguration.isStartAndStopServersForEachTest()) {
+                    thisTestArgs.setRemoteStart();
+                    thisTestArgs.setRemoteStartServerList(remoteServerConfiguration.getServerList());
+                }
+                if ((remoteServerConfiguration.isStopServersAfterTests() && tests.get(tests.size() - 1).equals(file)) || remoteServerConfiguration.isStartAndStopServersForEachTest()) {
+                    thisTestArgs.setRemoteStop();
+                }
+                results.addAll(executeSingleTest(new File(testFilesDirectory, file), thisTestArgs, "", worker));
+                pauseAfterTest();
+            }
+        } finally {
+            if (worker != null) {
+                worker.close();
+                worker = null;
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Runs the tests on a bounded pool of threads, each test gets its own copy of the base arguments.  All tests are
+     * run even if one fails, the first failure is thrown once they have completed.  Tests are started longest first
+     * when there is a test run history, so that the tests take little longer than the longest one.
+     *
+     * @return the resultFile names, in the same order as the tests
+     */
+    private List<String> executeTestsInParallel(List<String> tests) throws MojoExecutionException {
+        List<JMeterArgumentsArray> testArgs = new ArrayList<>();
+        Map<String, String> testsByOutputFile = new HashMap<>();
         for (String file : tests) {
+            JMeterArgumentsArray thisTestArgs = new JMeterArgumentsArray(baseTestArgs);
             if (generateReports) {
-                File outputReportFolder = new File(reportDirectory + File.separator + FilenameUtils.removeExtension(file));
-                LOGGER.info("Will generate HTML report in {}", outputReportFolder.getAbsolutePath());
-                if (outputReportFolder.exists() || outputReportFolder.mkdirs()) {
-                    thisTestArgs.setReportsDirectory(outputReportFolder.getAbsolutePath());
-                } else {
-                    throw new MojoExecutionException("Unable to create report output folder:" + outputReportFolder.getAbsolutePath());
+                setReportsDirectory(file, thisTestArgs);
+            }
+            thisTestArgs.setTestFile(new File(testFilesDirectory, file), testFilesDirectory);
+            for (String outputFile : Arrays.asList(thisTestArgs.getResultsLogFileName(), thisTestArgs.getJMeterLogFileName())) {
+                String otherTest = outputFile == null ? null : testsByOutputFile.put(outputFile, file);
+                if (otherTest != null) {
+                    throw new MojoExecutionException("Tests " + otherTest + " and " + file + " would both write to " + outputFile + ", they cannot be run at the same time");
                 }
             }
-            if ((remoteServerConfiguration.isStartServersBeforeTests() && tests.get(0).equals(file)) || remoteServerConfiguration.isStartAndStopServersForEachTest()) {
-                thisTestArgs.setRemoteStart();
-                thisTestArgs.setRemoteStartServerList(remoteServerConfiguration.getServerList());
+            testArgs.add(thisTestArgs);
+        }
+        int threads = Math.min(parallelTestCount, tests.size());
+        if (jMeterProcessJVMSettings.isAutoSizing()) {
+            jvmSizer = new JMeterJVMSizer(jMeterProcessJVMSettings, threads);
+        }
+        LOGGER.info("Running {} tests, {} at a time", tests.size(), threads);
+        List<String> schedule = tests;
+        if (testRunHistory != null) {
+            schedule = testRunHistory.longestFirst(tests);
+            LOGGER.info("Tests are started longest first: {}", schedule.stream().map(this::describeDuration).collect(Collectors.joining(", ")));
+        }
+        LOGGER.info(" ");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // The pool starts tests in the order they are submitted, results are still collected in the order of the tests
+        List<Future<List<String>>> testRuns = new ArrayList<>(Collections.nCopies(tests.size(), null));
+        for (String file : schedule) {
+            int i = tests.indexOf(file);
+            File test = new File(testFilesDirectory, file);
+            JMeterArgumentsArray thisTestArgs = testArgs.get(i);
+            testRuns.set(i, executor.submit(() -> {
+                List<String> resultFiles = executeSingleTest(test, thisTestArgs, "[" + test.getName() + "] ", null);
+                pauseAfterTest();
+                return resultFiles;
+            }));
+        }
+        executor.shutdown();
+        List<String> results = new ArrayList<>();
+        MojoExecutionException firstFailure = null;
+        try {
+            for (int i = 0; i < testRuns.size(); i++) {
+                try {
+                    results.addAll(testRuns.get(i).get());
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    LOGGER.error("Test {} failed: {}", tests.get(i), cause.getMessage());
+                    if (firstFailure == null) {
+                        firstFailure = cause instanceof MojoExecutionException ? (MojoExecutionException) cause : new MojoExecutionException(cause.getMessage(), cause);
+                    }
+                }
             }
-            if ((remoteServerConfiguration.isStopServersAfterTests() && tests.get(tests.size() - 1).equals(file)) || remoteServerConfiguration.isStartAndStopServersForEachTest()) {
-                thisTestArgs.setRemoteStop();
+        } catch (InterruptedException ex) {
+            LOGGER.info(" ");
+            LOGGER.info("System Exit Detected!  Stopping Tests...");
+            LOGGER.info(" ");
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+
+        return results;
+    }
+
+    /**
+     * Runs the tests one after another, each as shardsPerTest JMeter processes that run a share of its threads.
+     *
+     * @return the resultFile names of all shards of all tests
+     */
+    private List<String> executeShardedTests(List<String> tests) throws MojoExecutionException {
+        if (parallelTestCount > 1) {
+            LOGGER.warn("Sharded tests are run one at a time, <parallelTestCount>{}</parallelTestCount> ignored", parallelTestCount);
+        }
+        if (jMeterProcessJVMSettings.isAutoSizing()) {
+            jvmSizer = new JMeterJVMSizer(jMeterProcessJVMSettings, shardsPerTest);
+        }
+        List<String> results = new ArrayList<>();
+        for (String file : tests) {
+            JMeterArgumentsArray thisTestArgs = new JMeterArgumentsArray(baseTestArgs);
+            if (generateReports) {
+                setReportsDirectory(file, thisTestArgs);
             }
-            results.add(executeSingleTest(new File(testFilesDirectory, file), thisTestArgs));
-            try {
-                TimeUnit.SECONDS.sleep(postTestPauseInSeconds);
-            } catch (InterruptedException ignored) {
-                Thread.currentThread().interrupt();
+            results.addAll(executeShardedTest(new File(testFilesDirectory, file), thisTestArgs));
+            pauseAfterTest();
+        }
+
+        return results;
+    }
+
+    /**
+     * Splits a test into shards and runs them at the same time.  Each shard runs in its own worker JVM, the workers
+     * are all started before any shard is sent its test, so that the shards start together rather than one JVM start
+     * up time apart.
+     *
+     * @return the resultFile names of the shards
+     */
+    private List<String> executeShardedTest(File test, JMeterArgumentsArray testArgs) throws MojoExecutionException {
+        TestPlanSharder sharder = new TestPlanSharder(test, shardsPerTest);
+        List<File> shardPlans;
+        try {
+            shardPlans = sharder.writeShards();
+        } catch (IOException ex) {
+            sharder.deleteShards();
+            throw new MojoExecutionException("Unable to split " + test.getName() + " into shards: " + ex.getMessage(), ex);
+        }
+        shardPlanFiles.addAll(shardPlans);
+        LOGGER.info("Running {} as {} shards", test.getName(), shardsPerTest);
+        LOGGER.info(" ");
+        // Each shard would write a report of its own share of the samples into the same folder, one report is
+        // generated from the results of all shards once they have finished instead
+        String shardedReportDirectory = testArgs.getReportsDirectory();
+        // Every shard counts down once its worker has started, or failed to start, so that no shard waits forever
+        CountDownLatch workersStarted = new CountDownLatch(shardsPerTest);
+        AtomicBoolean workerStartFailed = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(shardsPerTest);
+        List<Future<List<String>>> shardRuns = new ArrayList<>();
+        for (int i = 0; i < shardsPerTest; i++) {
+            File shardPlan = shardPlans.get(i);
+            JMeterArgumentsArray shardArgs = new JMeterArgumentsArray(testArgs)
+                    .clearReportsDirectory()
+                    .addJMeterProperty("shard.index", String.valueOf(i))
+                    .addJMeterProperty("shard.count", String.valueOf(shardsPerTest));
+            shardRuns.add(executor.submit(() -> {
+                JMeterWorker shardWorker = null;
+                try {
+                    boolean workerStarted = false;
+                    try {
+                        JMeterProcessJVMSettings shardJVMSettings = jvmSizer == null ? jMeterProcessJVMSettings : jvmSizer.settingsFor(Collections.singletonList(shardPlan));
+                        shardWorker = new JMeterWorker(shardJVMSettings, binDir, runtimeJarName, 1);
+                        shardWorker.start();
+                        workerStarted = true;
+                    } finally {
+                        if (!workerStarted) {
+                            workerStartFailed.set(true);
+                        }
+                        workersStarted.countDown();
+                    }
+                    workersStarted.await();
+                    if (workerStartFailed.get()) {
+                        throw new MojoExecutionException("Shard " + shardPlan.getName() + " not run, another shard did not start");
+                    }
+                    return executeSingleTest(shardPlan, shardArgs, "[" + shardPlan.getName() + "] ", shardWorker);
+                } finally {
+                    if (shardWorker != null) {
+                        shardWorker.close();
+                    }
+                }
+            }));
+        }
+        executor.shutdown();
+        List<String> results = new ArrayList<>();
+        MojoExecutionException firstFailure = null;
+        try {
+            for (int i = 0; i < shardRuns.size(); i++) {
+                try {
+                    results.addAll(shardRuns.get(i).get());
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    LOGGER.error("Shard {} failed: {}", shardPlans.get(i).getName(), cause.getMessage());
+                    if (firstFailure == null) {
+                        firstFailure = cause instanceof MojoExecutionException ? (MojoExecutionException) cause : new MojoExecutionException(cause.getMessage(), cause);
+                    }
+                }
             }
+        } catch (InterruptedException ex) {
+            LOGGER.info(" ");
+            LOGGER.info("System Exit Detected!  Stopping Tests...");
+            LOGGER.info(" ");
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            sharder.deleteShards();
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+        LOGGER.info("Results of the {} shards of {} (analysed together as one test): {}", shardsPerTest, test.getName(), results);
+        LOGGER.info(" ");
+        if (shardedReportDirectory != null && !results.isEmpty()) {
+            generateReportFromShards(test, results, new File(shardedReportDirectory));
         }
 
         return results;
     }
 
+    /**
+     * Merges the results of the shards of a test in time order and generates the HTML report from them with JMeter.
+     */
+    private void generateReportFromShards(File test, List<String> shardResultFiles, File outputReportFolder) throws MojoExecutionException {
+        File firstShardResults = new File(shardResultFiles.get(0));
+        String mergedName = FilenameUtils.getBaseName(firstShardResults.getName()).replaceFirst("-shard-0$", "") + "-shards";
+        File mergedResultsFile = new File(firstShardResults.getParentFile(), mergedName + ".csv");
+        try {
+            mergeShardResults(shardResultFiles, mergedResultsFile);
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Unable to merge the results of the shards of " + test.getName() + ": " + ex.getMessage(), ex);
+        }
+        File reportOutputFile = new File(firstShardResults.getParentFile(), mergedName + "-report-output.log");
+        LOGGER.info("Generating HTML report of {} from {} in {}", test.getName(), mergedResultsFile.getAbsolutePath(), outputReportFolder.getAbsolutePath());
+        ProcessBuilder reportProcessBuilder = new JMeterProcessBuilder(jMeterProcessJVMSettings, runtimeJarName)
+                .setWorkingDirectory(binDir)
+                .addArguments(Arrays.asList(
+                        "-g", mergedResultsFile.getAbsolutePath(),
+                        "-o", outputReportFolder.getAbsolutePath(),
+                        "-j", new File(firstShardResults.getParentFile(), mergedName + "-report.log").getAbsolutePath()))
+                .build();
+        reportProcessBuilder.redirectOutput(reportOutputFile);
+        try {
+            int exitCode = reportProcessBuilder.start().waitFor();
+            if (exitCode != 0) {
+                throw new MojoExecutionException("Generating the HTML report of " + test.getName() + " failed with exit code:" + exitCode + ", see " + reportOutputFile.getAbsolutePath());
+            }
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Unable to generate the HTML report of " + test.getName() + ": " + ex.getMessage(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while generating the HTML report of " + test.getName(), ex);
+        }
+    }
+
+    /**
+     * Writes the records of the results files of the shards of a test to one CSV results file, in time order.
+     */
+    static void mergeShardResults(List<String> shardResultFiles, File mergedResultsFile) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String shardResultFile : shardResultFiles) {
+            files.add(new File(shardResultFile));
+        }
+        new ShardResultsMerger(SHARD_MERGE_REORDER_BUFFER_SIZE).merge(files, mergedResultsFile);
+    }
+
+    private String describeDuration(String test) {
+        TestRunHistory.TestRun testRun = testRunHistory.getTestRun(test);
+        if (testRun == null) {
+            return test + " (not run before)";
+        }
+
+        return String.format("%s (%ds)", test, TimeUnit.MILLISECONDS.toSeconds(testRun.getDurationInMilliseconds()));
+    }
+
+    private boolean usesRemoteServers() {
+        return remoteServerConfiguration.isStartServersBeforeTests()
+                || remoteServerConfiguration.isStopServersAfterTests()
+                || remoteServerConfiguration.isStartAndStopServersForEachTest();
+    }
+
+    private void setReportsDirectory(String file, JMeterArgumentsArray testArgs) throws MojoExecutionException {
+        File outputReportFolder = new File(reportDirectory + File.separator + FilenameUtils.removeExtension(file));
+        LOGGER.info("Will generate HTML report in {}", outputReportFolder.getAbsolutePath());
+        if (outputReportFolder.exists() || outputReportFolder.mkdirs()) {
+            testArgs.setReportsDirectory(outputReportFolder.getAbsolutePath());
+        } else {
+            throw new MojoExecutionException("Unable to create report output folder:" + outputReportFolder.getAbsolutePath());
+        }
+    }
+
+    private void pauseAfterTest() {
+        try {
+            TimeUnit.SECONDS.sleep(postTestPauseInSeconds);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     //=============================================================================================
 
     /**
      * Executes a single JMeter test by building up a list of command line
      * parameters to pass to JMeter.start().
      *
-     * @param test JMeter test XML
-     * @return the report file names.
+     * @param test         JMeter test XML
+     * @param outputPrefix Prefix of each line of JMeter output logged, to tell tests run at the same time apart
+     * @param worker       Worker JVM that runs the test, null to run it in a forked JVM
+     * @return the report file names (the segment file names in soak mode).
      * @throws org.apache.maven.plugin.MojoExecutionException Exception
      */
-    private String executeSingleTest(File test, JMeterArgumentsArray testArgs) throws MojoExecutionException {
+    private List<String> executeSingleTest(File test, JMeterArgumentsArray testArgs, String outputPrefix, JMeterWorker worker) throws MojoExecutionException {
         testArgs.setTestFile(test, testFilesDirectory);
         File currentResultsFile = new File(testArgs.getResultsLogFileName());
         if (currentResultsFile.exists()) {
@@ -238,41 +779,121 @@ public class TestManager {
                 throw new MojoExecutionException("Failed to delete existing results file:" + currentResultsFile.getAbsolutePath());
             }
         }
+        if (soakConfiguration != null) {
+            testArgs.addJMeterProperty(SoakResultsRotator.AUTOFLUSH_PROPERTY, "true");
+        }
         List<String> argumentsArray = testArgs.buildArgumentsArray();
         argumentsArray.addAll(buildRemoteArgumentsArray(remoteServerConfiguration.getPropertiesMap()));
         LOGGER.info("Executing test: {}", test.getName());
-        JMeterProcessBuilder jmeterProcessBuilder = new JMeterProcessBuilder(jMeterProcessJVMSettings, runtimeJarName);
+        SoakResultsRotator soakResultsRotator = null;
+        RollingAggregates rollingAggregates = null;
+        if (soakConfiguration != null) {
+            LOGGER.info("{}", soakConfiguration);
+            File soakSummaryFile = new File(currentResultsFile.getParentFile(), FilenameUtils.getBaseName(currentResultsFile.getName()) + "-soak-summary.csv");
+            if (soakSummaryFile.exists() && !soakSummaryFile.delete()) {
+                throw new MojoExecutionException("Failed to delete existing soak summary file:" + soakSummaryFile.getAbsolutePath());
+            }
+            rollingAggregates = new RollingAggregates(soakSummaryFile);
+            soakResultsRotator = new SoakResultsRotator(currentResultsFile, soakConfiguration, rollingAggregates);
+        }
+        long timeoutInMilliseconds = TimeUnit.MINUTES.toMillis(testTimeoutInMinutes);
+        String timeoutDescription = String.format("test timeout of %s minutes", testTimeoutInMinutes);
+        if (suiteDeadline > 0) {
+            long remainingSuiteTime = suiteDeadline - System.currentTimeMillis();
+            if (remainingSuiteTime <= 0) {
+                throw new MojoExecutionException("Suite timeout of " + suiteTimeoutInMinutes + " minutes expired before test " + test.getName() + " started");
+            }
+            if (timeoutInMilliseconds == 0 || remainingSuiteTime < timeoutInMilliseconds) {
+                timeoutInMilliseconds = remainingSuiteTime;
+                timeoutDescription = String.format("suite timeout of %s minutes", suiteTimeoutInMinutes);
+            }
+        }
+        JMeterProcessJVMSettings testJVMSettings = jvmSizer == null || worker != null ? jMeterProcessJVMSettings : jvmSizer.settingsFor(Collections.singletonList(test));
+        JMeterProcessBuilder jmeterProcessBuilder = new JMeterProcessBuilder(testJVMSettings, runtimeJarName);
         jmeterProcessBuilder.setWorkingDirectory(binDir);
         jmeterProcessBuilder.addArguments(argumentsArray);
+        File flightRecordingFile = null;
+        if (flightRecording) {
+            if (worker != null) {
+                LOGGER.warn("A worker JVM runs many tests, {} is not recorded with Java Flight Recorder", test.getName());
+            } else {
+                flightRecordingFile = flightRecordingFileFor(testArgs, currentResultsFile);
+                if (flightRecordingFile.exists() && !flightRecordingFile.delete()) {
+                    throw new MojoExecutionException("Failed to delete existing flight recording:" + flightRecordingFile.getAbsolutePath());
+                }
+                jmeterProcessBuilder.setFlightRecording(flightRecordingFile, flightRecordingSettings);
+            }
+        }
+        TestTimeoutWatchdog watchdog = null;
+        ProcessResourceSampler resourceSampler = null;
+        File outputFile = new File(currentResultsFile.getParentFile(), FilenameUtils.getBaseName(currentResultsFile.getName()) + "-output.log");
+        long startedAt = System.currentTimeMillis();
         try {
-            final Process process = jmeterProcessBuilder.build().start();
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                LOGGER.info("Shutdown detected, destroying JMeter process...");
-                LOGGER.info(" ");
-                process.destroy();
-            }));
-            try (InputStreamReader isr = new InputStreamReader(process.getInputStream());
-                 BufferedReader br = new BufferedReader(isr)) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    if (suppressJMeterOutput) {
-                        LOGGER.debug(line);
-                    } else {
-                        LOGGER.info(line);
-                    }
+            final Process process;
+            final InputStream processOutput;
+            JMeterWorker.Run workerRun = null;
+            if (worker != null) {
+                workerRun = worker.run(argumentsArray);
+                process = worker.getProcess();
+                processOutput = workerRun.getOutput();
+            } else {
+                process = jmeterProcessBuilder.build().start();
+                processOutput = process.getInputStream();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    LOGGER.info("Shutdown detected, destroying JMeter process...");
+                    LOGGER.info(" ");
+                    process.destroy();
+                }));
+            }
+            if (timeoutInMilliseconds > 0) {
+                watchdog = new TestTimeoutWatchdog(process, test.getName(), timeoutDescription, timeoutInMilliseconds,
+                        TimeUnit.SECONDS.toMillis(timeoutGracePeriodInSeconds), jMeterProcessJVMSettings.getJavaRuntime(),
+                        new File(currentResultsFile.getParentFile(), FilenameUtils.getBaseName(currentResultsFile.getName()))).start();
+            }
+            if (resourceSamplingIntervalInSeconds > 0) {
+                resourceSampler = startResourceSampler(process, currentResultsFile);
+            }
+            if (soakResultsRotator != null) {
+                soakResultsRotator.start();
+            }
+            LOGGER.info("JMeter output is written to {}", outputFile.getAbsolutePath());
+            ProcessOutputPump outputPump = new ProcessOutputPump(processOutput, outputFile, line -> {
+                if (suppressJMeterOutput) {
+                    LOGGER.debug("{}{}", outputPrefix, line);
+                } else {
+                    LOGGER.info("{}{}", outputPrefix, line);
                 }
-                int jMeterExitCode = process.waitFor();
-                if (jMeterExitCode != 0) {
-                    if (ignoreJVMKilledExitCode && jMeterExitCode == EXIT_CODE_FOR_JVM_KILLED) {
-                        LOGGER.warn("JVM has been force killed!");
-                        LOGGER.warn("Build failure not triggered due to config settings, however you may want to investigate this");
-                    } else {
-                        throw new MojoExecutionException("Test failed with exit code:" + jMeterExitCode);
-                    }
+            }, jMeterOutputLinesPerSecond, "jmeter-output-" + test.getName()).start();
+            int jMeterExitCode;
+            try {
+                jMeterExitCode = workerRun != null ? workerRun.waitFor() : process.waitFor();
+            } finally {
+                outputPump.close();
+            }
+            if (resourceSampler != null) {
+                resourceSampler.close();
+                summariseResources(resourceSampler, test, outputPrefix);
+            }
+            if (flightRecordingFile != null) {
+                summariseFlightRecording(flightRecordingFile, test, outputPrefix);
+            }
+            if (watchdog != null && watchdog.hasTimedOut()) {
+                watchdog.close();
+                throw new MojoExecutionException(watchdog.getTimeoutMessage());
+            }
+            if (jMeterExitCode != 0) {
+                if (ignoreJVMKilledExitCode && jMeterExitCode == EXIT_CODE_FOR_JVM_KILLED) {
+                    LOGGER.warn("JVM has been force killed!");
+                    LOGGER.warn("Build failure not triggered due to config settings, however you may want to investigate this");
+                } else {
+                    throw new MojoExecutionException("Test failed with exit code:" + jMeterExitCode);
                 }
-                LOGGER.info("Completed Test: {}", test.getAbsolutePath());
-                LOGGER.info(" ");
             }
+            if (testRunHistory != null && !shardPlanFiles.contains(test)) {
+                testRunHistory.record(testFilesDirectory.toURI().relativize(test.toURI()).getPath(), System.currentTimeMillis() - startedAt, resourceSampler);
+            }
+            LOGGER.info("Completed Test: {}", test.getAbsolutePath());
+            LOGGER.info(" ");
         } catch (InterruptedException ex) {
             LOGGER.info(" ");
             LOGGER.info("System Exit Detected!  Stopping Test...");
@@ -280,8 +901,118 @@ public class TestManager {
             Thread.currentThread().interrupt();
         } catch (IOException e) {
             LOGGER.error(e.getMessage());
+        } finally {
+            if (resourceSampler != null) {
+                resourceSampler.close();
+            }
+            if (watchdog != null) {
+                watchdog.close();
+            }
+            if (soakResultsRotator != null) {
+                closeSoakResultsRotator(soakResultsRotator);
+            }
+        }
+        if (soakResultsRotator == null) {
+            return Collections.singletonList(testArgs.getResultsLogFileName());
+        }
+        for (String line : rollingAggregates.getSummary()) {
+            LOGGER.info(line);
+        }
+        LOGGER.info(" ");
+        reportLostSoakRecords(soakResultsRotator, outputFile, test);
+
+        return soakResultFiles(soakResultsRotator, rollingAggregates);
+    }
+
+    private static void reportLostSoakRecords(SoakResultsRotator soakResultsRotator, File outputFile, File test) {
+        try {
+            long lostRecordCount = soakResultsRotator.countLostRecords(outputFile);
+            if (lostRecordCount < 0) {
+                LOGGER.info("No summariser totals in the output of {}, records lost while rotating its results cannot be counted", test.getName());
+            } else if (lostRecordCount > 0) {
+                LOGGER.warn("At least {} samples of {} were lost while rotating its results (written as the results file was truncated)", lostRecordCount, test.getName());
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to count the records lost while rotating the results of {}: {}", test.getName(), ex.getMessage());
+        }
+    }
+
+    private ProcessResourceSampler startResourceSampler(Process process, File resultsFile) throws IOException {
+        File samplesFile = new File(resultsFile.getParentFile(), FilenameUtils.getBaseName(resultsFile.getName()) + "-resources.csv");
+        ProcessResourceSampler resourceSampler = new ProcessResourceSampler(TestTimeoutWatchdog.pidOf(process), samplesFile,
+                TimeUnit.SECONDS.toMillis(resourceSamplingIntervalInSeconds), Runtime.getRuntime().availableProcessors());
+        if (!resourceSampler.isSupported()) {
+            LOGGER.debug("Resources of the JMeter JVM cannot be sampled on this platform");
+            return null;
+        }
+
+        return resourceSampler.start();
+    }
+
+    private static void summariseResources(ProcessResourceSampler resourceSampler, File test, String outputPrefix) {
+        for (String line : resourceSampler.getSummary()) {
+            LOGGER.info("{}{}", outputPrefix, line);
+        }
+        if (resourceSampler.isCpuSaturated()) {
+            LOGGER.warn("{}The JMeter JVM used all processors for {} samples in a row, the results of {} may measure JMeter rather than the system under test",
+                    outputPrefix, ProcessResourceSampler.SATURATED_SAMPLES_IN_A_ROW, test.getName());
+        }
+        if (resourceSampler.isHeapSaturated()) {
+            LOGGER.warn("{}The JMeter JVM heap was over {}% of its {}MB maximum for {} samples in a row, the results of {} may measure JMeter rather than the system under test",
+                    outputPrefix, Math.round(ProcessResourceSampler.SATURATED_HEAP_SHARE * 100), resourceSampler.getHeapMaxInMegaBytes(),
+                    ProcessResourceSampler.SATURATED_SAMPLES_IN_A_ROW, test.getName());
+        }
+    }
+
+    /**
+     * @return The recording file of a test: next to the JMeter log (as test.jmx.jfr), or the results file if there is no log
+     */
+    private static File flightRecordingFileFor(JMeterArgumentsArray testArgs, File resultsFile) {
+        String jmeterLogFileName = testArgs.getJMeterLogFileName();
+        if (jmeterLogFileName != null) {
+            return new File(FilenameUtils.removeExtension(jmeterLogFileName) + ".jfr");
+        }
+
+        return new File(resultsFile.getParentFile(), FilenameUtils.getBaseName(resultsFile.getName()) + ".jfr");
+    }
+
+    private void summariseFlightRecording(File flightRecordingFile, File test, String outputPrefix) {
+        if (!flightRecordingFile.isFile()) {
+            LOGGER.warn("{}No flight recording was written to {}", outputPrefix, flightRecordingFile.getAbsolutePath());
+            return;
+        }
+        try {
+            List<String> summary = FlightRecordingSummary.read(flightRecordingFile, jMeterProcessJVMSettings.getJavaRuntime()).getSummary();
+            LOGGER.info("{}Flight recording of {}: {}", outputPrefix, test.getName(), flightRecordingFile.getAbsolutePath());
+            for (String line : summary) {
+                LOGGER.info("{}  {}", outputPrefix, line);
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("{}Unable to summarise flight recording {}: {}", outputPrefix, flightRecordingFile.getAbsolutePath(), ex.getMessage());
+        }
+    }
+
+    private static void closeSoakResultsRotator(SoakResultsRotator soakResultsRotator) throws MojoExecutionException {
+        try {
+            soakResultsRotator.close();
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Unable to rotate soak test results: " + ex.getMessage(), ex);
         }
-        return testArgs.getResultsLogFileName();
+    }
+
+    private List<String> soakResultFiles(SoakResultsRotator soakResultsRotator, RollingAggregates rollingAggregates) {
+        List<String> resultFiles = new ArrayList<>();
+        if (soakConfiguration.getAfterAnalysis() != SoakConfiguration.SegmentRetention.KEEP) {
+            LOGGER.info("Soak test segments have been {}, the results goal checks the totals of their samples and failures", soakConfiguration.getAfterAnalysis().getDescription());
+            removedSoakSegmentSampleCount.addAndGet(rollingAggregates.getSampleCount());
+            removedSoakSegmentFailureCount.addAndGet(rollingAggregates.getFailureCount());
+            return resultFiles;
+        }
+        for (File segment : soakResultsRotator.getSegments()) {
+            resultFiles.add(segment.getAbsolutePath());
+        }
+
+        return resultFiles;
     }
 
     /**
@@ -299,6 +1030,14 @@ public class TestManager {
         scanner.setExcludes(this.testFilesExcluded);
         scanner.scan();
 
-        return Arrays.asList(scanner.getIncludedFiles());
+        List<String> tests = Arrays.asList(scanner.getIncludedFiles());
+        if (shardsPerTest <= 1) {
+            return new ArrayList<>(tests);
+        }
+
+        // Shards of a test left behind by a build that was killed are not tests of their own
+        return tests.stream()
+                .filter(file -> !tests.contains(TestPlanSharder.originalFileOf(file)))
+                .collect(Collectors.toList());
     }
 }
@@ -0,0 +1,267 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a test plan into shards that are run at the same time by separate JMeter processes on this machine, so that
+ * a plan that needs more threads than one JMeter JVM can drive is still generated locally.
+ * <p/>
+ * Each shard is a copy of the plan, written next to it (so that relative paths in the plan still resolve), in which:
+ * <ul>
+ * <li>every literal thread count (thread groups and concurrency thread groups) is divided between the shards, the
+ * first shards taking one more thread when it does not divide evenly, except in setUp and tearDown thread groups,
+ * which run in full in every shard so that each shard has the state they prepare;</li>
+ * <li>every CSV data set with a literal file name reads its own contiguous block of rows from a copy of the file, so
+ * that the shards do not use the same test data.</li>
+ * </ul>
+ * Thread counts and file names that are set from properties or variables cannot be divided here, plans that use them
+ * can divide them with the shard.index and shard.count properties each shard is started with.
+ */
+public class TestPlanSharder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestPlanSharder.class);
+    static final Pattern SHARD_FILE_NAME = Pattern.compile("(.*)-shard-\\d+(\\.[^.]*)?$");
+    private static final Pattern THREAD_COUNT = Pattern.compile(
+            "(<(stringProp|intProp) name=\"(?:ThreadGroup\\.num_threads|TargetLevel)\">)([^<]*)(</\\2>)");
+    private static final Pattern UNDIVIDED_THREAD_GROUP = Pattern.compile("<(SetupThreadGroup|PostThreadGroup)\\b.*?</\\1>", Pattern.DOTALL);
+    private static final Pattern CSV_DATA_SET = Pattern.compile("<CSVDataSet\\b.*?</CSVDataSet>", Pattern.DOTALL);
+    private static final Pattern CSV_FILE_NAME = Pattern.compile("(<stringProp name=\"filename\">)([^<]*)(</stringProp>)");
+    private static final Pattern CSV_VARIABLE_NAMES = Pattern.compile("<stringProp name=\"variableNames\">([^<]*)</stringProp>");
+    private static final Pattern CSV_IGNORE_FIRST_LINE = Pattern.compile("<boolProp name=\"ignoreFirstLine\">true</boolProp>");
+    private final File testPlan;
+    private final int shardCount;
+    private final List<File> shardFiles = new ArrayList<>();
+
+    /**
+     * @param testPlan   The test plan to split
+     * @param shardCount Number of shards
+     */
+    public TestPlanSharder(File testPlan, int shardCount) {
+        this.testPlan = testPlan;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * @param fileName A file name
+     * @return The name of the file a sharder would have written this file from, null if it is not named like a shard
+     */
+    public static String originalFileOf(String fileName) {
+        Matcher shardFileName = SHARD_FILE_NAME.matcher(fileName);
+        if (!shardFileName.matches()) {
+            return null;
+        }
+
+        return shardFileName.group(1) + (shardFileName.group(2) == null ? "" : shardFileName.group(2));
+    }
+
+    /**
+     * @return The file shard shardIndex of a file is written to
+     */
+    static File shardFileOf(File file, int shardIndex) {
+        String extension = FilenameUtils.getExtension(file.getName());
+        String shardName = FilenameUtils.getBaseName(file.getName()) + "-shard-" + shardIndex + (extension.isEmpty() ? "" : "." + extension);
+
+        return new File(file.getAbsoluteFile().getParentFile(), shardName);
+    }
+
+    /**
+     * @return The share of total that shard shardIndex takes, shares differ by at most one and add up to total
+     */
+    static int shareOf(int total, int shardIndex, int shardCount) {
+        return total / shardCount + (shardIndex < total % shardCount ? 1 : 0);
+    }
+
+    /**
+     * Writes the shard plans, and the CSV data files they read.
+     *
+     * @return The shard plans, in shard order
+     * @throws IOException When the plan or a CSV data file cannot be read, or a shard cannot be written
+     */
+    public List<File> writeShards() throws IOException {
+        String plan = new String(Files.readAllBytes(testPlan.toPath()), StandardCharsets.UTF_8);
+        warnAboutThreadCountsThatCannotBeDivided(plan);
+        Map<String, List<File>> csvShardsByFileName = writeCsvShards(plan);
+        List<File> shardPlans = new ArrayList<>();
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            String shardPlan = divideThreadCounts(plan, shardIndex, shardCount);
+            shardPlan = replaceCsvFileNames(shardPlan, csvShardsByFileName, shardIndex);
+            File shardPlanFile = shardFileOf(testPlan, shardIndex);
+            Files.write(shardPlanFile.toPath(), shardPlan.getBytes(StandardCharsets.UTF_8));
+            shardFiles.add(shardPlanFile);
+            shardPlans.add(shardPlanFile);
+        }
+
+        return shardPlans;
+    }
+
+    /**
+     * Deletes the shard plans and CSV data files that have been written.
+     */
+    public void deleteShards() {
+        for (File shardFile : shardFiles) {
+            if (shardFile.exists() && !shardFile.delete()) {
+                LOGGER.warn("Unable to delete {}", shardFile.getAbsolutePath());
+            }
+        }
+        shardFiles.clear();
+    }
+
+    /**
+     * @return The plan with each literal thread count replaced by the share of shard shardIndex
+     */
+    static String divideThreadCounts(String plan, int shardIndex, int shardCount) {
+        List<int[]> undividedThreadGroups = undividedThreadGroups(plan);
+        Matcher threadCount = THREAD_COUNT.matcher(plan);
+        StringBuffer shardPlan = new StringBuffer();
+        while (threadCount.find()) {
+            if (isInside(threadCount.start(), undividedThreadGroups)) {
+                continue;
+            }
+            String count = threadCount.group(3).trim();
+            String shardThreads = count.matches("\\d+") ? String.valueOf(shareOf(Integer.parseInt(count), shardIndex, shardCount)) : threadCount.group(3);
+            threadCount.appendReplacement(shardPlan, Matcher.quoteReplacement(threadCount.group(1) + shardThreads + threadCount.group(4)));
+        }
+        threadCount.appendTail(shardPlan);
+
+        return shardPlan.toString();
+    }
+
+    /**
+     * @return The start and end of each setUp and tearDown thread group, their thread counts are not divided
+     */
+    private static List<int[]> undividedThreadGroups(String plan) {
+        List<int[]> threadGroups = new ArrayList<>();
+        Matcher threadGroup = UNDIVIDED_THREAD_GROUP.matcher(plan);
+        while (threadGroup.find()) {
+            threadGroups.add(new int[]{threadGroup.start(), threadGroup.end()});
+        }
+
+        return threadGroups;
+    }
+
+    private static boolean isInside(int position, List<int[]> ranges) {
+        for (int[] range : ranges) {
+            if (position >= range[0] && position < range[1]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void warnAboutThreadCountsThatCannotBeDivided(String plan) {
+        List<int[]> undividedThreadGroups = undividedThreadGroups(plan);
+        Matcher threadCount = THREAD_COUNT.matcher(plan);
+        while (threadCount.find()) {
+            if (!isInside(threadCount.start(), undividedThreadGroups) && !threadCount.group(3).trim().matches("\\d+")) {
+                LOGGER.warn("Thread count {} of {} is not a number, each shard runs all of its threads unless the plan divides them by ${__P(shard.count)}",
+                        threadCount.group(3), testPlan.getName());
+            }
+        }
+    }
+
+    /**
+     * Splits the rows of every CSV data file with a literal name between the shards.
+     *
+     * @return The shard files of each CSV data file that has been split, by the file name used in the plan
+     */
+    private Map<String, List<File>> writeCsvShards(String plan) throws IOException {
+        Map<String, List<File>> csvShardsByFileName = new LinkedHashMap<>();
+        Matcher csvDataSet = CSV_DATA_SET.matcher(plan);
+        while (csvDataSet.find()) {
+            Matcher fileName = CSV_FILE_NAME.matcher(csvDataSet.group());
+            if (!fileName.find() || csvShardsByFileName.containsKey(fileName.group(2))) {
+                continue;
+            }
+            String csvFileName = fileName.group(2);
+            if (csvFileName.contains("${") || csvFileName.contains("&")) {
+                LOGGER.warn("CSV data file {} of {} is not a literal file name, each shard reads all of it unless the plan uses ${__P(shard.index)}",
+                        csvFileName, testPlan.getName());
+                continue;
+            }
+            File csvFile = new File(csvFileName);
+            if (!csvFile.isAbsolute()) {
+                csvFile = new File(testPlan.getAbsoluteFile().getParentFile(), csvFileName);
+            }
+            if (!csvFile.isFile()) {
+                LOGGER.warn("CSV data file {} of {} does not exist, it is not split between the shards", csvFile.getAbsolutePath(), testPlan.getName());
+                continue;
+            }
+            Matcher variableNames = CSV_VARIABLE_NAMES.matcher(csvDataSet.group());
+            boolean hasHeader = !variableNames.find() || variableNames.group(1).trim().isEmpty() || CSV_IGNORE_FIRST_LINE.matcher(csvDataSet.group()).find();
+            List<File> csvShards = splitCsvFile(csvFile, hasHeader);
+            if (csvShards != null) {
+                csvShardsByFileName.put(csvFileName, csvShards);
+            }
+        }
+
+        return csvShardsByFileName;
+    }
+
+    /**
+     * Writes a contiguous block of the rows of a CSV file for each shard, the header (if any) is written to every shard.
+     *
+     * @return The shard files, null if there are fewer rows than shards
+     */
+    List<File> splitCsvFile(File csvFile, boolean hasHeader) throws IOException {
+        // Read as ISO-8859-1 so that the bytes of each row are written back unchanged, whatever the file encoding
+        List<String> lines = Files.readAllLines(csvFile.toPath(), StandardCharsets.ISO_8859_1);
+        List<String> header = hasHeader && !lines.isEmpty() ? lines.subList(0, 1) : new ArrayList<>();
+        List<String> rows = lines.subList(header.size(), lines.size());
+        if (rows.size() < shardCount) {
+            LOGGER.warn("CSV data file {} has fewer rows than there are shards, every shard reads all of it", csvFile.getAbsolutePath());
+            return null;
+        }
+        List<File> csvShards = new ArrayList<>();
+        int firstRow = 0;
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            int shardRows = shareOf(rows.size(), shardIndex, shardCount);
+            List<String> shardLines = new ArrayList<>(header);
+            shardLines.addAll(rows.subList(firstRow, firstRow + shardRows));
+            firstRow += shardRows;
+            File csvShard = shardFileOf(csvFile, shardIndex);
+            Files.write(csvShard.toPath(), shardLines, StandardCharsets.ISO_8859_1);
+            shardFiles.add(csvShard);
+            csvShards.add(csvShard);
+        }
+
+        return csvShards;
+    }
+
+    private static String replaceCsvFileNames(String plan, Map<String, List<File>> csvShardsByFileName, int shardIndex) {
+        if (csvShardsByFileName.isEmpty()) {
+            return plan;
+        }
+        Matcher csvDataSet = CSV_DATA_SET.matcher(plan);
+        StringBuffer shardPlan = new StringBuffer();
+        while (csvDataSet.find()) {
+            Matcher fileName = CSV_FILE_NAME.matcher(csvDataSet.group());
+            String dataSet = csvDataSet.group();
+            if (fileName.find() && csvShardsByFileName.containsKey(fileName.group(2))) {
+                String csvShard = csvShardsByFileName.get(fileName.group(2)).get(shardIndex).getAbsolutePath();
+                dataSet = dataSet.substring(0, fileName.start(2)) + escapeXml(csvShard) + dataSet.substring(fileName.end(2));
+            }
+            csvDataSet.appendReplacement(shardPlan, Matcher.quoteReplacement(dataSet));
+        }
+        csvDataSet.appendTail(shardPlan);
+
+        return shardPlan.toString();
+    }
+
+    private static String escapeXml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
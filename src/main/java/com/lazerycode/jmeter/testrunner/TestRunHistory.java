@@ -0,0 +1,186 @@
+package com.lazerycode.jmeter.testrunner;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Durations and resource use of earlier runs of each test, kept in a small JSON file so that tests run in parallel
+ * can be started longest first: a long test started last would stretch the time all tests take.
+ * <p/>
+ * Durations are smoothed over runs, so that one unusually slow or fast run does not reorder the tests.
+ */
+public class TestRunHistory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestRunHistory.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final TypeReference<TreeMap<String, TestRun>> HISTORY_TYPE = new TypeReference<TreeMap<String, TestRun>>() {
+    };
+    static final double SMOOTHING = 0.5;
+    private final File historyFile;
+    private final Map<String, TestRun> testRuns;
+
+    private TestRunHistory(File historyFile, Map<String, TestRun> testRuns) {
+        this.historyFile = historyFile;
+        this.testRuns = testRuns;
+    }
+
+    /**
+     * @param historyFile The history file, it does not need to exist
+     * @return The history in the file, an empty history if the file does not exist or cannot be read
+     */
+    public static TestRunHistory load(File historyFile) {
+        Map<String, TestRun> testRuns = new TreeMap<>();
+        if (historyFile.isFile()) {
+            try {
+                testRuns = MAPPER.readValue(historyFile, HISTORY_TYPE);
+            } catch (IOException ex) {
+                LOGGER.warn("Unable to read test run history {}, tests are run in the order they were found: {}", historyFile.getAbsolutePath(), ex.getMessage());
+            }
+        }
+
+        return new TestRunHistory(historyFile, testRuns);
+    }
+
+    /**
+     * Writes the history back to the file it was loaded from.
+     *
+     * @throws IOException When the file cannot be written
+     */
+    public synchronized void save() throws IOException {
+        File historyDirectory = historyFile.getAbsoluteFile().getParentFile();
+        if (!historyDirectory.exists() && !historyDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + historyDirectory.getAbsolutePath());
+        }
+        MAPPER.writeValue(historyFile, testRuns);
+    }
+
+    /**
+     * @param test The test, relative to the test files directory
+     * @return The earlier runs of the test, null if it has not been run before
+     */
+    public synchronized TestRun getTestRun(String test) {
+        return testRuns.get(key(test));
+    }
+
+    /**
+     * Records a successful run of a test.
+     *
+     * @param test             The test, relative to the test files directory
+     * @param durationInMillis Time the test ran for
+     * @param resourceSampler  Resources sampled while the test ran, null if they were not sampled
+     */
+    public synchronized void record(String test, long durationInMillis, ProcessResourceSampler resourceSampler) {
+        TestRun testRun = testRuns.computeIfAbsent(key(test), name -> new TestRun());
+        testRun.setDurationInMilliseconds(testRun.getRuns() == 0 ? durationInMillis : Math.round(SMOOTHING * durationInMillis + (1 - SMOOTHING) * testRun.getDurationInMilliseconds()));
+        testRun.setLastDurationInMilliseconds(durationInMillis);
+        if (resourceSampler != null && resourceSampler.getSampleCount() > 0) {
+            testRun.setAverageCpuInPercent(Math.round(resourceSampler.getAverageCpuInPercent()));
+            testRun.setMaxCpuInPercent(Math.round(resourceSampler.getMaxCpuInPercent()));
+            testRun.setMaxHeapUsedInMegaBytes(resourceSampler.getMaxHeapUsedInMegaBytes());
+        }
+        testRun.setRuns(testRun.getRuns() + 1);
+    }
+
+    /**
+     * Orders tests longest first.  Tests that have not been run before come first, in the order they were found, as
+     * they may well be the longest.
+     *
+     * @param tests The tests, relative to the test files directory
+     * @return The tests in the order they should be started
+     */
+    public synchronized List<String> longestFirst(List<String> tests) {
+        List<String> schedule = new ArrayList<>(tests);
+        schedule.sort(Comparator.comparingLong((String test) -> {
+            TestRun testRun = testRuns.get(key(test));
+            return testRun == null ? Long.MAX_VALUE : testRun.getDurationInMilliseconds();
+        }).reversed());
+
+        return schedule;
+    }
+
+    /**
+     * The same test is found with the path separator of the platform, the history is shared between platforms.
+     */
+    private static String key(String test) {
+        return test.replace('\\', '/');
+    }
+
+    /**
+     * The history of one test.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class TestRun {
+        private long durationInMilliseconds;
+        private long lastDurationInMilliseconds;
+        private long averageCpuInPercent;
+        private long maxCpuInPercent;
+        private long maxHeapUsedInMegaBytes;
+        private int runs;
+
+        /**
+         * @return Duration of the test, smoothed over its runs
+         */
+        public long getDurationInMilliseconds() {
+            return durationInMilliseconds;
+        }
+
+        public void setDurationInMilliseconds(long durationInMilliseconds) {
+            this.durationInMilliseconds = durationInMilliseconds;
+        }
+
+        public long getLastDurationInMilliseconds() {
+            return lastDurationInMilliseconds;
+        }
+
+        public void setLastDurationInMilliseconds(long lastDurationInMilliseconds) {
+            this.lastDurationInMilliseconds = lastDurationInMilliseconds;
+        }
+
+        /**
+         * @return Average CPU used by the JMeter JVM in the last run in which it was sampled, in percent of one processor
+         */
+        public long getAverageCpuInPercent() {
+            return averageCpuInPercent;
+        }
+
+        public void setAverageCpuInPercent(long averageCpuInPercent) {
+            this.averageCpuInPercent = averageCpuInPercent;
+        }
+
+        public long getMaxCpuInPercent() {
+            return maxCpuInPercent;
+        }
+
+        public void setMaxCpuInPercent(long maxCpuInPercent) {
+            this.maxCpuInPercent = maxCpuInPercent;
+        }
+
+        public long getMaxHeapUsedInMegaBytes() {
+            return maxHeapUsedInMegaBytes;
+        }
+
+        public void setMaxHeapUsedInMegaBytes(long maxHeapUsedInMegaBytes) {
+            this.maxHeapUsedInMegaBytes = maxHeapUsedInMegaBytes;
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public void setRuns(int runs) {
+            this.runs = runs;
+        }
+    }
+}
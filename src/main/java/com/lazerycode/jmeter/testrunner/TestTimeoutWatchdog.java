@@ -0,0 +1,201 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops a forked JMeter process that is still running when its timeout expires, e.g. because a sampler hangs or a
+ * loop never ends.  Before the process is stopped a thread dump and a class histogram of the JVM are written next to
+ * the results file, so that the cause of the hang can be investigated.  The process is first asked to stop (its
+ * shutdown hooks run) and is killed if it is still running after a grace period.
+ */
+public class TestTimeoutWatchdog implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestTimeoutWatchdog.class);
+    private static final long DIAGNOSTIC_COMMAND_TIMEOUT_IN_SECONDS = 60;
+    private final Process process;
+    private final String testName;
+    private final String timeoutDescription;
+    private final long timeoutInMilliseconds;
+    private final long gracePeriodInMilliseconds;
+    private final File javaBinDirectory;
+    private final File diagnosticsFilePrefix;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jmeter-test-watchdog");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+    private final List<String> diagnostics = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean timedOut;
+
+    /**
+     * @param process                   The forked JMeter process
+     * @param testName                  Name of the test, used in messages
+     * @param timeoutDescription        Which timeout applies, e.g. "test timeout of 30 minutes"
+     * @param timeoutInMilliseconds     Time the process may run for
+     * @param gracePeriodInMilliseconds Time the process is given to stop before it is killed
+     * @param javaRuntime               The java executable the process was started with, jcmd, jstack and jmap are looked up next to it
+     * @param diagnosticsFilePrefix     Path and start of the name of the files the diagnostics are written to
+     */
+    public TestTimeoutWatchdog(Process process, String testName, String timeoutDescription, long timeoutInMilliseconds, long gracePeriodInMilliseconds, String javaRuntime, File diagnosticsFilePrefix) {
+        this.process = process;
+        this.testName = testName;
+        this.timeoutDescription = timeoutDescription;
+        this.timeoutInMilliseconds = timeoutInMilliseconds;
+        this.gracePeriodInMilliseconds = gracePeriodInMilliseconds;
+        this.javaBinDirectory = new File(javaRuntime).getAbsoluteFile().getParentFile();
+        this.diagnosticsFilePrefix = diagnosticsFilePrefix;
+    }
+
+    public TestTimeoutWatchdog start() {
+        timer.schedule(this::timeoutExpired, timeoutInMilliseconds, TimeUnit.MILLISECONDS);
+
+        return this;
+    }
+
+    private void timeoutExpired() {
+        timedOut = true;
+        LOGGER.error("{} is still running after the {}, capturing diagnostics and stopping it...", testName, timeoutDescription);
+        long pid = pidOf(process);
+        if (pid < 0) {
+            LOGGER.warn("Unable to find the process id of the JMeter JVM, no thread dump or class histogram captured");
+        } else {
+            captureDiagnostic("thread dump", new File(diagnosticsFilePrefix.getPath() + "-thread-dump.txt"),
+                    Arrays.asList(tool("jcmd"), String.valueOf(pid), "Thread.print"),
+                    Arrays.asList(tool("jstack"), String.valueOf(pid)));
+            captureDiagnostic("class histogram", new File(diagnosticsFilePrefix.getPath() + "-class-histogram.txt"),
+                    Arrays.asList(tool("jcmd"), String.valueOf(pid), "GC.class_histogram"),
+                    Arrays.asList(tool("jmap"), "-histo", String.valueOf(pid)));
+        }
+        process.destroy();
+        try {
+            if (!process.waitFor(gracePeriodInMilliseconds, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("{} did not stop within {}ms, killing it", testName, gracePeriodInMilliseconds);
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException ex) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the first diagnostic command that succeeds, writing its output to the output file.
+     */
+    @SafeVarargs
+    private final void captureDiagnostic(String name, File outputFile, List<String>... commands) {
+        for (List<String> command : commands) {
+            try {
+                Process diagnosticProcess = new ProcessBuilder(command)
+                        .redirectErrorStream(true)
+                        .redirectOutput(outputFile)
+                        .start();
+                if (!diagnosticProcess.waitFor(DIAGNOSTIC_COMMAND_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+                    diagnosticProcess.destroyForcibly();
+                } else if (diagnosticProcess.exitValue() == 0) {
+                    diagnostics.add(String.format("%s written to %s", name, outputFile.getAbsolutePath()));
+                    return;
+                }
+            } catch (IOException ex) {
+                LOGGER.debug("Unable to run {}: {}", command, ex.getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        LOGGER.warn("Unable to capture a {} of the JMeter JVM", name);
+    }
+
+    private String tool(String name) {
+        return jdkTool(javaBinDirectory, name);
+    }
+
+    /**
+     * @param javaBinDirectory Directory of a java executable
+     * @param name             Name of a JDK tool, e.g. jcmd
+     * @return Path of the tool of the same JDK, or just its name (to look it up on the path) if it cannot be found
+     */
+    static String jdkTool(File javaBinDirectory, String name) {
+        // A JDK 8 java executable may be in the jre/bin directory, the tools are in the bin directory of the JDK
+        for (File directory : Arrays.asList(javaBinDirectory, new File(javaBinDirectory, "../../bin"))) {
+            for (String fileName : Arrays.asList(name, name + ".exe")) {
+                File tool = new File(directory, fileName);
+                if (tool.isFile()) {
+                    return tool.getAbsolutePath();
+                }
+            }
+        }
+
+        return name;
+    }
+
+    /**
+     * Process.pid() is not available in Java 8, so the pid field of the process implementation is read instead.
+     *
+     * @return The process id, or -1 if it cannot be found
+     */
+    static long pidOf(Process process) {
+        try {
+            Method pid = Process.class.getMethod("pid");
+            return (Long) pid.invoke(process);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // Java 8
+        }
+        try {
+            Field pid = process.getClass().getDeclaredField("pid");
+            pid.setAccessible(true);
+            return pid.getLong(process);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return -1;
+        }
+    }
+
+    public boolean hasTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return Why the test was stopped, including where the diagnostics were written
+     */
+    public String getTimeoutMessage() {
+        StringBuilder message = new StringBuilder(String.format("%s was stopped after the %s", testName, timeoutDescription));
+        synchronized (diagnostics) {
+            for (String diagnostic : diagnostics) {
+                message.append(", ").append(diagnostic);
+            }
+        }
+
+        return message.toString();
+    }
+
+    /**
+     * Cancels the timeout, or waits for the process to be stopped if the timeout has already expired.
+     */
+    @Override
+    public void close() {
+        if (!timedOut) {
+            timer.shutdownNow();
+            return;
+        }
+        timer.shutdown();
+        try {
+            timer.awaitTermination(gracePeriodInMilliseconds + TimeUnit.SECONDS.toMillis(2 * DIAGNOSTIC_COMMAND_TIMEOUT_IN_SECONDS), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
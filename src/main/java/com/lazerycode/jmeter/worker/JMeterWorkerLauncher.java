@@ -0,0 +1,188 @@
+package com.lazerycode.jmeter.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.Properties;
+
+/**
+ * Main class of a long lived JVM that runs one JMeter test after another, so that tests do not pay for JVM start up.
+ * It is packaged on its own into a launcher jar in the JMeter bin directory and only depends on the JDK.
+ * <p/>
+ * The launcher listens on a loopback port, which it writes (with a random token that every request must start with)
+ * to a port file.  Each run is isolated: JMeter is loaded by a new class loader, exactly as the JMeter jar would load
+ * it on the command line, its output is sent back over the connection and system properties are restored when it has
+ * finished.  A run is finished when every non daemon thread it started has ended, which is when a forked JMeter JVM
+ * would exit.  If JMeter calls System.exit the launcher exits with it, the client then reports the exit code of the
+ * JVM and starts a new one.
+ * <p/>
+ * Protocol, all values written with {@link DataOutputStream}: the client sends the token, a command and for
+ * {@link #RUN} the number of arguments followed by the arguments.  The launcher replies with {@link #OUTPUT} frames
+ * (length and bytes) and finishes with an {@link #EXIT} frame holding the exit code.
+ */
+public class JMeterWorkerLauncher {
+
+    public static final byte RUN = 1;
+    public static final byte SHUTDOWN = 2;
+    public static final byte OUTPUT = 1;
+    public static final byte EXIT = 2;
+    public static final String DEFAULT_DRIVER_CLASS = "org.apache.jmeter.NewDriver";
+    private static final long THREAD_POLL_INTERVAL_IN_MILLISECONDS = 50;
+    private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+    private final File jmeterJar;
+    private final String driverClassName;
+    private int runNumber;
+
+    private JMeterWorkerLauncher(File jmeterJar, String driverClassName) {
+        this.jmeterJar = jmeterJar;
+        this.driverClassName = driverClassName;
+    }
+
+    /**
+     * @param args port file, JMeter jar (relative to the working directory) and optionally the class that starts JMeter
+     * @throws IOException When the port cannot be opened or the port file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        File portFile = new File(args[0]);
+        JMeterWorkerLauncher launcher = new JMeterWorkerLauncher(new File(args[1]).getAbsoluteFile(), args.length > 2 ? args[2] : DEFAULT_DRIVER_CLASS);
+        String token = new BigInteger(130, new SecureRandom()).toString(32);
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            File temporaryPortFile = new File(portFile.getPath() + ".tmp");
+            Files.write(temporaryPortFile.toPath(), (serverSocket.getLocalPort() + "\n" + token + "\n").getBytes(StandardCharsets.UTF_8));
+            Files.move(temporaryPortFile.toPath(), portFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            while (true) {
+                try (Socket socket = serverSocket.accept()) {
+                    DataInputStream request = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    if (!token.equals(request.readUTF())) {
+                        continue;
+                    }
+                    if (request.readByte() == SHUTDOWN) {
+                        return;
+                    }
+                    String[] arguments = new String[request.readInt()];
+                    for (int i = 0; i < arguments.length; i++) {
+                        arguments[i] = request.readUTF();
+                    }
+                    DataOutputStream response = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE));
+                    int exitCode = launcher.run(arguments, response);
+                    synchronized (response) {
+                        response.writeByte(EXIT);
+                        response.writeInt(exitCode);
+                        response.flush();
+                    }
+                } catch (IOException ex) {
+                    System.err.println("JMeter worker request failed: " + ex);
+                }
+            }
+        }
+    }
+
+    private int run(String[] arguments, DataOutputStream response) throws IOException {
+        runNumber++;
+        Properties systemProperties = (Properties) System.getProperties().clone();
+        PrintStream standardOut = System.out;
+        PrintStream standardErr = System.err;
+        PrintStream runOutput = new PrintStream(new FrameOutputStream(response), true);
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{jmeterJar.toURI().toURL()}, ClassLoader.getSystemClassLoader().getParent());
+        ThreadGroup runThreads = new ThreadGroup("jmeter-run-" + runNumber);
+        int[] exitCode = {0};
+        Thread driver = new Thread(runThreads, () -> {
+            try {
+                classLoader.loadClass(driverClassName).getMethod("main", String[].class).invoke(null, (Object) arguments);
+            } catch (InvocationTargetException ex) {
+                ex.getCause().printStackTrace();
+                exitCode[0] = 1;
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                ex.printStackTrace();
+                exitCode[0] = 1;
+            }
+        }, "main");
+        driver.setContextClassLoader(classLoader);
+        // JMeter works out its home directory from the class path, as it does when it is started with java -jar
+        System.setProperty("java.class.path", jmeterJar.getPath());
+        System.setOut(runOutput);
+        System.setErr(runOutput);
+        try {
+            driver.start();
+            driver.join();
+            waitForNonDaemonThreads(runThreads);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            exitCode[0] = 1;
+        } finally {
+            runOutput.flush();
+            System.setOut(standardOut);
+            System.setErr(standardErr);
+            System.setProperties(systemProperties);
+            classLoader.close();
+        }
+
+        return exitCode[0];
+    }
+
+    private static void waitForNonDaemonThreads(ThreadGroup threadGroup) throws InterruptedException {
+        while (true) {
+            Thread[] threads = new Thread[threadGroup.activeCount() + 16];
+            int count = threadGroup.enumerate(threads, true);
+            boolean running = false;
+            for (int i = 0; i < count; i++) {
+                if (threads[i].isAlive() && !threads[i].isDaemon()) {
+                    running = true;
+                    break;
+                }
+            }
+            if (!running) {
+                return;
+            }
+            Thread.sleep(THREAD_POLL_INTERVAL_IN_MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends everything written to it as output frames.
+     */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream response;
+
+        FrameOutputStream(DataOutputStream response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            synchronized (response) {
+                response.writeByte(OUTPUT);
+                response.writeInt(length);
+                response.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (response) {
+                response.flush();
+            }
+        }
+    }
+}
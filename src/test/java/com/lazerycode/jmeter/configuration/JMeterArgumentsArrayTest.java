@@ -99,6 +99,17 @@ public class JMeterArgumentsArrayTest {
                 .isEqualTo("-d target/jmeter/ -l " + testArgs.getResultsLogFileName() + " -n -q " + testPropFiles.get(0).getAbsolutePath() + " -t " + testFilePath);
     }
 
+    @Test
+    public void validateJMeterProperties() throws Exception {
+        JMeterArgumentsArray testArgs = new JMeterArgumentsArray(DISABLE_GUI, "target/jmeter/")
+                .setTestFile(testFile, testFileDirectory)
+                .addJMeterProperty("shard.index", "1")
+                .addJMeterProperty("shard.count", "2");
+
+        assertThat(UtilityFunctions.humanReadableCommandLineOutput(new JMeterArgumentsArray(testArgs).buildArgumentsArray()))
+                .isEqualTo("-d target/jmeter/ -l " + testArgs.getResultsLogFileName() + " -n -t " + testFilePath + " -Jshard.index=1 -Jshard.count=2");
+    }
+
     @Test
     public void emptyCustomPropertiesFileIsNotAddedToArguments() throws Exception {
         JMeterArgumentsArray testArgs = new JMeterArgumentsArray(DISABLE_GUI, "target/jmeter/")
@@ -511,6 +522,20 @@ public class JMeterArgumentsArrayTest {
                 .isEqualTo("-d target/jmeter/" + " -e -l " + testArgs.getResultsLogFileName() + " -n -o /target/jmeter/reports -t " + testFilePath);
     }
 
+    @Test
+    public void reportsDirectoryCanBeCleared() throws Exception {
+        JMeterArgumentsArray testArgs = new JMeterArgumentsArray(DISABLE_GUI, "target/jmeter/")
+                .setTestFile(testFile, testFileDirectory)
+                .setReportsDirectory("/target/jmeter/reports");
+
+        JMeterArgumentsArray shardArgs = new JMeterArgumentsArray(testArgs).clearReportsDirectory();
+
+        assertThat(testArgs.getReportsDirectory()).isEqualTo("/target/jmeter/reports");
+        assertThat(shardArgs.getReportsDirectory()).isNull();
+        assertThat(UtilityFunctions.humanReadableCommandLineOutput(shardArgs.buildArgumentsArray()))
+                .isEqualTo("-d target/jmeter/" + " -l " + testArgs.getResultsLogFileName() + " -n -t " + testFilePath);
+    }
+
     @Test
     public void validateCommandLineWhenSettingServerModeWithJustPort() throws Exception {
         JMeterArgumentsArray testArgs = new JMeterArgumentsArray(ENABLE_GUI, "target/jmeter/")
@@ -554,4 +579,21 @@ public class JMeterArgumentsArrayTest {
 
         assertThat(UtilityFunctions.humanReadableCommandLineOutput(testArgs.buildArgumentsArray())).isEqualTo("-d target/jmeter/ -s");
     }
+
+    @Test
+    public void aCopyDoesNotShareTheTestFile() throws Exception {
+        JMeterArgumentsArray original = new JMeterArgumentsArray(DISABLE_GUI, "target/jmeter/")
+                .setResultsDirectory("/tmp/results")
+                .setLogsDirectory(logsDirectory)
+                .setTestFile(testFile, testFileDirectory);
+        JMeterArgumentsArray copy = new JMeterArgumentsArray(original)
+                .setTestFile(new File(testFileTwoUrl.toURI()), testFileDirectory)
+                .setReportsDirectory("/tmp/reports");
+
+        assertThat(original.getResultsLogFileName()).isEqualTo("/tmp/results" + File.separator + "test.jtl");
+        assertThat(copy.getResultsLogFileName()).isEqualTo("/tmp/results" + File.separator + "subdir_test.jtl");
+        assertThat(copy.getJMeterLogFileName()).isEqualTo(logsDirectory + File.separator + "test.jmx.log");
+        assertThat(original.buildArgumentsArray()).doesNotContain("/tmp/reports");
+        assertThat(copy.buildArgumentsArray()).contains("target/jmeter/", "/tmp/reports");
+    }
 }
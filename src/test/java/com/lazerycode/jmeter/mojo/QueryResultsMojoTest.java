@@ -0,0 +1,35 @@
+package com.lazerycode.jmeter.mojo;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueryResultsMojoTest {
+
+    @Test
+    public void timeCanBeMillisecondsSinceTheEpoch() throws Exception {
+        assertThat(QueryResultsMojo.parseTime("1548568307205")).isEqualTo(1548568307205L);
+    }
+
+    @Test
+    public void timeCanBeAnIsoInstant() throws Exception {
+        assertThat(QueryResultsMojo.parseTime("2019-01-27T05:51:47.205Z")).isEqualTo(1548568307205L);
+        assertThat(QueryResultsMojo.parseTime("2019-01-27T06:51:47.205+01:00")).isEqualTo(1548568307205L);
+    }
+
+    @Test
+    public void timeCanBeALocalDateTime() throws Exception {
+        long expected = LocalDateTime.of(2019, 1, 27, 14, 2).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        assertThat(QueryResultsMojo.parseTime("2019-01-27T14:02:00")).isEqualTo(expected);
+    }
+
+    @Test(expected = MojoExecutionException.class)
+    public void invalidTimeThrowsMojoExecutionException() throws Exception {
+        QueryResultsMojo.parseTime("14:02");
+    }
+}
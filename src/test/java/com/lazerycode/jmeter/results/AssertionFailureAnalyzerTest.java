@@ -0,0 +1,56 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AssertionFailureAnalyzerTest {
+
+    private static Sample sample(String label, String assertionName, boolean failure) {
+        return new Sample().setLabel(label).addAssertionResult(new AssertionResult()
+                .setName(assertionName)
+                .setFailure(failure)
+                .setFailureMessage(failure ? "Test failed:\n  expected order id" : null));
+    }
+
+    @Test
+    public void failuresAreCountedPerAssertionAndLabel() {
+        AssertionFailureAnalyzer analyzer = new AssertionFailureAnalyzer();
+        for (int i = 0; i < 1500; i++) {
+            analyzer.sampleOccurred(sample("/checkout", "order id present", true));
+        }
+        analyzer.sampleOccurred(sample("/checkout", "order id present", false));
+        analyzer.sampleOccurred(sample("/basket", "order id present", true));
+        analyzer.sampleOccurred(new Sample().setLabel("/basket").addSubResult(sample("/basket/items", "status 200", true)));
+
+        List<AssertionFailureAnalyzer.AssertionFailure> failures = analyzer.getMostFrequentFailures(10);
+        assertThat(analyzer.getFailureCount()).isEqualTo(1502);
+        assertThat(failures).extracting(AssertionFailureAnalyzer.AssertionFailure::getLabel).containsExactly("/checkout", "/basket", "/basket/items");
+        assertThat(failures.get(0).getCount()).isEqualTo(1500);
+        assertThat(failures.get(0).getFirstMessage()).isEqualTo("Test failed: expected order id");
+        assertThat(analyzer.describeMostFrequentFailures(1)).containsExactly("Assertion 'order id present' failed 1,500 times on /checkout");
+        assertThat(analyzer.getSummary().get(0)).isEqualTo("Assertions checked: 1503, failed: 1502");
+    }
+
+    @Test
+    public void numberOfTrackedFailuresIsBounded() {
+        AssertionFailureAnalyzer analyzer = new AssertionFailureAnalyzer();
+        for (int i = 0; i < AssertionFailureAnalyzer.MAX_TRACKED_FAILURES + 5; i++) {
+            analyzer.sampleOccurred(sample("/orders/" + i, "order id present", true));
+        }
+
+        assertThat(analyzer.getMostFrequentFailures(Integer.MAX_VALUE)).hasSize(AssertionFailureAnalyzer.MAX_TRACKED_FAILURES);
+        assertThat(analyzer.getFailureCount()).isEqualTo(AssertionFailureAnalyzer.MAX_TRACKED_FAILURES + 5);
+        assertThat(analyzer.getSummary()).last().asString().startsWith("5 failures");
+    }
+
+    @Test
+    public void nothingIsReportedWithoutAssertionResults() {
+        AssertionFailureAnalyzer analyzer = new AssertionFailureAnalyzer();
+        analyzer.sampleOccurred(new Sample().setLabel("login"));
+
+        assertThat(analyzer.getSummary()).isEmpty();
+    }
+}
@@ -0,0 +1,115 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BandwidthAnalyzerTest {
+
+    private static final long START = 1548568307000L;
+    private String tempDir = System.getProperty("java.io.tmpdir");
+
+    private static Sample sample(String label, long timeStamp, long bytes, long sentBytes) {
+        return new Sample().setLabel(label).setTimeStamp(timeStamp).setElapsed(0).setBytes(bytes).setSentBytes(sentBytes);
+    }
+
+    @Test
+    public void bandwidthIsCalculatedPerLabelAndOverall() throws Exception {
+        BandwidthAnalyzer analyzer = new BandwidthAnalyzer(0, 0.8f, 1, true, null);
+        analyzer.sampleOccurred(sample("login", START, 1000, 100));
+        analyzer.sampleOccurred(sample("login", START + 1000, 3000, 100));
+        analyzer.sampleOccurred(sample("search", START + 1000, 500, 50));
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getSeries("login").getTotalReceivedBytes()).isEqualTo(4000);
+        assertThat(analyzer.getSeries("login").getPeakReceivedBytesPerSecond()).isEqualTo(3000);
+        assertThat(analyzer.getSeries("login").getAverageReceivedBytesPerSecond()).isEqualTo(2000);
+        assertThat(analyzer.getTotal().getPeakReceivedBytesPerSecond()).isEqualTo(3500);
+        assertThat(analyzer.getTotal().getPeakSentBytesPerSecond()).isEqualTo(150);
+        assertThat(analyzer.getTotal().getTotalSentBytes()).isEqualTo(250);
+        assertThat(analyzer.getFailures()).isEmpty();
+        assertThat(analyzer.getWarnings()).isEmpty();
+    }
+
+    @Test
+    public void saturatedLinkIsReportedAsAFailure() throws Exception {
+        BandwidthAnalyzer analyzer = new BandwidthAnalyzer(1, 0.8f, 2, true, null);
+        for (int second = 0; second < 5; second++) {
+            analyzer.sampleOccurred(sample("download", START + second * 1000, 120_000, 100));
+        }
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getPeakSustainedReceivedBytesPerSecond()).isEqualTo(120_000);
+        assertThat(analyzer.getSaturatedSeconds()).isEqualTo(4);
+        assertThat(analyzer.getWarnings()).hasSize(1);
+        assertThat(analyzer.getFailures()).hasSize(1);
+    }
+
+    @Test
+    public void shortBurstsDoNotCountAsSaturation() throws Exception {
+        BandwidthAnalyzer analyzer = new BandwidthAnalyzer(1, 0.8f, 3, true, null);
+        analyzer.sampleOccurred(sample("download", START, 120_000, 100));
+        analyzer.sampleOccurred(sample("download", START + 3000, 1000, 100));
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getSaturatedSeconds()).isEqualTo(0);
+        assertThat(analyzer.getFailures()).isEmpty();
+    }
+
+    @Test
+    public void saturationIsOnlyAWarningIfFailingIsDisabled() throws Exception {
+        BandwidthAnalyzer analyzer = new BandwidthAnalyzer(1, 0.8f, 1, false, null);
+        analyzer.sampleOccurred(sample("download", START, 120_000, 100));
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getWarnings()).hasSize(1);
+        assertThat(analyzer.getFailures()).isEmpty();
+    }
+
+    @Test
+    public void perSecondSeriesIsWrittenToFile() throws Exception {
+        File seriesFile = new File(tempDir, UUID.randomUUID() + File.separator + "bandwidth.csv");
+        BandwidthAnalyzer analyzer = new BandwidthAnalyzer(0, 0.8f, 1, true, seriesFile);
+        analyzer.sampleOccurred(sample("login", START, 1000, 100));
+        analyzer.sampleOccurred(sample("login", START + 2000, 1000, 100));
+        analyzer.scanCompleted();
+        List<String> lines = Files.readAllLines(seriesFile.toPath(), StandardCharsets.UTF_8);
+
+        assertThat(lines).hasSize(6);
+        assertThat(lines.get(0)).isEqualTo("timeStamp,label,receivedBytes,sentBytes");
+        assertThat(lines).contains(START + 1000 + ",\"TOTAL\",0,0");
+        seriesFile.delete();
+        seriesFile.getParentFile().delete();
+    }
+
+    @Test
+    public void samplesWithoutByteCountsAreIgnored() throws Exception {
+        BandwidthAnalyzer analyzer = new BandwidthAnalyzer(0, 0.8f, 1, true, null);
+        analyzer.sampleOccurred(new Sample().setLabel("login").setTimeStamp(START));
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getTotal().getSampleCount()).isEqualTo(0);
+        assertThat(analyzer.getSummary()).hasSize(1);
+    }
+
+    @Test
+    public void samplesOfAnOverlappingResultsFileAreReportedWhenTheyArriveTooLate() throws Exception {
+        BandwidthAnalyzer analyzer = new BandwidthAnalyzer(0, 0.8f, 1, true, null);
+        analyzer.sampleOccurred(sample("login", START + 60000, 1000, 100));
+        analyzer.sampleOccurred(sample("login", START + 130000, 1000, 100));
+        analyzer.fileCompleted();
+        analyzer.sampleOccurred(sample("login", START, 1000, 100));
+        analyzer.fileCompleted();
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getTotal().getTotalReceivedBytes()).isEqualTo(3000);
+        assertThat(analyzer.getTotal().getLateSampleCount()).isEqualTo(1);
+        assertThat(analyzer.getWarnings()).containsExactly("1 samples arrived more than 60s out of time order and are missing from the per second bandwidth, set mergeResultFiles to true if the results files overlap in time");
+    }
+}
@@ -0,0 +1,112 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BaselineComparisonAnalyzerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void baselineIsSavedWhenThereIsNothingToCompareWith() throws Exception {
+        File baseline = new File(temporaryFolder.getRoot(), "analysis/baseline.json");
+        BaselineComparisonAnalyzer analyzer = run(new File(temporaryFolder.getRoot(), "missing.json"), baseline, 100, 0, 1);
+
+        assertThat(baseline).exists();
+        assertThat(analyzer.getComparison("login")).isNull();
+        assertThat(analyzer.getSummary().get(0)).startsWith("No baseline found");
+        assertThat(analyzer.getFailures()).isEmpty();
+    }
+
+    @Test
+    public void noiseIsNotReportedAsARegression() throws Exception {
+        File baseline = temporaryFolder.newFile("baseline.json");
+        run(null, baseline, 100, 0, 1);
+        BaselineComparisonAnalyzer analyzer = run(baseline, null, 100, 0, 2);
+
+        assertThat(analyzer.getComparison("login")).isNotNull();
+        assertThat(analyzer.getComparison("login").isRegression()).isFalse();
+        assertThat(analyzer.getFailures()).isEmpty();
+    }
+
+    @Test
+    public void significantlySlowerLabelIsAFailure() throws Exception {
+        File baseline = temporaryFolder.newFile("baseline.json");
+        run(null, baseline, 100, 0, 1);
+        BaselineComparisonAnalyzer analyzer = run(baseline, null, 100, 10, 2);
+
+        assertThat(analyzer.getComparison("login").isRegression()).isTrue();
+        assertThat(analyzer.getComparison("login").getCurrentPercentile()).isGreaterThan(analyzer.getComparison("login").getBaselinePercentile());
+        assertThat(analyzer.getFailures()).hasSize(2);
+        assertThat(analyzer.getFailures().get(0)).startsWith("'TOTAL' is significantly slower than the baseline");
+    }
+
+    @Test
+    public void significantSlowdownBelowTheMinimumEffectSizeIsNotARegression() throws Exception {
+        File baseline = temporaryFolder.newFile("baseline.json");
+        run(null, baseline, 100, 0, 1);
+        BaselineComparisonAnalyzer analyzer = new BaselineComparisonAnalyzer(baseline, null, 1000, 99, 0.64f, true);
+        feed(analyzer, 100, 3, 2);
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getComparison("login").isSignificant()).isTrue();
+        assertThat(analyzer.getComparison("login").isRegression()).isFalse();
+        assertThat(analyzer.getFailures()).isEmpty();
+    }
+
+    @Test
+    public void fasterLabelIsNotARegression() throws Exception {
+        File baseline = temporaryFolder.newFile("baseline.json");
+        run(null, baseline, 100, 0, 1);
+        BaselineComparisonAnalyzer analyzer = run(baseline, null, 100, -10, 2);
+
+        assertThat(analyzer.getComparison("login").isRegression()).isFalse();
+    }
+
+    @Test
+    public void regressionIsAWarningWhenTheBuildShouldNotFail() throws Exception {
+        File baseline = temporaryFolder.newFile("baseline.json");
+        run(null, baseline, 100, 0, 1);
+        BaselineComparisonAnalyzer analyzer = new BaselineComparisonAnalyzer(baseline, null, 1000, 99, 0.56f, false);
+        feed(analyzer, 100, 10, 2);
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getFailures()).isEmpty();
+        assertThat(analyzer.getWarnings()).hasSize(2);
+    }
+
+    @Test
+    public void labelsMissingFromTheBaselineAreReported() throws Exception {
+        File baseline = temporaryFolder.newFile("baseline.json");
+        run(null, baseline, 100, 0, 1);
+        BaselineComparisonAnalyzer analyzer = new BaselineComparisonAnalyzer(baseline, null, 1000, 99, 0.56f, true);
+        analyzer.sampleOccurred(new Sample().setLabel("checkout").setElapsed(100));
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getWarnings()).containsExactly("'checkout' is not in the baseline, it has not been compared");
+    }
+
+    private static BaselineComparisonAnalyzer run(File baseline, File savedBaseline, long mean, long shift, long seed) throws Exception {
+        BaselineComparisonAnalyzer analyzer = new BaselineComparisonAnalyzer(baseline, savedBaseline, 1000, 99, 0.56f, true);
+        feed(analyzer, mean, shift, seed);
+        analyzer.scanCompleted();
+
+        return analyzer;
+    }
+
+    private static void feed(BaselineComparisonAnalyzer analyzer, long mean, long shift, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < 5000; i++) {
+            analyzer.sampleOccurred(new Sample()
+                    .setLabel("login")
+                    .setElapsed(mean + shift + (long) (random.nextGaussian() * mean * 0.08)));
+        }
+    }
+}
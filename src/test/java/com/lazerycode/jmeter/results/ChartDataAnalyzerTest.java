@@ -0,0 +1,89 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChartDataAnalyzerTest {
+
+    private static final long START = 1548568307000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shortRunIsNotDownsampled() throws Exception {
+        ChartDataAnalyzer analyzer = new ChartDataAnalyzer(100, ChartDataAnalyzer.Downsampling.LTTB, temporaryFolder.newFile("chart-data.csv"));
+        analyzer.sampleOccurred(sample("login", START, 100));
+        analyzer.sampleOccurred(sample("login", START + 500, 300));
+        analyzer.sampleOccurred(sample("login", START + 1200, 50));
+
+        List<ChartDataAnalyzer.Point> points = analyzer.getPoints("login");
+        assertThat(points).hasSize(2);
+        assertThat(points.get(0).getTimeStamp()).isEqualTo(START);
+        assertThat(points.get(0).getSampleCount()).isEqualTo(2);
+        assertThat(points.get(0).getThroughputPerSecond()).isEqualTo(2);
+        assertThat(points.get(0).getAverageElapsed()).isEqualTo(200);
+        assertThat(points.get(0).getMinimumElapsed()).isEqualTo(100);
+        assertThat(points.get(0).getMaximumElapsed()).isEqualTo(300);
+    }
+
+    @Test
+    public void longRunIsDownsampledWithLttb() throws Exception {
+        ChartDataAnalyzer analyzer = new ChartDataAnalyzer(100, ChartDataAnalyzer.Downsampling.LTTB, temporaryFolder.newFile("chart-data.csv"));
+        feedDay(analyzer);
+
+        List<ChartDataAnalyzer.Point> points = analyzer.getPoints("login");
+        assertThat(points).hasSize(100);
+        assertThat(points).extracting(ChartDataAnalyzer.Point::getMaximumElapsed).contains(5000L);
+        assertThat(analyzer.getPoints(ChartDataAnalyzer.TOTAL_LABEL)).hasSize(100);
+    }
+
+    @Test
+    public void longRunIsDownsampledWithMinMax() throws Exception {
+        ChartDataAnalyzer analyzer = new ChartDataAnalyzer(100, ChartDataAnalyzer.Downsampling.MIN_MAX, temporaryFolder.newFile("chart-data.csv"));
+        feedDay(analyzer);
+
+        List<ChartDataAnalyzer.Point> points = analyzer.getPoints("login");
+        assertThat(points.size()).isBetween(50, 100);
+        assertThat(points).extracting(ChartDataAnalyzer.Point::getMaximumElapsed).contains(5000L);
+        long sampleCount = 0;
+        for (ChartDataAnalyzer.Point point : points) {
+            sampleCount += point.getSampleCount();
+        }
+        assertThat(sampleCount).isEqualTo(24 * 60 * 60);
+    }
+
+    @Test
+    public void seriesAreWrittenToCsv() throws Exception {
+        File outputFile = new File(temporaryFolder.getRoot(), "analysis/chart-data.csv");
+        ChartDataAnalyzer analyzer = new ChartDataAnalyzer(100, ChartDataAnalyzer.Downsampling.LTTB, outputFile);
+        analyzer.sampleOccurred(sample("login", START, 100));
+        analyzer.sampleOccurred(sample("search", START + 1000, 200));
+        analyzer.scanCompleted();
+
+        assertThat(Files.readAllLines(outputFile.toPath())).containsExactly(
+                "timeStamp,label,samples,throughputPerSecond,averageElapsed,minElapsed,maxElapsed",
+                START + ",\"login\",1,1.000,100.0,100,100",
+                (START + 1000) + ",\"search\",1,1.000,200.0,200,200",
+                START + ",\"TOTAL\",1,1.000,100.0,100,100",
+                (START + 1000) + ",\"TOTAL\",1,1.000,200.0,200,200"
+        );
+    }
+
+    private static void feedDay(ChartDataAnalyzer analyzer) {
+        for (int second = 0; second < 24 * 60 * 60; second++) {
+            analyzer.sampleOccurred(sample("login", START + second * 1000L, second == 50000 ? 5000 : 100 + second % 10));
+        }
+    }
+
+    private static Sample sample(String label, long timeStamp, long elapsed) {
+        return new Sample().setLabel(label).setTimeStamp(timeStamp).setElapsed(elapsed);
+    }
+}
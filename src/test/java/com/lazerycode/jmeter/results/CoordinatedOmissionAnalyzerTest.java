@@ -0,0 +1,82 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CoordinatedOmissionAnalyzerTest {
+
+    private static final long START = 1548568307000L;
+
+    private static Sample sample(String threadName, long timeStamp, long elapsed) {
+        return new Sample().setLabel("request").setThreadName(threadName).setTimeStamp(timeStamp).setElapsed(elapsed);
+    }
+
+    @Test
+    public void noSamplesAreOmittedWhenTheScheduleIsKept() {
+        CoordinatedOmissionAnalyzer analyzer = new CoordinatedOmissionAnalyzer(1);
+        for (int i = 0; i < 100; i++) {
+            analyzer.sampleOccurred(sample("thread 1-1", START + i * 100, 10));
+        }
+
+        assertThat(analyzer.getTotal().getOmittedSampleCount()).isEqualTo(0);
+        assertThat(analyzer.getTotal().getCorrected().getValueAtPercentile(99)).isEqualTo(10);
+        assertThat(analyzer.getWarnings()).isEmpty();
+    }
+
+    @Test
+    public void omittedSamplesAreBackFilledWhenTheSystemStalls() {
+        CoordinatedOmissionAnalyzer analyzer = new CoordinatedOmissionAnalyzer(1);
+        long timeStamp = START;
+        for (int i = 0; i < 50; i++) {
+            analyzer.sampleOccurred(sample("thread 1-1", timeStamp, 10));
+            timeStamp += 100;
+        }
+        analyzer.sampleOccurred(sample("thread 1-1", timeStamp, 5000));
+        timeStamp += 5090;
+        for (int i = 0; i < 49; i++) {
+            analyzer.sampleOccurred(sample("thread 1-1", timeStamp, 10));
+            timeStamp += 100;
+        }
+        CoordinatedOmissionAnalyzer.LabelLatencies latencies = analyzer.getLatencies("request");
+
+        assertThat(latencies.getRaw().getTotalCount()).isEqualTo(100);
+        assertThat(latencies.getOmittedSampleCount()).isEqualTo(49);
+        assertThat(latencies.getRaw().getValueAtPercentile(95)).isEqualTo(10);
+        assertThat(latencies.getCorrected().getValueAtPercentile(95)).isGreaterThan(2000);
+        assertThat(analyzer.getWarnings()).hasSize(1);
+    }
+
+    @Test
+    public void threadsAreScheduledIndependently() {
+        CoordinatedOmissionAnalyzer.ThreadSchedule fast = new CoordinatedOmissionAnalyzer.ThreadSchedule();
+        CoordinatedOmissionAnalyzer.ThreadSchedule slow = new CoordinatedOmissionAnalyzer.ThreadSchedule();
+        for (int i = 0; i < 10; i++) {
+            fast.sampleStarted(START + i * 10);
+            slow.sampleStarted(START + i * 1000);
+        }
+
+        assertThat(fast.expectedInterval()).isEqualTo(10);
+        assertThat(slow.expectedInterval()).isEqualTo(1000);
+    }
+
+    @Test
+    public void expectedIntervalIsNotKnownUntilTheThreadHasWarmedUp() {
+        CoordinatedOmissionAnalyzer.ThreadSchedule schedule = new CoordinatedOmissionAnalyzer.ThreadSchedule();
+        schedule.sampleStarted(START);
+        schedule.sampleStarted(START + 100);
+
+        assertThat(schedule.expectedInterval()).isEqualTo(0);
+    }
+
+    @Test
+    public void outlierGapsDoNotChangeTheExpectedInterval() {
+        CoordinatedOmissionAnalyzer.ThreadSchedule schedule = new CoordinatedOmissionAnalyzer.ThreadSchedule();
+        for (int i = 0; i < 10; i++) {
+            schedule.sampleStarted(START + i * 100);
+        }
+        schedule.sampleStarted(START + 60_000);
+
+        assertThat(schedule.expectedInterval()).isEqualTo(100);
+    }
+}
@@ -0,0 +1,62 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CsvSampleReaderTest {
+
+    private final URL csvTimingsFileURL = this.getClass().getResource("/csv-timings.csv");
+    private final URL csvWithAlternateSeparatorFileURL = this.getClass().getResource("/csv3-1-pass.csv");
+
+    @Test
+    public void samplesAreReadFromCSVFile() throws Exception {
+        try (CsvSampleReader reader = new CsvSampleReader(new File(csvTimingsFileURL.toURI()))) {
+            Sample first = reader.next();
+
+            assertThat(first.getTimeStamp()).isEqualTo(1548568307205L);
+            assertThat(first.getElapsed()).isEqualTo(100);
+            assertThat(first.getLatency()).isEqualTo(60);
+            assertThat(first.getConnect()).isEqualTo(20);
+            assertThat(first.getBytes()).isEqualTo(1000);
+            assertThat(first.getSentBytes()).isEqualTo(200);
+            assertThat(first.getLabel()).isEqualTo("login");
+            assertThat(first.getThreadName()).isEqualTo("my-test-plan 1-1");
+            assertThat(first.getResponseCode()).isEqualTo("200");
+            assertThat(first.isSuccess()).isTrue();
+            assertThat(reader.next().getLabel()).isEqualTo("search");
+        }
+    }
+
+    @Test
+    public void quotedValuesSpanningMultipleLinesAreReadAsASingleSample() throws Exception {
+        try (CsvSampleReader reader = new CsvSampleReader(new File(csvTimingsFileURL.toURI()))) {
+            reader.next();
+            reader.next();
+            Sample third = reader.next();
+
+            assertThat(third.isSuccess()).isFalse();
+            assertThat(third.getConnect()).isEqualTo(10);
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    public void alternateSeparatorIsDetected() throws Exception {
+        try (CsvSampleReader reader = new CsvSampleReader(new File(csvWithAlternateSeparatorFileURL.toURI()))) {
+            Sample first = reader.next();
+
+            assertThat(first.getElapsed()).isEqualTo(1330);
+            assertThat(first.isSuccess()).isTrue();
+        }
+    }
+
+    @Test
+    public void quotedSeparatorsAndEscapedQuotesAreHandled() {
+        assertThat(CsvSampleReader.splitLine("a,\"b,\"\"c\"\"\",d", ','))
+                .containsExactly("a", "b,\"c\"", "d");
+    }
+}
@@ -0,0 +1,56 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CsvSampleWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writtenSamplesCanBeReadBack() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "merged/results.csv");
+        try (CsvSampleWriter writer = new CsvSampleWriter(file)) {
+            writer.write(new Sample()
+                    .setTimeStamp(1548568307205L)
+                    .setElapsed(100)
+                    .setLatency(60)
+                    .setConnect(20)
+                    .setBytes(1000)
+                    .setSentBytes(200)
+                    .setLabel("search, \"quoted\"\nlabel")
+                    .setThreadName("my-test-plan 1-1")
+                    .setResponseCode("200")
+                    .setSuccess(true));
+            writer.write(new Sample().setTimeStamp(1548568307300L).setLabel("login"));
+        }
+
+        try (CsvSampleReader reader = new CsvSampleReader(file)) {
+            Sample first = reader.next();
+
+            assertThat(first.getTimeStamp()).isEqualTo(1548568307205L);
+            assertThat(first.getElapsed()).isEqualTo(100);
+            assertThat(first.getLatency()).isEqualTo(60);
+            assertThat(first.getConnect()).isEqualTo(20);
+            assertThat(first.getBytes()).isEqualTo(1000);
+            assertThat(first.getSentBytes()).isEqualTo(200);
+            assertThat(first.getLabel()).isEqualTo("search, \"quoted\"\nlabel");
+            assertThat(first.getThreadName()).isEqualTo("my-test-plan 1-1");
+            assertThat(first.getResponseCode()).isEqualTo("200");
+            assertThat(first.isSuccess()).isTrue();
+
+            Sample second = reader.next();
+
+            assertThat(second.getLabel()).isEqualTo("login");
+            assertThat(second.getElapsed()).isEqualTo(Sample.NOT_RECORDED);
+            assertThat(second.isSuccess()).isFalse();
+            assertThat(reader.next()).isNull();
+        }
+    }
+}
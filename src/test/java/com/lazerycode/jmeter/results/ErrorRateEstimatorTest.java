@@ -0,0 +1,92 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class ErrorRateEstimatorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Every failureInterval-th sample fails, failures have a quoted message that spans two lines.
+     */
+    private File resultsFile(String name, int samples, int failureInterval) throws Exception {
+        File file = temporaryFolder.newFile(name);
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("timeStamp,elapsed,label,responseCode,success,failureMessage\n");
+            for (int i = 0; i < samples; i++) {
+                boolean failed = i % failureInterval == 0;
+                writer.write(String.format("%s,%s,login,%s,%s,%s\n", 1548568307000L + i, 100 + i % 50, failed ? 500 : 200, !failed, failed ? "\"Test failed:\nfalse,true\"" : ""));
+            }
+        }
+
+        return file;
+    }
+
+    @Test
+    public void errorRateIsEstimatedFromASampleOfBlocks() throws Exception {
+        File file = resultsFile("results.csv", 40000, 20);
+        ErrorRateEstimate estimate = new ErrorRateEstimator(4096, 100, 42).estimate(Collections.singletonList(file));
+
+        assertThat(estimate.getBlocksRead()).isEqualTo(100);
+        assertThat(estimate.getTotalBlocks()).isEqualTo((file.length() + 4095) / 4096);
+        assertThat(estimate.getSampleCount()).isBetween(5000L, 20000L);
+        assertThat(estimate.getErrorRateInPercent()).isCloseTo(5, within(0.5));
+        assertThat(estimate.getLowerBoundInPercent(99)).isLessThan(estimate.getErrorRateInPercent());
+        assertThat(estimate.getUpperBoundInPercent(99)).isGreaterThan(estimate.getErrorRateInPercent());
+        assertThat(estimate.isAbove(1, 99)).isTrue();
+        assertThat(estimate.isAtOrBelow(10, 99)).isTrue();
+        assertThat(estimate.isAbove(5, 99)).isFalse();
+        assertThat(estimate.isAtOrBelow(5, 99)).isFalse();
+    }
+
+    @Test
+    public void blocksAreSampledAcrossEveryFile() throws Exception {
+        File first = resultsFile("first.csv", 20000, 1000000);
+        File second = resultsFile("second.csv", 20000, 2);
+        ErrorRateEstimate estimate = new ErrorRateEstimator(4096, 100, 42).estimate(Arrays.asList(first, second));
+
+        assertThat(estimate.getErrorRateInPercent()).isBetween(15d, 35d);
+    }
+
+    @Test
+    public void smallFilesAreNotSampled() throws Exception {
+        File file = resultsFile("results.csv", 100, 20);
+
+        assertThat(new ErrorRateEstimator(4096, 100, 42).estimate(Collections.singletonList(file))).isNull();
+    }
+
+    @Test
+    public void ruleOfThreeIsUsedWhenNoFailuresAreRead() {
+        ErrorRateEstimate estimate = new ErrorRateEstimate(new long[]{500, 500}, new long[]{0, 0}, 100);
+
+        assertThat(estimate.getUpperBoundInPercent(95)).isCloseTo(0.2996, within(0.001));
+        assertThat(estimate.isAtOrBelow(0, 95)).isFalse();
+        assertThat(estimate.isAtOrBelow(1, 95)).isTrue();
+    }
+
+    @Test
+    public void failuresThatHaveBeenReadAreAlwaysAboveAZeroThreshold() {
+        ErrorRateEstimate estimate = new ErrorRateEstimate(new long[]{500, 500, 500}, new long[]{0, 0, 1}, 100);
+
+        assertThat(estimate.isAbove(0, 99.9f)).isTrue();
+    }
+
+    @Test
+    public void zScoreIsTheInverseOfTheNormalDistribution() {
+        assertThat(ErrorRateEstimate.zScore(0.975)).isCloseTo(1.96, within(0.01));
+        assertThat(ErrorRateEstimate.zScore(0.5)).isCloseTo(0, within(0.001));
+    }
+}
@@ -0,0 +1,87 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LabelNormaliserTest {
+
+    @Test
+    public void labelsAreUnchangedWithoutRules() {
+        LabelNormaliser labelNormaliser = new LabelNormaliser();
+
+        assertThat(labelNormaliser.isEmpty()).isTrue();
+        assertThat(labelNormaliser.normalise("/orders/123")).isEqualTo("/orders/123");
+        assertThat(labelNormaliser.normalise((String) null)).isNull();
+    }
+
+    @Test
+    public void pathTemplatesMatchAnySingleSegment() {
+        LabelNormaliser labelNormaliser = new LabelNormaliser()
+                .addPathTemplate("/orders/{id}")
+                .addPathTemplate("/orders/{id}/items/{itemId}");
+
+        assertThat(labelNormaliser.normalise("/orders/123")).isEqualTo("/orders/{id}");
+        assertThat(labelNormaliser.normalise("/orders/123/items/9")).isEqualTo("/orders/{id}/items/{itemId}");
+        assertThat(labelNormaliser.normalise("/orders/123/items")).isEqualTo("/orders/123/items");
+        assertThat(labelNormaliser.normalise("/orders")).isEqualTo("/orders");
+    }
+
+    @Test
+    public void schemeHostQueryStringAndFragmentAreIgnoredByTemplates() {
+        LabelNormaliser labelNormaliser = new LabelNormaliser().addPathTemplate("/orders/{id}");
+
+        assertThat(labelNormaliser.normalise("https://shop.example.com:8443/orders/123?expand=items#top")).isEqualTo("/orders/{id}");
+        assertThat(labelNormaliser.normalise("/orders/123/")).isEqualTo("/orders/{id}");
+    }
+
+    @Test
+    public void literalSegmentsArePreferredOverWildcards() {
+        LabelNormaliser labelNormaliser = new LabelNormaliser()
+                .addPathTemplate("/orders/{id}/items")
+                .addPathTemplate("/orders/search/{term}");
+
+        assertThat(labelNormaliser.normalise("/orders/search/shoes")).isEqualTo("/orders/search/{term}");
+        assertThat(labelNormaliser.normalise("/orders/search/items")).isEqualTo("/orders/search/{term}");
+        assertThat(labelNormaliser.normalise("/orders/42/items")).isEqualTo("/orders/{id}/items");
+    }
+
+    @Test
+    public void wildcardIsTriedWhenLiteralBranchDoesNotMatch() {
+        LabelNormaliser labelNormaliser = new LabelNormaliser()
+                .addPathTemplate("/orders/search")
+                .addPathTemplate("/orders/{id}/items");
+
+        assertThat(labelNormaliser.normalise("/orders/search/items")).isEqualTo("/orders/{id}/items");
+    }
+
+    @Test
+    public void patternsAreAppliedInOrder() {
+        LabelNormaliser labelNormaliser = new LabelNormaliser()
+                .addPattern("\\?.*$", "")
+                .addPattern("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}", "{uuid}")
+                .addPattern("/(\\d+)(/|$)", "/{id}$2");
+
+        assertThat(labelNormaliser.normalise("/basket/0b7e0f9c-61a1-4c37-9a2e-3fbd1a0e8c51/lines/12?page=2")).isEqualTo("/basket/{uuid}/lines/{id}");
+    }
+
+    @Test
+    public void templatesArePreferredOverPatterns() {
+        LabelNormaliser labelNormaliser = new LabelNormaliser()
+                .addPattern("\\d+", "N")
+                .addPathTemplate("/orders/{id}");
+
+        assertThat(labelNormaliser.normalise("/orders/123")).isEqualTo("/orders/{id}");
+        assertThat(labelNormaliser.normalise("/users/123")).isEqualTo("/users/N");
+    }
+
+    @Test
+    public void subResultLabelsAreNormalised() {
+        LabelNormaliser labelNormaliser = new LabelNormaliser().addPathTemplate("/orders/{id}");
+        Sample sample = new Sample().setLabel("/orders/1").addSubResult(new Sample().setLabel("/orders/2"));
+        labelNormaliser.normalise(sample);
+
+        assertThat(sample.getLabel()).isEqualTo("/orders/{id}");
+        assertThat(sample.getSubResults().get(0).getLabel()).isEqualTo("/orders/{id}");
+    }
+}
@@ -0,0 +1,65 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesAreRecordedExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.recordValue(value);
+        }
+
+        assertThat(histogram.getTotalCount()).isEqualTo(100);
+        assertThat(histogram.getValueAtPercentile(50)).isEqualTo(50);
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(99);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(100);
+        assertThat(histogram.getMinimum()).isEqualTo(1);
+        assertThat(histogram.getMean()).isEqualTo(50.5);
+    }
+
+    @Test
+    public void largeValuesAreRecordedWithinTwoPercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(12_345);
+        histogram.recordValue(3_600_000);
+
+        assertThat(histogram.getValueAtPercentile(50)).isBetween(12_345L, 12_592L);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(3_600_000);
+    }
+
+    @Test
+    public void bucketBoundariesAreContiguous() {
+        for (int index = 0; index < 2000; index++) {
+            long highest = LatencyHistogram.highestValueFor(index);
+
+            assertThat(LatencyHistogram.indexFor(highest)).isEqualTo(index);
+            assertThat(LatencyHistogram.indexFor(highest + 1)).isEqualTo(index + 1);
+        }
+    }
+
+    @Test
+    public void histogramsCanBeAdded() {
+        LatencyHistogram first = new LatencyHistogram();
+        first.recordValues(10, 3);
+        LatencyHistogram second = new LatencyHistogram();
+        second.recordValue(100_000);
+        first.add(second);
+
+        assertThat(first.getTotalCount()).isEqualTo(4);
+        assertThat(first.getMaximum()).isEqualTo(100_000);
+        assertThat(first.getValueAtPercentile(75)).isEqualTo(10);
+    }
+
+    @Test
+    public void emptyHistogramReturnsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+        assertThat(histogram.getMinimum()).isEqualTo(0);
+        assertThat(histogram.getMean()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,57 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyReservoirTest {
+
+    @Test
+    public void everyValueIsKeptUntilTheReservoirIsFull() {
+        LatencyReservoir reservoir = new LatencyReservoir(5, 1);
+        reservoir.recordValue(10);
+        reservoir.recordValue(20);
+
+        assertThat(reservoir.getValues()).containsExactly(10, 20);
+        assertThat(reservoir.getRecordedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void reservoirSizeIsBounded() {
+        LatencyReservoir reservoir = new LatencyReservoir(100, 1);
+        for (int i = 0; i < 100000; i++) {
+            reservoir.recordValue(i);
+        }
+
+        assertThat(reservoir.getValues()).hasSize(100);
+        assertThat(reservoir.getRecordedCount()).isEqualTo(100000);
+    }
+
+    @Test
+    public void reservoirIsAUniformSample() {
+        LatencyReservoir reservoir = new LatencyReservoir(1000, 1);
+        for (int i = 0; i < 100000; i++) {
+            reservoir.recordValue(i);
+        }
+        long inFirstHalf = 0;
+        for (long value : reservoir.getValues()) {
+            if (value < 50000) {
+                inFirstHalf++;
+            }
+        }
+
+        assertThat(inFirstHalf).isBetween(430L, 570L);
+    }
+
+    @Test
+    public void reservoirIsReproducible() {
+        LatencyReservoir first = new LatencyReservoir(10, 42);
+        LatencyReservoir second = new LatencyReservoir(10, 42);
+        for (int i = 0; i < 1000; i++) {
+            first.recordValue(i);
+            second.recordValue(i);
+        }
+
+        assertThat(first.getValues()).isEqualTo(second.getValues());
+    }
+}
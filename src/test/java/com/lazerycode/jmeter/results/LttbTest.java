@@ -0,0 +1,50 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LttbTest {
+
+    @Test
+    public void everyPointIsKeptWhenThereAreFewerPointsThanTheThreshold() {
+        assertThat(Lttb.select(new double[]{1, 2, 3}, new double[]{5, 6, 7}, 10)).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    public void firstAndLastPointsAreAlwaysKept() {
+        double[] x = new double[100];
+        double[] y = new double[100];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+            y[i] = i % 7;
+        }
+        int[] selected = Lttb.select(x, y, 10);
+
+        assertThat(selected).hasSize(10);
+        assertThat(selected[0]).isEqualTo(0);
+        assertThat(selected[9]).isEqualTo(99);
+        assertThat(selected).isSorted();
+    }
+
+    @Test
+    public void spikesAreKept() {
+        double[] x = new double[1000];
+        double[] y = new double[1000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+            y[i] = 100;
+        }
+        y[437] = 5000;
+
+        assertThat(Lttb.select(x, y, 20)).contains(437);
+    }
+
+    @Test
+    public void smallThresholdsKeepTheEnds() {
+        double[] values = {1, 2, 3, 4};
+
+        assertThat(Lttb.select(values, values, 2)).containsExactly(0, 3);
+        assertThat(Lttb.select(values, values, 1)).containsExactly(0);
+    }
+}
@@ -0,0 +1,60 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class MannWhitneyUTest {
+
+    @Test
+    public void normalCumulativeProbabilityIsAccurate() {
+        assertThat(MannWhitneyU.normalCumulativeProbability(0)).isCloseTo(0.5, within(1e-7));
+        assertThat(MannWhitneyU.normalCumulativeProbability(1.959964)).isCloseTo(0.975, within(1e-6));
+        assertThat(MannWhitneyU.normalCumulativeProbability(-2.326348)).isCloseTo(0.01, within(1e-6));
+    }
+
+    @Test
+    public void uIsTheNumberOfPairsWhereTheCurrentValueIsLarger() {
+        MannWhitneyU result = MannWhitneyU.compare(new long[]{1, 2, 3}, new long[]{2, 4});
+
+        // 2 beats 1 and ties with 2 (counts as half), 4 beats all three
+        assertThat(result.getU()).isEqualTo(4.5);
+        assertThat(result.getProbabilityOfSuperiority()).isEqualTo(0.75);
+    }
+
+    @Test
+    public void identicalDistributionsAreNotSignificant() {
+        Random random = new Random(1);
+        long[] baseline = new long[2000];
+        long[] current = new long[2000];
+        for (int i = 0; i < baseline.length; i++) {
+            baseline[i] = 100 + (long) (random.nextGaussian() * 10);
+            current[i] = 100 + (long) (random.nextGaussian() * 10);
+        }
+
+        assertThat(MannWhitneyU.compare(baseline, current).getPValue()).isGreaterThan(0.01);
+    }
+
+    @Test
+    public void slowerDistributionIsSignificant() {
+        Random random = new Random(1);
+        long[] baseline = new long[2000];
+        long[] current = new long[2000];
+        for (int i = 0; i < baseline.length; i++) {
+            baseline[i] = 100 + (long) (random.nextGaussian() * 10);
+            current[i] = 103 + (long) (random.nextGaussian() * 10);
+        }
+
+        assertThat(MannWhitneyU.compare(baseline, current).getPValue()).isLessThan(0.001);
+        assertThat(MannWhitneyU.compare(current, baseline).getPValue()).isGreaterThan(0.99);
+    }
+
+    @Test
+    public void emptySamplesAreNeverSignificant() {
+        assertThat(MannWhitneyU.compare(new long[0], new long[]{1, 2}).getPValue()).isEqualTo(1);
+        assertThat(MannWhitneyU.compare(new long[]{5, 5}, new long[]{5, 5}).getPValue()).isEqualTo(1);
+    }
+}
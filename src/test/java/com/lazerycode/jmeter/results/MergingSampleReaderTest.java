@@ -0,0 +1,114 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MergingSampleReaderTest {
+
+    private final URL jtlTimingsFileURL = this.getClass().getResource("/jtl-timings.jtl");
+    private final URL csvTimingsFileURL = this.getClass().getResource("/csv-timings.csv");
+
+    @Test
+    public void samplesFromSeveralReadersAreMergedInTimeStampOrder() throws Exception {
+        try (MergingSampleReader reader = new MergingSampleReader(Arrays.asList(
+                readerOf(1000, 3000, 5000),
+                readerOf(2000, 2500, 6000),
+                readerOf(),
+                readerOf(4000)
+        ), 1)) {
+            assertThat(timeStamps(reader)).containsExactly(1000L, 2000L, 2500L, 3000L, 4000L, 5000L, 6000L);
+            assertThat(reader.getOutOfOrderSampleCount()).isZero();
+        }
+    }
+
+    @Test
+    public void samplesSlightlyOutOfOrderInAFileAreReordered() throws Exception {
+        try (MergingSampleReader reader = new MergingSampleReader(Arrays.asList(
+                readerOf(1000, 3000, 2000, 4000),
+                readerOf(1500, 3500)
+        ), 2)) {
+            assertThat(timeStamps(reader)).containsExactly(1000L, 1500L, 2000L, 3000L, 3500L, 4000L);
+            assertThat(reader.getOutOfOrderSampleCount()).isZero();
+        }
+    }
+
+    @Test
+    public void samplesOutOfOrderBeyondTheReorderBufferAreCounted() throws Exception {
+        try (MergingSampleReader reader = new MergingSampleReader(Arrays.asList(
+                readerOf(1000, 3000, 4000, 2000)
+        ), 1)) {
+            assertThat(timeStamps(reader)).containsExactly(1000L, 3000L, 4000L, 2000L);
+            assertThat(reader.getOutOfOrderSampleCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void filesInDifferentFormatsCanBeMerged() throws Exception {
+        try (MergingSampleReader reader = new MergingSampleReader(Arrays.asList(
+                new XmlSampleReader(new File(jtlTimingsFileURL.toURI())),
+                new CsvSampleReader(new File(csvTimingsFileURL.toURI()))
+        ), 10)) {
+            List<Long> timeStamps = timeStamps(reader);
+
+            assertThat(timeStamps).hasSize(6);
+            assertThat(timeStamps).isSorted();
+        }
+    }
+
+    @Test
+    public void everyReaderIsClosed() throws Exception {
+        ListSampleReader first = readerOf(1000);
+        ListSampleReader second = readerOf(2000);
+        new MergingSampleReader(Arrays.asList(first, second), 1).close();
+
+        assertThat(first.closed).isTrue();
+        assertThat(second.closed).isTrue();
+    }
+
+    private static List<Long> timeStamps(SampleReader reader) throws IOException {
+        List<Long> timeStamps = new ArrayList<>();
+        Sample sample;
+        while ((sample = reader.next()) != null) {
+            timeStamps.add(sample.getTimeStamp());
+        }
+
+        return timeStamps;
+    }
+
+    private static ListSampleReader readerOf(long... timeStamps) {
+        List<Sample> samples = new ArrayList<>();
+        for (long timeStamp : timeStamps) {
+            samples.add(new Sample().setTimeStamp(timeStamp));
+        }
+
+        return new ListSampleReader(samples);
+    }
+
+    private static class ListSampleReader implements SampleReader {
+        private final Iterator<Sample> samples;
+        private boolean closed;
+
+        ListSampleReader(List<Sample> samples) {
+            this.samples = samples.iterator();
+        }
+
+        @Override
+        public Sample next() {
+            return samples.hasNext() ? samples.next() : null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResultFileFormatTest {
+
+    private final URL jtlFileURL = this.getClass().getResource("/jtl2-1-pass.jtl");
+    private final URL csvFileURL = this.getClass().getResource("/csv2-1-pass.csv");
+    private final URL emptyCSVFileURL = this.getClass().getResource("/empty.csv");
+
+    @Test
+    public void xmlFileIsDetected() throws Exception {
+        assertThat(ResultFileFormat.detect(new File(jtlFileURL.toURI()), ResultFileFormat.CSV)).isEqualTo(ResultFileFormat.XML);
+    }
+
+    @Test
+    public void csvFileIsDetected() throws Exception {
+        assertThat(ResultFileFormat.detect(new File(csvFileURL.toURI()), ResultFileFormat.XML)).isEqualTo(ResultFileFormat.CSV);
+    }
+
+    @Test
+    public void defaultFormatIsUsedForEmptyFiles() throws Exception {
+        assertThat(ResultFileFormat.detect(new File(emptyCSVFileURL.toURI()), ResultFileFormat.XML)).isEqualTo(ResultFileFormat.XML);
+        assertThat(ResultFileFormat.detect(new File(emptyCSVFileURL.toURI()), ResultFileFormat.CSV)).isEqualTo(ResultFileFormat.CSV);
+    }
+
+    @Test
+    public void defaultFormatIsUsedForFilesThatCannotBeRead() {
+        assertThat(ResultFileFormat.detect(new File("DoesNotExist.nope"), ResultFileFormat.XML)).isEqualTo(ResultFileFormat.XML);
+    }
+
+    @Test
+    public void xmlWithoutPrologAndLeadingWhitespaceIsDetected() {
+        assertThat(ResultFileFormat.detect("\uFEFF\n  <testResults version=\"1.2\">", ResultFileFormat.CSV)).isEqualTo(ResultFileFormat.XML);
+    }
+
+    @Test
+    public void csvWithoutHeaderIsDetected() {
+        assertThat(ResultFileFormat.detect("1548568307205,1330,test-request", ResultFileFormat.XML)).isEqualTo(ResultFileFormat.CSV);
+    }
+}
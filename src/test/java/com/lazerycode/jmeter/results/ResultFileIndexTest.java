@@ -0,0 +1,94 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResultFileIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File resultFile;
+
+    @Before
+    public void writeResultFile() throws IOException {
+        resultFile = temporaryFolder.newFile("results.csv");
+        try (CsvSampleWriter writer = new CsvSampleWriter(resultFile)) {
+            for (int i = 0; i < 100; i++) {
+                writer.write(new Sample()
+                        .setTimeStamp(1000L * i)
+                        .setElapsed(10)
+                        .setLabel(i < 50 ? "login" : "search, \"quoted\"\nlabel")
+                        .setSuccess(i != 75));
+            }
+        }
+    }
+
+    @Test
+    public void samplesAreSplitIntoBlocks() throws Exception {
+        ResultFileIndex index = ResultFileIndex.build(resultFile, 10);
+
+        assertThat(index.getBlocks()).hasSize(10);
+        assertThat(index.getLabels()).containsExactly("login", "search, \"quoted\"\nlabel");
+        assertThat(index.getBlocks().get(3).getMinimumTimeStamp()).isEqualTo(30000);
+        assertThat(index.getBlocks().get(3).getMaximumTimeStamp()).isEqualTo(39000);
+        assertThat(index.getBlocks().get(3).getSampleCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void blocksStartAtTheirFirstRecord() throws Exception {
+        ResultFileIndex index = ResultFileIndex.build(resultFile, 10);
+        for (ResultFileIndex.Block block : index.getBlocks()) {
+            try (CsvSampleReader reader = new CsvSampleReader(resultFile, block.getOffset())) {
+                assertThat(reader.next().getTimeStamp()).isEqualTo(block.getMinimumTimeStamp());
+            }
+        }
+    }
+
+    @Test
+    public void onlyBlocksThatCanMatchAreFound() throws Exception {
+        ResultFileIndex index = ResultFileIndex.build(resultFile, 10);
+
+        assertThat(index.findBlocks(25000, 44000, null, null)).hasSize(3);
+        assertThat(index.findBlocks(0, Long.MAX_VALUE, Pattern.compile("search.*", Pattern.DOTALL), null)).hasSize(5);
+        assertThat(index.findBlocks(0, Long.MAX_VALUE, null, false)).hasSize(1);
+        assertThat(index.findBlocks(0, 20000, Pattern.compile("search.*", Pattern.DOTALL), null)).isEmpty();
+        assertThat(index.findBlocks(0, Long.MAX_VALUE, Pattern.compile("checkout"), null)).isEmpty();
+    }
+
+    @Test
+    public void savedIndexCanBeLoaded() throws Exception {
+        ResultFileIndex.build(resultFile, 10).save(resultFile);
+        ResultFileIndex index = ResultFileIndex.load(resultFile);
+
+        assertThat(ResultFileIndex.indexFileFor(resultFile)).exists();
+        assertThat(index).isNotNull();
+        assertThat(index.getLabels()).containsExactly("login", "search, \"quoted\"\nlabel");
+        List<ResultFileIndex.Block> blocks = index.findBlocks(25000, 44000, Pattern.compile("login"), true);
+        assertThat(blocks).hasSize(3);
+        assertThat(blocks.get(0).getOffset()).isEqualTo(ResultFileIndex.build(resultFile, 10).getBlocks().get(2).getOffset());
+    }
+
+    @Test
+    public void indexIsIgnoredWhenResultFileHasChanged() throws Exception {
+        ResultFileIndex.build(resultFile, 10).save(resultFile);
+        try (CsvSampleWriter writer = new CsvSampleWriter(resultFile)) {
+            writer.write(new Sample().setTimeStamp(0).setLabel("login"));
+        }
+
+        assertThat(ResultFileIndex.load(resultFile)).isNull();
+    }
+
+    @Test
+    public void missingIndexIsNotLoaded() {
+        assertThat(ResultFileIndex.load(resultFile)).isNull();
+    }
+}
@@ -0,0 +1,111 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResultFileQueryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File resultFile;
+    private File outputFile;
+
+    @Before
+    public void writeResultFile() throws IOException {
+        resultFile = temporaryFolder.newFile("results.csv");
+        outputFile = new File(temporaryFolder.getRoot(), "query-results.csv");
+        try (CsvSampleWriter writer = new CsvSampleWriter(resultFile)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write(new Sample()
+                        .setTimeStamp(1000L * i)
+                        .setElapsed(10)
+                        .setLabel(i % 2 == 0 ? "login" : "search")
+                        .setSuccess(i % 100 != 1));
+            }
+        }
+    }
+
+    @Test
+    public void onlyMatchingSamplesAreWritten() throws Exception {
+        ResultFileQuery query = new ResultFileQuery()
+                .setFrom(120000)
+                .setTo(180000)
+                .setLabelPattern(Pattern.compile("search"))
+                .setSamplesPerBlock(50);
+        try (CsvSampleWriter writer = new CsvSampleWriter(outputFile)) {
+            assertThat(query.run(resultFile, writer)).isEqualTo(30);
+        }
+
+        List<Sample> samples = readSamples(outputFile);
+        assertThat(samples).hasSize(30);
+        assertThat(samples.get(0).getTimeStamp()).isEqualTo(121000);
+        assertThat(samples).allMatch(sample -> sample.getLabel().equals("search"));
+        assertThat(query.getBlocksRead()).isEqualTo(2);
+    }
+
+    @Test
+    public void indexIsBuiltAndSavedWhenMissing() throws Exception {
+        ResultFileQuery query = new ResultFileQuery().setSuccess(false).setSamplesPerBlock(50);
+        try (CsvSampleWriter writer = new CsvSampleWriter(outputFile)) {
+            assertThat(query.run(resultFile, writer)).isEqualTo(10);
+        }
+
+        assertThat(ResultFileIndex.load(resultFile)).isNotNull();
+        assertThat(query.getBlocksRead()).isEqualTo(10);
+    }
+
+    @Test
+    public void noBlocksAreReadWhenNothingCanMatch() throws Exception {
+        ResultFileQuery query = new ResultFileQuery().setFrom(2000000);
+        try (CsvSampleWriter writer = new CsvSampleWriter(outputFile)) {
+            assertThat(query.run(resultFile, writer)).isZero();
+        }
+
+        assertThat(query.getBlocksRead()).isZero();
+    }
+
+    @Test
+    public void matchingRecordsAreCopiedWithEveryColumn() throws Exception {
+        String header = "timeStamp,elapsed,label,responseCode,responseMessage,threadName,success,failureMessage,URL";
+        File jmeterResultFile = temporaryFolder.newFile("jmeter-results.csv");
+        Files.write(jmeterResultFile.toPath(), Arrays.asList(
+                header,
+                "1000,10,login,200,OK,group 1-1,true,,http://example.com/login",
+                "2000,20,search,500,\"Internal, Error\",group 1-1,false,\"Test failed: \"\"text\"\" expected\",http://example.com/search"
+        ), StandardCharsets.UTF_8);
+
+        try (CsvSampleWriter writer = new CsvSampleWriter(outputFile, CsvSampleReader.readHeader(jmeterResultFile))) {
+            assertThat(new ResultFileQuery().setSuccess(false).run(jmeterResultFile, writer)).isEqualTo(1);
+        }
+
+        assertThat(Files.readAllLines(outputFile.toPath(), StandardCharsets.UTF_8)).containsExactly(
+                header,
+                "2000,20,search,500,\"Internal, Error\",group 1-1,false,\"Test failed: \"\"text\"\" expected\",http://example.com/search"
+        );
+    }
+
+    private static List<Sample> readSamples(File file) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        try (CsvSampleReader reader = new CsvSampleReader(file)) {
+            Sample sample;
+            while ((sample = reader.next()) != null) {
+                samples.add(sample);
+            }
+        }
+
+        return samples;
+    }
+}
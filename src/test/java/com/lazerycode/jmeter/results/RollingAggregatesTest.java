@@ -0,0 +1,56 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RollingAggregatesTest {
+
+    private static final String HEADER = "timeStamp,elapsed,label,responseCode,threadName,success\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void segmentsAreAggregatedIntoRunTotals() throws Exception {
+        File summaryFile = new File(temporaryFolder.getRoot(), "summary/soak-summary.csv");
+        RollingAggregates aggregates = new RollingAggregates(summaryFile);
+
+        List<String> firstSummary = aggregates.addSegment(segment("one.csv",
+                "1000,100,login,200,t1,true\n" +
+                        "2000,300,login,500,t1,false\n" +
+                        "3000,50,search,200,t1,true\n"));
+        aggregates.addSegment(segment("two.csv", "4000,200,login,200,t1,true\n"));
+
+        assertThat(firstSummary).hasSize(2);
+        assertThat(firstSummary.get(0)).startsWith("Segment 1 (one.csv): 3 samples, 1 failures");
+        assertThat(aggregates.getSegmentCount()).isEqualTo(2);
+        assertThat(aggregates.getSampleCount()).isEqualTo(4);
+        assertThat(aggregates.getFailureCount()).isEqualTo(1);
+        assertThat(aggregates.getSummary()).anySatisfy(line -> assertThat(line).startsWith("login").contains("3 samples, 1 failures"));
+
+        List<String> summaryRows = Files.readAllLines(summaryFile.toPath(), StandardCharsets.UTF_8);
+        assertThat(summaryRows).containsExactly(
+                "segment,label,samples,failures,meanElapsed,p50Elapsed,p90Elapsed,p99Elapsed,maxElapsed",
+                "1,\"login\",2,1,200.0,100,300,300,300",
+                "1,\"search\",1,0,50.0,50,50,50,50",
+                "1,\"TOTAL\",3,1,150.0,100,300,300,300",
+                "2,\"login\",1,0,200.0,200,200,200,200",
+                "2,\"TOTAL\",1,0,200.0,200,200,200,200"
+        );
+    }
+
+    private File segment(String name, String rows) throws Exception {
+        File segment = temporaryFolder.newFile(name);
+        Files.write(segment.toPath(), (HEADER + rows).getBytes(StandardCharsets.UTF_8));
+
+        return segment;
+    }
+}
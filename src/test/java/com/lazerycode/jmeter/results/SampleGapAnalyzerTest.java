@@ -0,0 +1,96 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SampleGapAnalyzerTest {
+
+    private static final long START = 1548568307000L;
+
+    /**
+     * Start 10 samples per second between two offsets (in seconds).
+     */
+    private static void steadyLoad(SampleGapAnalyzer analyzer, int fromSecond, int toSecond) {
+        for (long time = START + fromSecond * 1000L; time < START + toSecond * 1000L; time += 100) {
+            analyzer.sampleOccurred(new Sample().setLabel("login").setTimeStamp(time).setElapsed(50));
+        }
+    }
+
+    @Test
+    public void gapsWithoutSamplesAreReported() {
+        SampleGapAnalyzer analyzer = new SampleGapAnalyzer(2000, 0, false);
+        steadyLoad(analyzer, 0, 5);
+        steadyLoad(analyzer, 8, 12);
+        steadyLoad(analyzer, 13, 14);
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getStallCount()).isEqualTo(1);
+        SampleGapAnalyzer.Stall stall = analyzer.getStalls().get(0);
+        assertThat(stall.getStart()).isEqualTo(START + 5000);
+        assertThat(stall.getDurationInMilliseconds()).isEqualTo(3000);
+        assertThat(stall.getReason()).isEqualTo("no samples started");
+        assertThat(analyzer.getWarnings()).hasSize(1);
+        assertThat(analyzer.getWarnings().get(0)).startsWith("Invalid load generation: the load generator stalled 1 times");
+        assertThat(analyzer.getFailures()).isEmpty();
+    }
+
+    @Test
+    public void dropsInTheStartRateAreReported() {
+        SampleGapAnalyzer analyzer = new SampleGapAnalyzer(0, 0.5f, true);
+        steadyLoad(analyzer, 0, 30);
+        for (int second = 30; second < 33; second++) {
+            analyzer.sampleOccurred(new Sample().setLabel("login").setTimeStamp(START + second * 1000L).setElapsed(50));
+        }
+        steadyLoad(analyzer, 33, 40);
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getStallCount()).isEqualTo(1);
+        assertThat(analyzer.getStalls().get(0).getStart()).isEqualTo(START + 30000);
+        assertThat(analyzer.getStalls().get(0).getDurationInMilliseconds()).isEqualTo(3000);
+        assertThat(analyzer.getStalls().get(0).getReason()).isEqualTo("start rate fell to 1/s from an average of 10.0/s");
+        assertThat(analyzer.getFailures()).hasSize(1);
+    }
+
+    @Test
+    public void overlappingStallsAreMergedAndRampDownIsIgnored() {
+        SampleGapAnalyzer analyzer = new SampleGapAnalyzer(2000, 0.5f, false);
+        steadyLoad(analyzer, 0, 20);
+        steadyLoad(analyzer, 24, 30);
+        analyzer.sampleOccurred(new Sample().setLabel("login").setTimeStamp(START + 31000).setElapsed(50));
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getStallCount()).isEqualTo(1);
+        assertThat(analyzer.getStalls().get(0).getStart()).isEqualTo(START + 20000);
+        assertThat(analyzer.getStalls().get(0).getDurationInMilliseconds()).isEqualTo(4000);
+        assertThat(analyzer.getStalls().get(0).getReason()).contains("no samples started").contains("start rate fell to 0/s");
+    }
+
+    @Test
+    public void theTimeBetweenResultsFilesIsNotAStall() {
+        SampleGapAnalyzer analyzer = new SampleGapAnalyzer(2000, 0.5f, false);
+        steadyLoad(analyzer, 0, 20);
+        analyzer.fileCompleted();
+        steadyLoad(analyzer, 35, 55);
+        analyzer.fileCompleted();
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getStallCount()).isZero();
+        assertThat(analyzer.getWarnings()).isEmpty();
+    }
+
+    @Test
+    public void resultsFilesThatOverlapAreAnalysedInFull() {
+        SampleGapAnalyzer analyzer = new SampleGapAnalyzer(2000, 0.5f, false);
+        steadyLoad(analyzer, 100, 200);
+        analyzer.fileCompleted();
+        steadyLoad(analyzer, 0, 20);
+        steadyLoad(analyzer, 24, 30);
+        analyzer.fileCompleted();
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getLateSampleCount()).isZero();
+        assertThat(analyzer.getStallCount()).isEqualTo(1);
+        assertThat(analyzer.getStalls().get(0).getStart()).isEqualTo(START + 20000);
+    }
+}
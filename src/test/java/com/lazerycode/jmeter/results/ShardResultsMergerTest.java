@@ -0,0 +1,72 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardResultsMergerTest {
+
+    private static final String HEADER = "timeStamp,elapsed,label,responseCode,responseMessage,threadName,dataType,success,failureMessage,bytes,sentBytes,grpThreads,allThreads,URL,Latency,IdleTime,Connect";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void mergedResultsKeepEveryColumnAndSumTheActiveThreads() throws Exception {
+        File firstShard = temporaryFolder.newFile("test-shard-0.csv");
+        File secondShard = temporaryFolder.newFile("test-shard-1.csv");
+        Files.write(firstShard.toPath(), Arrays.asList(HEADER,
+                "1000,10,login,200,OK,Users 1-1,text,true,,100,10,2,2,http://host/login,5,0,1",
+                "3000,10,login,200,OK,Users 1-2,text,true,,100,10,2,2,http://host/login,5,0,1"));
+        Files.write(secondShard.toPath(), Arrays.asList(HEADER,
+                "2000,12,\"search, all\",500,\"Internal \"\"Server\"\" Error\",Users 1-1,text,false,Bad status,50,10,1,1,http://host/search?q=a,6,0,2"));
+        File merged = new File(temporaryFolder.getRoot(), "test-shards.csv");
+
+        long recordCount = new ShardResultsMerger(10).merge(Arrays.asList(firstShard, secondShard), merged);
+
+        assertThat(recordCount).isEqualTo(3);
+        assertThat(Files.readAllLines(merged.toPath())).containsExactly(HEADER,
+                "1000,10,login,200,OK,Users 1-1,text,true,,100,10,2,2,http://host/login,5,0,1",
+                "2000,12,\"search, all\",500,\"Internal \"\"Server\"\" Error\",Users 1-1,text,false,Bad status,50,10,3,3,http://host/search?q=a,6,0,2",
+                "3000,10,login,200,OK,Users 1-2,text,true,,100,10,3,3,http://host/login,5,0,1");
+    }
+
+    @Test
+    public void activeThreadsAreSummedPerThreadGroup() throws Exception {
+        File firstShard = temporaryFolder.newFile("test-shard-0.csv");
+        File secondShard = temporaryFolder.newFile("test-shard-1.csv");
+        Files.write(firstShard.toPath(), Arrays.asList("timeStamp,threadName,grpThreads,allThreads",
+                "1000,Users 1-1,4,5",
+                "3000,Admins 2-1,1,5"));
+        Files.write(secondShard.toPath(), Arrays.asList("timeStamp,threadName,grpThreads,allThreads",
+                "2000,Users 1-1,3,4"));
+        File merged = new File(temporaryFolder.getRoot(), "test-shards.csv");
+
+        new ShardResultsMerger(10).merge(Arrays.asList(firstShard, secondShard), merged);
+
+        assertThat(Files.readAllLines(merged.toPath())).containsExactly("timeStamp,threadName,grpThreads,allThreads",
+                "1000,Users 1-1,4,5",
+                "2000,Users 1-1,7,9",
+                "3000,Admins 2-1,1,9");
+    }
+
+    @Test
+    public void shardsWithDifferentColumnsAreNotMerged() throws Exception {
+        File firstShard = temporaryFolder.newFile("test-shard-0.csv");
+        File secondShard = temporaryFolder.newFile("test-shard-1.csv");
+        Files.write(firstShard.toPath(), Arrays.asList("timeStamp,elapsed,label", "1000,10,login"));
+        Files.write(secondShard.toPath(), Arrays.asList("timeStamp,label", "2000,login"));
+
+        assertThatThrownBy(() -> new ShardResultsMerger(10).merge(Arrays.asList(firstShard, secondShard), new File(temporaryFolder.getRoot(), "test-shards.csv")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("does not have the columns of");
+    }
+}
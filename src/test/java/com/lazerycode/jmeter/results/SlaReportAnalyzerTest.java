@@ -0,0 +1,69 @@
+package com.lazerycode.jmeter.results;
+
+import com.lazerycode.jmeter.configuration.ServiceLevelAgreement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlaReportAnalyzerTest {
+
+    private static final long START = 1548568307000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Sample sample(String label, long timeStamp, long elapsed, boolean success) {
+        return new Sample().setLabel(label).setTimeStamp(timeStamp).setElapsed(elapsed).setSuccess(success);
+    }
+
+    @Test
+    public void eachLabelAndThresholdIsATestCase() throws Exception {
+        File reportFile = new File(temporaryFolder.getRoot(), "analysis/TEST-jmeter-sla.xml");
+        SlaReportAnalyzer analyzer = new SlaReportAnalyzer(Arrays.asList(
+                new ServiceLevelAgreement().setLabel("log.*").setMaxErrorRateInPercent(10f).setMaxP95ElapsedInMilliseconds(150L).setMinThroughputPerSecond(5f),
+                new ServiceLevelAgreement().setMaxErrorRateInPercent(0f)
+        ), reportFile, false);
+        for (int i = 0; i < 10; i++) {
+            analyzer.sampleOccurred(sample("login", START + i * 100, i == 9 ? 400 : 100, i != 0));
+        }
+        analyzer.sampleOccurred(sample("search & find", START, 50, true));
+        analyzer.scanCompleted();
+
+        List<SlaReportAnalyzer.TestCase> testCases = analyzer.getTestCases();
+        assertThat(testCases).extracting(SlaReportAnalyzer.TestCase::getThreshold)
+                .containsExactly(SlaReportAnalyzer.ERROR_RATE, SlaReportAnalyzer.P95_ELAPSED, SlaReportAnalyzer.THROUGHPUT, SlaReportAnalyzer.ERROR_RATE);
+        assertThat(testCases).extracting(SlaReportAnalyzer.TestCase::isBreached).containsExactly(false, true, false, false);
+        assertThat(testCases.get(1).getMessage()).isEqualTo("measured 400ms, allowed at most 150ms");
+        assertThat(testCases.get(2).getMessage()).isEqualTo("measured 7.69/s, required at least 5.00/s");
+        assertThat(analyzer.getWarnings()).containsExactly("'login' breached its p95 elapsed agreement: measured 400ms, allowed at most 150ms");
+        assertThat(analyzer.getFailures()).isEmpty();
+
+        String report = new String(Files.readAllBytes(reportFile.toPath()), StandardCharsets.UTF_8);
+        assertThat(report).contains("<testsuite name=\"JMeter service level agreements\" tests=\"4\" failures=\"1\"");
+        assertThat(report).contains("<testcase classname=\"login\" name=\"p95 elapsed\" time=\"0\">");
+        assertThat(report).contains("<failure type=\"ServiceLevelAgreementBreach\" message=\"measured 400ms, allowed at most 150ms\"");
+        assertThat(report).contains("classname=\"search &amp; find\"");
+    }
+
+    @Test
+    public void breachesCanFailTheBuild() throws Exception {
+        SlaReportAnalyzer analyzer = new SlaReportAnalyzer(Arrays.asList(
+                new ServiceLevelAgreement().setLabel("login").setMaxErrorRateInPercent(0f)
+        ), temporaryFolder.newFile("TEST-jmeter-sla.xml"), true);
+        analyzer.sampleOccurred(sample("login", START, 100, false));
+        analyzer.sampleOccurred(sample("search", START, 100, false));
+        analyzer.scanCompleted();
+
+        assertThat(analyzer.getTestCases()).hasSize(1);
+        assertThat(analyzer.getFailures()).containsExactly("'login' breached its error rate agreement: measured 100.00%, allowed at most 0.00%");
+        assertThat(analyzer.getWarnings()).isEmpty();
+    }
+}
@@ -0,0 +1,79 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimeSeriesBucketsTest {
+
+    private final List<long[]> completed = new ArrayList<>();
+
+    private TimeSeriesBuckets buckets(boolean fillGaps) {
+        return new TimeSeriesBuckets(1000, 2000, 1, fillGaps, (start, values) -> completed.add(new long[]{start, values[0]}));
+    }
+
+    @Test
+    public void bucketsAreCompletedOnceTheyFallOutsideTheReorderWindow() {
+        TimeSeriesBuckets buckets = buckets(false);
+        buckets.add(1000, 1);
+        buckets.add(1500, 1);
+        buckets.add(3000, 1);
+
+        assertThat(completed).isEmpty();
+
+        buckets.add(4000, 1);
+
+        assertThat(completed).hasSize(1);
+        assertThat(completed.get(0)).containsExactly(1000, 2);
+    }
+
+    @Test
+    public void outOfOrderValuesWithinTheReorderWindowAreCounted() {
+        TimeSeriesBuckets buckets = buckets(false);
+        buckets.add(2000, 1);
+        buckets.add(1000, 1);
+        buckets.flush();
+
+        assertThat(completed).hasSize(2);
+        assertThat(completed.get(0)).containsExactly(1000, 1);
+        assertThat(completed.get(1)).containsExactly(2000, 1);
+    }
+
+    @Test
+    public void valuesArrivingAfterTheirBucketWasCompletedAreIgnored() {
+        TimeSeriesBuckets buckets = buckets(false);
+        buckets.add(1000, 1);
+        buckets.add(5000, 1);
+
+        assertThat(buckets.add(1000, 1)).isFalse();
+        assertThat(buckets.getLateValueCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void gapsAreFilledWithEmptyBuckets() {
+        TimeSeriesBuckets buckets = buckets(true);
+        buckets.add(1000, 1);
+        buckets.add(4000, 3);
+        buckets.flush();
+
+        assertThat(completed).hasSize(4);
+        assertThat(completed.get(1)).containsExactly(2000, 0);
+        assertThat(completed.get(2)).containsExactly(3000, 0);
+        assertThat(completed.get(3)).containsExactly(4000, 3);
+    }
+
+    @Test
+    public void onlyAReorderWindowOfEmptyBucketsIsFilledInForALongGap() {
+        TimeSeriesBuckets buckets = buckets(true);
+        buckets.add(1000, 1);
+        buckets.add(3600000, 2);
+        buckets.add(3601000, 3);
+        buckets.flush();
+
+        assertThat(completed).extracting(bucket -> bucket[0]).containsExactly(1000L, 2000L, 3000L, 3600000L, 3601000L);
+        assertThat(completed.get(3)).containsExactly(3600000, 2);
+    }
+}
@@ -0,0 +1,68 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingBreakdownAnalyzerTest {
+
+    private static Sample sample(String label, long elapsed, long latency, long connect) {
+        return new Sample().setLabel(label).setElapsed(elapsed).setLatency(latency).setConnect(connect);
+    }
+
+    @Test
+    public void elapsedTimeIsSplitIntoConnectServerAndDownloadTime() {
+        TimingBreakdownAnalyzer analyzer = new TimingBreakdownAnalyzer(90);
+        analyzer.sampleOccurred(sample("login", 100, 60, 20));
+        analyzer.sampleOccurred(sample("login", 50, 30, 0));
+        TimingBreakdownAnalyzer.TimingBreakdown breakdown = analyzer.getBreakdown("login");
+
+        assertThat(breakdown.getSampleCount()).isEqualTo(2);
+        assertThat(breakdown.getAverageElapsed()).isEqualTo(75);
+        assertThat(breakdown.getAverageConnect()).isEqualTo(10);
+        assertThat(breakdown.getAverageServer()).isEqualTo(35);
+        assertThat(breakdown.getAverageDownload()).isEqualTo(30);
+        assertThat(breakdown.getNewConnectionPercentage()).isEqualTo(50);
+    }
+
+    @Test
+    public void samplesWithoutTimingInformationAreIgnored() {
+        TimingBreakdownAnalyzer analyzer = new TimingBreakdownAnalyzer(90);
+        analyzer.sampleOccurred(new Sample().setLabel("login").setElapsed(100));
+
+        assertThat(analyzer.getBreakdown("login")).isNull();
+        assertThat(analyzer.getTotal().getSampleCount()).isEqualTo(0);
+        assertThat(analyzer.getSummary()).hasSize(1);
+    }
+
+    @Test
+    public void totalsAreAggregatedAcrossLabels() {
+        TimingBreakdownAnalyzer analyzer = new TimingBreakdownAnalyzer(90);
+        analyzer.sampleOccurred(sample("login", 100, 60, 20));
+        analyzer.sampleOccurred(sample("search", 50, 30, 0));
+
+        assertThat(analyzer.getTotal().getSampleCount()).isEqualTo(2);
+        assertThat(analyzer.getSummary()).hasSize(4);
+        assertThat(analyzer.getSummary().get(3)).startsWith(TimingBreakdownAnalyzer.TOTAL_LABEL);
+    }
+
+    @Test
+    public void warningIsGeneratedWhenEverySampleOpensANewConnection() {
+        TimingBreakdownAnalyzer analyzer = new TimingBreakdownAnalyzer(90);
+        for (int i = 0; i < 10; i++) {
+            analyzer.sampleOccurred(sample("login", 100, 60, 20));
+            analyzer.sampleOccurred(sample("search", 50, 30, 0));
+        }
+
+        assertThat(analyzer.getWarnings()).hasSize(1);
+        assertThat(analyzer.getWarnings().get(0)).startsWith("'login' opened a new connection for 100.0% of samples");
+    }
+
+    @Test
+    public void noWarningIsGeneratedForASmallNumberOfSamples() {
+        TimingBreakdownAnalyzer analyzer = new TimingBreakdownAnalyzer(90);
+        analyzer.sampleOccurred(sample("login", 100, 60, 20));
+
+        assertThat(analyzer.getWarnings()).isEmpty();
+    }
+}
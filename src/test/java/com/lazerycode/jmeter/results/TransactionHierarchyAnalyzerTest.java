@@ -0,0 +1,91 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class TransactionHierarchyAnalyzerTest {
+
+    private static Sample sample(String label, String threadName, long timeStamp, long elapsed) {
+        return new Sample().setLabel(label).setThreadName(threadName).setTimeStamp(timeStamp).setElapsed(elapsed);
+    }
+
+    @Test
+    public void nestedSamplesAreAggregatedByParent() {
+        TransactionHierarchyAnalyzer analyzer = new TransactionHierarchyAnalyzer();
+        analyzer.sampleOccurred(sample("home page", "t1", 1000, 400)
+                .addSubResult(sample("/index.html", "t1", 1000, 100))
+                .addSubResult(sample("/app.js", "t1", 1100, 300)
+                        .addSubResult(sample("/app.js redirect", "t1", 1100, 50))));
+        analyzer.sampleOccurred(sample("login", "t1", 2000, 50));
+
+        TransactionHierarchyAnalyzer.ParentAggregate homePage = analyzer.getParent("home page");
+        assertThat(homePage.getSampleCount()).isEqualTo(1);
+        assertThat(homePage.getShareInPercent("/app.js")).isCloseTo(75, within(0.01));
+        assertThat(homePage.getChild("/app.js redirect")).isNull();
+        assertThat(analyzer.getParent("/app.js").getChild("/app.js redirect").getSampleCount()).isEqualTo(1);
+        assertThat(analyzer.getParent("login")).isNull();
+    }
+
+    @Test
+    public void childrenWrittenBeforeTheirParentAreRebuiltPerThread() {
+        TransactionHierarchyAnalyzer analyzer = new TransactionHierarchyAnalyzer();
+        for (int i = 0; i < 10; i++) {
+            long start = i * 1000;
+            analyzer.sampleOccurred(sample("search", "t1", start, 200));
+            analyzer.sampleOccurred(sample("search", "t2", start + 10, 900));
+            analyzer.sampleOccurred(sample("results", "t1", start + 200, 600));
+            analyzer.sampleOccurred(sample("search transaction", "t1", start, 800));
+        }
+
+        TransactionHierarchyAnalyzer.ParentAggregate transaction = analyzer.getParent("search transaction");
+        assertThat(transaction.getSampleCount()).isEqualTo(10);
+        assertThat(transaction.getAverageElapsed()).isEqualTo(800);
+        assertThat(transaction.getChild("search").getSampleCount()).isEqualTo(10);
+        assertThat(transaction.getShareInPercent("results")).isCloseTo(75, within(0.01));
+        assertThat(analyzer.getParent("search")).isNull();
+    }
+
+    @Test
+    public void childrenWrittenAfterTheirParentAreAttributedToTheInnermostParent() {
+        TransactionHierarchyAnalyzer analyzer = new TransactionHierarchyAnalyzer();
+        analyzer.sampleOccurred(sample("checkout", "t1", 0, 1000));
+        analyzer.sampleOccurred(sample("payment", "t1", 0, 600));
+        analyzer.sampleOccurred(sample("card check", "t1", 100, 300));
+        analyzer.sampleOccurred(sample("confirmation", "t1", 600, 400));
+
+        assertThat(analyzer.getParent("checkout").getChild("payment").getSampleCount()).isEqualTo(1);
+        assertThat(analyzer.getParent("checkout").getChild("confirmation").getSampleCount()).isEqualTo(1);
+        assertThat(analyzer.getParent("checkout").getChild("card check")).isNull();
+        assertThat(analyzer.getParent("payment").getChild("card check").getSampleCount()).isEqualTo(1);
+        assertThat(analyzer.getSummary()).contains(
+                "checkout                                          1                  1000.0ms",
+                "  payment                                         1         1.00      600.0ms          60.0%");
+    }
+
+    @Test
+    public void grandchildrenAreOnlyCountedInTheirParent() {
+        TransactionHierarchyAnalyzer analyzer = new TransactionHierarchyAnalyzer();
+        analyzer.sampleOccurred(sample("page", "t1", 0, 1000));
+        analyzer.sampleOccurred(sample("page-0", "t1", 0, 300));
+        analyzer.sampleOccurred(sample("page-1", "t1", 300, 500));
+        analyzer.sampleOccurred(sample("transaction", "t1", 0, 1066));
+
+        TransactionHierarchyAnalyzer.ParentAggregate transaction = analyzer.getParent("transaction");
+        assertThat(transaction.getShareInPercent("page")).isCloseTo(93.8, within(0.1));
+        assertThat(transaction.getChild("page-0")).isNull();
+        assertThat(transaction.getChild("page-1")).isNull();
+        assertThat(analyzer.getParent("page").getShareInPercent("page-0")).isCloseTo(30, within(0.01));
+        assertThat(analyzer.getParent("page").getShareInPercent("page-1")).isCloseTo(50, within(0.01));
+    }
+
+    @Test
+    public void nothingToBreakDownWithoutChildren() {
+        TransactionHierarchyAnalyzer analyzer = new TransactionHierarchyAnalyzer();
+        analyzer.sampleOccurred(sample("login", "t1", 0, 100));
+        analyzer.sampleOccurred(sample("logout", "t1", 100, 100));
+
+        assertThat(analyzer.getSummary()).containsExactly("No samples with child samples found, nothing to break down");
+    }
+}
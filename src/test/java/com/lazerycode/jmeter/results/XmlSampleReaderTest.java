@@ -0,0 +1,100 @@
+package com.lazerycode.jmeter.results;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class XmlSampleReaderTest {
+
+    private final URL jtlTimingsFileURL = this.getClass().getResource("/jtl-timings.jtl");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void samplesAreReadFromXMLFile() throws Exception {
+        try (XmlSampleReader reader = new XmlSampleReader(new File(jtlTimingsFileURL.toURI()))) {
+            Sample first = reader.next();
+
+            assertThat(first.getTimeStamp()).isEqualTo(1548568307205L);
+            assertThat(first.getElapsed()).isEqualTo(100);
+            assertThat(first.getLatency()).isEqualTo(60);
+            assertThat(first.getConnect()).isEqualTo(20);
+            assertThat(first.getBytes()).isEqualTo(1000);
+            assertThat(first.getSentBytes()).isEqualTo(200);
+            assertThat(first.getLabel()).isEqualTo("login");
+            assertThat(first.getThreadName()).isEqualTo("my-test-plan 1-1");
+            assertThat(first.getResponseCode()).isEqualTo("200");
+            assertThat(first.isSuccess()).isTrue();
+        }
+    }
+
+    @Test
+    public void nestedSamplesAreAttachedToTheirParent() throws Exception {
+        try (XmlSampleReader reader = new XmlSampleReader(new File(jtlTimingsFileURL.toURI()))) {
+            Sample first = reader.next();
+
+            assertThat(first.getSubResults()).hasSize(1);
+            assertThat(first.getSubResults().get(0).getLabel()).isEqualTo("/style.css");
+            assertThat(first.getSubResults().get(0).isSuccess()).isFalse();
+            assertThat(reader.next().getLabel()).isEqualTo("search");
+            assertThat(reader.next().isSuccess()).isFalse();
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    public void assertionResultsAreAttachedToTheirSample() throws Exception {
+        try (XmlSampleReader reader = new XmlSampleReader(new File(jtlTimingsFileURL.toURI()))) {
+            Sample first = reader.next();
+            reader.next();
+            Sample last = reader.next();
+
+            assertThat(first.getAssertionResults()).hasSize(1);
+            assertThat(first.getAssertionResults().get(0).getName()).isEqualTo("Response Assertion");
+            assertThat(first.getAssertionResults().get(0).isFailure()).isFalse();
+            assertThat(first.getSubResults().get(0).getAssertionResults()).isEmpty();
+            assertThat(last.getAssertionResults()).hasSize(1);
+            assertThat(last.getAssertionResults().get(0).getName()).isEqualTo("order id present");
+            assertThat(last.getAssertionResults().get(0).isFailure()).isTrue();
+            assertThat(last.getAssertionResults().get(0).getFailureMessage()).isEqualTo("Test failed: text expected to contain /orderId/");
+        }
+    }
+
+    @Test
+    public void samplesBeforeTheEndOfATruncatedFileAreRead() throws Exception {
+        String results = new String(Files.readAllBytes(new File(jtlTimingsFileURL.toURI()).toPath()), StandardCharsets.UTF_8);
+        File truncated = temporaryFolder.newFile("truncated.jtl");
+        Files.write(truncated.toPath(), results.substring(0, results.indexOf("<assertionResult>\n    <name>order id")).getBytes(StandardCharsets.UTF_8));
+
+        try (XmlSampleReader reader = new XmlSampleReader(truncated)) {
+            assertThat(reader.next().getLabel()).isEqualTo("login");
+            assertThat(reader.next().getLabel()).isEqualTo("search");
+            assertThat(reader.next()).isNull();
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    public void aCorruptSampleBeforeTheEndOfTheFileCannotBeRead() throws Exception {
+        String results = new String(Files.readAllBytes(new File(jtlTimingsFileURL.toURI()).toPath()), StandardCharsets.UTF_8);
+        File corrupt = temporaryFolder.newFile("corrupt.jtl");
+        Files.write(corrupt.toPath(), results.replace("lb=\"search\" rc=\"200\"", "lb=\"search rc=\"200\"").getBytes(StandardCharsets.UTF_8));
+
+        try (XmlSampleReader reader = new XmlSampleReader(corrupt)) {
+            assertThat(reader.next().getLabel()).isEqualTo("login");
+            assertThatThrownBy(reader::next)
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("corrupt.jtl at line 11");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClassDataSharingArchiveTest {
+
+    private static final String FAKE_JMETER_JAR = "fake-jmeter.jar";
+    private static final String JAVA_RUNTIME = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File binDirectory;
+    private File libExtDirectory;
+
+    @Before
+    public void createFakeJMeterHome() throws Exception {
+        binDirectory = temporaryFolder.newFolder("jmeter", "bin");
+        libExtDirectory = temporaryFolder.newFolder("jmeter", "lib", "ext");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, FakeJMeterDriver.class.getName());
+        String classFile = FakeJMeterDriver.class.getName().replace('.', '/') + ".class";
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(new File(binDirectory, FAKE_JMETER_JAR)), manifest);
+             InputStream classBytes = getClass().getClassLoader().getResourceAsStream(classFile)) {
+            jar.putNextEntry(new JarEntry(classFile));
+            IOUtils.copy(classBytes, jar);
+            jar.closeEntry();
+        }
+    }
+
+    @Test
+    public void missingArchiveIsNotUsable() {
+        assertThat(new ClassDataSharingArchive(binDirectory).isUsableBy(JAVA_RUNTIME, FAKE_JMETER_JAR)).isFalse();
+    }
+
+    @Test
+    public void archiveIsOnlyUsableByTheRuntimeAndJarItWasCreatedFor() throws Exception {
+        ClassDataSharingArchive archive = new ClassDataSharingArchive(binDirectory);
+        assertThat(archive.getArchiveFile().createNewFile()).isTrue();
+        archive.describe(JAVA_RUNTIME, FAKE_JMETER_JAR);
+
+        assertThat(archive.isUsableBy(JAVA_RUNTIME, FAKE_JMETER_JAR)).isTrue();
+        assertThat(archive.isUsableBy("java", FAKE_JMETER_JAR)).isFalse();
+        assertThat(archive.isUsableBy(JAVA_RUNTIME, JMeterWorker.LAUNCHER_JAR_NAME)).isFalse();
+    }
+
+    @Test
+    public void archiveIsNotUsableOnceTheJarsHaveChanged() throws Exception {
+        ClassDataSharingArchive archive = new ClassDataSharingArchive(binDirectory);
+        assertThat(archive.getArchiveFile().createNewFile()).isTrue();
+        archive.describe(JAVA_RUNTIME, FAKE_JMETER_JAR);
+        String fingerprint = archive.fingerprint(FAKE_JMETER_JAR);
+        assertThat(new File(libExtDirectory, "extension.jar").createNewFile()).isTrue();
+
+        assertThat(archive.fingerprint(FAKE_JMETER_JAR)).isNotEqualTo(fingerprint);
+        assertThat(archive.isUsableBy(JAVA_RUNTIME, FAKE_JMETER_JAR)).isFalse();
+    }
+
+    @Test
+    public void archiveIsCreatedByATrainingLaunchWhenTheRuntimeSupportsIt() throws Exception {
+        ClassDataSharingArchive archive = new ClassDataSharingArchive(binDirectory);
+        boolean created = archive.create(JAVA_RUNTIME, FAKE_JMETER_JAR);
+
+        assertThat(new File(binDirectory, ClassDataSharingArchive.TRAINING_OUTPUT_FILE_NAME)).exists();
+        assertThat(archive.isUsableBy(JAVA_RUNTIME, FAKE_JMETER_JAR)).isEqualTo(created);
+        if (created) {
+            assertThat(archive.getArchiveFile().length()).isGreaterThan(0);
+            assertThat(archive.create(JAVA_RUNTIME, FAKE_JMETER_JAR)).isTrue();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.lazerycode.jmeter.testrunner;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for the JMeter driver in a worker JVM, see JMeterWorkerTest.
+ */
+public class FakeJMeterDriver {
+
+    private static int runs;
+
+    public static void main(String[] args) {
+        runs++;
+        System.out.println("run " + runs + " " + String.join(" ", args));
+        System.out.println("property " + System.getProperty("fake.jmeter.property"));
+        System.setProperty("fake.jmeter.property", "set by a test");
+        if (Arrays.asList(args).contains("exit")) {
+            System.exit(3);
+        }
+        new Thread(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(300);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println("test ended");
+        }).start();
+    }
+}
@@ -0,0 +1,96 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.Assume.assumeTrue;
+
+public class FlightRecordingSummaryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static FlightRecordingSummary parseTestRecording() throws Exception {
+        try (InputStream json = FlightRecordingSummaryTest.class.getResourceAsStream("/flight-recording.json")) {
+            return FlightRecordingSummary.parse(json);
+        }
+    }
+
+    @Test
+    public void gcPausesAreAddedUp() throws Exception {
+        FlightRecordingSummary summary = parseTestRecording();
+
+        assertThat(summary.getGcCount()).isEqualTo(2);
+        assertThat(summary.getTotalGcPauseInMilliseconds()).isCloseTo(50.0, within(0.001));
+        assertThat(summary.getLongestGcPauseInMilliseconds()).isCloseTo(30.0, within(0.001));
+    }
+
+    @Test
+    public void cpuLoadIsAveraged() throws Exception {
+        FlightRecordingSummary summary = parseTestRecording();
+
+        assertThat(summary.getAverageJvmCpuInPercent()).isCloseTo(40.0, within(0.001));
+        assertThat(summary.getPeakJvmCpuInPercent()).isCloseTo(60.0, within(0.001));
+        assertThat(summary.getAverageMachineCpuInPercent()).isCloseTo(50.0, within(0.001));
+    }
+
+    @Test
+    public void methodsAreRankedByTheirTopFrame() throws Exception {
+        FlightRecordingSummary summary = parseTestRecording();
+
+        assertThat(summary.getExecutionSampleCount()).isEqualTo(4);
+        assertThat(summary.getHotMethods()).containsExactly(
+                entry("org.apache.jmeter.protocol.http.sampler.HTTPHC4Impl.sample", 2L),
+                entry("<unknown>", 1L),
+                entry("java.util.regex.Pattern$Curly.match", 1L));
+        assertThat(summary.getTopAllocatingMethods()).containsExactly(
+                entry("org.apache.jmeter.samplers.SampleResult.setResponseData", 3145728L),
+                entry("java.lang.StringBuilder.toString", 1048576L));
+    }
+
+    @Test
+    public void monitorContentionIsAddedUpByMonitorClass() throws Exception {
+        FlightRecordingSummary summary = parseTestRecording();
+
+        assertThat(summary.getContendedMonitorEnterCount()).isEqualTo(2);
+        assertThat(summary.getTotalContentionInMilliseconds()).isCloseTo(40.0, within(0.001));
+        assertThat(summary.getMostContendedMonitorClasses()).containsExactly(entry("org.apache.jmeter.reporters.ResultCollector", 40_000_000L));
+    }
+
+    @Test
+    public void summaryLinesDescribeTheRecording() throws Exception {
+        assertThat(parseTestRecording().getSummary()).contains(
+                "GC: 2 collections, 50.0ms paused in total, longest pause 30.0ms",
+                "CPU: JVM average 40.0%, JVM peak 60.0%, machine average 50.0%",
+                "Hot methods (4 execution samples):",
+                "    50.0%  org.apache.jmeter.protocol.http.sampler.HTTPHC4Impl.sample",
+                "Monitor contention: 2 blocked monitor entries, 40.0ms blocked in total");
+    }
+
+    @Test
+    public void recordingIsReadWithTheJfrToolOfTheRuntime() throws Exception {
+        File javaBinDirectory = new File(System.getProperty("java.home"), "bin");
+        assumeTrue(new File(TestTimeoutWatchdog.jdkTool(javaBinDirectory, "jfr")).isFile());
+        File recording = new File(temporaryFolder.getRoot(), "test.jfr");
+        String javaRuntime = new File(javaBinDirectory, "java").getAbsolutePath();
+        Process process = new ProcessBuilder(javaRuntime, "-XX:StartFlightRecording=dumponexit=true,filename=" + recording.getAbsolutePath() + ",settings=profile",
+                "-cp", System.getProperty("java.class.path"), FakeJMeterDriver.class.getName())
+                .redirectErrorStream(true)
+                .redirectOutput(new File(temporaryFolder.getRoot(), "output.log"))
+                .start();
+        assertThat(process.waitFor(60, TimeUnit.SECONDS)).isTrue();
+
+        FlightRecordingSummary summary = FlightRecordingSummary.read(recording, javaRuntime);
+
+        assertThat(summary.getSummary()).isNotEmpty();
+        assertThat(summary.getAverageJvmCpuInPercent()).isBetween(0.0, 100.0);
+    }
+}
@@ -0,0 +1,136 @@
+package com.lazerycode.jmeter.testrunner;
+
+import com.lazerycode.jmeter.configuration.JMeterProcessJVMSettings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JMeterJVMSizerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File testPlan(String... threadGroups) throws Exception {
+        StringBuilder testPlan = new StringBuilder("<jmeterTestPlan version=\"1.2\" properties=\"5.0\">\n<hashTree>\n<TestPlan testclass=\"TestPlan\" enabled=\"true\"/>\n<hashTree>\n");
+        for (String threadGroup : threadGroups) {
+            testPlan.append(threadGroup).append("\n<hashTree/>\n");
+        }
+        testPlan.append("</hashTree>\n</hashTree>\n</jmeterTestPlan>\n");
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), testPlan.toString().getBytes(StandardCharsets.UTF_8));
+
+        return file;
+    }
+
+    private static String threadGroup(String testClass, String enabled, String property, String threads) {
+        return String.format("<%1$s testclass=\"%1$s\" enabled=\"%2$s\">\n"
+                + "<elementProp name=\"ThreadGroup.main_controller\" elementType=\"LoopController\" testclass=\"LoopController\" enabled=\"true\">\n"
+                + "<stringProp name=\"LoopController.loops\">5</stringProp>\n"
+                + "</elementProp>\n"
+                + "<stringProp name=\"%3$s\">%4$s</stringProp>\n"
+                + "</%1$s>", testClass, enabled, property, threads);
+    }
+
+    private static String threadGroup(String threads) {
+        return threadGroup("ThreadGroup", "true", "ThreadGroup.num_threads", threads);
+    }
+
+    @Test
+    public void threadsOfEnabledThreadGroupsAreAddedUp() throws Exception {
+        File testPlan = testPlan(
+                threadGroup("200"),
+                threadGroup("SetupThreadGroup", "true", "ThreadGroup.num_threads", "${__P(setup.threads,5)}"),
+                threadGroup("ThreadGroup", "false", "ThreadGroup.num_threads", "1000"),
+                threadGroup("com.blazemeter.jmeter.threads.concurrency.ConcurrencyThreadGroup", "true", "TargetLevel", "50"));
+
+        assertThat(JMeterJVMSizer.threadCountOf(testPlan)).isEqualTo(255);
+    }
+
+    @Test
+    public void threadCountsThatCannotBeWorkedOutCountAsUnknown() throws Exception {
+        File testPlan = testPlan(threadGroup("${threads}"));
+
+        assertThat(JMeterJVMSizer.threadCountOf(testPlan)).isEqualTo(JMeterJVMSizer.THREADS_WHEN_UNKNOWN);
+    }
+
+    @Test
+    public void existingTestPlanIsCounted() throws Exception {
+        assertThat(JMeterJVMSizer.threadCountOf(new File(this.getClass().getResource("/tests/test.jmx").toURI()))).isEqualTo(5);
+    }
+
+    @Test
+    public void heapIsSizedForTheTestWithTheMostThreads() throws Exception {
+        JMeterJVMSizer sizer = new JMeterJVMSizer(new JMeterProcessJVMSettings(), 1, 16384, 8, 17);
+        JMeterProcessJVMSettings settings = sizer.settingsFor(Arrays.asList(testPlan(threadGroup("10")), testPlan(threadGroup("500"))));
+
+        assertThat(settings.getXms()).isEqualTo(1280);
+        assertThat(settings.getXmx()).isEqualTo(1280);
+        assertThat(settings.getArguments()).containsExactly("-XX:+UseG1GC", "-XX:MaxGCPauseMillis=100", "-XX:+ParallelRefProcEnabled", "-XX:+AlwaysPreTouch");
+    }
+
+    @Test
+    public void heapIsLimitedToAShareOfTheAvailableMemory() throws Exception {
+        JMeterJVMSizer sizer = new JMeterJVMSizer(new JMeterProcessJVMSettings(), 2, 4096, 8, 17);
+
+        assertThat(sizer.settingsFor(Collections.singletonList(testPlan(threadGroup("2000")))).getXmx()).isEqualTo(1024);
+    }
+
+    @Test
+    public void garbageCollectorDependsOnHeapProcessorsAndJavaVersion() throws Exception {
+        File largeTest = testPlan(threadGroup("5000"));
+
+        assertThat(new JMeterJVMSizer(new JMeterProcessJVMSettings(), 1, 65536, 16, 17).settingsFor(Collections.singletonList(largeTest)).getArguments())
+                .containsExactly("-XX:+UseZGC", "-XX:+AlwaysPreTouch");
+        assertThat(new JMeterJVMSizer(new JMeterProcessJVMSettings(), 1, 65536, 16, 21).settingsFor(Collections.singletonList(largeTest)).getArguments())
+                .containsExactly("-XX:+UseZGC", "-XX:+ZGenerational", "-XX:+AlwaysPreTouch");
+        assertThat(new JMeterJVMSizer(new JMeterProcessJVMSettings(), 1, 65536, 16, 11).settingsFor(Collections.singletonList(largeTest)).getArguments())
+                .contains("-XX:+UseG1GC");
+        assertThat(new JMeterJVMSizer(new JMeterProcessJVMSettings(), 1, 4096, 2, 17).settingsFor(Collections.singletonList(largeTest)).getArguments())
+                .containsExactly("-XX:+UseParallelGC", "-XX:+AlwaysPreTouch");
+    }
+
+    @Test
+    public void configuredSettingsAreCopiedAndTheirGarbageCollectorIsKept() throws Exception {
+        JMeterProcessJVMSettings configuredSettings = new JMeterProcessJVMSettings().setAutoSizing(true).addArgument("-XX:+UseSerialGC");
+        JMeterProcessJVMSettings settings = new JMeterJVMSizer(configuredSettings, 1, 16384, 8, 17).settingsFor(Collections.singletonList(testPlan(threadGroup("10"))));
+
+        assertThat(settings.getArguments()).containsExactly("-XX:+UseSerialGC", "-XX:+AlwaysPreTouch");
+        assertThat(configuredSettings.getArguments()).containsExactly("-XX:+UseSerialGC");
+        assertThat(configuredSettings.getXmx()).isEqualTo(512);
+    }
+
+    @Test
+    public void cgroupMemoryLimitIsUsedWhenItIsLowerThanPhysicalMemory() throws Exception {
+        File cgroupRoot = temporaryFolder.newFolder("cgroup");
+        Files.write(new File(cgroupRoot, "memory.max").toPath(), "1073741824\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(JMeterJVMSizer.availableMemoryInMegaBytes(cgroupRoot)).isLessThanOrEqualTo(1024).isPositive();
+
+        Files.write(new File(cgroupRoot, "memory.max").toPath(), "max\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(JMeterJVMSizer.availableMemoryInMegaBytes(cgroupRoot)).isPositive();
+    }
+
+    @Test
+    public void javaVersionIsParsedFromVersionOutput() {
+        assertThat(JMeterJVMSizer.parseJavaVersion("java version \"1.8.0_292\"\nJava(TM) SE Runtime Environment")).isEqualTo(8);
+        assertThat(JMeterJVMSizer.parseJavaVersion("openjdk version \"17.0.2\" 2022-01-18")).isEqualTo(17);
+        assertThat(JMeterJVMSizer.parseJavaVersion("openjdk version \"21\" 2023-09-19")).isEqualTo(21);
+        assertThat(JMeterJVMSizer.parseJavaVersion("not java")).isEqualTo(-1);
+    }
+
+    @Test
+    public void javaVersionOfTheRunningJVMIsFound() {
+        String javaRuntime = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+
+        assertThat(JMeterJVMSizer.javaVersionOf(javaRuntime)).isGreaterThanOrEqualTo(8);
+    }
+}
@@ -2,7 +2,9 @@ package com.lazerycode.jmeter.testrunner;
 
 import com.lazerycode.jmeter.configuration.JMeterProcessJVMSettings;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -11,6 +13,9 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 public class JMeterProcessBuilderTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void defaultArgumentsListIsAsExpected() {
         JMeterProcessJVMSettings jMeterProcessJVMSettings = new JMeterProcessJVMSettings();
@@ -125,4 +130,32 @@ public class JMeterProcessBuilderTest {
         new JMeterProcessBuilder(jMeterProcessJVMSettings, runtimeJarName)
                 .build();
     }
+
+    @Test
+    public void classDataSharingArchiveIsUsedWhenItMatchesTheRuntimeAndJars() throws Exception {
+        File binDirectory = temporaryFolder.newFolder("bin");
+        ClassDataSharingArchive archive = new ClassDataSharingArchive(binDirectory);
+        assertThat(archive.getArchiveFile().createNewFile()).isTrue();
+        JMeterProcessJVMSettings jMeterProcessJVMSettings = new JMeterProcessJVMSettings();
+        archive.describe(jMeterProcessJVMSettings.getJavaRuntime(), "jmeter");
+
+        assertThat(new JMeterProcessBuilder(jMeterProcessJVMSettings, "jmeter").setWorkingDirectory(binDirectory).constructArgumentsList())
+                .containsSequence("-XX:SharedArchiveFile=" + archive.getArchiveFile().getCanonicalPath(), "-jar", "jmeter");
+        assertThat(new JMeterProcessBuilder(jMeterProcessJVMSettings, "worker.jar").setWorkingDirectory(binDirectory).constructArgumentsList())
+                .noneMatch(argument -> argument.startsWith("-XX:SharedArchiveFile"));
+        assertThat(new JMeterProcessBuilder(new JMeterProcessJVMSettings().addArgument("-Xshare:off"), "jmeter").setWorkingDirectory(binDirectory).constructArgumentsList())
+                .noneMatch(argument -> argument.startsWith("-XX:SharedArchiveFile"));
+    }
+
+    @Test
+    public void flightRecordingIsStartedBeforeTheJar() {
+        File recordingFile = new File(temporaryFolder.getRoot(), "test.jmx.jfr");
+        JMeterProcessBuilder jMeterProcessBuilder = new JMeterProcessBuilder(new JMeterProcessJVMSettings(), "jmeter")
+                .setFlightRecording(recordingFile, "profile");
+
+        assertThat(jMeterProcessBuilder.constructArgumentsList()).containsSequence(
+                "-XX:StartFlightRecording=dumponexit=true,filename=" + recordingFile.getAbsolutePath() + ",settings=profile",
+                "-jar",
+                "jmeter");
+    }
 }
@@ -0,0 +1,90 @@
+package com.lazerycode.jmeter.testrunner;
+
+import com.lazerycode.jmeter.configuration.JMeterProcessJVMSettings;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JMeterWorkerTest {
+
+    private static final String FAKE_JMETER_JAR = "fake-jmeter.jar";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File binDir;
+
+    @Before
+    public void createFakeJMeterJar() throws Exception {
+        binDir = temporaryFolder.newFolder("bin");
+        String classFile = FakeJMeterDriver.class.getName().replace('.', '/') + ".class";
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(new File(binDir, FAKE_JMETER_JAR)));
+             InputStream classBytes = getClass().getClassLoader().getResourceAsStream(classFile)) {
+            jar.putNextEntry(new JarEntry(classFile));
+            IOUtils.copy(classBytes, jar);
+            jar.closeEntry();
+        }
+    }
+
+    private static String output(JMeterWorker.Run run) throws Exception {
+        return IOUtils.toString(run.getOutput(), Charset.defaultCharset());
+    }
+
+    @Test
+    public void testsAreIsolatedAndRunInTheSameJVM() throws Exception {
+        try (JMeterWorker worker = new JMeterWorker(new JMeterProcessJVMSettings(), binDir, FAKE_JMETER_JAR, 10, FakeJMeterDriver.class.getName())) {
+            JMeterWorker.Run first = worker.run(Arrays.asList("-n", "-t", "first.jmx"));
+            Process workerProcess = worker.getProcess();
+
+            assertThat(output(first)).containsSubsequence("run 1 -n -t first.jmx", "property null", "test ended");
+            assertThat(first.waitFor()).isZero();
+
+            JMeterWorker.Run second = worker.run(Arrays.asList("-n", "-t", "second.jmx"));
+
+            assertThat(output(second)).containsSubsequence("run 1 -n -t second.jmx", "property null", "test ended");
+            assertThat(second.waitFor()).isZero();
+            assertThat(worker.getProcess()).isSameAs(workerProcess);
+        }
+        assertThat(new File(binDir, JMeterWorker.LAUNCHER_JAR_NAME)).exists();
+    }
+
+    @Test
+    public void workerIsReplacedWhenATestExitsTheJVM() throws Exception {
+        try (JMeterWorker worker = new JMeterWorker(new JMeterProcessJVMSettings(), binDir, FAKE_JMETER_JAR, 10, FakeJMeterDriver.class.getName())) {
+            JMeterWorker.Run exiting = worker.run(Arrays.asList("-n", "exit"));
+            Process exitedProcess = worker.getProcess();
+
+            assertThat(output(exiting)).contains("run 1 -n exit");
+            assertThat(exiting.waitFor()).isEqualTo(3);
+
+            JMeterWorker.Run next = worker.run(Arrays.asList("-n", "-t", "next.jmx"));
+
+            assertThat(output(next)).contains("run 1 -n -t next.jmx");
+            assertThat(next.waitFor()).isZero();
+            assertThat(worker.getProcess()).isNotSameAs(exitedProcess);
+        }
+    }
+
+    @Test
+    public void workerIsReplacedAfterItsNumberOfTests() throws Exception {
+        try (JMeterWorker worker = new JMeterWorker(new JMeterProcessJVMSettings(), binDir, FAKE_JMETER_JAR, 1, FakeJMeterDriver.class.getName())) {
+            output(worker.run(Arrays.asList("-n", "-t", "first.jmx")));
+            Process firstProcess = worker.getProcess();
+            output(worker.run(Arrays.asList("-n", "-t", "second.jmx")));
+
+            assertThat(worker.getProcess()).isNotSameAs(firstProcess);
+            assertThat(firstProcess.isAlive()).isFalse();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ProcessOutputPumpTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static ByteArrayInputStream output(int lineCount) {
+        StringBuilder output = new StringBuilder();
+        for (int i = 1; i <= lineCount; i++) {
+            output.append("line ").append(i).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        output.append("no line break");
+
+        return new ByteArrayInputStream(output.toString().getBytes(Charset.defaultCharset()));
+    }
+
+    @Test
+    public void allOutputIsWrittenToTheOutputFile() throws Exception {
+        File outputFile = temporaryFolder.newFile("test-output.log");
+        List<String> logged = new CopyOnWriteArrayList<>();
+        new ProcessOutputPump(output(3), outputFile, logged::add, 100, "test-output").start().close();
+
+        assertThat(logged).containsExactly("line 1", "line 2", "line 3", "no line break");
+        assertThat(FileUtils.readFileToString(outputFile, Charset.defaultCharset())).isEqualTo("line 1\nline 2\r\nline 3\nno line break");
+    }
+
+    @Test
+    public void linesOverTheRateAreSuppressed() throws Exception {
+        File outputFile = temporaryFolder.newFile("test-output.log");
+        List<String> logged = new CopyOnWriteArrayList<>();
+        new ProcessOutputPump(output(1000), outputFile, logged::add, 5, "test-output", () -> 0L).start().close();
+
+        assertThat(logged).hasSize(6);
+        assertThat(logged.subList(0, 5)).containsExactly("line 1", "line 2", "line 3", "line 4", "line 5");
+        assertThat(logged.get(5)).isEqualTo("... 996 lines of JMeter output suppressed, see " + outputFile.getAbsolutePath());
+        assertThat(FileUtils.readLines(outputFile, Charset.defaultCharset())).hasSize(1001);
+    }
+
+    @Test
+    public void rateIsLimitedPerSecond() throws Exception {
+        File outputFile = temporaryFolder.newFile("test-output.log");
+        List<String> logged = new CopyOnWriteArrayList<>();
+        long[] now = {0};
+        // Every line read moves the clock on by a quarter of a second
+        new ProcessOutputPump(output(8), outputFile, logged::add, 2, "test-output", () -> now[0] += 250_000_000L).start().close();
+
+        assertThat(logged).containsExactly(
+                "line 1", "line 2", "... 1 lines of JMeter output suppressed, see " + outputFile.getAbsolutePath(),
+                "line 4", "line 5", "... 2 lines of JMeter output suppressed, see " + outputFile.getAbsolutePath(),
+                "line 8", "no line break");
+    }
+
+    @Test
+    public void outputIsStillReadWhenTheOutputFileCannotBeWritten() throws Exception {
+        File outputFile = temporaryFolder.newFolder("test-output.log");
+        List<String> logged = new CopyOnWriteArrayList<>();
+        ByteArrayInputStream source = output(3);
+        ProcessOutputPump pump = new ProcessOutputPump(source, outputFile, logged::add, 100, "test-output").start();
+
+        assertThatThrownBy(pump::close).isInstanceOf(IOException.class);
+        assertThat(source.available()).isZero();
+        assertThat(logged).containsExactly("line 1", "line 2", "line 3", "no line break");
+    }
+}
@@ -0,0 +1,193 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class ProcessResourceSamplerTest {
+
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long ONE_MEGABYTE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File processDirectory;
+    private File perfDataFile;
+    private File outputFile;
+
+    @Before
+    public void createProcessDirectory() throws Exception {
+        processDirectory = temporaryFolder.newFolder("proc", "1234");
+        File fdDirectory = new File(processDirectory, "fd");
+        assertThat(fdDirectory.mkdir()).isTrue();
+        for (String fd : new String[]{"0", "1", "2"}) {
+            assertThat(new File(fdDirectory, fd).createNewFile()).isTrue();
+        }
+        perfDataFile = new File(temporaryFolder.getRoot(), "hsperfdata");
+        outputFile = new File(temporaryFolder.getRoot(), "test-resources.csv");
+    }
+
+    private void processUsed(long cpuTicks, long rssInKiloBytes, long contextSwitches) throws Exception {
+        Files.write(new File(processDirectory, "stat").toPath(),
+                String.format("1234 (java (jmeter)) S 1 1234 1234 0 -1 4194560 100 0 0 0 %d 0 0 0 20 0 42 0 100 1000000 250 0", cpuTicks).getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(processDirectory, "status").toPath(),
+                String.format("Name:\tjava%nVmRSS:\t%d kB%nThreads:\t42%nvoluntary_ctxt_switches:\t%d%nnonvoluntary_ctxt_switches:\t10%n", rssInKiloBytes, contextSwitches).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void heapUsed(long usedInMegaBytes, long maxInMegaBytes) throws Exception {
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("sun.gc.policy.name", "ParScav:MSC");
+        counters.put("sun.gc.generation.0.space.0.used", usedInMegaBytes / 2 * ONE_MEGABYTE);
+        counters.put("sun.gc.generation.1.space.0.used", (usedInMegaBytes - usedInMegaBytes / 2) * ONE_MEGABYTE);
+        counters.put("sun.gc.generation.0.maxCapacity", maxInMegaBytes / 4 * ONE_MEGABYTE);
+        counters.put("sun.gc.generation.1.maxCapacity", (maxInMegaBytes - maxInMegaBytes / 4) * ONE_MEGABYTE);
+        Files.write(perfDataFile.toPath(), perfData(counters, ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Writes long and string counters in the HotSpot performance data format.
+     */
+    private static byte[] perfData(Map<String, ?> counters, ByteOrder byteOrder) {
+        ByteBuffer perfData = ByteBuffer.allocate(4096);
+        perfData.order(ByteOrder.BIG_ENDIAN).putInt(0, 0xcafec0c0);
+        perfData.put(4, (byte) (byteOrder == ByteOrder.BIG_ENDIAN ? 0 : 1)).put(5, (byte) 2).put(6, (byte) 0).put(7, (byte) 1);
+        perfData.order(byteOrder);
+        perfData.putInt(24, 32).putInt(28, counters.size());
+        int entryOffset = 32;
+        for (Map.Entry<String, ?> counter : counters.entrySet()) {
+            byte[] name = counter.getKey().getBytes(StandardCharsets.UTF_8);
+            int dataOffset = (20 + name.length + 1 + 7) / 8 * 8;
+            byte[] string = counter.getValue() instanceof String ? ((String) counter.getValue()).getBytes(StandardCharsets.UTF_8) : null;
+            int vectorLength = string == null ? 0 : string.length + 1;
+            int entryLength = dataOffset + (string == null ? 8 : (vectorLength + 7) / 8 * 8);
+            perfData.putInt(entryOffset, entryLength).putInt(entryOffset + 4, 20).putInt(entryOffset + 8, vectorLength);
+            perfData.put(entryOffset + 12, (byte) (string == null ? 'J' : 'B')).putInt(entryOffset + 16, dataOffset);
+            for (int i = 0; i < name.length; i++) {
+                perfData.put(entryOffset + 20 + i, name[i]);
+            }
+            if (string == null) {
+                perfData.putLong(entryOffset + dataOffset, (Long) counter.getValue());
+            } else {
+                for (int i = 0; i < string.length; i++) {
+                    perfData.put(entryOffset + dataOffset + i, string[i]);
+                }
+            }
+            entryOffset += entryLength;
+        }
+
+        return perfData.array();
+    }
+
+    @Test
+    public void perfDataCountersAreRead() {
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("sun.gc.generation.0.maxCapacity", 123456789L);
+        counters.put("sun.gc.policy.name", "GarbageFirst");
+        counters.put("java.cls.loadedClasses", 42L);
+
+        assertThat(ProcessResourceSampler.readPerfDataCounters(ByteBuffer.wrap(perfData(counters, ByteOrder.BIG_ENDIAN)))).isEqualTo(counters);
+        assertThat(ProcessResourceSampler.readPerfDataCounters(ByteBuffer.wrap(perfData(counters, ByteOrder.LITTLE_ENDIAN)))).isEqualTo(counters);
+        assertThat(ProcessResourceSampler.readPerfDataCounters(ByteBuffer.wrap(new byte[64]))).isEmpty();
+    }
+
+    @Test
+    public void samplesAreWrittenToTheOutputFile() throws Exception {
+        ProcessResourceSampler sampler = new ProcessResourceSampler(processDirectory, perfDataFile, outputFile, 1000, 4);
+        processUsed(1000, 512000, 100);
+        heapUsed(200, 1024);
+        sampler.openOutput(0);
+        sampler.sample(0);
+        processUsed(1150, 614400, 300);
+        sampler.sample(ONE_SECOND);
+        sampler.close();
+
+        assertThat(Files.readAllLines(outputFile.toPath(), StandardCharsets.UTF_8)).containsExactly(
+                ProcessResourceSampler.HEADER,
+                "1.0,150.0,600,42,3,200,0,200,1024");
+        assertThat(sampler.getSampleCount()).isEqualTo(1);
+        assertThat(sampler.getSummary()).contains("  CPU: average 150.0%, max 150.0% (4 processors = 400%)", "  Heap: max used 200MB of 1,024MB");
+        assertThat(sampler.isCpuSaturated()).isFalse();
+        assertThat(sampler.isHeapSaturated()).isFalse();
+    }
+
+    @Test
+    public void g1HeapMaximumIsNotCountedForEachGeneration() throws Exception {
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("sun.gc.policy.name", "GarbageFirst");
+        counters.put("sun.gc.generation.0.space.0.used", 300 * ONE_MEGABYTE);
+        counters.put("sun.gc.generation.1.space.0.used", 600 * ONE_MEGABYTE);
+        counters.put("sun.gc.generation.0.maxCapacity", 1024 * ONE_MEGABYTE);
+        counters.put("sun.gc.generation.1.maxCapacity", 1024 * ONE_MEGABYTE);
+        Files.write(perfDataFile.toPath(), perfData(counters, ByteOrder.LITTLE_ENDIAN));
+        processUsed(0, 512000, 100);
+        ProcessResourceSampler sampler = new ProcessResourceSampler(processDirectory, perfDataFile, outputFile, 1000, 4);
+        sampler.openOutput(0);
+        sampler.sample(0);
+        sampler.sample(ONE_SECOND);
+        sampler.close();
+
+        assertThat(sampler.getMaxHeapUsedInMegaBytes()).isEqualTo(900);
+        assertThat(sampler.getHeapMaxInMegaBytes()).isEqualTo(1024);
+    }
+
+    @Test
+    public void sustainedFullCpuAndHeapAreFlagged() throws Exception {
+        ProcessResourceSampler sampler = new ProcessResourceSampler(processDirectory, perfDataFile, outputFile, 1000, 2);
+        sampler.openOutput(0);
+        heapUsed(1000, 1024);
+        for (int second = 0; second <= ProcessResourceSampler.SATURATED_SAMPLES_IN_A_ROW; second++) {
+            processUsed(second * 200, 512000, 100);
+            sampler.sample(second * ONE_SECOND);
+        }
+        sampler.close();
+
+        assertThat(sampler.isCpuSaturated()).isTrue();
+        assertThat(sampler.isHeapSaturated()).isTrue();
+    }
+
+    @Test
+    public void shortSpikesAreNotFlagged() throws Exception {
+        ProcessResourceSampler sampler = new ProcessResourceSampler(processDirectory, perfDataFile, outputFile, 1000, 1);
+        sampler.openOutput(0);
+        long cpuTicks = 0;
+        for (int second = 0; second <= 6; second++) {
+            cpuTicks += second % 3 == 0 ? 20 : 100;
+            processUsed(cpuTicks, 512000, 100);
+            sampler.sample(second * ONE_SECOND);
+        }
+        sampler.close();
+
+        assertThat(sampler.getSampleCount()).isEqualTo(6);
+        assertThat(sampler.isCpuSaturated()).isFalse();
+        assertThat(sampler.isHeapSaturated()).isFalse();
+    }
+
+    @Test
+    public void runningJVMIsSampled() throws Exception {
+        String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        ProcessResourceSampler sampler = new ProcessResourceSampler(Long.parseLong(pid), outputFile, 50, 1);
+        assumeTrue(sampler.isSupported());
+        sampler.start();
+        TimeUnit.MILLISECONDS.sleep(300);
+        sampler.close();
+
+        assertThat(sampler.getSampleCount()).isGreaterThan(0);
+        if (new File("/tmp/hsperfdata_" + System.getProperty("user.name"), pid).isFile()) {
+            assertThat(sampler.getHeapMaxInMegaBytes()).isGreaterThan(0);
+        }
+    }
+}
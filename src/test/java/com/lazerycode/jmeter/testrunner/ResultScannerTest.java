@@ -1,10 +1,24 @@
 package com.lazerycode.jmeter.testrunner;
 
+import com.lazerycode.jmeter.results.CsvSampleReader;
+import com.lazerycode.jmeter.results.LabelNormaliser;
+import com.lazerycode.jmeter.results.ResultFileIndex;
+import com.lazerycode.jmeter.results.Sample;
+import com.lazerycode.jmeter.results.SampleGapAnalyzer;
+import com.lazerycode.jmeter.results.TimingBreakdownAnalyzer;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -21,6 +35,11 @@ public class ResultScannerTest {
     private final URL emptyCSVFileURL = this.getClass().getResource("/empty.csv");
     private final URL csvMissingDelimiterFileURL = this.getClass().getResource("/csv-missing-delimiter.csv");
     private final URL csvWithAlternateSeparatorPassingResultsFileURL = this.getClass().getResource("/csv3-1-pass.csv");
+    private final URL csvTimingsFileURL = this.getClass().getResource("/csv-timings.csv");
+    private final URL jtlTimingsFileURL = this.getClass().getResource("/jtl-timings.jtl");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
     @Test
     public void jtlFileWithFailuresCountSuccessAndFailures() throws Exception {
@@ -32,6 +51,17 @@ public class ResultScannerTest {
         assertThat(fileScanner.getSuccessCount()).isEqualTo(2);
     }
 
+    @Test
+    public void samplesCountedWhileRunningAreAddedToTheFileCounts() throws Exception {
+        File resultsFile = new File(jtlFailingResultsFileURL.toURI());
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES);
+        fileScanner.parseResultFile(resultsFile);
+        fileScanner.addCountedSamples(10, 3);
+
+        assertThat(fileScanner.getFailureCount()).isEqualTo(5);
+        assertThat(fileScanner.getSuccessCount()).isEqualTo(9);
+    }
+
     @Test
     public void jtlFileWithFailuresCountSuccessesOnly() throws Exception {
         File resultsFile = new File(jtlFailingResultsFileURL.toURI());
@@ -148,4 +178,195 @@ public class ResultScannerTest {
         fileScanner.parseResultFile(resultsFile);
     }
 
+    @Test
+    public void csvFileIsScannedOnceWhenAnalyzersAreRegistered() throws Exception {
+        File resultsFile = new File(csvTimingsFileURL.toURI());
+        TimingBreakdownAnalyzer analyzer = new TimingBreakdownAnalyzer(90);
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true).addAnalyzer(analyzer);
+        fileScanner.parseResultFile(resultsFile);
+
+        assertThat(fileScanner.getFailureCount()).isEqualTo(1);
+        assertThat(fileScanner.getSuccessCount()).isEqualTo(2);
+        assertThat(analyzer.getTotal().getSampleCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void jtlFileSubResultsAreCountedWhenAnalyzersAreRegistered() throws Exception {
+        File resultsFile = new File(jtlTimingsFileURL.toURI());
+        TimingBreakdownAnalyzer analyzer = new TimingBreakdownAnalyzer(90);
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, false).addAnalyzer(analyzer);
+        fileScanner.parseResultFile(resultsFile);
+
+        assertThat(fileScanner.getFailureCount()).isEqualTo(2);
+        assertThat(fileScanner.getSuccessCount()).isEqualTo(2);
+        assertThat(analyzer.getTotal().getSampleCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void jtlFileCountsMatchPatternScan() throws Exception {
+        File resultsFile = new File(jtlFailingResultsFileURL.toURI());
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES).addAnalyzer(new TimingBreakdownAnalyzer(90));
+        fileScanner.parseResultFile(resultsFile);
+
+        assertThat(fileScanner.getFailureCount()).isEqualTo(2);
+        assertThat(fileScanner.getSuccessCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void csvFileIsDetectedWhenXMLFormatIsConfigured() throws Exception {
+        File resultsFile = new File(csvFailingResultsFileURL.toURI());
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, false);
+        fileScanner.parseResultFile(resultsFile);
+
+        assertThat(fileScanner.getFailureCount()).isEqualTo(2);
+        assertThat(fileScanner.getSuccessCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void jtlFileIsDetectedWhenCSVFormatIsConfigured() throws Exception {
+        File resultsFile = new File(jtlFailingResultsFileURL.toURI());
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true);
+        fileScanner.parseResultFile(resultsFile);
+
+        assertThat(fileScanner.getFailureCount()).isEqualTo(2);
+        assertThat(fileScanner.getSuccessCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void mixedFormatsCanBeScannedInOneRun() throws Exception {
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true);
+        fileScanner.parseResultFile(new File(jtlFailingResultsFileURL.toURI()));
+        fileScanner.parseResultFile(new File(csvPassingResultsFileURL.toURI()));
+
+        assertThat(fileScanner.getFailureCount()).isEqualTo(2);
+        assertThat(fileScanner.getSuccessCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void mergedFilesAreCountedAndWrittenInTimeStampOrder() throws Exception {
+        File mergedFile = File.createTempFile("merged-results", ".csv");
+        mergedFile.deleteOnExit();
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true);
+        fileScanner.parseMergedResultFiles(Arrays.asList(
+                new File(jtlFailingResultsFileURL.toURI()),
+                new File(csvPassingResultsFileURL.toURI())
+        ), 100, mergedFile);
+
+        assertThat(fileScanner.getFailureCount()).isEqualTo(2);
+        assertThat(fileScanner.getSuccessCount()).isEqualTo(4);
+        List<Long> timeStamps = new ArrayList<>();
+        try (CsvSampleReader reader = new CsvSampleReader(mergedFile)) {
+            Sample sample;
+            while ((sample = reader.next()) != null) {
+                timeStamps.add(sample.getTimeStamp());
+            }
+        }
+        assertThat(timeStamps).hasSize(6).isSorted();
+    }
+
+    @Test
+    public void mergedCsvFilesKeepEveryColumn() throws Exception {
+        String header = "timeStamp,elapsed,label,responseCode,responseMessage,threadName,success,failureMessage,URL";
+        File first = temporaryFolder.newFile("first.csv");
+        File second = temporaryFolder.newFile("second.csv");
+        File mergedFile = new File(temporaryFolder.getRoot(), "merged-results.csv");
+        Files.write(first.toPath(), Arrays.asList(header,
+                "1000,10,login,200,OK,group 1-1,true,,http://example.com/login",
+                "3000,30,search,500,\"Internal, Error\",group 1-1,false,Test failed,http://example.com/search"
+        ), StandardCharsets.UTF_8);
+        Files.write(second.toPath(), Arrays.asList(header,
+                "2000,20,login,200,OK,group 1-2,true,,http://example.com/login"
+        ), StandardCharsets.UTF_8);
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true);
+        fileScanner.parseMergedResultFiles(Arrays.asList(first, second), 100, mergedFile);
+
+        assertThat(Files.readAllLines(mergedFile.toPath(), StandardCharsets.UTF_8)).containsExactly(header,
+                "1000,10,login,200,OK,group 1-1,true,,http://example.com/login",
+                "2000,20,login,200,OK,group 1-2,true,,http://example.com/login",
+                "3000,30,search,500,\"Internal, Error\",group 1-1,false,Test failed,http://example.com/search"
+        );
+    }
+
+    @Test
+    public void samplesWithoutAnOutcomeAreNeitherSuccessesNorFailures() throws Exception {
+        File resultsFile = temporaryFolder.newFile("no-outcome.csv");
+        Files.write(resultsFile.toPath(), Arrays.asList("timeStamp,elapsed,label,success",
+                "1000,10,login,true",
+                "2000,20,login,",
+                "3000,30,search,false"
+        ), StandardCharsets.UTF_8);
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true);
+        fileScanner.parseMergedResultFiles(Arrays.asList(resultsFile), 100, null);
+
+        assertThat(fileScanner.getSuccessCount()).isEqualTo(1);
+        assertThat(fileScanner.getFailureCount()).isEqualTo(1);
+    }
+
+    @Test(expected = MojoExecutionException.class)
+    public void mergingMissingFileThrowsMojoExecutionException() throws Exception {
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true);
+        fileScanner.parseMergedResultFiles(Arrays.asList(
+                new File(csvPassingResultsFileURL.toURI()),
+                new File("DoesNotExist.nope")
+        ), 100, null);
+    }
+
+    @Test
+    public void csvFileIsIndexedWhileItIsScanned() throws Exception {
+        File resultsFile = File.createTempFile("indexed-results", ".csv");
+        resultsFile.deleteOnExit();
+        ResultFileIndex.indexFileFor(resultsFile).deleteOnExit();
+        Files.copy(new File(csvTimingsFileURL.toURI()).toPath(), resultsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true).setIndexSamplesPerBlock(2);
+        fileScanner.parseResultFile(resultsFile);
+
+        assertThat(fileScanner.getSuccessCount()).isEqualTo(2);
+        assertThat(fileScanner.getFailureCount()).isEqualTo(1);
+        ResultFileIndex index = ResultFileIndex.load(resultsFile);
+        assertThat(index).isNotNull();
+        assertThat(index.getBlocks()).hasSize(2);
+    }
+
+    @Test
+    public void analyzersAggregateOnNormalisedLabels() throws Exception {
+        File resultsFile = new File(csvTimingsFileURL.toURI());
+        TimingBreakdownAnalyzer analyzer = new TimingBreakdownAnalyzer(90);
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true)
+                .setLabelNormaliser(new LabelNormaliser().addPattern("^(login|search)$", "user journey"))
+                .addAnalyzer(analyzer);
+        fileScanner.parseResultFile(resultsFile);
+
+        assertThat(analyzer.getBreakdown("user journey").getSampleCount()).isEqualTo(3);
+        assertThat(analyzer.getBreakdown("login")).isNull();
+        assertThat(analyzer.getBreakdown("search")).isNull();
+    }
+
+    @Test
+    public void resultsThatCannotBeSampledAreLeftForAFullScan() throws Exception {
+        ResultScanner fileScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true);
+
+        assertThat(fileScanner.parseResultFilesApproximately(Arrays.asList(new File(jtlFailingResultsFileURL.toURI())), 200, 99, 0)).isNull();
+        assertThat(fileScanner.parseResultFilesApproximately(Arrays.asList(new File(csvFailingResultsFileURL.toURI())), 200, 99, 0)).isNull();
+        assertThat(fileScanner.getSuccessCount()).isZero();
+        assertThat(fileScanner.getFailureCount()).isZero();
+    }
+
+    @Test
+    public void resultsAreNotEstimatedWhenAnAnalyzerCanFailTheBuild() throws Exception {
+        File resultsFile = temporaryFolder.newFile("large.csv");
+        StringBuilder results = new StringBuilder("timeStamp,elapsed,label,responseCode,threadName,success\n");
+        for (int i = 0; i < 20000; i++) {
+            results.append(1548568307205L + i).append(",100,login,500,my-test-plan 1-1,false\n");
+        }
+        Files.write(resultsFile.toPath(), results.toString().getBytes(StandardCharsets.UTF_8));
+
+        ResultScanner reportingScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true)
+                .addAnalyzer(new SampleGapAnalyzer(1000, 0.5f, false));
+        ResultScanner failingScanner = new ResultScanner(COUNT_SUCCESSES, COUNT_FAILURES, true)
+                .addAnalyzer(new SampleGapAnalyzer(1000, 0.5f, true));
+
+        assertThat(reportingScanner.parseResultFilesApproximately(Arrays.asList(resultsFile), 1, 99, 0)).isNotNull();
+        assertThat(failingScanner.parseResultFilesApproximately(Arrays.asList(resultsFile), 1, 99, 0)).isNull();
+        assertThat(failingScanner.getFailureCount()).isZero();
+    }
 }
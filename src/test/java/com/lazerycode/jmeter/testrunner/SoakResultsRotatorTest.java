@@ -0,0 +1,146 @@
+package com.lazerycode.jmeter.testrunner;
+
+import com.lazerycode.jmeter.configuration.SoakConfiguration;
+import com.lazerycode.jmeter.results.RollingAggregates;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SoakResultsRotatorTest {
+
+    private static final String HEADER = "timeStamp,elapsed,label,responseCode,threadName,success\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void resultsAreMovedIntoTimeSlicedSegments() throws Exception {
+        File resultsFile = temporaryFolder.newFile("test.csv");
+        AtomicLong clock = new AtomicLong(0);
+        RollingAggregates aggregates = new RollingAggregates(temporaryFolder.newFile("summary.csv"));
+        SoakResultsRotator rotator = new SoakResultsRotator(resultsFile, 1000, 1000, SoakConfiguration.SegmentRetention.KEEP, aggregates, clock::get);
+
+        append(resultsFile, HEADER + "1000,100,login,200,t1,true\n2000,1");
+        rotator.poll();
+        assertThat(resultsFile.length()).isZero();
+        append(resultsFile, "50,login,200,t1,true\n");
+        clock.set(1000);
+        rotator.poll();
+        append(resultsFile, "3000,200,\"multi\nline\",200,t1,false\n");
+        rotator.close();
+
+        assertThat(rotator.getSegments()).extracting(File::getName).containsExactly("test-segment-0001.csv", "test-segment-0002.csv");
+        assertThat(new String(Files.readAllBytes(rotator.getSegments().get(0).toPath()), StandardCharsets.UTF_8))
+                .isEqualTo(HEADER + "1000,100,login,200,t1,true\n2000,150,login,200,t1,true\n");
+        assertThat(new String(Files.readAllBytes(rotator.getSegments().get(1).toPath()), StandardCharsets.UTF_8))
+                .isEqualTo(HEADER + "3000,200,\"multi\nline\",200,t1,false\n");
+        assertThat(aggregates.getSegmentCount()).isEqualTo(2);
+        assertThat(aggregates.getSampleCount()).isEqualTo(3);
+        assertThat(aggregates.getFailureCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void segmentsCanBeCompressedOnceAnalysed() throws Exception {
+        File resultsFile = temporaryFolder.newFile("test.csv");
+        RollingAggregates aggregates = new RollingAggregates(temporaryFolder.newFile("summary.csv"));
+        SoakResultsRotator rotator = new SoakResultsRotator(resultsFile, 1000, 1000, SoakConfiguration.SegmentRetention.COMPRESS, aggregates, () -> 0);
+
+        append(resultsFile, HEADER + "1000,100,login,200,t1,true\n");
+        rotator.close();
+
+        File segment = rotator.getSegments().get(0);
+        assertThat(segment).doesNotExist();
+        assertThat(new File(segment.getAbsolutePath() + ".gz")).exists();
+        assertThat(aggregates.getSampleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void segmentsCanBeDeletedOnceAnalysed() throws Exception {
+        File resultsFile = temporaryFolder.newFile("test.csv");
+        RollingAggregates aggregates = new RollingAggregates(temporaryFolder.newFile("summary.csv"));
+        SoakResultsRotator rotator = new SoakResultsRotator(resultsFile, 1000, 1000, SoakConfiguration.SegmentRetention.DELETE, aggregates, () -> 0);
+
+        append(resultsFile, HEADER + "1000,100,login,200,t1,true\n");
+        rotator.close();
+
+        assertThat(rotator.getSegments().get(0)).doesNotExist();
+        assertThat(aggregates.getSegmentCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void recordsMissingFromTheSegmentsAreCountedAgainstTheSummariserTotal() throws Exception {
+        File resultsFile = temporaryFolder.newFile("test.csv");
+        File outputFile = temporaryFolder.newFile("test-output.log");
+        RollingAggregates aggregates = new RollingAggregates(temporaryFolder.newFile("summary.csv"));
+        SoakResultsRotator rotator = new SoakResultsRotator(resultsFile, 1000, 1000, SoakConfiguration.SegmentRetention.KEEP, aggregates, () -> 0);
+
+        append(resultsFile, HEADER + "1000,100,login,200,t1,true\n2000,150,login,200,t1,true\n");
+        rotator.close();
+        append(outputFile, "summary +      3 in 00:00:10 =    0.3/s Avg:   120\n"
+                + "summary =      3 in 00:00:10 =    0.3/s Avg:   120\n"
+                + "summary +      2 in 00:00:10 =    0.2/s Avg:   130\n"
+                + "summary =      5 in 00:00:20 =    0.3/s Avg:   124\n");
+
+        assertThat(rotator.getMovedRecordCount()).isEqualTo(2);
+        assertThat(rotator.countLostRecords(outputFile)).isEqualTo(3);
+    }
+
+    @Test
+    public void lostRecordsCannotBeCountedWithoutASummariser() throws Exception {
+        File resultsFile = temporaryFolder.newFile("test.csv");
+        RollingAggregates aggregates = new RollingAggregates(temporaryFolder.newFile("summary.csv"));
+        SoakResultsRotator rotator = new SoakResultsRotator(resultsFile, 1000, 1000, SoakConfiguration.SegmentRetention.KEEP, aggregates, () -> 0);
+
+        append(resultsFile, HEADER + "1000,100,login,200,t1,true\n");
+        rotator.close();
+
+        assertThat(rotator.countLostRecords(new File(temporaryFolder.getRoot(), "missing-output.log"))).isEqualTo(-1);
+    }
+
+    private static void append(File file, String text) throws Exception {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void recordsCutByATruncateAreDiscarded() throws Exception {
+        File resultsFile = temporaryFolder.newFile("test.csv");
+        RollingAggregates aggregates = new RollingAggregates(temporaryFolder.newFile("summary.csv"));
+        SoakResultsRotator rotator = new SoakResultsRotator(resultsFile, 60000, 1000, SoakConfiguration.SegmentRetention.KEEP, aggregates, () -> 0);
+
+        append(resultsFile, HEADER + "1000,100,login,200,t1,true\n2000,1");
+        rotator.poll();
+        // The end of the record written before the truncate has been lost
+        append(resultsFile, "3000,50,login,200,t1,true\n4000,50,login,200,t1,true\n");
+        rotator.close();
+
+        assertThat(rotator.getDiscardedRecordCount()).isEqualTo(1);
+        assertThat(new String(Files.readAllBytes(rotator.getSegments().get(0).toPath()), StandardCharsets.UTF_8))
+                .isEqualTo(HEADER + "1000,100,login,200,t1,true\n4000,50,login,200,t1,true\n");
+    }
+
+    @Test
+    public void aLostQuoteIsDiscardedAtTheNextLineOnceTheRecordIsTooLong() throws Exception {
+        File resultsFile = temporaryFolder.newFile("test.csv");
+        RollingAggregates aggregates = new RollingAggregates(temporaryFolder.newFile("summary.csv"));
+        SoakResultsRotator rotator = new SoakResultsRotator(resultsFile, 60000, 1000, SoakConfiguration.SegmentRetention.KEEP, aggregates, () -> 0);
+        StringBuilder quotedRecords = new StringBuilder("2000,50,\"lost quote");
+        while (quotedRecords.length() <= SoakResultsRotator.MAX_RECORD_SIZE_IN_BYTES) {
+            quotedRecords.append("\n3000,50,login,200,t1,true");
+        }
+
+        append(resultsFile, HEADER + "1000,100,login,200,t1,true\n" + quotedRecords + "\n4000,50,login,200,t1,true\n");
+        rotator.close();
+
+        assertThat(rotator.getDiscardedRecordCount()).isEqualTo(1);
+        assertThat(new String(Files.readAllBytes(rotator.getSegments().get(0).toPath()), StandardCharsets.UTF_8))
+                .isEqualTo(HEADER + "1000,100,login,200,t1,true\n4000,50,login,200,t1,true\n");
+    }
+}
@@ -8,19 +8,27 @@ import com.lazerycode.jmeter.configuration.JMeterProcessJVMSettings;
 import com.lazerycode.jmeter.configuration.RemoteConfiguration;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class TestManagerTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private TestManager testManager;
     private String tempDir = System.getProperty("java.io.tmpdir");
 
@@ -213,8 +221,155 @@ public class TestManagerTest {
         assertThat(actual).isEqualTo(expected);
     }
 
+    @Test
+    public void onlyShardsOfAFoundTestAreLeftOutOfTheTestListWhenShardingIsOn() throws Exception {
+        temporaryFolder.newFile("plan.jmx");
+        temporaryFolder.newFile("plan-shard-0.jmx");
+        temporaryFolder.newFile("release-shard-1.jmx");
+        testManager.setTestFilesDirectory(temporaryFolder.getRoot());
+
+        assertThat(testManager.generateTestList()).containsExactlyInAnyOrder("plan.jmx", "plan-shard-0.jmx", "release-shard-1.jmx");
+
+        testManager.setShardsPerTest(2);
+
+        assertThat(testManager.generateTestList()).containsExactlyInAnyOrder("plan.jmx", "release-shard-1.jmx");
+    }
+
     @Test
     public void checkEmptyListIsReturnedIfTestFilesDirectoryIsNotSet() {
         assertThat(testManager.generateTestList()).isEqualTo(Collections.emptyList());
     }
+
+    @Test
+    public void checkParallelTestCount() {
+        testManager.setParallelTestCount(4);
+
+        assertThat(testManager.getParallelTestCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void checkParallelTestCountDefaultsToOneTestAtATime() {
+        assertThat(testManager.getParallelTestCount()).isEqualTo(1);
+
+        testManager.setParallelTestCount(0);
+
+        assertThat(testManager.getParallelTestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void checkTimeouts() {
+        assertThat(testManager.getTestTimeoutInMinutes()).isEqualTo(0L);
+        assertThat(testManager.getSuiteTimeoutInMinutes()).isEqualTo(0L);
+        assertThat(testManager.getTimeoutGracePeriodInSeconds()).isEqualTo(30L);
+
+        testManager.setTestTimeoutInMinutes(30).setSuiteTimeoutInMinutes(120).setTimeoutGracePeriodInSeconds(10);
+
+        assertThat(testManager.getTestTimeoutInMinutes()).isEqualTo(30L);
+        assertThat(testManager.getSuiteTimeoutInMinutes()).isEqualTo(120L);
+        assertThat(testManager.getTimeoutGracePeriodInSeconds()).isEqualTo(10L);
+    }
+
+    @Test
+    public void checkWorkerJVM() {
+        assertThat(testManager.isUseWorkerJVM()).isFalse();
+
+        testManager.setUseWorkerJVM(true, 20);
+
+        assertThat(testManager.isUseWorkerJVM()).isTrue();
+        assertThat(testManager.getTestsPerWorkerJVM()).isEqualTo(20);
+    }
+
+    @Test
+    public void checkFlightRecording() {
+        assertThat(testManager.isFlightRecording()).isFalse();
+        assertThat(testManager.getFlightRecordingSettings()).isEqualTo("profile");
+
+        testManager.setFlightRecording(true, "default");
+
+        assertThat(testManager.isFlightRecording()).isTrue();
+        assertThat(testManager.getFlightRecordingSettings()).isEqualTo("default");
+    }
+
+    @Test
+    public void checkResourceSamplingInterval() {
+        assertThat(testManager.getResourceSamplingIntervalInSeconds()).isEqualTo(1);
+
+        testManager.setResourceSamplingIntervalInSeconds(5);
+
+        assertThat(testManager.getResourceSamplingIntervalInSeconds()).isEqualTo(5);
+
+        testManager.setResourceSamplingIntervalInSeconds(-1);
+
+        assertThat(testManager.getResourceSamplingIntervalInSeconds()).isEqualTo(0);
+    }
+
+    @Test
+    public void checkShardsPerTest() {
+        assertThat(testManager.getShardsPerTest()).isEqualTo(1);
+
+        testManager.setShardsPerTest(4);
+
+        assertThat(testManager.getShardsPerTest()).isEqualTo(4);
+
+        testManager.setShardsPerTest(0);
+
+        assertThat(testManager.getShardsPerTest()).isEqualTo(1);
+    }
+
+    @Test
+    public void checkTestRunHistoryFile() {
+        assertThat(testManager.getTestRunHistoryFile()).isNull();
+
+        testManager.setTestRunHistoryFile(new File(tempDir, "history.json"));
+
+        assertThat(testManager.getTestRunHistoryFile()).isEqualTo(new File(tempDir, "history.json"));
+    }
+
+    @Test
+    public void testsThatWouldShareALogFileAreNotRunInParallel() throws Exception {
+        JMeterArgumentsArray baseTestArgs = new JMeterArgumentsArray(true, tempDir)
+                .setResultsDirectory(tempDir)
+                .setLogsDirectory(tempDir);
+        testManager.setTestFilesDirectory(new File(this.getClass().getResource("/testFiles").toURI()))
+                .setBaseTestArgs(baseTestArgs)
+                .setRemoteServerConfiguration(new RemoteConfiguration())
+                .setParallelTestCount(2);
+
+        assertThatThrownBy(() -> testManager.executeTests())
+                .isInstanceOf(MojoExecutionException.class)
+                .hasMessage("Tests one/fake.jmx and three/fake.jmx would both write to " + tempDir + File.separator + "fake.jmx.log, they cannot be run at the same time");
+    }
+
+    @Test(timeout = 30000)
+    public void shardedTestFailsWhenItsWorkersCannotBeStarted() throws Exception {
+        File testFilesDirectory = temporaryFolder.newFolder("testFiles");
+        Files.copy(new File(this.getClass().getResource("/testFiles/one/fake.jmx").toURI()).toPath(), new File(testFilesDirectory, "fake.jmx").toPath());
+        JMeterArgumentsArray baseTestArgs = new JMeterArgumentsArray(true, tempDir)
+                .setResultsDirectory(temporaryFolder.getRoot().getAbsolutePath());
+        testManager.setTestFilesDirectory(testFilesDirectory)
+                .setBaseTestArgs(baseTestArgs)
+                .setRemoteServerConfiguration(new RemoteConfiguration())
+                .setJMeterProcessJVMSettings(new JMeterProcessJVMSettings())
+                .setBinDir(new File(temporaryFolder.getRoot(), "missing"))
+                .setShardsPerTest(2);
+
+        assertThatThrownBy(() -> testManager.executeTests())
+                .isInstanceOf(MojoExecutionException.class)
+                .hasMessageContaining("Unable to start JMeter worker");
+        assertThat(testFilesDirectory.list()).containsExactly("fake.jmx");
+    }
+
+    @Test
+    public void resultsOfShardsAreMergedInTimeOrder() throws Exception {
+        File firstShard = temporaryFolder.newFile("test-shard-0.csv");
+        File secondShard = temporaryFolder.newFile("test-shard-1.csv");
+        Files.write(firstShard.toPath(), Arrays.asList("timeStamp,elapsed,label,responseCode,threadName,success", "1000,10,a,200,t 1-1,true", "3000,10,a,200,t 1-1,true"));
+        Files.write(secondShard.toPath(), Arrays.asList("timeStamp,elapsed,label,responseCode,threadName,success", "2000,10,b,500,t 1-2,false"));
+        File merged = new File(temporaryFolder.getRoot(), "test-shards.csv");
+
+        TestManager.mergeShardResults(Arrays.asList(firstShard.getAbsolutePath(), secondShard.getAbsolutePath()), merged);
+
+        assertThat(Files.readAllLines(merged.toPath())).extracting(line -> line.split(",")[0])
+                .containsExactly("timeStamp", "1000", "2000", "3000");
+    }
 }
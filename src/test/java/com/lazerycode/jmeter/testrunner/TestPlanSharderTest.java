@@ -0,0 +1,134 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestPlanSharderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static String csvDataSet(String fileName, String variableNames, boolean ignoreFirstLine) {
+        return "<CSVDataSet guiclass=\"TestBeanGUI\" testclass=\"CSVDataSet\" testname=\"Users\" enabled=\"true\">\n"
+                + "<stringProp name=\"filename\">" + fileName + "</stringProp>\n"
+                + "<stringProp name=\"variableNames\">" + variableNames + "</stringProp>\n"
+                + "<boolProp name=\"ignoreFirstLine\">" + ignoreFirstLine + "</boolProp>\n"
+                + "</CSVDataSet>";
+    }
+
+    private File testPlan(String... elements) throws Exception {
+        File file = temporaryFolder.newFile("plan.jmx");
+        Files.write(file.toPath(), ("<jmeterTestPlan>\n" + String.join("\n", elements) + "\n</jmeterTestPlan>\n").getBytes(StandardCharsets.UTF_8));
+
+        return file;
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void sharesDifferByAtMostOneAndAddUpToTheTotal() {
+        assertThat(Arrays.asList(TestPlanSharder.shareOf(10, 0, 3), TestPlanSharder.shareOf(10, 1, 3), TestPlanSharder.shareOf(10, 2, 3)))
+                .containsExactly(4, 3, 3);
+        assertThat(Arrays.asList(TestPlanSharder.shareOf(1, 0, 2), TestPlanSharder.shareOf(1, 1, 2)))
+                .containsExactly(1, 0);
+    }
+
+    @Test
+    public void literalThreadCountsAreDivided() {
+        String plan = "<stringProp name=\"ThreadGroup.num_threads\">10</stringProp>\n"
+                + "<intProp name=\"ThreadGroup.num_threads\">5</intProp>\n"
+                + "<stringProp name=\"TargetLevel\">7</stringProp>\n"
+                + "<stringProp name=\"ThreadGroup.num_threads\">${__P(threads,10)}</stringProp>\n"
+                + "<stringProp name=\"ThreadGroup.ramp_time\">10</stringProp>";
+
+        assertThat(TestPlanSharder.divideThreadCounts(plan, 1, 2)).isEqualTo(
+                "<stringProp name=\"ThreadGroup.num_threads\">5</stringProp>\n"
+                        + "<intProp name=\"ThreadGroup.num_threads\">2</intProp>\n"
+                        + "<stringProp name=\"TargetLevel\">3</stringProp>\n"
+                        + "<stringProp name=\"ThreadGroup.num_threads\">${__P(threads,10)}</stringProp>\n"
+                        + "<stringProp name=\"ThreadGroup.ramp_time\">10</stringProp>");
+    }
+
+    @Test
+    public void setUpAndTearDownThreadGroupsRunInEveryShard() {
+        String plan = "<SetupThreadGroup guiclass=\"SetupThreadGroupGui\" testclass=\"SetupThreadGroup\" testname=\"setUp\">\n"
+                + "<stringProp name=\"ThreadGroup.num_threads\">1</stringProp>\n"
+                + "</SetupThreadGroup>\n"
+                + "<ThreadGroup guiclass=\"ThreadGroupGui\" testclass=\"ThreadGroup\" testname=\"Users\">\n"
+                + "<stringProp name=\"ThreadGroup.num_threads\">10</stringProp>\n"
+                + "</ThreadGroup>\n"
+                + "<PostThreadGroup guiclass=\"PostThreadGroupGui\" testclass=\"PostThreadGroup\" testname=\"tearDown\">\n"
+                + "<stringProp name=\"ThreadGroup.num_threads\">2</stringProp>\n"
+                + "</PostThreadGroup>";
+
+        assertThat(TestPlanSharder.divideThreadCounts(plan, 1, 4)).isEqualTo(plan.replace(">10<", ">3<"));
+    }
+
+    @Test
+    public void eachShardReadsItsOwnBlockOfTheCsvDataFile() throws Exception {
+        Files.write(temporaryFolder.newFile("users.csv").toPath(), Arrays.asList("user,password", "a,1", "b,2", "c,3", "d,4", "e,5"), StandardCharsets.UTF_8);
+        File testPlan = testPlan("<stringProp name=\"ThreadGroup.num_threads\">3</stringProp>", csvDataSet("users.csv", "", false));
+        TestPlanSharder sharder = new TestPlanSharder(testPlan, 2);
+
+        List<File> shardPlans = sharder.writeShards();
+
+        assertThat(shardPlans).extracting(File::getName).containsExactly("plan-shard-0.jmx", "plan-shard-1.jmx");
+        File firstCsvShard = new File(temporaryFolder.getRoot(), "users-shard-0.csv");
+        File secondCsvShard = new File(temporaryFolder.getRoot(), "users-shard-1.csv");
+        assertThat(firstCsvShard).hasContent("user,password\na,1\nb,2\nc,3");
+        assertThat(secondCsvShard).hasContent("user,password\nd,4\ne,5");
+        assertThat(read(shardPlans.get(0)))
+                .contains("<stringProp name=\"ThreadGroup.num_threads\">2</stringProp>")
+                .contains("<stringProp name=\"filename\">" + firstCsvShard.getAbsolutePath() + "</stringProp>");
+        assertThat(read(shardPlans.get(1)))
+                .contains("<stringProp name=\"ThreadGroup.num_threads\">1</stringProp>")
+                .contains("<stringProp name=\"filename\">" + secondCsvShard.getAbsolutePath() + "</stringProp>");
+
+        sharder.deleteShards();
+
+        assertThat(temporaryFolder.getRoot().list()).containsExactlyInAnyOrder("plan.jmx", "users.csv");
+    }
+
+    @Test
+    public void csvDataFilesWithoutAHeaderAreSplitByRow() throws Exception {
+        Files.write(temporaryFolder.newFile("users.csv").toPath(), Arrays.asList("a,1", "b,2", "c,3"), StandardCharsets.UTF_8);
+        File testPlan = testPlan(csvDataSet("users.csv", "user,password", false));
+
+        new TestPlanSharder(testPlan, 3).writeShards();
+
+        assertThat(new File(temporaryFolder.getRoot(), "users-shard-0.csv")).hasContent("a,1");
+        assertThat(new File(temporaryFolder.getRoot(), "users-shard-2.csv")).hasContent("c,3");
+    }
+
+    @Test
+    public void csvDataFilesThatCannotBeSplitAreReadByEveryShard() throws Exception {
+        Files.write(temporaryFolder.newFile("users.csv").toPath(), Arrays.asList("user,password", "a,1"), StandardCharsets.UTF_8);
+        File testPlan = testPlan(csvDataSet("users.csv", "", false), csvDataSet("${dataDirectory}/users.csv", "", false));
+
+        List<File> shardPlans = new TestPlanSharder(testPlan, 2).writeShards();
+
+        assertThat(read(shardPlans.get(1)))
+                .contains("<stringProp name=\"filename\">users.csv</stringProp>")
+                .contains("<stringProp name=\"filename\">${dataDirectory}/users.csv</stringProp>");
+        assertThat(new File(temporaryFolder.getRoot(), "users-shard-0.csv")).doesNotExist();
+    }
+
+    @Test
+    public void shardFilesAreTracedBackToTheirOriginal() {
+        assertThat(TestPlanSharder.originalFileOf("load/plan-shard-3.jmx")).isEqualTo("load/plan.jmx");
+        assertThat(TestPlanSharder.originalFileOf("load/users-shard-0")).isEqualTo("load/users");
+        assertThat(TestPlanSharder.originalFileOf("load/plan.jmx")).isNull();
+        assertThat(TestPlanSharder.originalFileOf("load/shard.jmx")).isNull();
+    }
+}
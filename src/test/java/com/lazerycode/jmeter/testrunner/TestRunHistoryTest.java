@@ -0,0 +1,70 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestRunHistoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void aMissingHistoryIsEmpty() {
+        TestRunHistory history = TestRunHistory.load(new File(temporaryFolder.getRoot(), "history.json"));
+
+        assertThat(history.getTestRun("fake.jmx")).isNull();
+    }
+
+    @Test
+    public void anUnreadableHistoryIsEmpty() throws Exception {
+        File historyFile = temporaryFolder.newFile("history.json");
+        Files.write(historyFile.toPath(), "not json".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(TestRunHistory.load(historyFile).getTestRun("fake.jmx")).isNull();
+    }
+
+    @Test
+    public void durationsAreSmoothedOverRuns() {
+        TestRunHistory history = TestRunHistory.load(new File(temporaryFolder.getRoot(), "history.json"));
+
+        history.record("fake.jmx", 1000, null);
+        history.record("fake.jmx", 3000, null);
+
+        TestRunHistory.TestRun testRun = history.getTestRun("fake.jmx");
+        assertThat(testRun.getDurationInMilliseconds()).isEqualTo(2000);
+        assertThat(testRun.getLastDurationInMilliseconds()).isEqualTo(3000);
+        assertThat(testRun.getRuns()).isEqualTo(2);
+    }
+
+    @Test
+    public void historyIsKeptFromOneRunToTheNext() throws Exception {
+        File historyFile = new File(temporaryFolder.getRoot(), "jmeter/history.json");
+        TestRunHistory history = TestRunHistory.load(historyFile);
+        history.record("load/fake.jmx", 60000, null);
+
+        history.save();
+
+        TestRunHistory.TestRun testRun = TestRunHistory.load(historyFile).getTestRun("load/fake.jmx");
+        assertThat(testRun.getDurationInMilliseconds()).isEqualTo(60000);
+        assertThat(testRun.getRuns()).isEqualTo(1);
+    }
+
+    @Test
+    public void testsAreStartedLongestFirstAfterTestsThatHaveNotBeenRunBefore() {
+        TestRunHistory history = TestRunHistory.load(new File(temporaryFolder.getRoot(), "history.json"));
+        history.record("short.jmx", 1000, null);
+        history.record("long.jmx", 40000, null);
+        history.record("load/medium.jmx", 5000, null);
+
+        assertThat(history.longestFirst(Arrays.asList("short.jmx", "new.jmx", "load\\medium.jmx", "long.jmx", "other.jmx")))
+                .containsExactly("new.jmx", "other.jmx", "long.jmx", "load\\medium.jmx", "short.jmx");
+    }
+}
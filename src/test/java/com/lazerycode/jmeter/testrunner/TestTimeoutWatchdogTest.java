@@ -0,0 +1,70 @@
+package com.lazerycode.jmeter.testrunner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestTimeoutWatchdogTest {
+
+    private static final String JAVA_RUNTIME = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    public static class HungJMeter {
+        public static void main(String[] args) throws InterruptedException {
+            Thread.sleep(TimeUnit.MINUTES.toMillis(5));
+        }
+    }
+
+    private static Process startHungJMeter() throws Exception {
+        return new ProcessBuilder(JAVA_RUNTIME, "-cp", System.getProperty("java.class.path"), HungJMeter.class.getName())
+                .redirectErrorStream(true)
+                .start();
+    }
+
+    @Test
+    public void hungProcessIsStoppedWithDiagnostics() throws Exception {
+        Process process = startHungJMeter();
+        File diagnosticsPrefix = new File(temporaryFolder.getRoot(), "hung");
+        TestTimeoutWatchdog watchdog = new TestTimeoutWatchdog(process, "hung.jmx", "test timeout of 1 minutes", 1000, 5000, JAVA_RUNTIME, diagnosticsPrefix).start();
+
+        assertThat(process.waitFor(2, TimeUnit.MINUTES)).isTrue();
+        watchdog.close();
+
+        File threadDump = new File(temporaryFolder.getRoot(), "hung-thread-dump.txt");
+        assertThat(watchdog.hasTimedOut()).isTrue();
+        assertThat(watchdog.getTimeoutMessage()).startsWith("hung.jmx was stopped after the test timeout of 1 minutes, thread dump written to " + threadDump.getAbsolutePath());
+        assertThat(threadDump).exists();
+        assertThat(new File(temporaryFolder.getRoot(), "hung-class-histogram.txt")).exists();
+    }
+
+    @Test
+    public void closingTheWatchdogCancelsTheTimeout() throws Exception {
+        Process process = startHungJMeter();
+        try {
+            TestTimeoutWatchdog watchdog = new TestTimeoutWatchdog(process, "hung.jmx", "test timeout of 1 minutes", 500, 5000, JAVA_RUNTIME, new File(temporaryFolder.getRoot(), "hung")).start();
+            watchdog.close();
+
+            assertThat(process.waitFor(1, TimeUnit.SECONDS)).isFalse();
+            assertThat(watchdog.hasTimedOut()).isFalse();
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    @Test
+    public void processIdIsFound() throws Exception {
+        Process process = startHungJMeter();
+        try {
+            assertThat(TestTimeoutWatchdog.pidOf(process)).isPositive();
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+}